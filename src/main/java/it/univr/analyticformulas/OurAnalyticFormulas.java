@@ -1,6 +1,7 @@
 package it.univr.analyticformulas;
 
 import net.finmath.functions.AnalyticFormulas;
+import net.finmath.functions.NormalDistribution;
 
 public class OurAnalyticFormulas {
 
@@ -12,4 +13,140 @@ public class OurAnalyticFormulas {
 				* AnalyticFormulas.blackScholesOptionValue(lowerBarrier*lowerBarrier/initialValue, riskFreeRate, sigma, maturity, strike);
 	}
 
+	/*
+	 * The volatility sigma = sqrt(sigma_1^2 - 2 rho sigma_1 sigma_2 + sigma_2^2) of the ratio S^1/S^2, which is the
+	 * only volatility entering the Margrabe formula.
+	 */
+	private static double margrabeVolatility(double firstVolatility, double secondVolatility, double correlation) {
+		return Math.sqrt(Math.max(firstVolatility * firstVolatility - 2 * correlation * firstVolatility * secondVolatility
+				+ secondVolatility * secondVolatility, 0.0));
+	}
+
+	/**
+	 * It returns the value of an exchange option with payoff max(S^1(T)-S^2(T),0) when S^1 and S^2 are two correlated
+	 * geometric Brownian motions, computed with the Margrabe formula
+	 * V = S^1(0)N(d_1) - S^2(0)N(d_2),
+	 * with d_1 = (log(S^1(0)/S^2(0)) + sigma^2 T/2)/(sigma sqrt(T)), d_2 = d_1 - sigma sqrt(T) and
+	 * sigma^2 = sigma_1^2 - 2 rho sigma_1 sigma_2 + sigma_2^2. Note that the risk free rate does not appear.
+	 *
+	 * @param firstInitialValue the initial value S^1(0) of the first asset
+	 * @param secondInitialValue the initial value S^2(0) of the second asset
+	 * @param firstVolatility the log-volatility sigma_1 of the first asset
+	 * @param secondVolatility the log-volatility sigma_2 of the second asset
+	 * @param correlation the correlation rho between the Brownian motions driving the two assets
+	 * @param maturity the maturity T of the option
+	 * @return the value of the exchange option
+	 */
+	public static double margrabeExchangeOptionValue(double firstInitialValue, double secondInitialValue, double firstVolatility,
+			double secondVolatility, double correlation, double maturity) {
+		final double sigma = margrabeVolatility(firstVolatility, secondVolatility, correlation);
+		//the value of a call on S^1/S^2 with strike 1 and zero rate, in units of S^2
+		return secondInitialValue * AnalyticFormulas.blackScholesOptionValue(firstInitialValue / secondInitialValue, 0.0, sigma, maturity, 1.0);
+	}
+
+	/**
+	 * It returns the sensitivities of the Margrabe value of an exchange option with payoff max(S^1(T)-S^2(T),0) with
+	 * respect to the initial values of the two assets, that is, dV/dS^1(0) = N(d_1) and dV/dS^2(0) = -N(d_2).
+	 *
+	 * @param firstInitialValue the initial value S^1(0) of the first asset
+	 * @param secondInitialValue the initial value S^2(0) of the second asset
+	 * @param firstVolatility the log-volatility sigma_1 of the first asset
+	 * @param secondVolatility the log-volatility sigma_2 of the second asset
+	 * @param correlation the correlation rho between the Brownian motions driving the two assets
+	 * @param maturity the maturity T of the option
+	 * @return an array of two elements: the delta with respect to the first and to the second asset
+	 */
+	public static double[] margrabeExchangeOptionDeltas(double firstInitialValue, double secondInitialValue, double firstVolatility,
+			double secondVolatility, double correlation, double maturity) {
+		final double sigma = margrabeVolatility(firstVolatility, secondVolatility, correlation);
+		final double moneyness = Math.log(firstInitialValue / secondInitialValue);
+		if (sigma * Math.sqrt(maturity) == 0) {
+			//deterministic ratio: the option is either surely exercised or surely not
+			return moneyness > 0 ? new double[] {1.0, -1.0} : new double[] {0.0, 0.0};
+		}
+		final double d1 = (moneyness + 0.5 * sigma * sigma * maturity) / (sigma * Math.sqrt(maturity));
+		final double d2 = d1 - sigma * Math.sqrt(maturity);
+		return new double[] {NormalDistribution.cumulativeDistribution(d1), -NormalDistribution.cumulativeDistribution(d2)};
+	}
+
+	/**
+	 * It returns the matrix of the second derivatives of the Margrabe value of an exchange option with payoff
+	 * max(S^1(T)-S^2(T),0) with respect to the initial values of the two assets. Calling phi the standard normal
+	 * density, it is
+	 * d^2V/d(S^1)^2 = phi(d_1)/(S^1 sigma sqrt(T)), d^2V/d(S^2)^2 = phi(d_2)/(S^2 sigma sqrt(T)),
+	 * d^2V/dS^1dS^2 = -phi(d_1)/(S^2 sigma sqrt(T)).
+	 *
+	 * @param firstInitialValue the initial value S^1(0) of the first asset
+	 * @param secondInitialValue the initial value S^2(0) of the second asset
+	 * @param firstVolatility the log-volatility sigma_1 of the first asset
+	 * @param secondVolatility the log-volatility sigma_2 of the second asset
+	 * @param correlation the correlation rho between the Brownian motions driving the two assets
+	 * @param maturity the maturity T of the option
+	 * @return the symmetric 2x2 matrix of the gammas
+	 */
+	public static double[][] margrabeExchangeOptionGammas(double firstInitialValue, double secondInitialValue, double firstVolatility,
+			double secondVolatility, double correlation, double maturity) {
+		final double sigma = margrabeVolatility(firstVolatility, secondVolatility, correlation);
+		final double standardDeviation = sigma * Math.sqrt(maturity);
+		if (standardDeviation == 0) {
+			return new double[2][2];
+		}
+		final double d1 = (Math.log(firstInitialValue / secondInitialValue) + 0.5 * standardDeviation * standardDeviation) / standardDeviation;
+		final double d2 = d1 - standardDeviation;
+		final double firstGamma = NormalDistribution.density(d1) / (firstInitialValue * standardDeviation);
+		final double secondGamma = NormalDistribution.density(d2) / (secondInitialValue * standardDeviation);
+		final double crossGamma = -NormalDistribution.density(d1) / (secondInitialValue * standardDeviation);
+		return new double[][] {{firstGamma, crossGamma}, {crossGamma, secondGamma}};
+	}
+
+	/**
+	 * It returns the sensitivities of the Margrabe value of an exchange option with payoff max(S^1(T)-S^2(T),0) with
+	 * respect to the two volatilities and to the correlation. All of them are given by the chain rule from the
+	 * vega S^1 phi(d_1) sqrt(T) with respect to the volatility sigma of the ratio S^1/S^2.
+	 *
+	 * @param firstInitialValue the initial value S^1(0) of the first asset
+	 * @param secondInitialValue the initial value S^2(0) of the second asset
+	 * @param firstVolatility the log-volatility sigma_1 of the first asset
+	 * @param secondVolatility the log-volatility sigma_2 of the second asset
+	 * @param correlation the correlation rho between the Brownian motions driving the two assets
+	 * @param maturity the maturity T of the option
+	 * @return an array of three elements: the derivatives with respect to sigma_1, sigma_2 and rho
+	 */
+	public static double[] margrabeExchangeOptionVegas(double firstInitialValue, double secondInitialValue, double firstVolatility,
+			double secondVolatility, double correlation, double maturity) {
+		final double sigma = margrabeVolatility(firstVolatility, secondVolatility, correlation);
+		if (sigma * Math.sqrt(maturity) == 0) {
+			return new double[3];
+		}
+		final double d1 = (Math.log(firstInitialValue / secondInitialValue) + 0.5 * sigma * sigma * maturity) / (sigma * Math.sqrt(maturity));
+		final double vega = firstInitialValue * NormalDistribution.density(d1) * Math.sqrt(maturity);
+		return new double[] {
+				vega * (firstVolatility - correlation * secondVolatility) / sigma,
+				vega * (secondVolatility - correlation * firstVolatility) / sigma,
+				-vega * firstVolatility * secondVolatility / sigma};
+	}
+
+	/**
+	 * It returns the theta of the Margrabe value of an exchange option with payoff max(S^1(T)-S^2(T),0), that is, the
+	 * derivative of the value with respect to the running time t when the time to maturity is T-t. It is given by
+	 * -S^1 phi(d_1) sigma/(2 sqrt(T-t)).
+	 *
+	 * @param firstInitialValue the initial value S^1(0) of the first asset
+	 * @param secondInitialValue the initial value S^2(0) of the second asset
+	 * @param firstVolatility the log-volatility sigma_1 of the first asset
+	 * @param secondVolatility the log-volatility sigma_2 of the second asset
+	 * @param correlation the correlation rho between the Brownian motions driving the two assets
+	 * @param maturity the time to maturity of the option
+	 * @return the theta of the exchange option
+	 */
+	public static double margrabeExchangeOptionTheta(double firstInitialValue, double secondInitialValue, double firstVolatility,
+			double secondVolatility, double correlation, double maturity) {
+		final double sigma = margrabeVolatility(firstVolatility, secondVolatility, correlation);
+		if (sigma * Math.sqrt(maturity) == 0) {
+			return 0.0;
+		}
+		final double d1 = (Math.log(firstInitialValue / secondInitialValue) + 0.5 * sigma * sigma * maturity) / (sigma * Math.sqrt(maturity));
+		return -firstInitialValue * NormalDistribution.density(d1) * sigma / (2 * Math.sqrt(maturity));
+	}
+
 }
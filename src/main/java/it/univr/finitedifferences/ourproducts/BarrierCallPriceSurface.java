@@ -0,0 +1,130 @@
+package it.univr.finitedifferences.ourproducts;
+
+/**
+ * This class represents the prices of barrier call options for all the combinations of some maturities, lower
+ * barriers, volatilities of the underlying and strikes, for a given value of the underlying. The prices are stored in
+ * a single array, where the strike index runs fastest, then the volatility index, then the barrier index and then the
+ * maturity index: in this way the surface takes the memory of its prices only, and the prices for the same maturity,
+ * barrier and volatility, which are computed together, are contiguous.
+ *
+ * Objects of this class are returned by FDMBarrierCallSurfaceEngine.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class BarrierCallPriceSurface {
+
+	private final double[] maturities;
+	private final double[] lowerBarriers;
+	private final double[] volatilities;
+	private final double[] strikes;
+	private final double[] prices;
+
+	/**
+	 * It constructs the surface. The array of the prices is not copied.
+	 *
+	 * @param maturities the maturities of the options
+	 * @param lowerBarriers the lower barriers of the options
+	 * @param volatilities the volatilities of the underlying
+	 * @param strikes the strikes of the options
+	 * @param prices the prices, ordered as explained in the description of the class
+	 */
+	BarrierCallPriceSurface(double[] maturities, double[] lowerBarriers, double[] volatilities, double[] strikes,
+			double[] prices) {
+		if (prices.length != maturities.length * lowerBarriers.length * volatilities.length * strikes.length) {
+			throw new IllegalArgumentException("Error: there must be a price for every combination of the parameters!");
+		}
+		this.maturities = maturities.clone();
+		this.lowerBarriers = lowerBarriers.clone();
+		this.volatilities = volatilities.clone();
+		this.strikes = strikes.clone();
+		this.prices = prices;
+	}
+
+	/**
+	 * It returns the price of the option with the given maturity, lower barrier and strike, when the underlying has
+	 * the given volatility.
+	 *
+	 * @param maturityIndex the index of the maturity
+	 * @param barrierIndex the index of the lower barrier
+	 * @param volatilityIndex the index of the volatility
+	 * @param strikeIndex the index of the strike
+	 * @return the price
+	 */
+	public double getPrice(int maturityIndex, int barrierIndex, int volatilityIndex, int strikeIndex) {
+		return prices[getIndex(maturityIndex, barrierIndex, volatilityIndex, strikeIndex)];
+	}
+
+	/**
+	 * It returns the prices of the options with the given maturity, lower barrier and volatility, for all the
+	 * strikes.
+	 *
+	 * @param maturityIndex the index of the maturity
+	 * @param barrierIndex the index of the lower barrier
+	 * @param volatilityIndex the index of the volatility
+	 * @return an array whose k-th entry is the price for the k-th strike
+	 */
+	public double[] getPricesForStrikes(int maturityIndex, int barrierIndex, int volatilityIndex) {
+		final int firstIndex = getIndex(maturityIndex, barrierIndex, volatilityIndex, 0);
+		final double[] pricesForStrikes = new double[strikes.length];
+		System.arraycopy(prices, firstIndex, pricesForStrikes, 0, strikes.length);
+		return pricesForStrikes;
+	}
+
+	/**
+	 * It returns the number of prices of the surface.
+	 *
+	 * @return the number of prices
+	 */
+	public int getNumberOfPrices() {
+		return prices.length;
+	}
+
+	/**
+	 * It returns the maturities of the surface
+	 *
+	 * @return a copy of the array of the maturities
+	 */
+	public double[] getMaturities() {
+		return maturities.clone();
+	}
+
+	/**
+	 * It returns the lower barriers of the surface
+	 *
+	 * @return a copy of the array of the lower barriers
+	 */
+	public double[] getLowerBarriers() {
+		return lowerBarriers.clone();
+	}
+
+	/**
+	 * It returns the volatilities of the surface
+	 *
+	 * @return a copy of the array of the volatilities
+	 */
+	public double[] getVolatilities() {
+		return volatilities.clone();
+	}
+
+	/**
+	 * It returns the strikes of the surface
+	 *
+	 * @return a copy of the array of the strikes
+	 */
+	public double[] getStrikes() {
+		return strikes.clone();
+	}
+
+	/*
+	 * The position in the array of the prices of the price with the given indices.
+	 */
+	private int getIndex(int maturityIndex, int barrierIndex, int volatilityIndex, int strikeIndex) {
+		if (maturityIndex < 0 || maturityIndex >= maturities.length || barrierIndex < 0 || barrierIndex >= lowerBarriers.length
+				|| volatilityIndex < 0 || volatilityIndex >= volatilities.length || strikeIndex < 0 || strikeIndex >= strikes.length) {
+			throw new IllegalArgumentException("Error: index out of the surface!");
+		}
+		return ((maturityIndex * lowerBarriers.length + barrierIndex) * volatilities.length + volatilityIndex) * strikes.length
+				+ strikeIndex;
+	}
+}
@@ -1,5 +1,7 @@
 package it.univr.finitedifferences.ourproducts;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.function.DoubleUnaryOperator;
 
 import it.univr.finitedifferences.oursolvers.FDMThetaMethodForKnockOutOption;
@@ -14,31 +16,147 @@ public class FDMBarrierCallOption implements FiniteDifference1DProduct, FiniteDi
 	private final double lowerBarrier;
 	private final double upperBarrier;
 	private final double theta;
+	// width of the concentration of the space grid around strike and barriers: zero for a uniform grid
+	private final double gridConcentrationWidth;
 
 	public FDMBarrierCallOption(final double optionMaturity, final double optionStrike,
 			final double lowerBarrier, final double upperBarrier, final double theta) {
+		this(optionMaturity, optionStrike, lowerBarrier, upperBarrier, theta, 0.0);
+	}
+
+	/**
+	 * It constructs the option. If gridConcentrationWidth is positive, the space grid of the finite difference method
+	 * is concentrated around the strike and the barriers, with strike and barriers being points of the grid: the
+	 * smaller gridConcentrationWidth, the more concentrated the grid, see SpaceGrids.
+	 */
+	public FDMBarrierCallOption(final double optionMaturity, final double optionStrike,
+			final double lowerBarrier, final double upperBarrier, final double theta, final double gridConcentrationWidth) {
 		maturity = optionMaturity;
 		strike = optionStrike;
 		this.lowerBarrier = lowerBarrier;
 		this.upperBarrier = upperBarrier;
 		this.theta = theta;
+		this.gridConcentrationWidth = gridConcentrationWidth;
 	}
 
 	@Override
 	public double[][] getValue(final double evaluationTime, final FiniteDifference1DModel model) {
+		return getSolver(model, new double[] { strike }).getValue(evaluationTime, maturity, new DoubleUnaryOperator() {
+			@Override
+			public double applyAsDouble(final double assetValue) {
+				return Math.max(assetValue - strike, 0);
+			}
+		});
+	}
+
+	/**
+	 * It returns the prices of the barrier call options with the maturity and the barriers of this option and with
+	 * the given strikes. All the prices are computed together on the same grid, with the same operators, see
+	 * FDMThetaMethodForKnockOutOption.getValues: this is much faster than constructing an option for every strike. The
+	 * strike of this option is not used. If the grid is concentrated, it is concentrated around all the strikes.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param model the model
+	 * @param strikes the strikes of the options
+	 * @return an array of strikes.length + 1 arrays: the first one contains the points of the space grid, the (k+1)-th
+	 * one the prices of the option with strike strikes[k]
+	 */
+	public double[][] getValuesForStrikes(final double evaluationTime, final FiniteDifference1DModel model, final double[] strikes) {
+		return getSolver(model, strikes).getValues(evaluationTime, maturity, getPayoffs(strikes), getBoundaries(strikes));
+	}
+
+	/**
+	 * It returns the prices of the barrier call options with the maturity and the barriers of this option and with
+	 * the given strikes for the given value of the underlying, which does not need to be a point of the grid. The
+	 * prices are computed together as in getValuesForStrikes and then interpolated, see
+	 * FDMThetaMethodForKnockOutOption.getValuesAtSpot. The strike of this option is not used.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param model the model
+	 * @param strikes the strikes of the options
+	 * @param spot the value of the underlying, which must be inside the grid
+	 * @return an array whose k-th entry is the price of the option with strike strikes[k]
+	 */
+	public double[] getValuesForStrikesAtSpot(final double evaluationTime, final FiniteDifference1DModel model,
+			final double[] strikes, final double spot) {
+		return getSolver(model, strikes).getValuesAtSpot(evaluationTime, maturity, getPayoffs(strikes), getBoundaries(strikes), spot);
+	}
+
+	/*
+	 * It returns the payoffs of the calls with the given strikes.
+	 */
+	private static DoubleUnaryOperator[] getPayoffs(final double[] strikes) {
+		final DoubleUnaryOperator[] payoffs = new DoubleUnaryOperator[strikes.length];
+		for (int k = 0; k < strikes.length; k++) {
+			final double strikeOfPayoff = strikes[k];
+			payoffs[k] = assetValue -> Math.max(assetValue - strikeOfPayoff, 0);
+		}
+		return payoffs;
+	}
 
+	/*
+	 * It returns the boundary conditions of the barrier calls with the given strikes: they depend on the strike if the
+	 * end of the grid is not a barrier.
+	 */
+	private FiniteDifference1DBoundary[] getBoundaries(final double[] strikes) {
+		final FiniteDifference1DBoundary[] boundaries = new FiniteDifference1DBoundary[strikes.length];
+		for (int k = 0; k < strikes.length; k++) {
+			boundaries[k] = new FDMBarrierCallOption(maturity, strikes[k], lowerBarrier, upperBarrier, theta);
+		}
+		return boundaries;
+	}
+
+	/**
+	 * It returns the value, the delta, the gamma and the theta of the option for the given value of the underlying,
+	 * interpolated from the prices on the grid, see FDMThetaMethodForKnockOutOption.getValueAndGreeks. The keys of
+	 * the returned map are "value", "delta", "gamma" and "theta".
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param model the model
+	 * @param spot the value of the underlying
+	 * @return a map with the value and the Greeks of the option
+	 */
+	public Map<String, Double> getValueAndGreeks(final double evaluationTime, final FiniteDifference1DModel model, final double spot) {
+		return getSolver(model, new double[] { strike }).getValueAndGreeks(evaluationTime, maturity,
+				assetValue -> Math.max(assetValue - strike, 0), spot);
+	}
+
+	/**
+	 * It returns the value, the delta, the gamma and the theta of the option for the given value of the underlying as
+	 * the method above, but solving the PDE on a domain centred in the spot, whose half width is the given number of
+	 * standard deviations of the underlying at maturity.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param model the model
+	 * @param spot the value of the underlying
+	 * @param numberOfStandardDeviations the half width of the domain, as a multiple of the standard deviation of the
+	 * underlying at maturity
+	 * @return a map with the value and the Greeks of the option
+	 */
+	public Map<String, Double> getValueAndGreeks(final double evaluationTime, final FiniteDifference1DModel model, final double spot,
+			final double numberOfStandardDeviations) {
+		return getSolver(model, new double[] { strike }).getValueAndGreeks(evaluationTime, maturity,
+				assetValue -> Math.max(assetValue - strike, 0), spot, numberOfStandardDeviations);
+	}
+
+	/*
+	 * It returns the solver for this option. If the grid has to be concentrated, it is concentrated around the given
+	 * strikes and the barriers.
+	 */
+	private FDMThetaMethodForKnockOutOption getSolver(final FiniteDifference1DModel model, final double[] strikes) {
 		/*
 		 * The FDM algorithm requires the boundary conditions of the product.
 		 * This product implements the boundary interface
 		 */
 		final FiniteDifference1DBoundary boundary = this;
-		final FDMThetaMethodForKnockOutOption solver = new FDMThetaMethodForKnockOutOption(model, boundary, maturity, theta, lowerBarrier, upperBarrier);
-		return solver.getValue(evaluationTime, maturity, new DoubleUnaryOperator() {
-			@Override
-			public double applyAsDouble(final double assetValue) {
-				return Math.max(assetValue - strike, 0);
-			}
-		});
+		if (gridConcentrationWidth > 0) {
+			final double[] concentrationPoints = Arrays.copyOf(strikes, strikes.length + 2);
+			concentrationPoints[strikes.length] = lowerBarrier;
+			concentrationPoints[strikes.length + 1] = upperBarrier;
+			return new FDMThetaMethodForKnockOutOption.Builder(model, boundary, maturity, theta, lowerBarrier, upperBarrier)
+					.withGridConcentration(concentrationPoints, gridConcentrationWidth).build();
+		}
+		return new FDMThetaMethodForKnockOutOption(model, boundary, maturity, theta, lowerBarrier, upperBarrier);
 	}
 
 	/*
@@ -51,9 +169,17 @@ public class FDMBarrierCallOption implements FiniteDifference1DProduct, FiniteDi
 		return 0;
 	}
 
+	/*
+	 * At the upper barrier the option is knocked out. If the end of the grid is below the upper barrier (for example,
+	 * if there is no upper barrier) the option there is far from the lower barrier and deep in the money, so it
+	 * behaves like a forward contract.
+	 */
 	@Override
 	public double getValueAtUpperBoundary(final FiniteDifference1DModel model, final double currentTime, final double stockPrice) {
-		return 0;
+		if (stockPrice >= upperBarrier) {
+			return 0;
+		}
+		return Math.max(stockPrice - strike * Math.exp(-model.getRiskFreeRate() * (maturity - currentTime)), 0);
 	}
 }
 
@@ -0,0 +1,157 @@
+package it.univr.finitedifferences.ourproducts;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.finmath.finitedifference.models.FDMBlackScholesModel;
+import net.finmath.finitedifference.models.FiniteDifference1DModel;
+
+/**
+ * This class computes surfaces of prices of barrier call options with Black-Scholes underlying, with respect to the
+ * maturity, the lower barrier, the volatility and the strike, by the finite difference method of
+ * FDMThetaMethodForKnockOutOption. The upper barrier, the value and the interest rate of the underlying and the
+ * parameters of the discretization are the same for all the prices.
+ *
+ * For every combination of maturity, lower barrier and volatility we need a different space grid, whose left end is
+ * the barrier and whose right end depends on maturity and volatility, and then a different solution of the PDE. The
+ * prices for all the strikes are instead computed together on the same grid, see
+ * FDMBarrierCallOption.getValuesForStrikesAtSpot. The combinations of maturity, barrier and volatility are
+ * independent: they are distributed among the threads of a ForkJoinPool, by splitting the range of their indices in
+ * two halves until a range contains only one of them. Every solution of the PDE allocates its arrays once, before
+ * its time steps, and every thread writes its prices directly into the array of the surface, at different
+ * positions, so that the threads do not need to be synchronized.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class FDMBarrierCallSurfaceEngine {
+
+	private final double initialValue;
+	private final double riskFreeRate;
+	private final double upperBarrier;
+	private final int numberOfTimeSteps;
+	private final int numberOfSpaceSteps;
+	private final int numberOfStandardDeviations;
+	private final double theta;
+	private final ForkJoinPool pool;
+
+	/**
+	 * It constructs an engine which uses the common ForkJoinPool.
+	 *
+	 * @param initialValue the value of the underlying for which the prices are computed
+	 * @param riskFreeRate the risk free rate
+	 * @param upperBarrier the upper barrier of all the options, Double.POSITIVE_INFINITY if there is none
+	 * @param numberOfTimeSteps the number of time steps of the finite difference method
+	 * @param numberOfSpaceSteps the number of space steps of the finite difference method
+	 * @param numberOfStandardDeviations the number of standard deviations of the underlying at maturity which
+	 * 		  determines the right end of the space grid, if it is below the upper barrier
+	 * @param theta the theta of the finite difference method
+	 */
+	public FDMBarrierCallSurfaceEngine(double initialValue, double riskFreeRate, double upperBarrier,
+			int numberOfTimeSteps, int numberOfSpaceSteps, int numberOfStandardDeviations, double theta) {
+		this(initialValue, riskFreeRate, upperBarrier, numberOfTimeSteps, numberOfSpaceSteps, numberOfStandardDeviations,
+				theta, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * It constructs an engine which uses the given ForkJoinPool, for example one with a given number of threads.
+	 *
+	 * @param initialValue the value of the underlying for which the prices are computed
+	 * @param riskFreeRate the risk free rate
+	 * @param upperBarrier the upper barrier of all the options, Double.POSITIVE_INFINITY if there is none
+	 * @param numberOfTimeSteps the number of time steps of the finite difference method
+	 * @param numberOfSpaceSteps the number of space steps of the finite difference method
+	 * @param numberOfStandardDeviations the number of standard deviations of the underlying at maturity which
+	 * 		  determines the right end of the space grid, if it is below the upper barrier
+	 * @param theta the theta of the finite difference method
+	 * @param pool the pool whose threads compute the prices
+	 */
+	public FDMBarrierCallSurfaceEngine(double initialValue, double riskFreeRate, double upperBarrier,
+			int numberOfTimeSteps, int numberOfSpaceSteps, int numberOfStandardDeviations, double theta,
+			ForkJoinPool pool) {
+		this.initialValue = initialValue;
+		this.riskFreeRate = riskFreeRate;
+		this.upperBarrier = upperBarrier;
+		this.numberOfTimeSteps = numberOfTimeSteps;
+		this.numberOfSpaceSteps = numberOfSpaceSteps;
+		this.numberOfStandardDeviations = numberOfStandardDeviations;
+		this.theta = theta;
+		this.pool = pool;
+	}
+
+	/**
+	 * It returns the prices of the barrier call options for all the combinations of the given maturities, lower
+	 * barriers, volatilities and strikes. The price is zero if the initial value is not strictly between the barriers.
+	 *
+	 * @param maturities the maturities of the options
+	 * @param lowerBarriers the lower barriers of the options
+	 * @param volatilities the volatilities of the underlying
+	 * @param strikes the strikes of the options
+	 * @return the surface of the prices
+	 * @throws IllegalArgumentException if one of the arrays of the parameters is empty
+	 */
+	public BarrierCallPriceSurface getSurface(double[] maturities, double[] lowerBarriers, double[] volatilities,
+			double[] strikes) {
+		if (maturities.length == 0 || lowerBarriers.length == 0 || volatilities.length == 0 || strikes.length == 0) {
+			throw new IllegalArgumentException("Error: there must be at least one maturity, barrier, volatility and strike!");
+		}
+		final double[] prices = new double[maturities.length * lowerBarriers.length * volatilities.length * strikes.length];
+		final int numberOfSolutions = maturities.length * lowerBarriers.length * volatilities.length;
+		pool.invoke(new SurfaceAction(0, numberOfSolutions, maturities, lowerBarriers, volatilities, strikes, prices));
+		return new BarrierCallPriceSurface(maturities, lowerBarriers, volatilities, strikes, prices);
+	}
+
+	/*
+	 * The task computing the prices for the combinations of maturity, barrier and volatility with index in
+	 * [firstIndex, lastIndex). The index of a combination is (maturityIndex * number of barriers + barrierIndex)
+	 * * number of volatilities + volatilityIndex, so that its prices start at its index times the number of strikes.
+	 */
+	private class SurfaceAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int firstIndex;
+		private final int lastIndex;
+		private final double[] maturities;
+		private final double[] lowerBarriers;
+		private final double[] volatilities;
+		private final double[] strikes;
+		private final double[] prices;
+
+		SurfaceAction(int firstIndex, int lastIndex, double[] maturities, double[] lowerBarriers, double[] volatilities,
+				double[] strikes, double[] prices) {
+			this.firstIndex = firstIndex;
+			this.lastIndex = lastIndex;
+			this.maturities = maturities;
+			this.lowerBarriers = lowerBarriers;
+			this.volatilities = volatilities;
+			this.strikes = strikes;
+			this.prices = prices;
+		}
+
+		@Override
+		protected void compute() {
+			if (lastIndex - firstIndex > 1) {
+				final int middleIndex = (firstIndex + lastIndex) >>> 1;
+				invokeAll(new SurfaceAction(firstIndex, middleIndex, maturities, lowerBarriers, volatilities, strikes, prices),
+						new SurfaceAction(middleIndex, lastIndex, maturities, lowerBarriers, volatilities, strikes, prices));
+				return;
+			}
+			final int volatilityIndex = firstIndex % volatilities.length;
+			final int barrierIndex = (firstIndex / volatilities.length) % lowerBarriers.length;
+			final int maturityIndex = firstIndex / (volatilities.length * lowerBarriers.length);
+			final double lowerBarrier = lowerBarriers[barrierIndex];
+			if (initialValue <= lowerBarrier || initialValue >= upperBarrier) {
+				// the option is knocked out: the prices are already zero
+				return;
+			}
+
+			final double maturity = maturities[maturityIndex];
+			final FiniteDifference1DModel model = new FDMBlackScholesModel(numberOfTimeSteps, numberOfSpaceSteps,
+					numberOfStandardDeviations, initialValue, theta, initialValue, riskFreeRate, volatilities[volatilityIndex]);
+			final double[] pricesForStrikes = new FDMBarrierCallOption(maturity, strikes[0], lowerBarrier, upperBarrier, theta)
+					.getValuesForStrikesAtSpot(0.0, model, strikes, initialValue);
+			System.arraycopy(pricesForStrikes, 0, prices, firstIndex * strikes.length, strikes.length);
+		}
+	}
+}
@@ -0,0 +1,361 @@
+package it.univr.finitedifferences.oursolvers;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * This class solves the pricing PDE of an option on two assets S^1, S^2 following a two-dimensional Black-Scholes
+ * model with correlation rho, with knock-out barriers on both assets, by an alternating direction implicit (ADI)
+ * method. The PDE is written in x_k = log(S^k):
+ *
+ * dV/dtau = A_0 V + A_1 V + A_2 V,
+ * A_0 = rho sigma_1 sigma_2 d^2/dx_1dx_2,
+ * A_k = 0.5 sigma_k^2 d^2/dx_k^2 + (r - 0.5 sigma_k^2) d/dx_k - r/2, k = 1,2,
+ *
+ * where tau is the time to maturity. The grid is uniform in x_1 and x_2, so that the coefficients are constant and
+ * the discretization of A_1 and A_2 gives the same tridiagonal matrix on every line of the grid.
+ *
+ * With the Douglas scheme, every time step is made of an explicit step with the whole operator, followed by an
+ * implicit correction in the direction of x_1 and one in the direction of x_2:
+ *
+ * Y_0 = U + dt (A_0 + A_1 + A_2) U,
+ * Y_k = Y_{k-1} + theta dt A_k (Y_k - U), k = 1,2,
+ *
+ * and the new solution is Y_2. The Craig-Sneyd scheme corrects the mixed derivative term once more: it computes
+ * Z_0 = Y_0 + 0.5 dt A_0 (Y_2 - U) and repeats the two implicit corrections starting from Z_0. With theta = 0.5 it
+ * is of second order in time also when rho is not zero. Every implicit correction only requires the solution of
+ * tridiagonal systems, one for every line of the grid in the given direction: these are independent, and they are
+ * solved in parallel.
+ *
+ * The values at the ends of the grid are zero where the end is a barrier. Otherwise, the end is some standard
+ * deviations far from the mean of log(S^k(T)), and there we take the value the option would have with zero
+ * volatility, i.e., e^{-r tau} h(S^1 e^{r tau}, S^2 e^{r tau}), where h is the payoff.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class FDMADIMethodForTwoAssetKnockOutOption {
+
+	private final double[] initialValues;
+	private final double riskFreeRate;
+	private final double[] volatilities;
+	private final double correlation;
+
+	private final double timeHorizon;
+	private final int numberOfTimeSteps;
+	private final int[] numberOfSpaceSteps;
+	private final double numberOfStandardDeviations;
+
+	private final double[] lowerBarriers;
+	private final double[] upperBarriers;
+
+	private final double theta;
+	// true for the Craig-Sneyd scheme, false for the Douglas scheme
+	private final boolean isCraigSneyd;
+
+	// the points of the grid in x_1 and x_2, included the ends
+	private final double[][] logGrids;
+	// isBarrierAtEnd[k][0] (isBarrierAtEnd[k][1]) is true if the left (right) end of the grid of the k-th asset is a barrier
+	private final boolean[][] isBarrierAtEnd;
+
+	/**
+	 * It constructs the solver.
+	 *
+	 * @param initialValues the initial values of the two assets
+	 * @param riskFreeRate the risk free rate r
+	 * @param volatilities the log-volatilities of the two assets
+	 * @param correlation the correlation rho between the Brownian motions driving the two assets
+	 * @param timeHorizon the maturity of the option
+	 * @param numberOfTimeSteps the number of time steps
+	 * @param numberOfSpaceSteps the number of steps of the grid for every asset
+	 * @param numberOfStandardDeviations the number of standard deviations of log(S^k(T)) between its mean and the
+	 *        ends of the grid, if these are not barriers
+	 * @param lowerBarriers the lower barriers of the two assets: zero if there is no lower barrier
+	 * @param upperBarriers the upper barriers of the two assets: Double.POSITIVE_INFINITY if there is no upper barrier
+	 * @param theta the weight of the implicit corrections: 0.5 gives second order in time
+	 * @param isCraigSneyd true for the Craig-Sneyd scheme, false for the Douglas scheme
+	 */
+	public FDMADIMethodForTwoAssetKnockOutOption(double[] initialValues, double riskFreeRate, double[] volatilities,
+			double correlation, double timeHorizon, int numberOfTimeSteps, int[] numberOfSpaceSteps,
+			double numberOfStandardDeviations, double[] lowerBarriers, double[] upperBarriers, double theta,
+			boolean isCraigSneyd) {
+		if (correlation < -1 || correlation > 1) {
+			throw new IllegalArgumentException("Error: the correlation must be in [-1,1]!");
+		}
+		this.initialValues = initialValues.clone();
+		this.riskFreeRate = riskFreeRate;
+		this.volatilities = volatilities.clone();
+		this.correlation = correlation;
+		this.timeHorizon = timeHorizon;
+		this.numberOfTimeSteps = numberOfTimeSteps;
+		this.numberOfSpaceSteps = numberOfSpaceSteps.clone();
+		this.numberOfStandardDeviations = numberOfStandardDeviations;
+		this.lowerBarriers = lowerBarriers.clone();
+		this.upperBarriers = upperBarriers.clone();
+		this.theta = theta;
+		this.isCraigSneyd = isCraigSneyd;
+
+		logGrids = new double[2][];
+		isBarrierAtEnd = new boolean[2][2];
+		for (int k = 0; k < 2; k++) {
+			if (initialValues[k] <= lowerBarriers[k] || initialValues[k] >= upperBarriers[k]) {
+				throw new IllegalArgumentException("Error: the initial values must be strictly between the barriers!");
+			}
+			if (numberOfSpaceSteps[k] < 4) {
+				throw new IllegalArgumentException("Error: the grid must have at least four steps for every asset!");
+			}
+			final double standardDeviation = volatilities[k] * Math.sqrt(timeHorizon);
+			final double mean = Math.log(initialValues[k]) + (riskFreeRate - 0.5 * volatilities[k] * volatilities[k]) * timeHorizon;
+			isBarrierAtEnd[k][0] = lowerBarriers[k] > 0
+					&& Math.log(lowerBarriers[k]) >= mean - numberOfStandardDeviations * standardDeviation;
+			isBarrierAtEnd[k][1] = Math.log(upperBarriers[k]) <= mean + numberOfStandardDeviations * standardDeviation;
+			final double minimum = isBarrierAtEnd[k][0] ? Math.log(lowerBarriers[k]) : mean - numberOfStandardDeviations * standardDeviation;
+			final double maximum = isBarrierAtEnd[k][1] ? Math.log(upperBarriers[k]) : mean + numberOfStandardDeviations * standardDeviation;
+			logGrids[k] = SpaceGrids.getUniformGrid(minimum, maximum, numberOfSpaceSteps[k]);
+		}
+	}
+
+	/**
+	 * It returns the points of the grid for the given asset, included the ends. They are uniform in log(S).
+	 *
+	 * @param assetIndex the index of the asset, 0 or 1
+	 * @return the values of the asset on the grid
+	 */
+	public double[] getSpaceGrid(int assetIndex) {
+		final double[] grid = new double[logGrids[assetIndex].length];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = Math.exp(logGrids[assetIndex][i]);
+		}
+		// the barriers are exactly the ends of the grid
+		if (isBarrierAtEnd[assetIndex][0]) {
+			grid[0] = lowerBarriers[assetIndex];
+		}
+		if (isBarrierAtEnd[assetIndex][1]) {
+			grid[grid.length - 1] = upperBarriers[assetIndex];
+		}
+		return grid;
+	}
+
+	/**
+	 * It returns the prices of the option at all the points of the grid, included the ends.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the option, must be equal to the time horizon
+	 * @param valueAtMaturity the payoff of the option as a function of the two assets at maturity
+	 * @return the matrix of the prices: the element [i][j] is the price when the first asset is the i-th point of its
+	 *         grid and the second asset the j-th point of its grid, see getSpaceGrid
+	 */
+	public double[][] getValue(double evaluationTime, double time, DoubleBinaryOperator valueAtMaturity) {
+		if(evaluationTime != 0) {
+			throw new IllegalArgumentException("Evaluation time != 0 not supported.");
+		}
+		if(time != timeHorizon) {
+			throw new IllegalArgumentException("Given time != timeHorizon not supported.");
+		}
+
+		final int lastIndexOfFirst = numberOfSpaceSteps[0];
+		final int lastIndexOfSecond = numberOfSpaceSteps[1];
+		final double deltaTau = timeHorizon / numberOfTimeSteps;
+		final double[] firstGrid = getSpaceGrid(0);
+		final double[] secondGrid = getSpaceGrid(1);
+
+		/*
+		 * The weights of the discretization of A_1 and A_2 with respect to the previous point, the point itself and
+		 * the next point of a line, and the weight of the mixed derivative.
+		 */
+		final double[][] weights = new double[2][];
+		for (int k = 0; k < 2; k++) {
+			final double step = logGrids[k][1] - logGrids[k][0];
+			final double diffusion = 0.5 * volatilities[k] * volatilities[k] / (step * step);
+			final double drift = (riskFreeRate - 0.5 * volatilities[k] * volatilities[k]) / (2 * step);
+			weights[k] = new double[] { diffusion - drift, -2 * diffusion - 0.5 * riskFreeRate, diffusion + drift };
+		}
+		final double mixedWeight = correlation * volatilities[0] * volatilities[1]
+				/ (4 * (logGrids[0][1] - logGrids[0][0]) * (logGrids[1][1] - logGrids[1][0]));
+
+		// the implicit operators I - theta dt A_k on the interior points of a line: they are factorized once
+		final TridiagonalMatrix[] implicitOperators = new TridiagonalMatrix[2];
+		for (int k = 0; k < 2; k++) {
+			implicitOperators[k] = new TridiagonalMatrix(numberOfSpaceSteps[k] - 1);
+			for (int i = 0; i < numberOfSpaceSteps[k] - 1; i++) {
+				implicitOperators[k].setRow(i, -theta * deltaTau * weights[k][0], 1 - theta * deltaTau * weights[k][1],
+						-theta * deltaTau * weights[k][2]);
+			}
+			// the lines are solved in parallel: the factorization must be there before
+			implicitOperators[k].factorize();
+		}
+
+		double[][] U = new double[lastIndexOfFirst + 1][lastIndexOfSecond + 1];
+		for (int i = 0; i <= lastIndexOfFirst; i++) {
+			for (int j = 0; j <= lastIndexOfSecond; j++) {
+				U[i][j] = valueAtMaturity.applyAsDouble(firstGrid[i], secondGrid[j]);
+			}
+		}
+		setBoundaryValues(U, firstGrid, secondGrid, valueAtMaturity, 0.0);
+
+		// A_0 U, A_1 U and A_2 U, the predictor Y_0 and the two stages, all allocated once
+		final double[][] mixedTerm = new double[lastIndexOfFirst + 1][lastIndexOfSecond + 1];
+		final double[][] firstDirectionTerm = new double[lastIndexOfFirst + 1][lastIndexOfSecond + 1];
+		final double[][] secondDirectionTerm = new double[lastIndexOfFirst + 1][lastIndexOfSecond + 1];
+		final double[][] predictor = new double[lastIndexOfFirst + 1][lastIndexOfSecond + 1];
+		final double[][] firstStage = new double[lastIndexOfFirst + 1][lastIndexOfSecond + 1];
+		double[][] secondStage = new double[lastIndexOfFirst + 1][lastIndexOfSecond + 1];
+
+		for (int m = 0; m < numberOfTimeSteps; m++) {
+			final double tauAtEndOfStep = (m + 1) * deltaTau;
+			final double[][] solution = U;
+
+			// explicit part: the rows are independent
+			IntStream.range(1, lastIndexOfFirst).parallel().forEach(i -> {
+				for (int j = 1; j < lastIndexOfSecond; j++) {
+					mixedTerm[i][j] = getMixedDerivative(solution, i, j, mixedWeight);
+					firstDirectionTerm[i][j] = weights[0][0] * solution[i - 1][j] + weights[0][1] * solution[i][j]
+							+ weights[0][2] * solution[i + 1][j];
+					secondDirectionTerm[i][j] = weights[1][0] * solution[i][j - 1] + weights[1][1] * solution[i][j]
+							+ weights[1][2] * solution[i][j + 1];
+					predictor[i][j] = solution[i][j]
+							+ deltaTau * (mixedTerm[i][j] + firstDirectionTerm[i][j] + secondDirectionTerm[i][j]);
+				}
+			});
+
+			correctInBothDirections(predictor, firstStage, secondStage, firstDirectionTerm, secondDirectionTerm,
+					implicitOperators, weights, deltaTau, firstGrid, secondGrid, valueAtMaturity, tauAtEndOfStep);
+
+			if (isCraigSneyd) {
+				// Z_0 = Y_0 + 0.5 dt (A_0 Y_2 - A_0 U), written in the predictor
+				final double[][] douglasSolution = secondStage;
+				IntStream.range(1, lastIndexOfFirst).parallel().forEach(i -> {
+					for (int j = 1; j < lastIndexOfSecond; j++) {
+						predictor[i][j] += 0.5 * deltaTau * (getMixedDerivative(douglasSolution, i, j, mixedWeight) - mixedTerm[i][j]);
+					}
+				});
+				correctInBothDirections(predictor, firstStage, secondStage, firstDirectionTerm, secondDirectionTerm,
+						implicitOperators, weights, deltaTau, firstGrid, secondGrid, valueAtMaturity, tauAtEndOfStep);
+			}
+
+			// the new solution is the second stage, and the old solution array is used as second stage in the next step
+			final double[][] temporary = U;
+			U = secondStage;
+			secondStage = temporary;
+		}
+		return U;
+	}
+
+	/**
+	 * It returns the price of the option for the initial values of the two assets, interpolated from the prices on
+	 * the grid by the tensor product of the cubic polynomials interpolating the four points of the grid closest to
+	 * the initial value of every asset.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the option, must be equal to the time horizon
+	 * @param valueAtMaturity the payoff of the option as a function of the two assets at maturity
+	 * @return the price of the option
+	 */
+	public double getValueForInitialValues(double evaluationTime, double time, DoubleBinaryOperator valueAtMaturity) {
+		final double[][] values = getValue(evaluationTime, time, valueAtMaturity);
+		final int[] firstIndices = new int[2];
+		final double[][] interpolationWeights = new double[2][];
+		for (int k = 0; k < 2; k++) {
+			final double[] grid = logGrids[k];
+			final double x = Math.log(initialValues[k]);
+			// the initial value is between the second and the third of the four points
+			int firstIndex = 0;
+			while (firstIndex < grid.length - 4 && grid[firstIndex + 2] < x) {
+				firstIndex++;
+			}
+			firstIndices[k] = firstIndex;
+			interpolationWeights[k] = getLagrangeWeights(grid, firstIndex, x);
+		}
+		double value = 0.0;
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 4; j++) {
+				value += interpolationWeights[0][i] * interpolationWeights[1][j] * values[firstIndices[0] + i][firstIndices[1] + j];
+			}
+		}
+		return value;
+	}
+
+	/*
+	 * It computes the two implicit corrections Y_1 = Y_0 + theta dt A_1 (Y_1 - U) and Y_2 = Y_1 + theta dt A_2 (Y_2 - U),
+	 * starting from the given predictor Y_0. A_1 U and A_2 U are given. The values at the ends of the grid of both
+	 * stages are the boundary values at the end of the time step.
+	 */
+	private void correctInBothDirections(double[][] predictor, double[][] firstStage, double[][] secondStage,
+			double[][] firstDirectionTerm, double[][] secondDirectionTerm, TridiagonalMatrix[] implicitOperators,
+			double[][] weights, double deltaTau, double[] firstGrid, double[] secondGrid,
+			DoubleBinaryOperator valueAtMaturity, double tauAtEndOfStep) {
+		final int lastIndexOfFirst = numberOfSpaceSteps[0];
+		final int lastIndexOfSecond = numberOfSpaceSteps[1];
+		setBoundaryValues(firstStage, firstGrid, secondGrid, valueAtMaturity, tauAtEndOfStep);
+		setBoundaryValues(secondStage, firstGrid, secondGrid, valueAtMaturity, tauAtEndOfStep);
+
+		// first direction: one system for every column, whose values are not contiguous in memory and then copied
+		IntStream.range(1, lastIndexOfSecond).parallel().forEach(j -> {
+			final double[] line = new double[lastIndexOfFirst - 1];
+			for (int i = 1; i < lastIndexOfFirst; i++) {
+				line[i - 1] = predictor[i][j] - theta * deltaTau * firstDirectionTerm[i][j];
+			}
+			line[0] += theta * deltaTau * weights[0][0] * firstStage[0][j];
+			line[lastIndexOfFirst - 2] += theta * deltaTau * weights[0][2] * firstStage[lastIndexOfFirst][j];
+			implicitOperators[0].solve(line, line);
+			for (int i = 1; i < lastIndexOfFirst; i++) {
+				firstStage[i][j] = line[i - 1];
+			}
+		});
+
+		// second direction: one system for every row
+		IntStream.range(1, lastIndexOfFirst).parallel().forEach(i -> {
+			final double[] line = new double[lastIndexOfSecond - 1];
+			for (int j = 1; j < lastIndexOfSecond; j++) {
+				line[j - 1] = firstStage[i][j] - theta * deltaTau * secondDirectionTerm[i][j];
+			}
+			line[0] += theta * deltaTau * weights[1][0] * secondStage[i][0];
+			line[lastIndexOfSecond - 2] += theta * deltaTau * weights[1][2] * secondStage[i][lastIndexOfSecond];
+			implicitOperators[1].solve(line, line);
+			System.arraycopy(line, 0, secondStage[i], 1, lastIndexOfSecond - 1);
+		});
+	}
+
+	/*
+	 * The discretization of A_0 V at the interior point (i,j) by central differences.
+	 */
+	private static double getMixedDerivative(double[][] values, int i, int j, double mixedWeight) {
+		return mixedWeight * (values[i + 1][j + 1] - values[i + 1][j - 1] - values[i - 1][j + 1] + values[i - 1][j - 1]);
+	}
+
+	/*
+	 * It writes the values at the ends of the grid at the given time to maturity: zero at the barriers, the value
+	 * with zero volatility elsewhere.
+	 */
+	private void setBoundaryValues(double[][] values, double[] firstGrid, double[] secondGrid,
+			DoubleBinaryOperator valueAtMaturity, double tau) {
+		final int lastIndexOfFirst = numberOfSpaceSteps[0];
+		final int lastIndexOfSecond = numberOfSpaceSteps[1];
+		final double growth = Math.exp(riskFreeRate * tau);
+		for (int i = 0; i <= lastIndexOfFirst; i++) {
+			for (int j = 0; j <= lastIndexOfSecond; j += (i == 0 || i == lastIndexOfFirst) ? 1 : lastIndexOfSecond) {
+				final boolean isAtBarrier = (i == 0 && isBarrierAtEnd[0][0]) || (i == lastIndexOfFirst && isBarrierAtEnd[0][1])
+						|| (j == 0 && isBarrierAtEnd[1][0]) || (j == lastIndexOfSecond && isBarrierAtEnd[1][1]);
+				values[i][j] = isAtBarrier ? 0.0
+						: valueAtMaturity.applyAsDouble(firstGrid[i] * growth, secondGrid[j] * growth) / growth;
+			}
+		}
+	}
+
+	/*
+	 * The weights of the Lagrange interpolation at x on the points grid[firstIndex],...,grid[firstIndex+3].
+	 */
+	private static double[] getLagrangeWeights(double[] grid, int firstIndex, double x) {
+		final double[] lagrangeWeights = new double[4];
+		for (int i = 0; i < 4; i++) {
+			double weight = 1.0;
+			for (int l = 0; l < 4; l++) {
+				if (l != i) {
+					weight *= (x - grid[firstIndex + l]) / (grid[firstIndex + i] - grid[firstIndex + l]);
+				}
+			}
+			lagrangeWeights[i] = weight;
+		}
+		return lagrangeWeights;
+	}
+}
@@ -1,12 +1,13 @@
 package it.univr.finitedifferences.oursolvers;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
 
-import org.apache.commons.math3.linear.DecompositionSolver;
-import org.apache.commons.math3.linear.LUDecomposition;
-import org.apache.commons.math3.linear.MatrixUtils;
-import org.apache.commons.math3.linear.RealMatrix;
-
+import net.finmath.finitedifference.models.FDMBlackScholesModel;
+import net.finmath.finitedifference.models.FDMConstantElasticityOfVarianceModel;
 import net.finmath.finitedifference.models.FiniteDifference1DBoundary;
 import net.finmath.finitedifference.models.FiniteDifference1DModel;
 
@@ -22,24 +23,260 @@ import net.finmath.finitedifference.models.FiniteDifference1DModel;
 
 
 public class FDMThetaMethodForKnockOutOption {
+
+	// the parameters of the PSOR, used for the options with early exercise whose payoff is not monotone
+	private static final double PSOR_RELAXATION_PARAMETER = 1.2;
+	private static final double PSOR_TOLERANCE = 1E-12;
+	private static final int PSOR_MAXIMUM_NUMBER_OF_ITERATIONS = 10000;
+
 	private final FiniteDifference1DModel model;
 	private final FiniteDifference1DBoundary boundaryCondition;
 	private final double theta;
 	private final double timeHorizon;
 	private final double lowerBarrier;
 	private final double upperBarrier;
+	// true if the local volatility does not depend on time: in this case, the operators are the same at every step
+	private final boolean isTimeHomogeneous;
+	// the number of time steps, starting from maturity, which are replaced by two fully implicit half steps
+	private final int numberOfRannacherSteps;
+	// true if the PDE is written and discretized in x = log(S)
+	private final boolean isLogSpace;
+	// the times when the barriers are monitored: null if they are monitored continuously
+	private final double[] monitoringTimes;
+	// the times when the underlying pays the dividends, and their amounts
+	private final double[] dividendTimes;
+	private final double[] dividendAmounts;
 
+	// it gives the space grid, see SpaceGridForKnockOutOption
+	private final SpaceGridForKnockOutOption spaceGrid;
 
+	/**
+	 * It constructs the solver with a uniform space grid, no Rannacher steps, barriers monitored continuously and no
+	 * dividends. The local volatility of the model is considered not to depend on time if the model is a
+	 * FDMBlackScholesModel or a FDMConstantElasticityOfVarianceModel. The other settings are given by a Builder.
+	 *
+	 * @param model the model of the underlying
+	 * @param boundaryCondition the boundary conditions of the option
+	 * @param timeHorizon the maturity of the option
+	 * @param theta the parameter of the theta method
+	 * @param lowerBarrier the lower barrier of the option
+	 * @param upperBarrier the upper barrier of the option
+	 */
 	public FDMThetaMethodForKnockOutOption(FiniteDifference1DModel model, FiniteDifference1DBoundary boundaryCondition, double timeHorizon,  double theta,
 			double lowerBarrier, double upperBarrier) {
-		this.model = model;
-		this.boundaryCondition = boundaryCondition;
-		this.timeHorizon = timeHorizon;
-		this.theta = theta;
-		this.lowerBarrier = lowerBarrier;
-		this.upperBarrier = upperBarrier;
+		this(new Builder(model, boundaryCondition, timeHorizon, theta, lowerBarrier, upperBarrier));
+	}
+
+	private FDMThetaMethodForKnockOutOption(Builder builder) {
+		if ((builder.dividendTimes == null) != (builder.dividendAmounts == null)
+				|| (builder.dividendTimes != null && builder.dividendTimes.length != builder.dividendAmounts.length)) {
+			throw new IllegalArgumentException("Error: every dividend time must have its amount!");
+		}
+		if (builder.dividendAmounts != null && Arrays.stream(builder.dividendAmounts).anyMatch(amount -> amount < 0)) {
+			throw new IllegalArgumentException("Error: the dividends cannot be negative!");
+		}
+		if ((builder.monitoringTimes != null && Arrays.stream(builder.monitoringTimes).anyMatch(time -> time < 0 || time > builder.timeHorizon))
+				|| (builder.dividendTimes != null && Arrays.stream(builder.dividendTimes).anyMatch(time -> time < 0 || time > builder.timeHorizon))) {
+			throw new IllegalArgumentException("Error: the monitoring and dividend times must be between zero and the time horizon!");
+		}
+		if (builder.numberOfRannacherSteps < 0) {
+			throw new IllegalArgumentException("Error: the number of Rannacher steps cannot be negative!");
+		}
+		if (builder.isLogSpace && builder.lowerBarrier < 0) {
+			throw new IllegalArgumentException("Error: the lower barrier cannot be negative in log space!");
+		}
+		this.model = builder.model;
+		this.boundaryCondition = builder.boundaryCondition;
+		this.timeHorizon = builder.timeHorizon;
+		this.theta = builder.theta;
+		this.lowerBarrier = builder.lowerBarrier;
+		this.upperBarrier = builder.upperBarrier;
+		this.isTimeHomogeneous = builder.isTimeHomogeneous;
+		this.numberOfRannacherSteps = builder.numberOfRannacherSteps;
+		this.isLogSpace = builder.isLogSpace;
+		this.monitoringTimes = builder.monitoringTimes == null ? null : builder.monitoringTimes.clone();
+		this.dividendTimes = builder.dividendTimes == null ? null : builder.dividendTimes.clone();
+		this.dividendAmounts = builder.dividendAmounts == null ? null : builder.dividendAmounts.clone();
+		this.spaceGrid = new SpaceGridForKnockOutOption(model, timeHorizon, lowerBarrier, upperBarrier,
+				monitoringTimes == null,
+				builder.gridConcentrationPoints == null ? null : builder.gridConcentrationPoints.clone(),
+				builder.gridConcentrationWidth, isLogSpace);
 	}
 
+	/**
+	 * This class constructs a FDMThetaMethodForKnockOutOption with settings other than the ones of the constructor:
+	 * the arguments of the constructor of the builder are the ones of the solver, and the other settings are given
+	 * by the methods with prefix "with", which can be called in any order. For example,
+	 *
+	 * new FDMThetaMethodForKnockOutOption.Builder(model, boundaryCondition, maturity, 0.5, lowerBarrier, upperBarrier)
+	 * .withGridConcentration(new double[] {strike, lowerBarrier, upperBarrier}, 10.0).withRannacherSteps(2).build()
+	 */
+	public static class Builder {
+		private final FiniteDifference1DModel model;
+		private final FiniteDifference1DBoundary boundaryCondition;
+		private final double timeHorizon;
+		private final double theta;
+		private final double lowerBarrier;
+		private final double upperBarrier;
+		private boolean isTimeHomogeneous;
+		private double[] gridConcentrationPoints;
+		private double gridConcentrationWidth;
+		private int numberOfRannacherSteps;
+		private boolean isLogSpace;
+		private double[] monitoringTimes;
+		private double[] dividendTimes;
+		private double[] dividendAmounts;
+
+		/**
+		 * It constructs the builder with the arguments of the constructor of FDMThetaMethodForKnockOutOption, and
+		 * with the same default settings.
+		 *
+		 * @param model the model of the underlying
+		 * @param boundaryCondition the boundary conditions of the option
+		 * @param timeHorizon the maturity of the option
+		 * @param theta the parameter of the theta method
+		 * @param lowerBarrier the lower barrier of the option
+		 * @param upperBarrier the upper barrier of the option
+		 */
+		public Builder(FiniteDifference1DModel model, FiniteDifference1DBoundary boundaryCondition, double timeHorizon,
+				double theta, double lowerBarrier, double upperBarrier) {
+			this.model = model;
+			this.boundaryCondition = boundaryCondition;
+			this.timeHorizon = timeHorizon;
+			this.theta = theta;
+			this.lowerBarrier = lowerBarrier;
+			this.upperBarrier = upperBarrier;
+			this.isTimeHomogeneous = model instanceof FDMBlackScholesModel || model instanceof FDMConstantElasticityOfVarianceModel;
+		}
+
+		/**
+		 * It sets if the local volatility of the model depends on time. If not, it is evaluated only once, and the
+		 * implicit operator is factorized only once.
+		 *
+		 * @param isTimeHomogeneous true if the local volatility of the model does not depend on time
+		 * @return this builder
+		 */
+		public Builder withTimeHomogeneous(boolean isTimeHomogeneous) {
+			this.isTimeHomogeneous = isTimeHomogeneous;
+			return this;
+		}
+
+		/**
+		 * It sets the space grid to be concentrated around the given points, for example the strike and the barriers
+		 * of the option, see SpaceGrids. The concentration points inside the grid are points of the grid: they
+		 * divide it into intervals, each of which is mapped separately. The grid is uniform if the points are null.
+		 *
+		 * @param gridConcentrationPoints the points around which the grid is concentrated
+		 * @param gridConcentrationWidth the width of the concentration: the smaller, the more concentrated the grid
+		 * @return this builder
+		 */
+		public Builder withGridConcentration(double[] gridConcentrationPoints, double gridConcentrationWidth) {
+			this.gridConcentrationPoints = gridConcentrationPoints;
+			this.gridConcentrationWidth = gridConcentrationWidth;
+			return this;
+		}
+
+		/**
+		 * It sets the number of Rannacher steps: the first numberOfRannacherSteps time steps, starting from maturity,
+		 * are each replaced by two fully implicit steps of half length. These damp the high frequency components of
+		 * the error which the Crank-Nicolson scheme produces at the kinks of the payoff and at the discontinuities
+		 * between the payoff and the boundary conditions, and which it would not damp otherwise. Two to four steps
+		 * are usually enough.
+		 *
+		 * @param numberOfRannacherSteps the number of Rannacher steps, which cannot be negative
+		 * @return this builder
+		 */
+		public Builder withRannacherSteps(int numberOfRannacherSteps) {
+			this.numberOfRannacherSteps = numberOfRannacherSteps;
+			return this;
+		}
+
+		/**
+		 * It sets if the PDE is written in x = log(S):
+		 *
+		 * dV/dtau = 0.5 sigma^2 d^2V/dx^2 + (r - 0.5 sigma^2) dV/dx - r V,
+		 *
+		 * and the grid is uniform in x, that is, the points of the grid in S are in geometric progression. For the
+		 * Black-Scholes model the coefficients of this PDE are constant, so that all the rows of the operators are
+		 * the same, and the largest eigenvalue of the operator is of order sigma^2/dx^2 instead of (sigma S_max/dS)^2:
+		 * the scheme is less stiff and the relative resolution dS/S is the same everywhere. The ends of the grid are
+		 * then defined by the standard deviation of log(S(T)), and the concentration points and width, if given,
+		 * refer to x.
+		 *
+		 * @param isLogSpace true if the PDE is written in x = log(S)
+		 * @return this builder
+		 */
+		public Builder withLogSpace(boolean isLogSpace) {
+			this.isLogSpace = isLogSpace;
+			return this;
+		}
+
+		/**
+		 * It sets the barriers to be monitored discretely: the option is knocked out only if the underlying is below
+		 * the lower barrier or above the upper one at one of the given times. The space grid is then not truncated
+		 * at the barriers, and the boundary conditions are the ones at the ends of the grid. The barriers should be
+		 * concentration points of the grid. At every monitoring time, the prices are set to zero at the points of
+		 * the space grid where the option is knocked out, and halved at the points on the barriers. The Rannacher
+		 * steps, if any, are used also after every monitoring time.
+		 *
+		 * @param monitoringTimes the times when the barriers are monitored, null if they are monitored continuously
+		 * @return this builder
+		 */
+		public Builder withMonitoringTimes(double[] monitoringTimes) {
+			this.monitoringTimes = monitoringTimes;
+			return this;
+		}
+
+		/**
+		 * It sets the discrete dividends: at dividendTimes[j] the underlying falls by dividendAmounts[j], and the
+		 * price at S is set to the price at S - D, linearly interpolated from the points of the space grid. If at the
+		 * same time the barriers are monitored, they are monitored after the payment of the dividend. The Rannacher
+		 * steps, if any, are used also after every dividend time.
+		 *
+		 * @param dividendTimes the times when the underlying pays the dividends
+		 * @param dividendAmounts the amounts of the dividends, which cannot be negative
+		 * @return this builder
+		 */
+		public Builder withDividends(double[] dividendTimes, double[] dividendAmounts) {
+			this.dividendTimes = dividendTimes;
+			this.dividendAmounts = dividendAmounts;
+			return this;
+		}
+
+		/**
+		 * It returns the solver with the settings of this builder. The monitoring and dividend times, which are
+		 * moved to the closest end of a time step if they are very close to it and otherwise added to the time grid,
+		 * must be between zero and the time horizon.
+		 *
+		 * @return the solver
+		 */
+		public FDMThetaMethodForKnockOutOption build() {
+			return new FDMThetaMethodForKnockOutOption(this);
+		}
+	}
+
+	/**
+	 * It returns the prices of the option for the interior points of the space grid, computed by the theta method.
+	 * The operators of the scheme are tridiagonal: we only store their three diagonals and we solve the linear
+	 * system at every time step with the Thomas algorithm, so that every step costs O(N), where N is the number of
+	 * points of the space grid. If the local volatility does not depend on time, the operators are constructed and
+	 * the implicit one is factorized only once, so that every step only needs a product and two substitutions.
+	 * Otherwise, the local volatility at the end of a step is kept for the beginning of the next one, so that it is
+	 * evaluated only once for every time and every point of the grid. All the arrays are allocated before the first
+	 * step, and the product and the solution of the system are written into them: the time steps allocate no memory.
+	 *
+	 * The grid can be uniform or concentrated around some points, see SpaceGrids: the derivatives are approximated
+	 * by the three points finite differences for non uniform grids, which reduce to the central ones when the grid
+	 * is uniform.
+	 *
+	 * If a number of Rannacher steps has been given, the first time steps (that is, the ones closest to maturity)
+	 * are each replaced by two fully implicit steps of half length.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the option, must be equal to the time horizon
+	 * @param valueAtMaturity the payoff of the option as a function of the underlying at maturity
+	 * @return an array of two arrays: the first one contains the points of the space grid, the second one the prices
+	 */
 	public double[][] getValue(double evaluationTime, double time, DoubleUnaryOperator valueAtMaturity) {
 		if(evaluationTime != 0) {
 			throw new IllegalArgumentException("Evaluation time != 0 not supported.");
@@ -48,128 +285,641 @@ public class FDMThetaMethodForKnockOutOption {
 			throw new IllegalArgumentException("Given time != timeHorizon not supported.");
 		}
 
-		// Grid Generation
-		final double maximumStockPriceOnGrid = Math.min(model.getForwardValue(timeHorizon)
-				+ model.getNumStandardDeviations() * Math.sqrt(model.varianceOfStockPrice(timeHorizon)),upperBarrier);
-		final double minimumStockPriceOnGrid = Math.max(model.getForwardValue(timeHorizon)
-				- model.getNumStandardDeviations() * Math.sqrt(model.varianceOfStockPrice(timeHorizon)), lowerBarrier);
-		final double deltaStock = (maximumStockPriceOnGrid - minimumStockPriceOnGrid) / model.getNumSpacesteps();
-		final double deltaTau = timeHorizon / model.getNumTimesteps();
+		final double[] grid = getSpaceGrid();
+		final double[][] stockAndOptionPrice = new double[2][];
+		stockAndOptionPrice[0] = Arrays.copyOfRange(grid, 1, grid.length - 1);
+		stockAndOptionPrice[1] = getValuesOnGrid(grid, getTimeSteps(model.getNumTimesteps(), false, null),
+				new DoubleUnaryOperator[] { valueAtMaturity }, new FiniteDifference1DBoundary[] { boundaryCondition }, null)[0];
+		return stockAndOptionPrice;
+	}
 
-		// Create interior spatial array of stock prices
-		final int spaceLength = model.getNumSpacesteps() - 1;
-		final double[] stock = new double[spaceLength];
-		for (int i= 0; i < spaceLength; i++) {
-			stock[i] = minimumStockPriceOnGrid + (i + 1) * deltaStock;
+	/**
+	 * It returns the prices of many options with the same maturity, barriers and boundary conditions but different
+	 * payoffs, for example calls with different strikes, for the interior points of the space grid. The prices are
+	 * computed by the theta method as in getValue, but the solutions for all the payoffs go together through the time
+	 * steps: the grid, the local volatilities and the operators are computed and the implicit operator is factorized
+	 * once for all of them, and at every step the linear systems are solved together, see
+	 * TridiagonalMatrix.solve(double[][], double[][]). If the grid is concentrated, it should be concentrated around
+	 * the kinks of all the payoffs.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the options, must be equal to the time horizon
+	 * @param valuesAtMaturity the payoffs of the options as functions of the underlying at maturity
+	 * @return an array of valuesAtMaturity.length + 1 arrays: the first one contains the points of the space grid,
+	 * the (k+1)-th one the prices of the option with payoff valuesAtMaturity[k]
+	 */
+	public double[][] getValues(double evaluationTime, double time, DoubleUnaryOperator[] valuesAtMaturity) {
+		final FiniteDifference1DBoundary[] boundaryConditions = new FiniteDifference1DBoundary[valuesAtMaturity.length];
+		Arrays.fill(boundaryConditions, boundaryCondition);
+		return getValues(evaluationTime, time, valuesAtMaturity, boundaryConditions);
+	}
+
+	/**
+	 * It returns the prices of many options with the same maturity and barriers but different payoffs and boundary
+	 * conditions, for the interior points of the space grid, computed together as in the method above. This is
+	 * needed, for example, if the end of the grid is not a barrier, so that the value of a call there depends on its
+	 * strike. The boundary conditions given in the constructor are not used.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the options, must be equal to the time horizon
+	 * @param valuesAtMaturity the payoffs of the options as functions of the underlying at maturity
+	 * @param boundaryConditions the boundary conditions of the options: boundaryConditions[k] are the ones of the
+	 * option with payoff valuesAtMaturity[k]
+	 * @return an array of valuesAtMaturity.length + 1 arrays: the first one contains the points of the space grid,
+	 * the (k+1)-th one the prices of the option with payoff valuesAtMaturity[k]
+	 */
+	public double[][] getValues(double evaluationTime, double time, DoubleUnaryOperator[] valuesAtMaturity,
+			FiniteDifference1DBoundary[] boundaryConditions) {
+		if(evaluationTime != 0) {
+			throw new IllegalArgumentException("Evaluation time != 0 not supported.");
 		}
+		if(time != timeHorizon) {
+			throw new IllegalArgumentException("Given time != timeHorizon not supported.");
+		}
+		if (boundaryConditions.length != valuesAtMaturity.length) {
+			throw new IllegalArgumentException("Error: every payoff must have its boundary conditions!");
+		}
+
+		final double[] grid = getSpaceGrid();
+		final double[][] prices = getValuesOnGrid(grid, getTimeSteps(model.getNumTimesteps(), false, null), valuesAtMaturity,
+				boundaryConditions, null);
+		final double[][] stockAndOptionPrices = new double[valuesAtMaturity.length + 1][];
+		stockAndOptionPrices[0] = Arrays.copyOfRange(grid, 1, grid.length - 1);
+		System.arraycopy(prices, 0, stockAndOptionPrices, 1, valuesAtMaturity.length);
+		return stockAndOptionPrices;
+	}
+
+	/**
+	 * It returns the prices of the option for the interior points of the space grid, computed by a Richardson
+	 * extrapolation of the prices given by the theta method. Calling V(dt, dS) the prices computed with time step dt
+	 * on a grid with steps dS, we compute in parallel V(dt, dS) and V(dt/2, dS/2), where the second grid is obtained
+	 * by adding the middle point of every interval of the first one, see SpaceGrids.getRefinedGrid (in log space, the
+	 * middle point in x = log(S)). Since the error
+	 * of the Crank-Nicolson scheme is of order dt^2 + dS^2, the prices
+	 * (4 V(dt/2, dS/2) - V(dt, dS))/3
+	 * have an error of higher order, at the points of the coarser grid. This requires theta = 0.5. The expansion of
+	 * the error only holds if the payoff is smoothed at the first steps, so that at least one Rannacher step should
+	 * be used, and if its kinks are points of the grid.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the option, must be equal to the time horizon
+	 * @param valueAtMaturity the payoff of the option as a function of the underlying at maturity
+	 * @return an array of two arrays: the first one contains the points of the space grid, the second one the prices
+	 */
+	public double[][] getValueWithRichardsonExtrapolation(double evaluationTime, double time, DoubleUnaryOperator valueAtMaturity) {
+		if(evaluationTime != 0) {
+			throw new IllegalArgumentException("Evaluation time != 0 not supported.");
+		}
+		if(time != timeHorizon) {
+			throw new IllegalArgumentException("Given time != timeHorizon not supported.");
+		}
+		if (theta != 0.5) {
+			throw new IllegalArgumentException("Error: the Richardson extrapolation needs theta = 0.5!");
+		}
+
+		final double[] grid = getSpaceGrid();
+		final double[] refinedGrid = spaceGrid.getRefinedGrid(grid);
+		final TimeSteps timeSteps = getTimeSteps(model.getNumTimesteps(), false, null);
+		final TimeSteps refinedTimeSteps = getTimeSteps(2 * model.getNumTimesteps(), false, null);
+
+		// the two solutions are independent: we compute them in parallel
+		final DoubleUnaryOperator[] payoff = { valueAtMaturity };
+		final FiniteDifference1DBoundary[] boundary = { boundaryCondition };
+		final double[][] solutions = IntStream.range(0, 2).parallel()
+				.mapToObj(gridIndex -> gridIndex == 0
+						? getValuesOnGrid(grid, timeSteps, payoff, boundary, null)[0]
+						: getValuesOnGrid(refinedGrid, refinedTimeSteps, payoff, boundary, null)[0])
+				.toArray(double[][]::new);
+
+		final double[] extrapolatedValues = new double[grid.length - 2];
+		for (int i = 0; i < extrapolatedValues.length; i++) {
+			// the (i+1)-th point of the grid is the 2(i+1)-th of the refined grid
+			extrapolatedValues[i] = (4 * solutions[1][2 * i + 1] - solutions[0][i]) / 3;
+		}
+		final double[][] stockAndOptionPrice = new double[2][];
+		stockAndOptionPrice[0] = Arrays.copyOfRange(grid, 1, grid.length - 1);
+		stockAndOptionPrice[1] = extrapolatedValues;
+		return stockAndOptionPrice;
+	}
 
-		// Create time-reversed tau array
-		final int timeLength = model.getNumTimesteps() + 1;
-		final double[] tau = new double[timeLength];
-		for (int i = 0; i < timeLength; i++) {
-			tau[i] = i * deltaTau;
+	/**
+	 * It returns the prices of the option with early exercise for the interior points of the space grid, computed by
+	 * the theta method: at every exercise time, the solution of the linear system of the time step is replaced by the
+	 * solution of the linear complementarity problem whose lower bound is the payoff, see TridiagonalMatrix. If the
+	 * payoff is monotone on the grid, as for a put or a call, the exercise region is on one side of the grid and we use
+	 * the Brennan-Schwartz algorithm, which costs as the Thomas algorithm. Otherwise, we use the PSOR starting from the
+	 * solution at the previous time. The value of the option at the two ends of the grid is given by the boundary
+	 * conditions, which must then take the early exercise into account if the ends are not barriers.
+	 *
+	 * If exerciseTimes is null the option is American, i.e., it can be exercised at the end of every time step,
+	 * Rannacher half steps included. Otherwise it is Bermudan: it can be exercised at maturity and at the given times,
+	 * which are added to the time grid as the monitoring and dividend times. If the option can be exercised at a
+	 * monitoring or dividend time, it is exercised before the payment of the dividend and the monitoring: the
+	 * solution of the linear system is not constrained, and the price after the jump conditions is compared with the
+	 * payoff.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the option, must be equal to the time horizon
+	 * @param valueAtMaturity the payoff of the option as a function of the underlying, at maturity and at the exercise times
+	 * @param exerciseTimes the times before maturity when the option can be exercised, null for an American option
+	 * @return an array of two arrays: the first one contains the points of the space grid, the second one the prices
+	 * @throws IllegalStateException if the PSOR does not converge within its maximum number of iterations
+	 */
+	public double[][] getValueWithEarlyExercise(double evaluationTime, double time, DoubleUnaryOperator valueAtMaturity,
+			double[] exerciseTimes) {
+		if(evaluationTime != 0) {
+			throw new IllegalArgumentException("Evaluation time != 0 not supported.");
+		}
+		if(time != timeHorizon) {
+			throw new IllegalArgumentException("Given time != timeHorizon not supported.");
 		}
 
-		// Create constant matrices
-		final RealMatrix eye = MatrixUtils.createRealIdentityMatrix(spaceLength);
-		final RealMatrix D1 = MatrixUtils.createRealMatrix(spaceLength, spaceLength);
-		final RealMatrix D2 = MatrixUtils.createRealMatrix(spaceLength, spaceLength);
-		final RealMatrix T1 = MatrixUtils.createRealMatrix(spaceLength, spaceLength);
-		final RealMatrix T2 = MatrixUtils.createRealMatrix(spaceLength, spaceLength);
+		final double[] grid = getSpaceGrid();
+		final double[][] stockAndOptionPrice = new double[2][];
+		stockAndOptionPrice[0] = Arrays.copyOfRange(grid, 1, grid.length - 1);
+		stockAndOptionPrice[1] = getValuesOnGrid(grid, getTimeSteps(model.getNumTimesteps(), exerciseTimes == null, exerciseTimes),
+				new DoubleUnaryOperator[] { valueAtMaturity }, new FiniteDifference1DBoundary[] { boundaryCondition }, null)[0];
+		return stockAndOptionPrice;
+	}
+
+	/*
+	 * It returns the time steps of the scheme for the given number of uniform steps, with the monitoring and dividend
+	 * times of the solver. If isAmerican is true, the option can be exercised at the end of every step; otherwise at
+	 * the given exercise times, if not null.
+	 */
+	private TimeSteps getTimeSteps(int numberOfTimeSteps, boolean isAmerican, double[] exerciseTimes) {
+		return new TimeSteps(timeHorizon, numberOfTimeSteps, numberOfRannacherSteps, isAmerican, exerciseTimes,
+				monitoringTimes, dividendTimes, dividendAmounts);
+	}
+
+	/*
+	 * It returns the prices of the options with the given payoffs at the interior points of the given grid, whose
+	 * first and last points are the boundaries, computed by the theta method with the given number of time steps.
+	 * The k-th array returned contains the prices for the k-th payoff, with the k-th boundary conditions, computed
+	 * with the given time steps: at the end of the steps where the option can be exercised, the exercise value is the
+	 * payoff. If valuesBeforeLastStep is not null, the prices one time step before the evaluation time are written
+	 * into it.
+	 */
+	private double[][] getValuesOnGrid(double[] grid, TimeSteps timeSteps, DoubleUnaryOperator[] valuesAtMaturity,
+			FiniteDifference1DBoundary[] boundaryConditions, double[][] valuesBeforeLastStep) {
+		final double minimumStockPriceOnGrid = grid[0];
+		final double maximumStockPriceOnGrid = grid[grid.length - 1];
+		final boolean hasEarlyExercise = timeSteps.hasEarlyExercise();
+		final double riskFreeRate = model.getRiskFreeRate();
+
+		// Create interior spatial array of stock prices
+		final int spaceLength = grid.length - 2;
+		final double[] stock = Arrays.copyOfRange(grid, 1, grid.length - 1);
+
+		/*
+		 * The weights of the finite differences approximating the first and second derivatives at every interior
+		 * point, with respect to the values at the previous point, at the point itself and at the next point. They
+		 * are multiplied by r S and 0.5 S^2, respectively, which are the coefficients of the PDE up to the local
+		 * volatility. In log space, the derivatives are with respect to x = log(S), the first array contains the
+		 * weights of r d/dx and the second one the ones of 0.5 (d^2/dx^2 - d/dx), which is multiplied by the local
+		 * volatility.
+		 */
+		final double[][] firstDerivativeWeights = new double[3][spaceLength];
+		final double[][] secondDerivativeWeights = new double[3][spaceLength];
 		for (int i = 0; i < spaceLength; i++) {
-			for (int j = 0; j < spaceLength; j++) {
-				if (i == j) {
-					D1.setEntry(i, j, minimumStockPriceOnGrid / deltaStock + (i + 1));
-					D2.setEntry(i, j, Math.pow(minimumStockPriceOnGrid / deltaStock + (i + 1), 2));
-					T2.setEntry(i, j, -2);
-				} else if (i == j - 1) {
-					T1.setEntry(i, j, 1);
-					T2.setEntry(i, j, 1);
-				} else if (i == j + 1) {
-					T1.setEntry(i, j, -1);
-					T2.setEntry(i, j, 1);
-				} else {
-					D1.setEntry(i, j, 0);
-					D2.setEntry(i, j, 0);
-					T1.setEntry(i, j, 0);
-					T2.setEntry(i, j, 0);
+			final double leftStep = isLogSpace ? Math.log(grid[i + 1] / grid[i]) : grid[i + 1] - grid[i];
+			final double rightStep = isLogSpace ? Math.log(grid[i + 2] / grid[i + 1]) : grid[i + 2] - grid[i + 1];
+			final double driftCoefficient = isLogSpace ? riskFreeRate : riskFreeRate * stock[i];
+			final double diffusionCoefficient = isLogSpace ? 0.5 : 0.5 * stock[i] * stock[i];
+			final double[] firstDerivative = {
+					-rightStep / (leftStep * (leftStep + rightStep)),
+					(rightStep - leftStep) / (leftStep * rightStep),
+					leftStep / (rightStep * (leftStep + rightStep)) };
+			final double[] secondDerivative = {
+					2 / (leftStep * (leftStep + rightStep)),
+					-2 / (leftStep * rightStep),
+					2 / (rightStep * (leftStep + rightStep)) };
+			for (int j = 0; j < 3; j++) {
+				firstDerivativeWeights[j][i] = driftCoefficient * firstDerivative[j];
+				secondDerivativeWeights[j][i] = diffusionCoefficient
+						* (isLogSpace ? secondDerivative[j] - firstDerivative[j] : secondDerivative[j]);
+			}
+		}
+
+		/*
+		 * Calling L the discretization of the operator 0.5 sigma^2 S^2 d^2/dS^2 + r S d/dS - r (or of the one in
+		 * log space), the explicit
+		 * operator (1-theta)(I + dt L) + theta I multiplies the solution at the current time, and we solve the system
+		 * for the implicit one theta(I - dt L) + (1-theta) I, where L is computed at the next time. On a uniform grid
+		 * these are the dense matrices of the original implementation, but every row has only three non zero entries. The Rannacher steps are
+		 * fully implicit: their explicit operator is the identity, and their implicit operator is kept apart, so that
+		 * both factorizations are reused if the local volatility does not depend on time.
+		 */
+		final TridiagonalMatrix explicitOperator = new TridiagonalMatrix(spaceLength);
+		final TridiagonalMatrix implicitOperator = new TridiagonalMatrix(spaceLength);
+		final TridiagonalMatrix smoothingImplicitOperator = new TridiagonalMatrix(spaceLength);
+
+		// one column for every payoff
+		final int numberOfPayoffs = valuesAtMaturity.length;
+		final double[][] U = new double[numberOfPayoffs][spaceLength];
+		final double[][] rightHandSide = new double[numberOfPayoffs][spaceLength];
+		for (int k = 0; k < numberOfPayoffs; k++) {
+			for (int i = 0; i < spaceLength; i++) {
+				U[k][i] = valuesAtMaturity[k].applyAsDouble(stock[i]);
+			}
+		}
+
+		/*
+		 * The exercise values, and the side of the grid where the exercise region is, if the payoff is monotone: on the
+		 * left if it is non increasing, on the right if it is non decreasing. Otherwise it is null, and we use the PSOR.
+		 */
+		final double[][] exerciseValues = hasEarlyExercise ? new double[numberOfPayoffs][] : null;
+		final Boolean[] isExerciseRegionOnTheLeft = hasEarlyExercise ? new Boolean[numberOfPayoffs] : null;
+		if (hasEarlyExercise) {
+			for (int k = 0; k < numberOfPayoffs; k++) {
+				exerciseValues[k] = U[k].clone();
+				boolean isNonDecreasing = true;
+				boolean isNonIncreasing = true;
+				for (int i = 1; i < spaceLength; i++) {
+					isNonDecreasing &= exerciseValues[k][i] >= exerciseValues[k][i - 1];
+					isNonIncreasing &= exerciseValues[k][i] <= exerciseValues[k][i - 1];
 				}
+				isExerciseRegionOnTheLeft[k] = isNonIncreasing ? Boolean.TRUE : isNonDecreasing ? Boolean.FALSE : null;
 			}
 		}
-		final RealMatrix F1 = eye.scalarMultiply(1 - model.getRiskFreeRate() * deltaTau);
-		final RealMatrix F2 = D1.scalarMultiply(0.5 * model.getRiskFreeRate() * deltaTau).multiply(T1);
-		final RealMatrix F3 = D2.scalarMultiply(0.5 * deltaTau).multiply(T2);
-		final RealMatrix G1 = eye.scalarMultiply(1 + model.getRiskFreeRate() * deltaTau);
-		final RealMatrix G2 = F2.scalarMultiply(-1);
-		final RealMatrix G3 = F3.scalarMultiply(-1);
-
-		// Initialize boundary and solution vectors
-		final RealMatrix b = MatrixUtils.createRealMatrix(spaceLength, 1);
-		final RealMatrix b2 = MatrixUtils.createRealMatrix(spaceLength, 1);
-		RealMatrix U = MatrixUtils.createRealMatrix(spaceLength, 1);
+
+		// squared local volatilities at the beginning and at the end of the time step, in the time-reversed sense
+		double[] sigma = new double[spaceLength];
+		double[] sigma2 = isTimeHomogeneous ? sigma : new double[spaceLength];
 		for (int i = 0; i < spaceLength; i++) {
-			b.setEntry(i, 0, 0);
-			b2.setEntry(i, 0, 0);
-			U.setEntry(i, 0, valueAtMaturity.applyAsDouble(stock[i]));
+			sigma[i] = Math.pow(model.getLocalVolatility(stock[i], timeHorizon), 2);
+		}
+
+		/*
+		 * The interior points of the grid between the barriers, barriers included, the values on
+		 * all the points of the grid, which are interpolated at the dividend times, and the values of the boundary
+		 * conditions there.
+		 */
+		int firstAliveIndex = 0;
+		while (firstAliveIndex < spaceLength && stock[firstAliveIndex] < lowerBarrier) {
+			firstAliveIndex++;
+		}
+		int lastAliveIndex = spaceLength - 1;
+		while (lastAliveIndex >= 0 && stock[lastAliveIndex] > upperBarrier) {
+			lastAliveIndex--;
+		}
+		final double[] valuesOnWholeGrid = new double[grid.length];
+		final double[] lowerBoundaryValues = new double[numberOfPayoffs];
+		final double[] upperBoundaryValues = new double[numberOfPayoffs];
+		if (timeSteps.isMonitoringAtMaturity() || timeSteps.getDividendAtMaturity() > 0) {
+			for (int k = 0; k < numberOfPayoffs; k++) {
+				lowerBoundaryValues[k] = timeReversedLowerBoundary(boundaryConditions[k], minimumStockPriceOnGrid, 0.0);
+				upperBoundaryValues[k] = timeReversedUpperBoundary(boundaryConditions[k], maximumStockPriceOnGrid, 0.0);
+			}
+			applyJumpConditions(grid, U, timeSteps.isMonitoringAtMaturity(), timeSteps.getDividendAtMaturity(), firstAliveIndex,
+					lastAliveIndex, valuesOnWholeGrid, lowerBoundaryValues, upperBoundaryValues);
 		}
 
+		// the step lengths for which the operators have been constructed
+		double operatorStepLength = Double.NaN;
+		double smoothingOperatorStepLength = Double.NaN;
+
 		// Theta finite difference method
-		for (int m = 0; m < model.getNumTimesteps(); m++) {
-			final double[] sigma = new double[spaceLength];
-			final double[] sigma2 = new double[spaceLength];
-			for (int i = 0; i < spaceLength; i++) {
-				sigma[i] = Math.pow(model.getLocalVolatility(minimumStockPriceOnGrid + (i + 1) * deltaStock,
-						timeHorizon - m * deltaTau), 2);
-				sigma2[i] = Math.pow(model.getLocalVolatility(minimumStockPriceOnGrid + (i + 1) * deltaStock,
-						timeHorizon - (m + 1) * deltaTau), 2);
+		timeSteps.reset();
+		while (timeSteps.hasNext()) {
+			timeSteps.next();
+			final boolean isSmoothingStep = timeSteps.isSmoothingStep();
+			final double stepLength = timeSteps.getStepLength();
+			final double stepTheta = isSmoothingStep ? 1.0 : theta;
+			final double tauAtBeginningOfStep = timeSteps.getTauAtBeginningOfStep();
+			final double tauAtEndOfStep = timeSteps.getTauAtEndOfStep();
+			final TridiagonalMatrix stepImplicitOperator = isSmoothingStep ? smoothingImplicitOperator : implicitOperator;
+
+			if (!isTimeHomogeneous || stepLength != (isSmoothingStep ? smoothingOperatorStepLength : operatorStepLength)) {
+				if (!isTimeHomogeneous) {
+					for (int i = 0; i < spaceLength; i++) {
+						sigma2[i] = Math.pow(model.getLocalVolatility(stock[i], timeHorizon - tauAtEndOfStep), 2);
+					}
+				}
+				for (int i = 0; i < spaceLength; i++) {
+					if (!isSmoothingStep) {
+						explicitOperator.setRow(i,
+								(1 - theta) * stepLength * (sigma[i] * secondDerivativeWeights[0][i] + firstDerivativeWeights[0][i]),
+								1 + (1 - theta) * stepLength * (sigma[i] * secondDerivativeWeights[1][i] + firstDerivativeWeights[1][i] - riskFreeRate),
+								(1 - theta) * stepLength * (sigma[i] * secondDerivativeWeights[2][i] + firstDerivativeWeights[2][i]));
+					}
+					stepImplicitOperator.setRow(i,
+							-stepTheta * stepLength * (sigma2[i] * secondDerivativeWeights[0][i] + firstDerivativeWeights[0][i]),
+							1 - stepTheta * stepLength * (sigma2[i] * secondDerivativeWeights[1][i] + firstDerivativeWeights[1][i] - riskFreeRate),
+							-stepTheta * stepLength * (sigma2[i] * secondDerivativeWeights[2][i] + firstDerivativeWeights[2][i]));
+				}
+				if (isSmoothingStep) {
+					smoothingOperatorStepLength = stepLength;
+				} else {
+					operatorStepLength = stepLength;
+				}
 			}
-			final RealMatrix Sigma = MatrixUtils.createRealDiagonalMatrix(sigma);
-			final RealMatrix Sigma2 = MatrixUtils.createRealDiagonalMatrix(sigma2);
-			final RealMatrix F = F1.add(F2).add(Sigma.multiply(F3));
-			final RealMatrix G = G1.add(G2).add(Sigma2.multiply(G3));
-			final RealMatrix H = G.scalarMultiply(theta).add(eye.scalarMultiply(1 - theta));
-			final DecompositionSolver solver = new LUDecomposition(H).getSolver();
-
-			final double Sl = (minimumStockPriceOnGrid / deltaStock + 1);
-			final double Su = (maximumStockPriceOnGrid / deltaStock - 1);
-			final double vl = Math.pow(model.getLocalVolatility(minimumStockPriceOnGrid + deltaStock,
-					timeHorizon - m * deltaTau), 2);
-			final double vu = Math.pow(model.getLocalVolatility(maximumStockPriceOnGrid - deltaStock,
-					timeHorizon - m * deltaTau), 2);
-			final double vl2 = Math.pow(model.getLocalVolatility(minimumStockPriceOnGrid + deltaStock,
-					timeHorizon - (m + 1) * deltaTau), 2);
-			final double vu2 = Math.pow(model.getLocalVolatility(maximumStockPriceOnGrid - deltaStock,
-					timeHorizon - (m + 1) * deltaTau), 2);
-
-			b.setEntry(0, 0,
-					0.5 * deltaTau * Sl * (vl * Sl - model.getRiskFreeRate()) * timeReversedLowerBoundary(minimumStockPriceOnGrid, tau[m]));
-			b.setEntry(spaceLength - 1, 0,
-					0.5 * deltaTau * Su * (vu * Su + model.getRiskFreeRate()) * timeReversedUpperBoundary(maximumStockPriceOnGrid, tau[m]));
-			b2.setEntry(0, 0,
-					0.5 * deltaTau * Sl * (vl2 * Sl - model.getRiskFreeRate()) * timeReversedLowerBoundary(minimumStockPriceOnGrid, tau[m + 1]));
-			b2.setEntry(spaceLength - 1, 0,
-					0.5 * deltaTau * Su * (vu2 * Su + model.getRiskFreeRate()) * timeReversedUpperBoundary(maximumStockPriceOnGrid, tau[m + 1]));
-			final RealMatrix U1 = (F.scalarMultiply(1 - theta).add(eye.scalarMultiply(theta))).multiply(U);
-			final RealMatrix U2 = b.scalarMultiply(1 - theta).add(b2.scalarMultiply(theta));
-			U = solver.solve(U1.add(U2));
-		}
-		final double[] optionPrice = U.getColumn(0);
-		final double[][] stockAndOptionPrice = new double[2][spaceLength];
-		stockAndOptionPrice[0] = stock;
-		stockAndOptionPrice[1] = optionPrice;
-		return stockAndOptionPrice;
+
+			if (valuesBeforeLastStep != null && !timeSteps.hasNext()) {
+				for (int k = 0; k < numberOfPayoffs; k++) {
+					System.arraycopy(U[k], 0, valuesBeforeLastStep[k], 0, spaceLength);
+				}
+			}
+
+			if (isSmoothingStep) {
+				for (int k = 0; k < numberOfPayoffs; k++) {
+					System.arraycopy(U[k], 0, rightHandSide[k], 0, spaceLength);
+				}
+			} else {
+				explicitOperator.multiply(U, rightHandSide);
+			}
+
+			/*
+			 * The boundary conditions only enter in the first and in the last equation, multiplied by the weights of
+			 * the points outside the interior of the grid. The weights are the same for all the payoffs.
+			 */
+			final int last = spaceLength - 1;
+			final double lowerWeightAtBeginning = stepLength * (1 - stepTheta)
+					* (sigma[0] * secondDerivativeWeights[0][0] + firstDerivativeWeights[0][0]);
+			final double lowerWeightAtEnd = stepLength * stepTheta
+					* (sigma2[0] * secondDerivativeWeights[0][0] + firstDerivativeWeights[0][0]);
+			final double upperWeightAtBeginning = stepLength * (1 - stepTheta)
+					* (sigma[last] * secondDerivativeWeights[2][last] + firstDerivativeWeights[2][last]);
+			final double upperWeightAtEnd = stepLength * stepTheta
+					* (sigma2[last] * secondDerivativeWeights[2][last] + firstDerivativeWeights[2][last]);
+			for (int k = 0; k < numberOfPayoffs; k++) {
+				lowerBoundaryValues[k] = timeReversedLowerBoundary(boundaryConditions[k], minimumStockPriceOnGrid, tauAtEndOfStep);
+				upperBoundaryValues[k] = timeReversedUpperBoundary(boundaryConditions[k], maximumStockPriceOnGrid, tauAtEndOfStep);
+				rightHandSide[k][0] += lowerWeightAtBeginning
+						* timeReversedLowerBoundary(boundaryConditions[k], minimumStockPriceOnGrid, tauAtBeginningOfStep)
+						+ lowerWeightAtEnd * lowerBoundaryValues[k];
+				rightHandSide[k][last] += upperWeightAtBeginning
+						* timeReversedUpperBoundary(boundaryConditions[k], maximumStockPriceOnGrid, tauAtBeginningOfStep)
+						+ upperWeightAtEnd * upperBoundaryValues[k];
+			}
+
+			/*
+			 * If the barriers are monitored or a dividend is paid at the end of the step, the option is exercised
+			 * before: the exercise value is then compared with the price after the jump conditions, not with the
+			 * solution of the system.
+			 */
+			final boolean hasJumpConditions = timeSteps.isMonitoringStep() || timeSteps.getDividendAtEndOfStep() > 0;
+			if (timeSteps.isExerciseStep() && !hasJumpConditions) {
+				for (int k = 0; k < numberOfPayoffs; k++) {
+					if (isExerciseRegionOnTheLeft[k] != null) {
+						stepImplicitOperator.solveWithLowerBound(rightHandSide[k], exerciseValues[k], U[k],
+								isExerciseRegionOnTheLeft[k]);
+					} else {
+						final int numberOfIterations = stepImplicitOperator.solveWithLowerBoundByPSOR(rightHandSide[k],
+								exerciseValues[k], U[k], PSOR_RELAXATION_PARAMETER, PSOR_TOLERANCE, PSOR_MAXIMUM_NUMBER_OF_ITERATIONS);
+						if (numberOfIterations >= PSOR_MAXIMUM_NUMBER_OF_ITERATIONS) {
+							throw new IllegalStateException("Error: the PSOR did not converge at the exercise time "
+									+ (timeHorizon - tauAtEndOfStep) + "!");
+						}
+					}
+				}
+			} else {
+				stepImplicitOperator.solve(rightHandSide, U);
+			}
+
+			if (hasJumpConditions) {
+				applyJumpConditions(grid, U, timeSteps.isMonitoringStep(), timeSteps.getDividendAtEndOfStep(), firstAliveIndex,
+						lastAliveIndex, valuesOnWholeGrid, lowerBoundaryValues, upperBoundaryValues);
+				if (timeSteps.isExerciseStep()) {
+					for (int k = 0; k < numberOfPayoffs; k++) {
+						for (int i = 0; i < spaceLength; i++) {
+							U[k][i] = Math.max(U[k][i], exerciseValues[k][i]);
+						}
+					}
+				}
+			}
+
+			if (!isTimeHomogeneous) {
+				// the end of this step is the beginning of the next one
+				final double[] temporary = sigma;
+				sigma = sigma2;
+				sigma2 = temporary;
+			}
+		}
+		return U;
+	}
+
+	/*
+	 * It applies the conditions at a monitoring or dividend time to the prices of all the payoffs at the interior
+	 * points of the grid, in the order given by time reversal. First, if the barriers are monitored, the prices are
+	 * set to zero outside the interior points firstAliveIndex,...,lastAliveIndex, and halved at these points if they
+	 * are on a barrier: the prices are discontinuous there, and the mean of the two limits makes the error of second
+	 * order in the space step, as for a payoff with a jump. Then, if a dividend D is paid, the price
+	 * at S is set to the price at S - D, linearly interpolated between the points of the grid: the values at its ends
+	 * are the ones of the boundary conditions, and the price at S - D is the one at the left end if S - D is below it.
+	 */
+	private void applyJumpConditions(double[] grid, double[][] values, boolean isMonitoring, double dividend,
+			int firstAliveIndex, int lastAliveIndex, double[] valuesOnWholeGrid, double[] lowerBoundaryValues,
+			double[] upperBoundaryValues) {
+		final int spaceLength = grid.length - 2;
+		for (int k = 0; k < values.length; k++) {
+			if (isMonitoring) {
+				Arrays.fill(values[k], 0, Math.min(firstAliveIndex, spaceLength), 0.0);
+				Arrays.fill(values[k], Math.max(lastAliveIndex + 1, 0), spaceLength, 0.0);
+				// at a point of the grid on a barrier, the price is the mean of the limits from the two sides
+				if (firstAliveIndex < spaceLength && grid[firstAliveIndex + 1] == lowerBarrier) {
+					values[k][firstAliveIndex] *= 0.5;
+				}
+				if (lastAliveIndex >= 0 && lastAliveIndex != firstAliveIndex && grid[lastAliveIndex + 1] == upperBarrier) {
+					values[k][lastAliveIndex] *= 0.5;
+				}
+			}
+			if (dividend > 0) {
+				valuesOnWholeGrid[0] = lowerBoundaryValues[k];
+				System.arraycopy(values[k], 0, valuesOnWholeGrid, 1, spaceLength);
+				valuesOnWholeGrid[grid.length - 1] = upperBoundaryValues[k];
+				// S - D increases with S: the interval containing it can only move to the right
+				int intervalIndex = 0;
+				for (int i = 0; i < spaceLength; i++) {
+					final double stockAfterDividend = grid[i + 1] - dividend;
+					if (stockAfterDividend <= grid[0]) {
+						values[k][i] = valuesOnWholeGrid[0];
+						continue;
+					}
+					while (grid[intervalIndex + 1] < stockAfterDividend) {
+						intervalIndex++;
+					}
+					final double weight = (stockAfterDividend - grid[intervalIndex]) / (grid[intervalIndex + 1] - grid[intervalIndex]);
+					values[k][i] = (1 - weight) * valuesOnWholeGrid[intervalIndex] + weight * valuesOnWholeGrid[intervalIndex + 1];
+				}
+			}
+		}
+	}
+
+	/**
+	 * It returns the value and the Greeks of the option for the given value of the underlying at the evaluation time,
+	 * which does not need to be a point of the grid. The keys of the returned map are "value", "delta", "gamma" and
+	 * "theta". Value, delta and gamma are the value and the first two derivatives of the cubic polynomial
+	 * interpolating the prices at the four points of the grid closest to the spot. The theta is the difference
+	 * between the interpolated prices one time step after the evaluation time and at the evaluation time, divided by
+	 * the time step. The interpolation reads the prices directly from the arrays of the solver, which are not copied.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the option, must be equal to the time horizon
+	 * @param valueAtMaturity the payoff of the option as a function of the underlying at maturity
+	 * @param spot the value of the underlying, which must be inside the grid
+	 * @return a map with the value and the Greeks of the option
+	 */
+	public Map<String, Double> getValueAndGreeks(double evaluationTime, double time, DoubleUnaryOperator valueAtMaturity,
+			double spot) {
+		return getValueAndGreeks(evaluationTime, time, valueAtMaturity, spot, getSpaceGrid());
+	}
+
+	/**
+	 * It returns the value and the Greeks of the option for the given value of the underlying as the method above,
+	 * but the grid is centred in the spot: its ends are the spot minus and plus the given number of standard
+	 * deviations of the underlying at maturity, unless they are beyond the barriers. In log space, they are the spot
+	 * multiplied by the exponential of minus and plus the given number of standard deviations of log(S(T)). Since only one price is needed,
+	 * this domain can be much smaller than the one used by getValue, so that the same number of space steps gives a
+	 * finer grid.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the option, must be equal to the time horizon
+	 * @param valueAtMaturity the payoff of the option as a function of the underlying at maturity
+	 * @param spot the value of the underlying, which must be strictly between the barriers
+	 * @param numberOfStandardDeviations the half width of the domain, as a multiple of the standard deviation of the
+	 * underlying at maturity
+	 * @return a map with the value and the Greeks of the option
+	 */
+	public Map<String, Double> getValueAndGreeks(double evaluationTime, double time, DoubleUnaryOperator valueAtMaturity,
+			double spot, double numberOfStandardDeviations) {
+		return getValueAndGreeks(evaluationTime, time, valueAtMaturity, spot,
+				spaceGrid.getGridAroundSpot(spot, numberOfStandardDeviations));
+	}
+
+	private Map<String, Double> getValueAndGreeks(double evaluationTime, double time, DoubleUnaryOperator valueAtMaturity,
+			double spot, double[] grid) {
+		if(evaluationTime != 0) {
+			throw new IllegalArgumentException("Evaluation time != 0 not supported.");
+		}
+		if(time != timeHorizon) {
+			throw new IllegalArgumentException("Given time != timeHorizon not supported.");
+		}
+		// we need at least two interior points on the left and on the right of the spot
+		if (grid.length < 6 || spot < grid[2] || spot > grid[grid.length - 3]) {
+			throw new IllegalArgumentException("Error: the spot must be inside the grid, at least two points far from its ends!");
+		}
+
+		final TimeSteps timeSteps = getTimeSteps(model.getNumTimesteps(), false, null);
+		final double[][] valuesBeforeLastStep = new double[1][grid.length - 2];
+		final double[] values = getValuesOnGrid(grid, timeSteps, new DoubleUnaryOperator[] { valueAtMaturity },
+				new FiniteDifference1DBoundary[] { boundaryCondition }, valuesBeforeLastStep)[0];
+		// the time steps are now at the last step
+		final double lastStepLength = timeSteps.getStepLength();
+
+		/*
+		 * The index of the first of the four interior points we interpolate: the spot is between the second and the
+		 * third. The (i+1)-th point of the grid is the i-th interior point.
+		 */
+		int firstIndex = 0;
+		while (firstIndex < grid.length - 6 && grid[firstIndex + 3] < spot) {
+			firstIndex++;
+		}
+
+		final double[] interiorPoints = Arrays.copyOfRange(grid, 1, grid.length - 1);
+		final double[] interpolatedValues = getCubicInterpolation(interiorPoints, values, firstIndex, spot);
+		final double valueAfterOneStep = getCubicInterpolation(interiorPoints, valuesBeforeLastStep[0], firstIndex, spot)[0];
+
+		final Map<String, Double> valueAndGreeks = new HashMap<String, Double>();
+		valueAndGreeks.put("value", interpolatedValues[0]);
+		valueAndGreeks.put("delta", interpolatedValues[1]);
+		valueAndGreeks.put("gamma", interpolatedValues[2]);
+		valueAndGreeks.put("theta", (valueAfterOneStep - interpolatedValues[0]) / lastStepLength);
+		return valueAndGreeks;
+	}
+
+	/**
+	 * It returns the prices of many options with the same maturity and barriers but different payoffs and boundary
+	 * conditions for the given value of the underlying at the evaluation time, which does not need to be a point of
+	 * the grid. The prices on the grid are computed together as in getValues, and the price for the spot is the value
+	 * of the cubic polynomial interpolating the prices at the four points of the grid closest to it, ends included,
+	 * where the prices are given by the boundary conditions. This is what we need when we only want the prices for
+	 * the current value of the underlying, for example to build a surface of prices with respect to the parameters.
+	 *
+	 * @param evaluationTime the evaluation time, must be zero
+	 * @param time the maturity of the options, must be equal to the time horizon
+	 * @param valuesAtMaturity the payoffs of the options as functions of the underlying at maturity
+	 * @param boundaryConditions the boundary conditions of the options: boundaryConditions[k] are the ones of the
+	 * option with payoff valuesAtMaturity[k]
+	 * @param spot the value of the underlying, which must be between the ends of the grid
+	 * @return an array whose k-th entry is the price of the option with payoff valuesAtMaturity[k]
+	 */
+	public double[] getValuesAtSpot(double evaluationTime, double time, DoubleUnaryOperator[] valuesAtMaturity,
+			FiniteDifference1DBoundary[] boundaryConditions, double spot) {
+		final double[][] stockAndOptionPrices = getValues(evaluationTime, time, valuesAtMaturity, boundaryConditions);
+		final double[] interiorPoints = stockAndOptionPrices[0];
+		final double[] grid = new double[interiorPoints.length + 2];
+		grid[0] = spaceGrid.getMinimumStockPrice();
+		System.arraycopy(interiorPoints, 0, grid, 1, interiorPoints.length);
+		grid[grid.length - 1] = spaceGrid.getMaximumStockPrice();
+		if (grid.length < 4 || spot < grid[0] || spot > grid[grid.length - 1]) {
+			throw new IllegalArgumentException("Error: the spot must be inside the grid!");
+		}
+
+		// the index of the first of the four points we interpolate: if possible, the spot is between the second and the third
+		int firstIndex = 0;
+		while (firstIndex < grid.length - 4 && grid[firstIndex + 2] < spot) {
+			firstIndex++;
+		}
+		final double[] valuesAtSpot = new double[valuesAtMaturity.length];
+		final double[] valuesOnWholeGrid = new double[grid.length];
+		for (int k = 0; k < valuesAtMaturity.length; k++) {
+			valuesOnWholeGrid[0] = timeReversedLowerBoundary(boundaryConditions[k], grid[0], timeHorizon);
+			System.arraycopy(stockAndOptionPrices[k + 1], 0, valuesOnWholeGrid, 1, interiorPoints.length);
+			valuesOnWholeGrid[grid.length - 1] = timeReversedUpperBoundary(boundaryConditions[k], grid[grid.length - 1], timeHorizon);
+			valuesAtSpot[k] = getCubicInterpolation(grid, valuesOnWholeGrid, firstIndex, spot)[0];
+		}
+		return valuesAtSpot;
+	}
+
+	/*
+	 * It returns the value and the first two derivatives at x of the cubic polynomial interpolating the given values at
+	 * the points firstIndex,...,firstIndex+3 of the given array of points.
+	 * The polynomial is written in the Newton form p(x) = f[0] + f[0,1](x-x_0) + f[0,1,2](x-x_0)(x-x_1)
+	 * + f[0,1,2,3](x-x_0)(x-x_1)(x-x_2), where the f are the divided differences.
+	 */
+	private static double[] getCubicInterpolation(double[] points, double[] values, int firstIndex, double x) {
+		final double x0 = points[firstIndex];
+		final double x1 = points[firstIndex + 1];
+		final double x2 = points[firstIndex + 2];
+		final double x3 = points[firstIndex + 3];
+		final double f01 = (values[firstIndex + 1] - values[firstIndex]) / (x1 - x0);
+		final double f12 = (values[firstIndex + 2] - values[firstIndex + 1]) / (x2 - x1);
+		final double f23 = (values[firstIndex + 3] - values[firstIndex + 2]) / (x3 - x2);
+		final double f012 = (f12 - f01) / (x2 - x0);
+		final double f123 = (f23 - f12) / (x3 - x1);
+		final double f0123 = (f123 - f012) / (x3 - x0);
+
+		final double d0 = x - x0;
+		final double d1 = x - x1;
+		final double d2 = x - x2;
+		return new double[] {
+				values[firstIndex] + f01 * d0 + f012 * d0 * d1 + f0123 * d0 * d1 * d2,
+				f01 + f012 * (d0 + d1) + f0123 * (d1 * d2 + d0 * d2 + d0 * d1),
+				2 * f012 + 2 * f0123 * (d0 + d1 + d2) };
+	}
+
+	/**
+	 * It returns the points of the space grid, included the two boundaries. The grid is uniform if no concentration
+	 * point has been given, otherwise it is concentrated around these points, see SpaceGrids. In log space, this holds
+	 * for the logarithms of the points.
+	 *
+	 * @return the points of the space grid
+	 */
+	public double[] getSpaceGrid() {
+		return spaceGrid.getGrid();
 	}
 
 	// Time-reversed Boundary Conditions
 	//    private double U_initial(double stockPrice, double tau) {
 	//        return valueAtMaturity
 	//    }
-	private double timeReversedLowerBoundary(double stockPrice, double tau) {
-		return boundaryCondition.getValueAtLowerBoundary(model, timeHorizon - tau, stockPrice);
+	private double timeReversedLowerBoundary(FiniteDifference1DBoundary boundary, double stockPrice, double tau) {
+		return boundary.getValueAtLowerBoundary(model, timeHorizon - tau, stockPrice);
 	}
 
-	private double timeReversedUpperBoundary(double stockPrice, double tau) {
-		return boundaryCondition.getValueAtUpperBoundary(model, timeHorizon - tau, stockPrice);
+	private double timeReversedUpperBoundary(FiniteDifference1DBoundary boundary, double stockPrice, double tau) {
+		return boundary.getValueAtUpperBoundary(model, timeHorizon - tau, stockPrice);
 	}
 
 }
@@ -0,0 +1,194 @@
+package it.univr.finitedifferences.oursolvers;
+
+import java.util.Arrays;
+
+import net.finmath.finitedifference.models.FiniteDifference1DModel;
+
+/**
+ * This class constructs the space grid of the theta method of FDMThetaMethodForKnockOutOption. The ends of the grid
+ * are the forward of the underlying at maturity minus and plus the number of standard deviations of the model, but
+ * not beyond the barriers if they are monitored continuously. The grid is uniform if no concentration point has been
+ * given, otherwise it is concentrated around these points, see SpaceGrids. In log space, the ends are given by the
+ * standard deviation of log(S(T)), and the grid is uniform or concentrated in x = log(S).
+ *
+ * @author Andrea Mazzon
+ *
+ */
+class SpaceGridForKnockOutOption {
+
+	private final FiniteDifference1DModel model;
+	private final double timeHorizon;
+	private final double lowerBarrier;
+	private final double upperBarrier;
+	// true if the barriers are monitored continuously: in this case they are the ends of the grid, if inside the domain
+	private final boolean isContinuouslyMonitored;
+	// the points around which the grid is concentrated and the width of the concentration: null for a uniform grid
+	private final double[] concentrationPoints;
+	private final double concentrationWidth;
+	private final boolean isLogSpace;
+
+	/**
+	 * It constructs the object which gives the space grid.
+	 *
+	 * @param model the model, which gives the number of space steps, the number of standard deviations, the forward
+	 * and the variance of the underlying
+	 * @param timeHorizon the maturity of the option
+	 * @param lowerBarrier the lower barrier of the option
+	 * @param upperBarrier the upper barrier of the option
+	 * @param isContinuouslyMonitored true if the barriers are monitored continuously
+	 * @param concentrationPoints the points around which the grid is concentrated, null for a uniform grid
+	 * @param concentrationWidth the width of the concentration, see SpaceGrids
+	 * @param isLogSpace true if the grid is constructed in x = log(S)
+	 */
+	SpaceGridForKnockOutOption(FiniteDifference1DModel model, double timeHorizon, double lowerBarrier,
+			double upperBarrier, boolean isContinuouslyMonitored, double[] concentrationPoints, double concentrationWidth,
+			boolean isLogSpace) {
+		this.model = model;
+		this.timeHorizon = timeHorizon;
+		this.lowerBarrier = lowerBarrier;
+		this.upperBarrier = upperBarrier;
+		this.isContinuouslyMonitored = isContinuouslyMonitored;
+		this.concentrationPoints = concentrationPoints;
+		this.concentrationWidth = concentrationWidth;
+		this.isLogSpace = isLogSpace;
+	}
+
+	/**
+	 * It returns the points of the space grid, included the two ends.
+	 *
+	 * @return the points of the space grid
+	 */
+	double[] getGrid() {
+		return getGrid(getMinimumStockPrice(), getMaximumStockPrice());
+	}
+
+	/**
+	 * It returns the points of a grid centred in the given spot: its ends are the spot minus and plus the given number
+	 * of standard deviations of the underlying at maturity, unless they are beyond the barriers monitored
+	 * continuously. In log space, they are the spot multiplied by the exponential of minus and plus the given number
+	 * of standard deviations of log(S(T)).
+	 *
+	 * @param spot the value of the underlying in the centre of the grid
+	 * @param numberOfStandardDeviations the half width of the grid, as a multiple of the standard deviation
+	 * @return the points of the grid
+	 */
+	double[] getGridAroundSpot(double spot, double numberOfStandardDeviations) {
+		if (isLogSpace) {
+			final double logHalfWidth = numberOfStandardDeviations * getStandardDeviationOfLogStockPrice();
+			return getGrid(Math.max(spot * Math.exp(-logHalfWidth), getLowestLeftEnd()),
+					Math.min(spot * Math.exp(logHalfWidth), getHighestRightEnd()));
+		}
+		final double halfWidth = numberOfStandardDeviations * Math.sqrt(model.varianceOfStockPrice(timeHorizon));
+		return getGrid(Math.max(spot - halfWidth, getLowestLeftEnd()), Math.min(spot + halfWidth, getHighestRightEnd()));
+	}
+
+	/**
+	 * It returns the grid obtained by adding the middle point of every interval of the given grid, see
+	 * SpaceGrids.getRefinedGrid. In log space, the middle point is the geometric mean of the ends of the interval.
+	 *
+	 * @param grid the increasing points of the grid to refine
+	 * @return an array of 2 grid.length - 1 increasing points
+	 */
+	double[] getRefinedGrid(double[] grid) {
+		final double[] refinedGrid = SpaceGrids.getRefinedGrid(grid);
+		if (isLogSpace) {
+			for (int i = 1; i < refinedGrid.length; i += 2) {
+				refinedGrid[i] = Math.sqrt(refinedGrid[i - 1] * refinedGrid[i + 1]);
+			}
+		}
+		return refinedGrid;
+	}
+
+	/**
+	 * It returns the right end of the space grid: the forward plus the number of standard deviations of the model,
+	 * but not more than the upper barrier if it is monitored continuously.
+	 *
+	 * @return the right end of the space grid
+	 */
+	double getMaximumStockPrice() {
+		if (isLogSpace) {
+			return Math.min(Math.exp(getMeanOfLogStockPrice() + model.getNumStandardDeviations() * getStandardDeviationOfLogStockPrice()),
+					getHighestRightEnd());
+		}
+		return Math.min(model.getForwardValue(timeHorizon)
+				+ model.getNumStandardDeviations() * Math.sqrt(model.varianceOfStockPrice(timeHorizon)), getHighestRightEnd());
+	}
+
+	/**
+	 * It returns the left end of the space grid: the forward minus the number of standard deviations of the model,
+	 * but not less than the lower barrier if it is monitored continuously.
+	 *
+	 * @return the left end of the space grid
+	 */
+	double getMinimumStockPrice() {
+		if (isLogSpace) {
+			return Math.max(Math.exp(getMeanOfLogStockPrice() - model.getNumStandardDeviations() * getStandardDeviationOfLogStockPrice()),
+					getLowestLeftEnd());
+		}
+		return Math.max(model.getForwardValue(timeHorizon)
+				- model.getNumStandardDeviations() * Math.sqrt(model.varianceOfStockPrice(timeHorizon)), getLowestLeftEnd());
+	}
+
+	/*
+	 * It returns the points of the space grid with the given ends and with the number of steps of the model.
+	 */
+	private double[] getGrid(double minimumStockPriceOnGrid, double maximumStockPriceOnGrid) {
+		if (isLogSpace) {
+			final double[] logGrid = concentrationPoints == null || concentrationPoints.length == 0
+					? SpaceGrids.getUniformGrid(Math.log(minimumStockPriceOnGrid), Math.log(maximumStockPriceOnGrid), model.getNumSpacesteps())
+					: SpaceGrids.getSinhGrid(Math.log(minimumStockPriceOnGrid), Math.log(maximumStockPriceOnGrid), model.getNumSpacesteps(),
+							Arrays.stream(concentrationPoints).filter(point -> point > 0).map(Math::log).toArray(), concentrationWidth);
+			final double[] grid = Arrays.stream(logGrid).map(Math::exp).toArray();
+			// the barriers must be exactly the ends of the grid, and the concentration points exactly points of the grid
+			grid[0] = minimumStockPriceOnGrid;
+			grid[grid.length - 1] = maximumStockPriceOnGrid;
+			if (concentrationPoints != null) {
+				for (double point : concentrationPoints) {
+					for (int i = 1; i < grid.length - 1; i++) {
+						if (Math.abs(grid[i] / point - 1) < 1E-12) {
+							grid[i] = point;
+						}
+					}
+				}
+			}
+			return grid;
+		}
+		if (concentrationPoints == null || concentrationPoints.length == 0) {
+			return SpaceGrids.getUniformGrid(minimumStockPriceOnGrid, maximumStockPriceOnGrid, model.getNumSpacesteps());
+		}
+		return SpaceGrids.getSinhGrid(minimumStockPriceOnGrid, maximumStockPriceOnGrid, model.getNumSpacesteps(),
+				concentrationPoints, concentrationWidth);
+	}
+
+	/*
+	 * The left end of the space grid cannot be below the lower barrier if it is monitored continuously, and cannot be
+	 * negative otherwise.
+	 */
+	private double getLowestLeftEnd() {
+		return isContinuouslyMonitored ? lowerBarrier : 0.0;
+	}
+
+	/*
+	 * The right end of the space grid cannot be above the upper barrier if it is monitored continuously.
+	 */
+	private double getHighestRightEnd() {
+		return isContinuouslyMonitored ? upperBarrier : Double.POSITIVE_INFINITY;
+	}
+
+	/*
+	 * The standard deviation of log(S(T)) for a log-normal S(T) with the forward and the variance of the model: it is
+	 * exact for the Black-Scholes model.
+	 */
+	private double getStandardDeviationOfLogStockPrice() {
+		final double forward = model.getForwardValue(timeHorizon);
+		return Math.sqrt(Math.log(1 + model.varianceOfStockPrice(timeHorizon) / (forward * forward)));
+	}
+
+	/*
+	 * The mean of log(S(T)) for a log-normal S(T) with the forward and the variance of the model.
+	 */
+	private double getMeanOfLogStockPrice() {
+		final double standardDeviation = getStandardDeviationOfLogStockPrice();
+		return Math.log(model.getForwardValue(timeHorizon)) - 0.5 * standardDeviation * standardDeviation;
+	}
+}
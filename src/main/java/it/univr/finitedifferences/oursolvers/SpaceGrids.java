@@ -0,0 +1,151 @@
+package it.univr.finitedifferences.oursolvers;
+
+import java.util.Arrays;
+
+/**
+ * This class contains methods returning the points of a space grid for finite difference methods.
+ *
+ * Besides the uniform grid, we have a grid which is concentrated around some given points, like the strike and the
+ * barriers of an option, where the payoff or the boundary conditions are not smooth. The grid is obtained by
+ * transforming a uniform grid xi_0,...,xi_N of [0,1] by the inverse of the function
+ *
+ * xi(S) = (f(S) - f(S_min))/(f(S_max) - f(S_min)), with f(S) = sum_k asinh((S - c_k)/alpha),
+ *
+ * where c_k are the concentration points and alpha is a width: the derivative of f, and then the density of the
+ * points of the grid, is high when S is close to one of the c_k, and the smaller alpha, the more concentrated the
+ * points. For a single concentration point, this is the classical sinh grid. Moreover, the concentration points are
+ * points of the grid: every interval between two of them gets a number of steps proportional to the increment of xi,
+ * and is mapped separately.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class SpaceGrids {
+
+	// the precision of the bisection by which we invert xi(S)
+	private static final int NUMBER_OF_BISECTIONS = 60;
+
+	/**
+	 * It returns the points of a uniform grid of [minimum, maximum], included the two ends.
+	 *
+	 * @param minimum the left end of the grid
+	 * @param maximum the right end of the grid
+	 * @param numberOfSteps the number of intervals of the grid
+	 * @return an array of numberOfSteps + 1 points
+	 */
+	public static double[] getUniformGrid(double minimum, double maximum, int numberOfSteps) {
+		final double step = (maximum - minimum) / numberOfSteps;
+		final double[] grid = new double[numberOfSteps + 1];
+		for (int i = 0; i <= numberOfSteps; i++) {
+			grid[i] = minimum + i * step;
+		}
+		grid[numberOfSteps] = maximum;
+		return grid;
+	}
+
+	/**
+	 * It returns the points of a grid of [minimum, maximum], included the two ends, concentrated around the given
+	 * points. Concentration points which are not in [minimum, maximum] are ignored. The number of steps must be
+	 * bigger than the number of concentration points.
+	 *
+	 * @param minimum the left end of the grid
+	 * @param maximum the right end of the grid
+	 * @param numberOfSteps the number of intervals of the grid
+	 * @param concentrationPoints the points around which the grid is concentrated, and which are points of the grid
+	 * @param width the parameter alpha: the smaller, the more concentrated the grid. It has the unit of the underlying
+	 * @return an array of numberOfSteps + 1 increasing points
+	 */
+	public static double[] getSinhGrid(double minimum, double maximum, int numberOfSteps, double[] concentrationPoints,
+			double width) {
+		if (width <= 0) {
+			throw new IllegalArgumentException("Error: the width must be positive!");
+		}
+		if (numberOfSteps <= concentrationPoints.length) {
+			throw new IllegalArgumentException("Error: the number of steps must be bigger than the number of concentration points!");
+		}
+		final double[] points = Arrays.stream(concentrationPoints)
+				.filter(point -> point >= minimum && point <= maximum).sorted().toArray();
+		if (points.length == 0) {
+			return getUniformGrid(minimum, maximum, numberOfSteps);
+		}
+
+		/*
+		 * The concentration points divide [minimum, maximum] into intervals: every interval gets a number of steps
+		 * proportional to the increment of f on it, and on every interval the targets of f are uniformly spaced.
+		 * In this way the concentration points are points of the grid, and the steps change smoothly around them.
+		 */
+		final double[] interiorPoints = Arrays.stream(points).filter(point -> point > minimum && point < maximum).distinct().toArray();
+		final double[] ends = new double[interiorPoints.length + 2];
+		ends[0] = minimum;
+		System.arraycopy(interiorPoints, 0, ends, 1, interiorPoints.length);
+		ends[ends.length - 1] = maximum;
+		final double lowerValue = getStretchingFunction(minimum, points, width);
+		final double upperValue = getStretchingFunction(maximum, points, width);
+
+		final double[] grid = new double[numberOfSteps + 1];
+		grid[0] = minimum;
+		grid[numberOfSteps] = maximum;
+		int firstIndexOfInterval = 0;
+		for (int intervalIndex = 1; intervalIndex < ends.length; intervalIndex++) {
+			int lastIndexOfInterval = intervalIndex == ends.length - 1 ? numberOfSteps
+					: (int) Math.round(numberOfSteps * (getStretchingFunction(ends[intervalIndex], points, width) - lowerValue)
+							/ (upperValue - lowerValue));
+			// every interval must have at least one step
+			lastIndexOfInterval = Math.max(lastIndexOfInterval, firstIndexOfInterval + 1);
+			lastIndexOfInterval = Math.min(lastIndexOfInterval, numberOfSteps - (ends.length - 1 - intervalIndex));
+			final double leftValue = getStretchingFunction(ends[intervalIndex - 1], points, width);
+			final double rightValue = getStretchingFunction(ends[intervalIndex], points, width);
+			grid[lastIndexOfInterval] = ends[intervalIndex];
+			for (int i = firstIndexOfInterval + 1; i < lastIndexOfInterval; i++) {
+				// we look for S such that f(S) = target by bisection: f is increasing
+				final double target = leftValue + (rightValue - leftValue) * (i - firstIndexOfInterval)
+						/ (lastIndexOfInterval - firstIndexOfInterval);
+				double left = grid[i - 1];
+				double right = ends[intervalIndex];
+				for (int iteration = 0; iteration < NUMBER_OF_BISECTIONS; iteration++) {
+					final double middle = 0.5 * (left + right);
+					if (getStretchingFunction(middle, points, width) < target) {
+						left = middle;
+					} else {
+						right = middle;
+					}
+				}
+				grid[i] = 0.5 * (left + right);
+			}
+			firstIndexOfInterval = lastIndexOfInterval;
+		}
+		return grid;
+	}
+
+	/**
+	 * It returns the grid obtained by adding the middle point of every interval of the given grid. The points of
+	 * the given grid are the points of even index of the refined one: this is what we need for a Richardson
+	 * extrapolation. If the given grid is obtained by a smooth transformation of a uniform grid, the steps of the
+	 * refined grid still change smoothly, up to terms of second order.
+	 *
+	 * @param grid the increasing points of the grid to refine
+	 * @return an array of 2 grid.length - 1 increasing points
+	 */
+	public static double[] getRefinedGrid(double[] grid) {
+		final double[] refinedGrid = new double[2 * grid.length - 1];
+		for (int i = 0; i < grid.length - 1; i++) {
+			refinedGrid[2 * i] = grid[i];
+			refinedGrid[2 * i + 1] = 0.5 * (grid[i] + grid[i + 1]);
+		}
+		refinedGrid[refinedGrid.length - 1] = grid[grid.length - 1];
+		return refinedGrid;
+	}
+
+	/*
+	 * The function f(S) = sum_k asinh((S - c_k)/alpha). Since asinh is odd, we compute it for |x| and give it the sign
+	 * of x: the formula log(x + sqrt(x^2 + 1)) for negative x would subtract two close numbers.
+	 */
+	private static double getStretchingFunction(double stock, double[] concentrationPoints, double width) {
+		double value = 0.0;
+		for (double point : concentrationPoints) {
+			final double x = (stock - point) / width;
+			value += Math.copySign(Math.log(Math.abs(x) + Math.sqrt(x * x + 1)), x);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,302 @@
+package it.univr.finitedifferences.oursolvers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This class represents the time steps of the theta method of FDMThetaMethodForKnockOutOption, in time to maturity
+ * tau. The ends of the steps are the ends of the uniform steps and the event times, i.e., the monitoring, dividend
+ * and exercise times. These are moved to the closest end of a uniform step if they are closer to it than a small
+ * fraction of the step, and are otherwise added as ends of further steps.
+ *
+ * The steps are not stored: they are computed one after the other by next(), which sets the fields describing the
+ * current step, so that the memory does not depend on the number of steps. The steps within the given number of
+ * Rannacher steps after maturity or after a monitoring or dividend time are replaced by two fully implicit half
+ * steps. At the end of a step, the option can be exercised if isExerciseStep(), the barriers are monitored if
+ * isMonitoringStep() and the underlying pays the dividend getDividendAtEndOfStep(). For an American option, the
+ * exercise is possible at the end of every step, half steps included.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+class TimeSteps {
+
+	// two times to maturity closer than this fraction of a time step are considered to be the same
+	private static final double TIME_TOLERANCE = 1E-8;
+
+	private final double timeHorizon;
+	private final int numberOfTimeSteps;
+	private final double deltaTau;
+	private final int numberOfRannacherSteps;
+	private final boolean isAmerican;
+	private final double[] eventTaus;
+	private final boolean[] isExerciseEvent;
+	private final boolean[] isMonitoringEvent;
+	private final double[] dividendAtEvent;
+	private final boolean isMonitoringAtMaturity;
+	private final double dividendAtMaturity;
+
+	// the current step
+	private double tauAtBeginningOfStep;
+	private double tauAtEndOfStep;
+	private double stepLength;
+	private boolean isSmoothingStep;
+	private boolean isExerciseStep;
+	private boolean isMonitoringStep;
+	private double dividendAtEndOfStep;
+
+	// the position in the uniform steps and in the events, and the events at the end of a step made of two half steps
+	private int nextUniformIndex;
+	private int nextEventIndex;
+	private int stepsAfterDiscontinuity;
+	private boolean isFirstHalfStep;
+	private double tauAtEndOfSplitStep;
+	private boolean isExerciseAtEndOfSplitStep;
+	private boolean isMonitoringAtEndOfSplitStep;
+	private double dividendAtEndOfSplitStep;
+
+	/**
+	 * It constructs the time steps. If isAmerican is true, the option can be exercised at the end of every step;
+	 * otherwise at the given exercise times, if not null.
+	 *
+	 * @param timeHorizon the maturity of the option
+	 * @param numberOfTimeSteps the number of uniform time steps
+	 * @param numberOfRannacherSteps the number of steps after maturity and after every monitoring or dividend time
+	 * which are replaced by two fully implicit half steps
+	 * @param isAmerican true if the option can be exercised at the end of every step
+	 * @param exerciseTimes the times before maturity when the option can be exercised, null if none
+	 * @param monitoringTimes the times when the barriers are monitored, null if none
+	 * @param dividendTimes the times when the underlying pays the dividends, null if none
+	 * @param dividendAmounts the amounts of the dividends, null if none
+	 */
+	TimeSteps(double timeHorizon, int numberOfTimeSteps, int numberOfRannacherSteps, boolean isAmerican,
+			double[] exerciseTimes, double[] monitoringTimes, double[] dividendTimes, double[] dividendAmounts) {
+		this.timeHorizon = timeHorizon;
+		this.numberOfTimeSteps = numberOfTimeSteps;
+		this.deltaTau = timeHorizon / numberOfTimeSteps;
+		this.numberOfRannacherSteps = numberOfRannacherSteps;
+		this.isAmerican = isAmerican;
+
+		final Set<Double> monitoringTaus = new HashSet<Double>();
+		if (monitoringTimes != null) {
+			for (double time : monitoringTimes) {
+				monitoringTaus.add(getSnappedTimeToMaturity(time));
+			}
+		}
+		final Map<Double, Double> dividendAtTau = new HashMap<Double, Double>();
+		if (dividendTimes != null) {
+			for (int j = 0; j < dividendTimes.length; j++) {
+				dividendAtTau.merge(getSnappedTimeToMaturity(dividendTimes[j]), dividendAmounts[j], Double::sum);
+			}
+		}
+		final Set<Double> exerciseTaus = new HashSet<Double>();
+		if (exerciseTimes != null) {
+			for (double time : exerciseTimes) {
+				if (time < 0 || time > timeHorizon) {
+					throw new IllegalArgumentException("Error: the exercise times must be between zero and the maturity!");
+				}
+				exerciseTaus.add(getSnappedTimeToMaturity(time));
+			}
+		}
+
+		// the events at maturity are applied to the payoff
+		final TreeSet<Double> sortedEventTaus = new TreeSet<Double>();
+		sortedEventTaus.addAll(monitoringTaus);
+		sortedEventTaus.addAll(dividendAtTau.keySet());
+		sortedEventTaus.addAll(exerciseTaus);
+		sortedEventTaus.remove(0.0);
+		eventTaus = sortedEventTaus.stream().mapToDouble(Double::doubleValue).toArray();
+		isExerciseEvent = new boolean[eventTaus.length];
+		isMonitoringEvent = new boolean[eventTaus.length];
+		dividendAtEvent = new double[eventTaus.length];
+		for (int j = 0; j < eventTaus.length; j++) {
+			isExerciseEvent[j] = exerciseTaus.contains(eventTaus[j]);
+			isMonitoringEvent[j] = monitoringTaus.contains(eventTaus[j]);
+			dividendAtEvent[j] = dividendAtTau.getOrDefault(eventTaus[j], 0.0);
+		}
+		isMonitoringAtMaturity = monitoringTaus.contains(0.0);
+		dividendAtMaturity = dividendAtTau.getOrDefault(0.0, 0.0);
+		reset();
+	}
+
+	/*
+	 * It returns the time to maturity of the given time, moved to the closest end of a uniform time step if it is
+	 * closer to it than a small fraction of the step.
+	 */
+	private double getSnappedTimeToMaturity(double time) {
+		final double tau = timeHorizon - time;
+		final long closestStep = Math.round(tau / deltaTau);
+		if (Math.abs(tau - closestStep * deltaTau) < TIME_TOLERANCE * deltaTau) {
+			return closestStep == numberOfTimeSteps ? timeHorizon : closestStep * deltaTau;
+		}
+		return tau;
+	}
+
+	/**
+	 * It goes back to maturity, so that the next step is the first one.
+	 */
+	void reset() {
+		tauAtEndOfStep = 0.0;
+		nextUniformIndex = 1;
+		nextEventIndex = 0;
+		stepsAfterDiscontinuity = 0;
+		isFirstHalfStep = false;
+	}
+
+	/**
+	 * It returns true if the current step is not the last one.
+	 *
+	 * @return true if there is another step
+	 */
+	boolean hasNext() {
+		return tauAtEndOfStep < timeHorizon;
+	}
+
+	/**
+	 * It returns true if the option can be exercised at the end of at least one step.
+	 *
+	 * @return true if the option can be exercised before maturity
+	 */
+	boolean hasEarlyExercise() {
+		if (isAmerican) {
+			return true;
+		}
+		for (boolean isExercise : isExerciseEvent) {
+			if (isExercise) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * It moves to the next step.
+	 */
+	void next() {
+		tauAtBeginningOfStep = tauAtEndOfStep;
+		if (isFirstHalfStep) {
+			// the second half of a smoothing step: the events are at its end
+			isFirstHalfStep = false;
+			tauAtEndOfStep = tauAtEndOfSplitStep;
+			isExerciseStep = isExerciseAtEndOfSplitStep;
+			isMonitoringStep = isMonitoringAtEndOfSplitStep;
+			dividendAtEndOfStep = dividendAtEndOfSplitStep;
+			return;
+		}
+		final double nextUniformTau = nextUniformIndex > numberOfTimeSteps ? Double.POSITIVE_INFINITY
+				: nextUniformIndex == numberOfTimeSteps ? timeHorizon : nextUniformIndex * deltaTau;
+		final double nextEventTau = nextEventIndex < eventTaus.length ? eventTaus[nextEventIndex] : Double.POSITIVE_INFINITY;
+		final double tauAtEndOfNextStep = Math.min(nextUniformTau, nextEventTau);
+		boolean isExercise = isAmerican;
+		boolean isMonitoring = false;
+		double dividend = 0.0;
+		if (nextUniformTau == tauAtEndOfNextStep) {
+			nextUniformIndex++;
+		}
+		if (nextEventTau == tauAtEndOfNextStep) {
+			isExercise |= isExerciseEvent[nextEventIndex];
+			isMonitoring = isMonitoringEvent[nextEventIndex];
+			dividend = dividendAtEvent[nextEventIndex];
+			nextEventIndex++;
+		}
+
+		final double length = tauAtEndOfNextStep - tauAtBeginningOfStep;
+		// the uniform steps have exactly the same length, so that the operators are constructed only once
+		final double exactLength = Math.abs(length - deltaTau) < TIME_TOLERANCE * deltaTau ? deltaTau : length;
+		isSmoothingStep = stepsAfterDiscontinuity < numberOfRannacherSteps;
+		stepsAfterDiscontinuity = isMonitoring || dividend > 0 ? 0 : stepsAfterDiscontinuity + 1;
+		if (isSmoothingStep) {
+			isFirstHalfStep = true;
+			stepLength = 0.5 * exactLength;
+			tauAtEndOfStep = tauAtBeginningOfStep + stepLength;
+			isExerciseStep = isAmerican;
+			isMonitoringStep = false;
+			dividendAtEndOfStep = 0.0;
+			tauAtEndOfSplitStep = tauAtEndOfNextStep;
+			isExerciseAtEndOfSplitStep = isExercise;
+			isMonitoringAtEndOfSplitStep = isMonitoring;
+			dividendAtEndOfSplitStep = dividend;
+		} else {
+			stepLength = exactLength;
+			tauAtEndOfStep = tauAtEndOfNextStep;
+			isExerciseStep = isExercise;
+			isMonitoringStep = isMonitoring;
+			dividendAtEndOfStep = dividend;
+		}
+	}
+
+	/**
+	 * It returns the time to maturity at the beginning of the current step
+	 * @return the time to maturity at the beginning of the current step
+	 */
+	double getTauAtBeginningOfStep() {
+		return tauAtBeginningOfStep;
+	}
+
+	/**
+	 * It returns the time to maturity at the end of the current step
+	 * @return the time to maturity at the end of the current step
+	 */
+	double getTauAtEndOfStep() {
+		return tauAtEndOfStep;
+	}
+
+	/**
+	 * It returns the length of the current step
+	 * @return the length of the current step
+	 */
+	double getStepLength() {
+		return stepLength;
+	}
+
+	/**
+	 * It returns true if the current step is a fully implicit half step
+	 * @return true if the current step is a fully implicit half step
+	 */
+	boolean isSmoothingStep() {
+		return isSmoothingStep;
+	}
+
+	/**
+	 * It returns true if the option can be exercised at the end of the current step
+	 * @return true if the option can be exercised at the end of the current step
+	 */
+	boolean isExerciseStep() {
+		return isExerciseStep;
+	}
+
+	/**
+	 * It returns true if the barriers are monitored at the end of the current step
+	 * @return true if the barriers are monitored at the end of the current step
+	 */
+	boolean isMonitoringStep() {
+		return isMonitoringStep;
+	}
+
+	/**
+	 * It returns the dividend paid at the end of the current step, zero if none
+	 * @return the dividend paid at the end of the current step, zero if none
+	 */
+	double getDividendAtEndOfStep() {
+		return dividendAtEndOfStep;
+	}
+
+	/**
+	 * It returns true if the barriers are monitored at maturity
+	 * @return true if the barriers are monitored at maturity
+	 */
+	boolean isMonitoringAtMaturity() {
+		return isMonitoringAtMaturity;
+	}
+
+	/**
+	 * It returns the dividend paid at maturity, zero if none
+	 * @return the dividend paid at maturity, zero if none
+	 */
+	double getDividendAtMaturity() {
+		return dividendAtMaturity;
+	}
+}
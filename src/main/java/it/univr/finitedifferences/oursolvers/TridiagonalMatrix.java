@@ -0,0 +1,309 @@
+package it.univr.finitedifferences.oursolvers;
+
+/**
+ * This class represents a tridiagonal square matrix, i.e., a matrix A whose only non zero entries are
+ * A[i][i-1], A[i][i] and A[i][i+1]. Only these three diagonals are stored, so the memory is O(N) instead of
+ * O(N^2) for an N x N matrix.
+ *
+ * The matrix can be multiplied by a vector and the linear system A x = b can be solved with the Thomas algorithm,
+ * i.e., the Gaussian elimination specialized to tridiagonal matrices: both operations cost O(N) instead of O(N^2)
+ * and O(N^3), respectively, for a dense matrix. The Thomas algorithm does not pivot: it is stable for the matrices
+ * we get from the finite difference discretization of the PDEs we consider, which are diagonally dominant.
+ *
+ * The forward elimination of the Thomas algorithm only depends on the matrix, not on b: it is the LU factorization
+ * of A. We compute it the first time a system is solved, and we store it until an entry of the matrix is changed.
+ * In this way, if we solve many systems with the same matrix, as it happens at every time step of a finite difference
+ * method with coefficients not depending on time, the factorization is computed only once.
+ *
+ * The matrix can also be used to solve the linear complementarity problem
+ *
+ * A x >= b, x >= g, (A x - b)_i (x - g)_i = 0 for every i,
+ *
+ * which we get at every time step of a finite difference method for an option with early exercise, where g is the
+ * exercise value. This can be done by the Brennan-Schwartz algorithm, which is a Thomas algorithm where the solution
+ * is projected on x >= g during the last substitution, or by the projected successive over relaxation (PSOR).
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class TridiagonalMatrix {
+
+	private final int dimension;
+
+	// lower[i] = A[i][i-1] (lower[0] is not used), diagonal[i] = A[i][i], upper[i] = A[i][i+1] (upper[N-1] is not used)
+	private final double[] lower;
+	private final double[] diagonal;
+	private final double[] upper;
+
+	/*
+	 * The factorization used by the Thomas algorithm: modifiedUpper[i] = upper[i] / d[i] and inverseDenominator[i]
+	 * = 1 / d[i], where d[i] = diagonal[i] - lower[i] * modifiedUpper[i-1]. The arrays are allocated once.
+	 */
+	private final double[] modifiedUpper;
+	private final double[] inverseDenominator;
+	private boolean isFactorized = false;
+
+	/*
+	 * The factorization used by the Brennan-Schwartz algorithm when the exercise region is on the left, where the
+	 * elimination goes from the last row to the first one: ulModifiedLower[i] = lower[i] / e[i] and
+	 * ulInverseDenominator[i] = 1 / e[i], where e[i] = diagonal[i] - upper[i] * ulModifiedLower[i+1]. They are
+	 * allocated only if needed.
+	 */
+	private double[] ulModifiedLower;
+	private double[] ulInverseDenominator;
+	private boolean isULFactorized = false;
+
+	/**
+	 * It constructs a tridiagonal matrix with given dimension, whose entries are all zero. They can be set by
+	 * setRow.
+	 *
+	 * @param dimension the number of rows and columns of the matrix
+	 */
+	public TridiagonalMatrix(int dimension) {
+		this.dimension = dimension;
+		lower = new double[dimension];
+		diagonal = new double[dimension];
+		upper = new double[dimension];
+		modifiedUpper = new double[dimension];
+		inverseDenominator = new double[dimension];
+	}
+
+	/**
+	 * It sets the three non zero entries of the row with given index.
+	 *
+	 * @param rowIndex the index i of the row
+	 * @param lowerEntry the entry A[i][i-1], not used if i = 0
+	 * @param diagonalEntry the entry A[i][i]
+	 * @param upperEntry the entry A[i][i+1], not used if i = N-1
+	 */
+	public void setRow(int rowIndex, double lowerEntry, double diagonalEntry, double upperEntry) {
+		lower[rowIndex] = lowerEntry;
+		diagonal[rowIndex] = diagonalEntry;
+		upper[rowIndex] = upperEntry;
+		isFactorized = false;
+		isULFactorized = false;
+	}
+
+	/**
+	 * It computes A x and writes it in result. The two arrays must be different.
+	 *
+	 * @param vector the vector x
+	 * @param result the array where A x is written
+	 */
+	public void multiply(double[] vector, double[] result) {
+		if (dimension == 1) {
+			result[0] = diagonal[0] * vector[0];
+			return;
+		}
+		result[0] = diagonal[0] * vector[0] + upper[0] * vector[1];
+		for (int i = 1; i < dimension - 1; i++) {
+			result[i] = lower[i] * vector[i - 1] + diagonal[i] * vector[i] + upper[i] * vector[i + 1];
+		}
+		result[dimension - 1] = lower[dimension - 1] * vector[dimension - 2] + diagonal[dimension - 1] * vector[dimension - 1];
+	}
+
+	/**
+	 * It computes the part of the Thomas algorithm which does not depend on the right hand side, i.e., the LU
+	 * factorization of the matrix. This is done anyway by the first call of solve after the matrix has been changed:
+	 * this method must be called explicitly only if the systems are then solved by different threads, since solve
+	 * only reads the factorization once it has been computed.
+	 */
+	public void factorize() {
+		inverseDenominator[0] = 1.0 / diagonal[0];
+		modifiedUpper[0] = upper[0] * inverseDenominator[0];
+		for (int i = 1; i < dimension; i++) {
+			inverseDenominator[i] = 1.0 / (diagonal[i] - lower[i] * modifiedUpper[i - 1]);
+			modifiedUpper[i] = upper[i] * inverseDenominator[i];
+		}
+		isFactorized = true;
+	}
+
+	/**
+	 * It solves the system A x = b with the Thomas algorithm, and writes x in solution. The two arrays can be the
+	 * same: in this case, b is overwritten by x. The factorization of the matrix is computed only if the matrix
+	 * has been changed since the last call, so that solving a system costs only a forward and a backward
+	 * substitution when the matrix does not change.
+	 *
+	 * @param rightHandSide the vector b
+	 * @param solution the array where x is written
+	 */
+	public void solve(double[] rightHandSide, double[] solution) {
+		if (!isFactorized) {
+			factorize();
+		}
+		// forward substitution
+		solution[0] = rightHandSide[0] * inverseDenominator[0];
+		for (int i = 1; i < dimension; i++) {
+			solution[i] = (rightHandSide[i] - lower[i] * solution[i - 1]) * inverseDenominator[i];
+		}
+		// back substitution
+		for (int i = dimension - 2; i >= 0; i--) {
+			solution[i] -= modifiedUpper[i] * solution[i + 1];
+		}
+	}
+
+	/**
+	 * It computes A x for every vector x given in input, and writes them in results. The arrays of the vectors and
+	 * of the results must be different.
+	 *
+	 * @param vectors the vectors x: vectors[k] is the k-th vector
+	 * @param results the arrays where the products are written: results[k] is A vectors[k]
+	 */
+	public void multiply(double[][] vectors, double[][] results) {
+		for (int k = 0; k < vectors.length; k++) {
+			multiply(vectors[k], results[k]);
+		}
+	}
+
+	/**
+	 * It solves the systems A x = b for all the right hand sides b given in input, with a single factorization of
+	 * the matrix. The substitutions go through the rows of the matrix once, and at every row they are done for all
+	 * the right hand sides, so that the entries of the matrix and of the factorization are read only once. The arrays
+	 * of the right hand sides and of the solutions can be the same.
+	 *
+	 * @param rightHandSides the vectors b: rightHandSides[k] is the k-th vector
+	 * @param solutions the arrays where the solutions are written: solutions[k] is the solution for rightHandSides[k]
+	 */
+	public void solve(double[][] rightHandSides, double[][] solutions) {
+		if (!isFactorized) {
+			factorize();
+		}
+		final int numberOfSystems = rightHandSides.length;
+		// forward substitution
+		for (int k = 0; k < numberOfSystems; k++) {
+			solutions[k][0] = rightHandSides[k][0] * inverseDenominator[0];
+		}
+		for (int i = 1; i < dimension; i++) {
+			final double lowerEntry = lower[i];
+			final double inverse = inverseDenominator[i];
+			for (int k = 0; k < numberOfSystems; k++) {
+				solutions[k][i] = (rightHandSides[k][i] - lowerEntry * solutions[k][i - 1]) * inverse;
+			}
+		}
+		// back substitution
+		for (int i = dimension - 2; i >= 0; i--) {
+			final double modifiedUpperEntry = modifiedUpper[i];
+			for (int k = 0; k < numberOfSystems; k++) {
+				solutions[k][i] -= modifiedUpperEntry * solutions[k][i + 1];
+			}
+		}
+	}
+
+	/**
+	 * It solves the linear complementarity problem A x >= b, x >= g, (A x - b)_i (x - g)_i = 0 with the
+	 * Brennan-Schwartz algorithm, and writes x in solution. The algorithm supposes that the set of indices where
+	 * x = g, i.e., the exercise region, is made of the first indices or of the last ones: this is the case, for
+	 * example, for an American put or call, respectively. If the exercise region is on the right, we use the same
+	 * factorization as solve, and we project the solution on x >= g during the back substitution, from the last index
+	 * to the first one. If it is on the left, we eliminate from the last row to the first one, and we project during
+	 * the substitution from the first index to the last one. In both cases, the cost is the one of solve. The arrays
+	 * of the right hand side and of the solution can be the same.
+	 *
+	 * @param rightHandSide the vector b
+	 * @param lowerBound the vector g
+	 * @param solution the array where x is written
+	 * @param isExerciseRegionOnTheLeft true if the exercise region is made of the first indices, false if it is made
+	 * of the last ones
+	 */
+	public void solveWithLowerBound(double[] rightHandSide, double[] lowerBound, double[] solution,
+			boolean isExerciseRegionOnTheLeft) {
+		if (isExerciseRegionOnTheLeft) {
+			if (!isULFactorized) {
+				factorizeFromTheLastRow();
+			}
+			// backward elimination
+			solution[dimension - 1] = rightHandSide[dimension - 1] * ulInverseDenominator[dimension - 1];
+			for (int i = dimension - 2; i >= 0; i--) {
+				solution[i] = (rightHandSide[i] - upper[i] * solution[i + 1]) * ulInverseDenominator[i];
+			}
+			// forward substitution with projection
+			solution[0] = Math.max(solution[0], lowerBound[0]);
+			for (int i = 1; i < dimension; i++) {
+				solution[i] = Math.max(solution[i] - ulModifiedLower[i] * solution[i - 1], lowerBound[i]);
+			}
+		} else {
+			if (!isFactorized) {
+				factorize();
+			}
+			// forward substitution
+			solution[0] = rightHandSide[0] * inverseDenominator[0];
+			for (int i = 1; i < dimension; i++) {
+				solution[i] = (rightHandSide[i] - lower[i] * solution[i - 1]) * inverseDenominator[i];
+			}
+			// back substitution with projection
+			solution[dimension - 1] = Math.max(solution[dimension - 1], lowerBound[dimension - 1]);
+			for (int i = dimension - 2; i >= 0; i--) {
+				solution[i] = Math.max(solution[i] - modifiedUpper[i] * solution[i + 1], lowerBound[i]);
+			}
+		}
+	}
+
+	/**
+	 * It solves the linear complementarity problem A x >= b, x >= g, (A x - b)_i (x - g)_i = 0 with the projected
+	 * successive over relaxation (PSOR), and writes x in solution. No assumption is made on the exercise region. The
+	 * values in solution when the method is called are the first guess: in a finite difference method, the solution
+	 * at the previous time step is a good one. The iterations stop when the largest change of an entry of the
+	 * solution is smaller than the tolerance, or after the given maximum number of iterations. The arrays of the
+	 * right hand side and of the solution must be different.
+	 *
+	 * @param rightHandSide the vector b
+	 * @param lowerBound the vector g
+	 * @param solution the array containing the first guess, where x is written
+	 * @param relaxationParameter the relaxation parameter, which must be in (0, 2)
+	 * @param tolerance the tolerance on the largest change of an entry of the solution
+	 * @param maximumNumberOfIterations the maximum number of iterations
+	 * @return the number of iterations done: if it is the maximum number of iterations, the method may not have
+	 * converged
+	 */
+	public int solveWithLowerBoundByPSOR(double[] rightHandSide, double[] lowerBound, double[] solution,
+			double relaxationParameter, double tolerance, int maximumNumberOfIterations) {
+		if (relaxationParameter <= 0 || relaxationParameter >= 2) {
+			throw new IllegalArgumentException("Error: the relaxation parameter must be in (0, 2)!");
+		}
+		for (int iteration = 1; iteration <= maximumNumberOfIterations; iteration++) {
+			double largestChange = 0.0;
+			for (int i = 0; i < dimension; i++) {
+				double residual = rightHandSide[i] - diagonal[i] * solution[i];
+				if (i > 0) {
+					residual -= lower[i] * solution[i - 1];
+				}
+				if (i < dimension - 1) {
+					residual -= upper[i] * solution[i + 1];
+				}
+				final double newValue = Math.max(solution[i] + relaxationParameter * residual / diagonal[i], lowerBound[i]);
+				largestChange = Math.max(largestChange, Math.abs(newValue - solution[i]));
+				solution[i] = newValue;
+			}
+			if (largestChange < tolerance) {
+				return iteration;
+			}
+		}
+		return maximumNumberOfIterations;
+	}
+
+	/*
+	 * It computes the factorization used by the Brennan-Schwartz algorithm when the exercise region is on the left.
+	 */
+	private void factorizeFromTheLastRow() {
+		if (ulInverseDenominator == null) {
+			ulModifiedLower = new double[dimension];
+			ulInverseDenominator = new double[dimension];
+		}
+		ulInverseDenominator[dimension - 1] = 1.0 / diagonal[dimension - 1];
+		ulModifiedLower[dimension - 1] = lower[dimension - 1] * ulInverseDenominator[dimension - 1];
+		for (int i = dimension - 2; i >= 0; i--) {
+			ulInverseDenominator[i] = 1.0 / (diagonal[i] - upper[i] * ulModifiedLower[i + 1]);
+			ulModifiedLower[i] = lower[i] * ulInverseDenominator[i];
+		}
+		isULFactorized = true;
+	}
+
+	/**
+	 * It returns the number of rows (and of columns) of the matrix
+	 *
+	 * @return the dimension of the matrix
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+}
@@ -0,0 +1,280 @@
+package it.univr.montecarlo.discretizationschemes.ourimplementation;
+
+import java.util.Arrays;
+
+import it.univr.montecarlo.numbersgeneration.PseudoRandomNumberGenerator;
+import it.univr.montecarlo.numbersgeneration.Xoshiro256PlusPlusGenerator;
+import net.finmath.montecarlo.RandomVariableFromDoubleArray;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.time.TimeDiscretization;
+
+/**
+ * This is an abstract class for the discretization and simulation of N correlated continuous Itô processes
+ * dX^i_t=\mu_i(t,X^i_t)dt+\sigma_i(t,X^i_t)dZ^i_t, i=0,...,N-1,
+ * where Z=(Z^0,...,Z^{N-1}) is a N-dimensional Brownian motion with correlation matrix C. It is the
+ * multi-dimensional counterpart of AbstractProcessSimulation.
+ *
+ * The correlated increments are obtained as dZ = L dW, where dW are the increments of a N-dimensional Brownian
+ * motion with independent components and L is the Cholesky factor of C, computed only once. Differently from
+ * AbstractProcessSimulation, the independent increments are not taken from a Brownian motion of the Finmath library,
+ * which would store all of them for all the times: at every time step, they are drawn by a seeded generator into
+ * a single array, which is reused for all the times. The paths are stored as arrays of doubles and are updated in
+ * place: no RandomVariable object is constructed during the simulation, and one is created only when the
+ * realizations of an asset at a given time are asked from outside. In this way, the memory needed is the one of the
+ * paths plus two arrays of length N times the number of simulations.
+ *
+ * The only abstract method is the one returning the value of the process at the next time, given the value
+ * at the current time and the correlated Brownian increment, since it depends on the scheme (for example,
+ * Euler, log-Euler or Milstein) and on the dynamics of the process.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public abstract class AbstractMultiAssetProcessSimulation {
+
+	/*
+	 * It will contain the paths of the processes: paths[timeIndex] has the realizations of the asset i in the
+	 * positions from i*numberOfSimulations to (i+1)*numberOfSimulations-1.
+	 */
+	private double[][] paths;// not yet initialized: default value is null.
+
+	private final int numberOfSimulations;
+
+	private final int numberOfAssets;
+
+	private final TimeDiscretization times;
+
+	// the initial values of the processes
+	private final double[] initialValues;
+
+	// the lower triangular matrix L such that L L^T is the correlation matrix
+	private final double[][] lowerFactor;
+
+	// used in order to generate the independent Brownian increments
+	private final int seed;
+
+	/**
+	 * It returns the value of the asset with index assetIndex at the next time, given its value at the current
+	 * time and the correlated Brownian increment.
+	 *
+	 * @param lastValue the value X^i_{t_{k-1}}
+	 * @param brownianIncrement the correlated increment Z^i_{t_k}-Z^i_{t_{k-1}}
+	 * @param assetIndex the index i of the asset
+	 * @param timeStep the length t_k-t_{k-1} of the time step
+	 * @return the value X^i_{t_k}
+	 */
+	protected abstract double getNextValue(double lastValue, double brownianIncrement, int assetIndex, double timeStep);
+
+	protected AbstractMultiAssetProcessSimulation(double[] initialValues, double[][] correlationMatrix,
+			int numberOfSimulations, int seed, TimeDiscretization times) {
+		if (correlationMatrix.length != initialValues.length) {
+			throw new IllegalArgumentException("Error: the correlation matrix must have one row for every asset!");
+		}
+		if (numberOfSimulations <= 0) {
+			throw new IllegalArgumentException("Error: the number of simulations must be positive!");
+		}
+		this.initialValues = initialValues.clone();
+		this.numberOfAssets = initialValues.length;
+		this.numberOfSimulations = numberOfSimulations;
+		this.seed = seed;
+		this.times = times;
+		// the factorization is computed only once, here
+		this.lowerFactor = CholeskyFactorization.getLowerTriangularFactor(correlationMatrix);
+	}
+
+	/**
+	 * It checks that the array given in input, for example of drifts or volatilities, has one entry for every asset.
+	 * It is meant to be called by the constructors of the derived classes.
+	 *
+	 * @param parameters, the array to check
+	 * @param name, the name of the parameters, used in the message of the exception
+	 */
+	protected void checkNumberOfParameters(double[] parameters, String name) {
+		if (parameters.length != numberOfAssets) {
+			throw new IllegalArgumentException("Error: there must be " + name + " for every asset!");
+		}
+	}
+
+	/*
+	 * This method generates the processes. At every time step, the independent increments of all the assets are
+	 * drawn as standard normal numbers into one array and multiplied by the square root of the time step, the
+	 * correlated increments are computed at once by the blocked kernel of CholeskyFactorization, and then every
+	 * realization is updated by calling getNextValue. The two buffers for the independent and correlated increments
+	 * are allocated only once.
+	 */
+	private void generate() {
+
+		final int numberOfTimes = times.getNumberOfTimes();
+
+		final PseudoRandomNumberGenerator generator = new Xoshiro256PlusPlusGenerator(seed);
+
+		paths = new double[numberOfTimes][numberOfAssets * numberOfSimulations];
+		for (int assetIndex = 0; assetIndex < numberOfAssets; assetIndex++) {
+			Arrays.fill(paths[0], assetIndex * numberOfSimulations, (assetIndex + 1) * numberOfSimulations,
+					initialValues[assetIndex]);
+		}
+
+		// the increments of the factor k occupy the positions from k*numberOfSimulations to (k+1)*numberOfSimulations-1
+		final double[] independentIncrements = new double[numberOfAssets * numberOfSimulations];
+		final double[] correlatedIncrements = new double[numberOfAssets * numberOfSimulations];
+
+		for (int timeIndex = 1; timeIndex < numberOfTimes; timeIndex++) {
+			final double timeStep = times.getTimeStep(timeIndex - 1);
+			final double standardDeviation = Math.sqrt(timeStep);
+			generator.nextGaussians(independentIncrements);
+			for (int index = 0; index < independentIncrements.length; index++) {
+				independentIncrements[index] *= standardDeviation;
+			}
+			CholeskyFactorization.multiply(lowerFactor, independentIncrements, numberOfSimulations, correlatedIncrements);
+
+			final double[] lastValues = paths[timeIndex - 1];
+			final double[] nextValues = paths[timeIndex];
+			for (int assetIndex = 0; assetIndex < numberOfAssets; assetIndex++) {
+				final int offset = assetIndex * numberOfSimulations;
+				for (int pathIndex = offset; pathIndex < offset + numberOfSimulations; pathIndex++) {
+					nextValues[pathIndex] = getNextValue(lastValues[pathIndex], correlatedIncrements[pathIndex], assetIndex, timeStep);
+				}
+			}
+		}
+	}
+
+	private double[][] getGeneratedPaths() {
+		if (paths == null) {
+			generate();
+		}
+		return paths;
+	}
+
+	// getters
+
+	/**
+	 * It returns a random variable with the realizations of the given asset at a given time index. It generates
+	 * the processes only if this has not already done.
+	 *
+	 * @param timeIndex, index of the time considered
+	 * @param assetIndex, index of the asset considered
+	 * @return a random variable with the realizations of the asset at the given time index
+	 */
+	public RandomVariable getProcessAtGivenTimeIndex(int timeIndex, int assetIndex) {
+		final int offset = assetIndex * numberOfSimulations;
+		return new RandomVariableFromDoubleArray(times.getTime(timeIndex),
+				Arrays.copyOfRange(getGeneratedPaths()[timeIndex], offset, offset + numberOfSimulations));
+	}
+
+	/**
+	 * It returns a random variable with the realizations of the given asset at a given time.
+	 *
+	 * @param time, the value of the time considered
+	 * @param assetIndex, index of the asset considered
+	 * @return a random variable with the realizations of the asset at the given time
+	 */
+	public RandomVariable getProcessAtGivenTime(double time, int assetIndex) {
+		return getProcessAtGivenTimeIndex(times.getTimeIndex(time), assetIndex);
+	}
+
+	/**
+	 * It returns the realization of the given asset at a given time index for a given simulation, without
+	 * constructing any object.
+	 *
+	 * @param timeIndex, index of the time considered
+	 * @param assetIndex, index of the asset considered
+	 * @param pathNumber, index of the simulation considered
+	 * @return the realization of the asset
+	 */
+	public double getRealization(int timeIndex, int assetIndex, int pathNumber) {
+		return getGeneratedPaths()[timeIndex][assetIndex * numberOfSimulations + pathNumber];
+	}
+
+	/**
+	 * It returns a vector of doubles representing a path of the given asset for a given simulation.
+	 *
+	 * @param pathNumber, index of the simulation we consider
+	 * @param assetIndex, index of the asset considered
+	 * @return the path of the asset for the given simulation index
+	 */
+	public double[] getPathForGivenSimulation(int pathNumber, int assetIndex) {
+		final int numberOfTimes = times.getNumberOfTimes();
+		final double samplePath[] = new double[numberOfTimes];
+		for (int timeIndex = 0; timeIndex < numberOfTimes; timeIndex++) {
+			samplePath[timeIndex] = getRealization(timeIndex, assetIndex, pathNumber);
+		}
+		return samplePath;
+	}
+
+	/**
+	 * It returns the final value of the given asset
+	 *
+	 * @param assetIndex, index of the asset considered
+	 * @return random variable holding the realizations of the asset at final time
+	 */
+	public RandomVariable getFinalValue(int assetIndex) {
+		return getProcessAtGivenTimeIndex(times.getNumberOfTimes() - 1, assetIndex);
+	}
+
+	/**
+	 * It gets the initial values of the processes
+	 *
+	 * @return the initial values of the processes
+	 */
+	public double[] getInitialValues() {
+		return initialValues.clone();
+	}
+
+	/**
+	 * It returns the lower triangular matrix L such that L L^T is the correlation matrix
+	 *
+	 * @return the Cholesky factor of the correlation matrix
+	 */
+	public double[][] getCholeskyFactor() {
+		final double[][] copy = new double[numberOfAssets][];
+		for (int rowIndex = 0; rowIndex < numberOfAssets; rowIndex++) {
+			copy[rowIndex] = lowerFactor[rowIndex].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * It returns the seed by which the Brownian increments are generated
+	 *
+	 * @return the seed by which the Brownian increments are generated
+	 */
+	public int getSeed() {
+		return seed;
+	}
+
+	/**
+	 * It returns the time discretization of the processes
+	 *
+	 * @return the time discretization of the processes
+	 */
+	public TimeDiscretization getTimeDiscretization() {
+		return times;
+	}
+
+	/**
+	 * It returns the number of times in the time discretization
+	 *
+	 * @return the number of times in the time discretization
+	 */
+	public int getNumberOfTimes() {
+		return times.getNumberOfTimes();
+	}
+
+	/**
+	 * It returns the number of assets, i.e., the dimension of the process
+	 *
+	 * @return the number of assets
+	 */
+	public int getNumberOfAssets() {
+		return numberOfAssets;
+	}
+
+	/**
+	 * It returns the number of paths of the processes, i.e., the number of simulations
+	 *
+	 * @return the number of paths of the processes
+	 */
+	public int getNumberOfSimulations() {
+		return numberOfSimulations;
+	}
+}
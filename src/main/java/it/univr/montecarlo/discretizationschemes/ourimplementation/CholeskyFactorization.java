@@ -0,0 +1,100 @@
+package it.univr.montecarlo.discretizationschemes.ourimplementation;
+
+/**
+ * This class contains the two operations we need in order to get correlated Brownian increments from
+ * independent ones: the Cholesky factorization of a correlation matrix C, that is, the lower triangular
+ * matrix L such that C = L L^T, and the product of L with the vectors of independent increments.
+ *
+ * The factorization is computed only once per simulation. The product is instead computed at every time
+ * step, for all the simulated paths: this is done by a blocked kernel working on primitive arrays, so that
+ * no object is allocated during the simulation.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class CholeskyFactorization {
+
+	/*
+	 * Number of paths processed together by the kernel: the rows of the independent increments restricted to
+	 * a block stay in cache while all the correlated increments of that block are computed.
+	 */
+	private static final int BLOCK_SIZE = 256;
+
+	/*
+	 * Pivots smaller than this are considered zero: this happens when the correlation matrix is only positive
+	 * semi-definite, for example for two assets with correlation 1 or -1.
+	 */
+	private static final double TOLERANCE = 1E-12;
+
+	/**
+	 * It returns the lower triangular matrix L such that C = L L^T, where C is the correlation matrix given
+	 * in input. Positive semi-definite matrices are allowed: in this case, the columns of L corresponding
+	 * to a zero pivot are set to zero.
+	 *
+	 * @param correlationMatrix the symmetric matrix C
+	 * @return the lower triangular matrix L such that C = L L^T
+	 */
+	public static double[][] getLowerTriangularFactor(double[][] correlationMatrix) {
+		final int dimension = correlationMatrix.length;
+		final double[][] lowerFactor = new double[dimension][dimension];
+		for (int rowIndex = 0; rowIndex < dimension; rowIndex++) {
+			if (correlationMatrix[rowIndex].length != dimension) {
+				throw new IllegalArgumentException("Error: the correlation matrix must be square!");
+			}
+			for (int columnIndex = 0; columnIndex <= rowIndex; columnIndex++) {
+				double sum = correlationMatrix[rowIndex][columnIndex];
+				for (int k = 0; k < columnIndex; k++) {
+					sum -= lowerFactor[rowIndex][k] * lowerFactor[columnIndex][k];
+				}
+				if (rowIndex == columnIndex) {
+					if (sum < -TOLERANCE) {
+						throw new IllegalArgumentException("Error: the correlation matrix is not positive semi-definite!");
+					}
+					lowerFactor[rowIndex][rowIndex] = sum > TOLERANCE ? Math.sqrt(sum) : 0.0;
+				} else {
+					final double pivot = lowerFactor[columnIndex][columnIndex];
+					lowerFactor[rowIndex][columnIndex] = pivot > 0.0 ? sum / pivot : 0.0;
+				}
+			}
+		}
+		return lowerFactor;
+	}
+
+	/**
+	 * It computes the correlated increments L dW for all the paths, where L is a lower triangular matrix and dW are
+	 * the independent increments. Both are given in flat arrays: the independent increments of the factor k occupy
+	 * the positions from k*numberOfPaths to (k+1)*numberOfPaths-1, and the correlated increments of the asset i,
+	 * which are written in correlatedIncrements, the positions from i*numberOfPaths to (i+1)*numberOfPaths-1. In this
+	 * way, the independent increments can be drawn at once into a single array which is reused at every time step.
+	 *
+	 * @param lowerFactor the lower triangular matrix L
+	 * @param independentIncrements the independent increments, of length L.length*numberOfPaths
+	 * @param numberOfPaths the number of paths
+	 * @param correlatedIncrements the array where the result is written, of length L.length*numberOfPaths
+	 */
+	public static void multiply(double[][] lowerFactor, double[] independentIncrements, int numberOfPaths,
+			double[] correlatedIncrements) {
+		final int dimension = lowerFactor.length;
+		for (int blockStart = 0; blockStart < numberOfPaths; blockStart += BLOCK_SIZE) {
+			final int blockEnd = Math.min(blockStart + BLOCK_SIZE, numberOfPaths);
+			for (int assetIndex = 0; assetIndex < dimension; assetIndex++) {
+				final int offset = assetIndex * numberOfPaths;
+				final double[] factorRow = lowerFactor[assetIndex];
+				for (int pathIndex = blockStart; pathIndex < blockEnd; pathIndex++) {
+					correlatedIncrements[offset + pathIndex] = 0.0;
+				}
+				//L is lower triangular, so only the first assetIndex+1 factors contribute
+				for (int factorIndex = 0; factorIndex <= assetIndex; factorIndex++) {
+					final double loading = factorRow[factorIndex];
+					if (loading == 0.0) {
+						continue;
+					}
+					final int factorOffset = factorIndex * numberOfPaths;
+					for (int pathIndex = blockStart; pathIndex < blockEnd; pathIndex++) {
+						correlatedIncrements[offset + pathIndex] += loading * independentIncrements[factorOffset + pathIndex];
+					}
+				}
+			}
+		}
+	}
+}
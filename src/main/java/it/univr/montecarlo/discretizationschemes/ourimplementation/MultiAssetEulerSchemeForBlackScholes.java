@@ -0,0 +1,34 @@
+package it.univr.montecarlo.discretizationschemes.ourimplementation;
+
+import net.finmath.time.TimeDiscretization;
+
+/**
+ * This class simulates the trajectories of N correlated geometric Brownian motions (i.e., a multi-dimensional
+ * Black-Scholes model) by using an Euler scheme. It extends AbstractMultiAssetProcessSimulation by giving the
+ * implementation of getNextValue.
+ *
+ * @author Andrea Mazzon
+ */
+public class MultiAssetEulerSchemeForBlackScholes extends AbstractMultiAssetProcessSimulation {
+
+	private final double[] muDrifts;// mu_i
+	private final double[] sigmaVolatilities;// sigma_i
+
+	public MultiAssetEulerSchemeForBlackScholes(double[] sigmaVolatilities, double[] muDrifts,
+			double[] initialValues, double[][] correlationMatrix, int numberOfSimulations, int seed, TimeDiscretization times) {
+		super(initialValues, correlationMatrix, numberOfSimulations, seed, times);
+		checkNumberOfParameters(muDrifts, "a drift");
+		checkNumberOfParameters(sigmaVolatilities, "a volatility");
+		this.muDrifts = muDrifts.clone();
+		this.sigmaVolatilities = sigmaVolatilities.clone();
+	}
+
+	/*
+	 * It returns the value at the next time of a geometric Brownian motion computed with the Euler scheme.
+	 * That is, it returns S_{t_{k-1}} + mu*S_{t_{k-1}}*(t_k-t_{k-1}) + sigma*S_{t_{k-1}}*(Z_{t_k}-Z_{t_{k-1}}).
+	 */
+	@Override
+	protected double getNextValue(double lastValue, double brownianIncrement, int assetIndex, double timeStep) {
+		return lastValue * (1 + muDrifts[assetIndex] * timeStep + sigmaVolatilities[assetIndex] * brownianIncrement);
+	}
+}
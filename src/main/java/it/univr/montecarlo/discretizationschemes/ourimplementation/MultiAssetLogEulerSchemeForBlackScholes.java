@@ -0,0 +1,35 @@
+package it.univr.montecarlo.discretizationschemes.ourimplementation;
+
+import net.finmath.time.TimeDiscretization;
+
+/**
+ * This class simulates the trajectories of N correlated geometric Brownian motions (i.e., a multi-dimensional
+ * Black-Scholes model) by using a log Euler scheme: the logarithm of every asset is updated with the Euler scheme
+ * and then exponentiated. It extends AbstractMultiAssetProcessSimulation by giving the implementation of getNextValue.
+ *
+ * @author Andrea Mazzon
+ */
+public class MultiAssetLogEulerSchemeForBlackScholes extends AbstractMultiAssetProcessSimulation {
+
+	private final double[] muDrifts;// mu_i
+	private final double[] sigmaVolatilities;// sigma_i
+
+	public MultiAssetLogEulerSchemeForBlackScholes(double[] sigmaVolatilities, double[] muDrifts,
+			double[] initialValues, double[][] correlationMatrix, int numberOfSimulations, int seed, TimeDiscretization times) {
+		super(initialValues, correlationMatrix, numberOfSimulations, seed, times);
+		checkNumberOfParameters(muDrifts, "a drift");
+		checkNumberOfParameters(sigmaVolatilities, "a volatility");
+		this.muDrifts = muDrifts.clone();
+		this.sigmaVolatilities = sigmaVolatilities.clone();
+	}
+
+	/*
+	 * It returns the value at the next time of a geometric Brownian motion computed with the log Euler scheme.
+	 * That is, it returns S_{t_{k-1}}*exp((mu-sigma^2/2)*(t_k-t_{k-1}) + sigma*(Z_{t_k}-Z_{t_{k-1}})).
+	 */
+	@Override
+	protected double getNextValue(double lastValue, double brownianIncrement, int assetIndex, double timeStep) {
+		final double sigma = sigmaVolatilities[assetIndex];
+		return lastValue * Math.exp((muDrifts[assetIndex] - 0.5 * sigma * sigma) * timeStep + sigma * brownianIncrement);
+	}
+}
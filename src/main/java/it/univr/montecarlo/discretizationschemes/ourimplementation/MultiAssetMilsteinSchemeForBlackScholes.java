@@ -0,0 +1,38 @@
+package it.univr.montecarlo.discretizationschemes.ourimplementation;
+
+import net.finmath.time.TimeDiscretization;
+
+/**
+ * This class simulates the trajectories of N correlated geometric Brownian motions (i.e., a multi-dimensional
+ * Black-Scholes model) by using a Milstein scheme. It extends AbstractMultiAssetProcessSimulation by giving the
+ * implementation of getNextValue.
+ *
+ * @author Andrea Mazzon
+ */
+public class MultiAssetMilsteinSchemeForBlackScholes extends AbstractMultiAssetProcessSimulation {
+
+	private final double[] muDrifts;// mu_i
+	private final double[] sigmaVolatilities;// sigma_i
+
+	public MultiAssetMilsteinSchemeForBlackScholes(double[] sigmaVolatilities, double[] muDrifts,
+			double[] initialValues, double[][] correlationMatrix, int numberOfSimulations, int seed, TimeDiscretization times) {
+		super(initialValues, correlationMatrix, numberOfSimulations, seed, times);
+		checkNumberOfParameters(muDrifts, "a drift");
+		checkNumberOfParameters(sigmaVolatilities, "a volatility");
+		this.muDrifts = muDrifts.clone();
+		this.sigmaVolatilities = sigmaVolatilities.clone();
+	}
+
+	/*
+	 * It returns the value at the next time of a geometric Brownian motion computed with the Milstein scheme.
+	 * That is, it adds to the Euler step the term sigma^2/2*S_{t_{k-1}}*((Z_{t_k}-Z_{t_{k-1}})^2-(t_k-t_{k-1})).
+	 * Since the diffusion of every asset only depends on its own driver, no Lévy area terms appear.
+	 */
+	@Override
+	protected double getNextValue(double lastValue, double brownianIncrement, int assetIndex, double timeStep) {
+		final double sigma = sigmaVolatilities[assetIndex];
+		final double linearTerm = muDrifts[assetIndex] * timeStep + sigma * brownianIncrement;
+		final double adjustment = 0.5 * sigma * sigma * (brownianIncrement * brownianIncrement - timeStep);
+		return lastValue * (1 + linearTerm + adjustment);
+	}
+}
@@ -2,6 +2,8 @@ package it.univr.montecarlo.numbersgeneration;
 
 import java.util.Random;
 
+import net.finmath.functions.NormalDistribution;
+
 /**
  * This class generates pseudo random numbers through a linear congruential
  * random number generator: a linear congruential random number generator
@@ -12,30 +14,58 @@ import java.util.Random;
  * where x[0] = seed, for appropriate values of natural numbers a, c and m (for
  * big m).
  *
- * We have a method generate() which generates all the sequence (i.e., an
- * array), up to the number of pseudo random integers we want to simulate. We
- * also have two public methods, getRandomNumberSequence() and getNextInteger(),
- * that return all the sequence and the next integer x[count + 1], where count
- * gets incremented by 1 every time the method is called, respectively.
+ * The numbers are generated one by one by getNextInteger(): the generator only
+ * stores the last number of the sequence, so its memory does not depend on how
+ * many numbers we simulate. Since m = 2^48 is a power of two, the modulus is
+ * computed by a bit mask: x mod 2^48 = x & (2^48 - 1). This is correct also when
+ * a*x[i] overflows, because a long overflows modulo 2^64, which is a multiple of
+ * 2^48.
+ *
+ * We can also jump ahead of n numbers in O(log(n)) operations, without
+ * generating the numbers in between: in this way, parallel workers can each take
+ * a disjoint substream of the same sequence, see getSubstream(int, int) and
+ * split() from the interface PseudoRandomNumberGenerator. Here split() moves
+ * the generator ahead of 2^40 numbers and jump() of 2^32 numbers; the generator
+ * returned by split() moves ahead of 2^32 numbers when split and of 2^24 when
+ * jumped, and so on, dividing the lengths by 2^8 at every level, so that
+ * split() can be called recursively three times. The
+ * method getRandomNumberSequence() still returns all the sequence, up to the
+ * number of pseudo random integers we want to simulate, as an array.
+ *
+ * The integers can also be transformed into uniform numbers in (0,1) and into
+ * standard normal numbers, via the inverse of the normal cumulative distribution
+ * function. The methods nextDoubles(double[]) and nextGaussians(double[]) fill an
+ * array given by the user, so that no object is allocated when many numbers are
+ * needed.
  *
  * @author Andrea Mazzon
  *
  */
-public class LinearCongruentialGenerator {
+public class LinearCongruentialGenerator implements PseudoRandomNumberGenerator {
+
+    private static final long serialVersionUID = 1L;
 
-    private long[] randomNumbers;// array of long
+    private long[] randomNumbers;// array of long: only constructed if the whole sequence is asked
     // upcasting necessary, the result of Math.pow(2, 48) is understood as an int
     private final long modulus = (long) Math.pow(2, 48);
+    // x & mask is equal to x mod 2^48, also for negative x
+    private final long mask = modulus - 1;
     private long a = 25214903917L; // if I don't put L after the number, it will complain that is out of range
     private final long c = 11;// automatic upcasting
     private long seed; // it will be the first entry of our pseudo random number list
     private int numberOfPseudoRandomNumbers;
-    private int count = 1;
+    private long currentNumber; // the last number returned by getNextInteger(), or the seed at the beginning
+    // 1/m: multiplying by this is faster than dividing by m
+    private final double inverseOfModulus = 1.0 / modulus;
+    // the exponents k of the lengths 2^k of the jumps: split() uses the one of level, jump() the next one
+    private static final int[] JUMP_EXPONENTS = { 40, 32, 24, 16, 8 };
+    private int level; // the number of nested calls of split() which gave this generator
 
     // constructor
     public LinearCongruentialGenerator(int numberOfPseudoRandomNumbers, long seed) {
         this.numberOfPseudoRandomNumbers = numberOfPseudoRandomNumbers;
         this.seed = seed;
+        currentNumber = seed;
     }
 
     // overloaded constructor: random seed
@@ -43,6 +73,14 @@ public class LinearCongruentialGenerator {
             this.numberOfPseudoRandomNumbers = numberOfPseudoRandomNumbers;
             Random seedGenerator = new Random();
             seed = seedGenerator.nextInt();
+            currentNumber = seed;
+    }
+
+    /*
+     * One step of the congruence. No division is needed: the modulus is a power of two.
+     */
+    private long getSuccessor(long number) {
+        return (a * number + c) & mask;
     }
 
     private void generate() {
@@ -50,13 +88,13 @@ public class LinearCongruentialGenerator {
         randomNumbers = new long[numberOfPseudoRandomNumbers + 1];
         randomNumbers[0] = seed; // the first entry is the seed: first number of the sequence
         for (int indexOfInteger = 0; indexOfInteger < numberOfPseudoRandomNumbers; indexOfInteger++) {
-            long congruence = (a * randomNumbers[indexOfInteger] + c) % modulus;
-            randomNumbers[indexOfInteger + 1] = Math.abs(congruence);
+            randomNumbers[indexOfInteger + 1] = getSuccessor(randomNumbers[indexOfInteger]);
         }
     }
 
     /**
-     * getter method for the sequence of pseudo random natural numbers
+     * getter method for the sequence of pseudo random natural numbers. Note that
+     * this is the only method which stores all the sequence.
      *
      * @return the sequence of pseudo random numbers
      */
@@ -69,11 +107,152 @@ public class LinearCongruentialGenerator {
     }
 
     /**
+     * It returns the next number of the sequence. The number is computed from the
+     * last one, which is the only one we store.
+     *
      * @return the next number of the sequence of pseudo random numbers
      */
     public long getNextInteger() {
-        long[] sequence = getRandomNumberSequence();// it gets really generated only once
-        return sequence[count++];
+        currentNumber = getSuccessor(currentNumber);
+        return currentNumber;
+    }
+
+    /**
+     * It returns the next uniform number in (0,1), that is, (x + 1/2)/m where x is
+     * the next integer of the sequence. We add 1/2 so that the result is never 0:
+     * in this way it can be given to the inverse of a cumulative distribution function.
+     *
+     * @return the next pseudo random number uniformly distributed in (0,1)
+     */
+    @Override
+    public double nextDouble() {
+        return (getNextInteger() + 0.5) * inverseOfModulus;
+    }
+
+    /**
+     * It fills the array given in input with the next uniform numbers in (0,1), see
+     * nextDouble(). No object is allocated.
+     *
+     * @param out the array to fill: its length is the number of uniform numbers we want
+     */
+    @Override
+    public void nextDoubles(double[] out) {
+        // we work on a local copy of the state, which is written back only at the end
+        long number = currentNumber;
+        for (int index = 0; index < out.length; index++) {
+            number = getSuccessor(number);
+            out[index] = (number + 0.5) * inverseOfModulus;
+        }
+        currentNumber = number;
+    }
+
+    /**
+     * It returns the next standard normal number, obtained by applying the inverse
+     * of the normal cumulative distribution function to nextDouble().
+     *
+     * @return the next pseudo random number with standard normal distribution
+     */
+    @Override
+    public double nextGaussian() {
+        return NormalDistribution.inverseCumulativeDistribution(nextDouble());
+    }
+
+    /**
+     * It fills the array given in input with the next standard normal numbers, see
+     * nextGaussian(). Every normal number uses exactly one integer of the sequence,
+     * so the jump ahead methods can be used for normal numbers as well. No object is
+     * allocated.
+     *
+     * @param out the array to fill: its length is the number of normal numbers we want
+     */
+    @Override
+    public void nextGaussians(double[] out) {
+        nextDoubles(out);
+        for (int index = 0; index < out.length; index++) {
+            out[index] = NormalDistribution.inverseCumulativeDistribution(out[index]);
+        }
+    }
+
+    /**
+     * It moves the generator ahead of numberOfSteps numbers, without generating
+     * them: after calling this method, getNextInteger() returns the number that it
+     * would have returned after being called numberOfSteps times. The cost is
+     * O(log(numberOfSteps)).
+     *
+     * @param numberOfSteps the number of numbers to skip, non negative
+     */
+    public void jumpAhead(long numberOfSteps) {
+        if (numberOfSteps < 0) {
+            throw new IllegalArgumentException("Error: the number of steps must be non negative!");
+        }
+        /*
+         * Applying n times x -> a*x + c gives x -> A*x + C, with A = a^n mod m and
+         * C = c(a^(n-1) + ... + a + 1) mod m. We compute A and C by repeated squaring:
+         * if the map for 2^k steps is x -> multiplier*x + increment, the map for 2^(k+1)
+         * steps is x -> multiplier^2*x + (multiplier + 1)*increment. We then compose the
+         * maps corresponding to the bits of n which are equal to one.
+         */
+        long jumpMultiplier = 1;
+        long jumpIncrement = 0;
+        long multiplier = a;
+        long increment = c;
+        for (long steps = numberOfSteps; steps > 0; steps >>>= 1) {
+            if ((steps & 1) == 1) {
+                jumpMultiplier = (jumpMultiplier * multiplier) & mask;
+                jumpIncrement = (jumpIncrement * multiplier + increment) & mask;
+            }
+            increment = ((multiplier + 1) * increment) & mask;
+            multiplier = (multiplier * multiplier) & mask;
+        }
+        if (numberOfSteps > 0) {
+            currentNumber = (jumpMultiplier * currentNumber + jumpIncrement) & mask;
+        }
+    }
+
+    /**
+     * It moves the generator ahead of 2^32 numbers, or of 2^(32-8*k) numbers if
+     * the generator has been obtained by k nested calls of split(): since the
+     * period is at most 2^48, we can get 2^16 disjoint streams in this way.
+     */
+    @Override
+    public void jump() {
+        jumpAhead(1L << JUMP_EXPONENTS[level + 1]);
+    }
+
+    @Override
+    public LinearCongruentialGenerator split() {
+        // the returned generator must still have a jump() and a split() smaller than the ones of this generator
+        if (level + 2 >= JUMP_EXPONENTS.length) {
+            throw new IllegalStateException("Error: too many nested calls of split()!");
+        }
+        LinearCongruentialGenerator copy = new LinearCongruentialGenerator(numberOfPseudoRandomNumbers, seed);
+        copy.currentNumber = currentNumber;
+        copy.level = level + 1;
+        jumpAhead(1L << JUMP_EXPONENTS[level]);
+        return copy;
+    }
+
+    /**
+     * It returns a new generator for the substream of the sequence with given
+     * index, when the sequence x[1], x[2], ... is divided into consecutive blocks
+     * of length substreamLength. The first call of getNextInteger() on the returned
+     * object gives x[substreamIndex * substreamLength + 1]. Substreams with
+     * different indices are therefore disjoint, and can be given to different
+     * parallel workers. This generator is not modified.
+     *
+     * @param substreamIndex the index of the substream, starting from zero
+     * @param substreamLength the length of every substream
+     * @return a generator for the substream
+     */
+    public LinearCongruentialGenerator getSubstream(int substreamIndex, int substreamLength) {
+        if (substreamIndex < 0 || substreamLength <= 0) {
+            throw new IllegalArgumentException("Error: the substream index must be non negative and the length positive!");
+        }
+        LinearCongruentialGenerator substream = new LinearCongruentialGenerator(substreamLength, seed);
+        substream.jumpAhead((long) substreamIndex * substreamLength);
+        // the substream starts from its own first number: we make it its seed
+        substream.seed = substream.currentNumber;
+        return substream;
     }
 
     /**
@@ -94,4 +273,4 @@ public class LinearCongruentialGenerator {
     public int getNumberOfPseudoRandomNumbers() {
         return numberOfPseudoRandomNumbers;
     }
-} 
+}
@@ -0,0 +1,205 @@
+package it.univr.montecarlo.numbersgeneration;
+
+/**
+ * This class implements the PCG64 generator by O'Neill, in its XSL-RR variant. The state is a linear
+ * congruential generator with 128 bits,
+ *
+ * x[i+1] = (a*x[i] + c) mod 2^128,
+ *
+ * and the output is obtained from the state by a permutation: the xor of its two halves is rotated to the
+ * right by a number of bits given by the six most significant bits of the state. Differently from our
+ * LinearCongruentialGenerator, the output has 64 good bits and the period is 2^128.
+ *
+ * The increment c is odd and is determined by a stream index given by the user: generators with the same
+ * seed and different stream indices produce different sequences. Since the state is a linear congruential
+ * generator, we can jump ahead of n steps in O(log(n)) operations as in LinearCongruentialGenerator. The
+ * method split() moves the generator ahead of 2^112 steps and jump() of 2^96 steps. The generator returned by
+ * split() moves ahead of 2^96 steps when split and of 2^80 when jumped, and so on, dividing the lengths by 2^16 at
+ * every level: a generator can therefore be split or jumped 2^16 times without leaving the part of the sequence
+ * of its parent, and split() can be called recursively four times.
+ *
+ * Java does not have 128 bits integers: a number of 128 bits is represented by two longs, its 64 most
+ * significant bits and its 64 least significant bits.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class PCG64Generator implements PseudoRandomNumberGenerator {
+
+	private static final long serialVersionUID = 1L;
+
+	// the multiplier a, split into its high and low 64 bits
+	private static final long MULTIPLIER_HIGH = 0x2360ed051fc65da4L;
+	private static final long MULTIPLIER_LOW = 0x4385df649fccf645L;
+
+	private long stateHigh;
+	private long stateLow;
+	// the increment c, which must be odd
+	private final long incrementHigh;
+	private final long incrementLow;
+
+	// the exponents k of the lengths 2^k of the jumps: split() uses the one of level, jump() the next one
+	private static final int[] JUMP_EXPONENTS = { 112, 96, 80, 64, 48, 32 };
+
+	// the number of nested calls of split() which gave this generator
+	private int level;
+
+	/**
+	 * It constructs a generator with the given seed, for the stream with index zero.
+	 *
+	 * @param seed the seed
+	 */
+	public PCG64Generator(long seed) {
+		this(seed, 0);
+	}
+
+	/**
+	 * It constructs a generator with the given seed, for the stream with the given index.
+	 *
+	 * @param seed the seed
+	 * @param streamIndex the index of the stream, which determines the increment c = 2*streamIndex + 1
+	 */
+	public PCG64Generator(long seed, long streamIndex) {
+		incrementHigh = streamIndex >>> 63;
+		incrementLow = (streamIndex << 1) | 1L;
+		// initialization as in the reference implementation: one step, addition of the seed, one step
+		stateHigh = 0;
+		stateLow = 0;
+		step();
+		stateLow += seed;
+		if (Long.compareUnsigned(stateLow, seed) < 0) {
+			stateHigh++;
+		}
+		step();
+	}
+
+	private PCG64Generator(long stateHigh, long stateLow, long incrementHigh, long incrementLow) {
+		this.stateHigh = stateHigh;
+		this.stateLow = stateLow;
+		this.incrementHigh = incrementHigh;
+		this.incrementLow = incrementLow;
+	}
+
+	/*
+	 * The 64 most significant bits of the product of two unsigned longs.
+	 */
+	private static long unsignedMultiplyHigh(long first, long second) {
+		return Math.multiplyHigh(first, second) + ((first >> 63) & second) + ((second >> 63) & first);
+	}
+
+	/*
+	 * One step of the congruence: state = a*state + c mod 2^128.
+	 */
+	private void step() {
+		final long productLow = stateLow * MULTIPLIER_LOW;
+		final long productHigh = unsignedMultiplyHigh(stateLow, MULTIPLIER_LOW) + stateHigh * MULTIPLIER_LOW
+				+ stateLow * MULTIPLIER_HIGH;
+		stateLow = productLow + incrementLow;
+		stateHigh = productHigh + incrementHigh + (Long.compareUnsigned(stateLow, productLow) < 0 ? 1 : 0);
+	}
+
+	/**
+	 * It returns the next 64 random bits.
+	 *
+	 * @return the next pseudo random long
+	 */
+	public long nextLong() {
+		step();
+		return Long.rotateRight(stateHigh ^ stateLow, (int) (stateHigh >>> 58));
+	}
+
+	@Override
+	public double nextDouble() {
+		return PseudoRandomNumberGenerator.toUniform(nextLong());
+	}
+
+	/*
+	 * It moves the state ahead of the number of steps with given high and low 64 bits. As in
+	 * LinearCongruentialGenerator, the map x -> a*x + c applied n times is x -> A*x + C, and A and C are computed
+	 * by repeated squaring. Here all the products and sums are done with 128 bits.
+	 */
+	private void advance(long stepsHigh, long stepsLow) {
+		long jumpMultiplierHigh = 0;
+		long jumpMultiplierLow = 1;
+		long jumpIncrementHigh = 0;
+		long jumpIncrementLow = 0;
+		long multiplierHigh = MULTIPLIER_HIGH;
+		long multiplierLow = MULTIPLIER_LOW;
+		long increment1High = incrementHigh;
+		long increment1Low = incrementLow;
+		for (int bit = 0; bit < 128; bit++) {
+			final long bits = bit < 64 ? stepsLow >>> bit : stepsHigh >>> (bit - 64);
+			if ((bits & 1) == 1) {
+				// jumpMultiplier = jumpMultiplier * multiplier
+				final long newMultiplierLow = jumpMultiplierLow * multiplierLow;
+				jumpMultiplierHigh = unsignedMultiplyHigh(jumpMultiplierLow, multiplierLow)
+						+ jumpMultiplierHigh * multiplierLow + jumpMultiplierLow * multiplierHigh;
+				jumpMultiplierLow = newMultiplierLow;
+				// jumpIncrement = jumpIncrement * multiplier + increment
+				final long productLow = jumpIncrementLow * multiplierLow;
+				final long productHigh = unsignedMultiplyHigh(jumpIncrementLow, multiplierLow)
+						+ jumpIncrementHigh * multiplierLow + jumpIncrementLow * multiplierHigh;
+				jumpIncrementLow = productLow + increment1Low;
+				jumpIncrementHigh = productHigh + increment1High + (Long.compareUnsigned(jumpIncrementLow, productLow) < 0 ? 1 : 0);
+			}
+			// increment = (multiplier + 1) * increment
+			final long multiplierPlusOneLow = multiplierLow + 1;
+			final long multiplierPlusOneHigh = multiplierHigh + (multiplierPlusOneLow == 0 ? 1 : 0);
+			final long newIncrementLow = multiplierPlusOneLow * increment1Low;
+			increment1High = unsignedMultiplyHigh(multiplierPlusOneLow, increment1Low)
+					+ multiplierPlusOneHigh * increment1Low + multiplierPlusOneLow * increment1High;
+			increment1Low = newIncrementLow;
+			// multiplier = multiplier * multiplier
+			final long squareLow = multiplierLow * multiplierLow;
+			multiplierHigh = unsignedMultiplyHigh(multiplierLow, multiplierLow) + 2 * multiplierHigh * multiplierLow;
+			multiplierLow = squareLow;
+		}
+		// state = jumpMultiplier * state + jumpIncrement
+		final long productLow = jumpMultiplierLow * stateLow;
+		final long productHigh = unsignedMultiplyHigh(jumpMultiplierLow, stateLow) + jumpMultiplierHigh * stateLow
+				+ jumpMultiplierLow * stateHigh;
+		stateLow = productLow + jumpIncrementLow;
+		stateHigh = productHigh + jumpIncrementHigh + (Long.compareUnsigned(stateLow, productLow) < 0 ? 1 : 0);
+	}
+
+	/**
+	 * It moves the generator ahead of numberOfSteps numbers, without generating them. The cost is
+	 * O(log(numberOfSteps)).
+	 *
+	 * @param numberOfSteps the number of numbers to skip, non negative
+	 */
+	public void jumpAhead(long numberOfSteps) {
+		if (numberOfSteps < 0) {
+			throw new IllegalArgumentException("Error: the number of steps must be non negative!");
+		}
+		advance(0, numberOfSteps);
+	}
+
+	/*
+	 * It moves the generator ahead of 2^exponent steps, for exponent smaller than 128.
+	 */
+	private void advanceByPowerOfTwo(int exponent) {
+		if (exponent >= 64) {
+			advance(1L << (exponent - 64), 0);
+		} else {
+			advance(0, 1L << exponent);
+		}
+	}
+
+	@Override
+	public void jump() {
+		advanceByPowerOfTwo(JUMP_EXPONENTS[level + 1]);
+	}
+
+	@Override
+	public PCG64Generator split() {
+		// the returned generator must still have a jump() and a split() smaller than the ones of this generator
+		if (level + 2 >= JUMP_EXPONENTS.length) {
+			throw new IllegalStateException("Error: too many nested calls of split()!");
+		}
+		final PCG64Generator copy = new PCG64Generator(stateHigh, stateLow, incrementHigh, incrementLow);
+		copy.level = level + 1;
+		advanceByPowerOfTwo(JUMP_EXPONENTS[level]);
+		return copy;
+	}
+}
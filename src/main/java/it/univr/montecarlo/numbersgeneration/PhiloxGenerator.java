@@ -0,0 +1,222 @@
+package it.univr.montecarlo.numbersgeneration;
+
+/**
+ * This class implements the counter-based generator Philox4x32-10 by Salmon, Moraes, Dror and Shaw. Differently
+ * from the other generators, there is no state which is updated at every step: the numbers are obtained by
+ * applying ten rounds of a bijection, which depends on a key, to a counter of 128 bits. The n-th number of a
+ * sequence is therefore computed directly from n, in O(1) operations.
+ *
+ * Here the key is the seed, the 64 most significant bits of the counter are the index of the stream and the
+ * 64 least significant bits are the position in the stream. Every evaluation of the bijection gives four
+ * integers of 32 bits, i.e., two longs. In this way, for example, the stream of a given path of a Monte Carlo
+ * simulation can be identified by the index of the path, and the numbers used at a given time step by the
+ * position: the results are then reproducible independently of how the paths are distributed among parallel
+ * workers, see getUniform(long, long, long).
+ *
+ * The index of the stream and the position together give a number of 128 bits, which split() and jump() move
+ * ahead: split() of 2^112 numbers, i.e., 2^48 streams, and jump() of 2^96 numbers, i.e., 2^32 streams. The
+ * generator returned by split() moves ahead of 2^96 numbers when split and of 2^80 when jumped, and so on, dividing
+ * the lengths by 2^16 at every level: a generator can therefore be split or jumped 2^16 times without leaving the
+ * streams of its parent, and split() can be called recursively four times.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class PhiloxGenerator implements PseudoRandomNumberGenerator {
+
+	private static final long serialVersionUID = 1L;
+
+	// the constants of the rounds and of the update of the key
+	private static final long MULTIPLIER_0 = 0xD2511F53L;
+	private static final long MULTIPLIER_1 = 0xCD9E8D57L;
+	private static final int KEY_INCREMENT_0 = 0x9E3779B9;
+	private static final int KEY_INCREMENT_1 = 0xBB67AE85;
+	private static final int NUMBER_OF_ROUNDS = 10;
+
+	private final long seed;
+	private long streamIndex;
+	// the number of longs already generated in the stream
+	private long position;
+
+	// the two longs given by the last evaluation of the bijection, and the position of the first one
+	private final long[] block = new long[2];
+	private long blockPosition = -1;
+
+	// the exponents k of the lengths 2^k of the jumps: split() uses the one of level, jump() the next one
+	private static final int[] JUMP_EXPONENTS = { 112, 96, 80, 64, 48, 32 };
+
+	// the number of nested calls of split() which gave this generator
+	private int level;
+
+	/**
+	 * It constructs a generator with the given seed, for the stream with index zero.
+	 *
+	 * @param seed the seed, i.e., the key of the bijection
+	 */
+	public PhiloxGenerator(long seed) {
+		this(seed, 0);
+	}
+
+	/**
+	 * It constructs a generator with the given seed, for the stream with the given index.
+	 *
+	 * @param seed the seed, i.e., the key of the bijection
+	 * @param streamIndex the index of the stream, i.e., the 64 most significant bits of the counter
+	 */
+	public PhiloxGenerator(long seed, long streamIndex) {
+		this.seed = seed;
+		this.streamIndex = streamIndex;
+	}
+
+	/**
+	 * It computes the ten rounds of Philox4x32 for the given key and counter, and writes the resulting 128 bits
+	 * in the two longs of output.
+	 *
+	 * @param key the key of 64 bits
+	 * @param counterHigh the 64 most significant bits of the counter
+	 * @param counterLow the 64 least significant bits of the counter
+	 * @param output array of length (at least) two, where the result is written
+	 */
+	public static void generateBlock(long key, long counterHigh, long counterLow, long[] output) {
+		int counter0 = (int) counterLow;
+		int counter1 = (int) (counterLow >>> 32);
+		int counter2 = (int) counterHigh;
+		int counter3 = (int) (counterHigh >>> 32);
+		int key0 = (int) key;
+		int key1 = (int) (key >>> 32);
+		for (int round = 0; round < NUMBER_OF_ROUNDS; round++) {
+			// products of 32 bits unsigned integers, with 64 bits results
+			final long product0 = MULTIPLIER_0 * (counter0 & 0xFFFFFFFFL);
+			final long product1 = MULTIPLIER_1 * (counter2 & 0xFFFFFFFFL);
+			final int newCounter0 = (int) (product1 >>> 32) ^ counter1 ^ key0;
+			final int newCounter2 = (int) (product0 >>> 32) ^ counter3 ^ key1;
+			counter1 = (int) product1;
+			counter3 = (int) product0;
+			counter0 = newCounter0;
+			counter2 = newCounter2;
+			key0 += KEY_INCREMENT_0;
+			key1 += KEY_INCREMENT_1;
+		}
+		output[0] = (counter0 & 0xFFFFFFFFL) | ((long) counter1 << 32);
+		output[1] = (counter2 & 0xFFFFFFFFL) | ((long) counter3 << 32);
+	}
+
+	/**
+	 * It returns the number uniformly distributed in (0,1) which a generator with the given seed and stream index
+	 * returns at the given position. No state is involved, and only a temporary array of two longs is allocated for
+	 * the output of the bijection: for example, the number used for the path with index i at the time step with
+	 * index j can be computed as getUniform(seed, i, j). When many numbers are needed, generateBlock with an array
+	 * given by the user allocates nothing.
+	 *
+	 * @param seed the seed
+	 * @param streamIndex the index of the stream
+	 * @param position the position of the number in the stream
+	 * @return the number uniformly distributed in (0,1)
+	 */
+	public static double getUniform(long seed, long streamIndex, long position) {
+		final long[] output = new long[2];
+		generateBlock(seed, streamIndex, position >>> 1, output);
+		return PseudoRandomNumberGenerator.toUniform(output[(int) (position & 1)]);
+	}
+
+	/**
+	 * It returns the next 64 random bits.
+	 *
+	 * @return the next pseudo random long
+	 */
+	public long nextLong() {
+		final long firstPositionOfBlock = position & ~1L;
+		if (blockPosition != firstPositionOfBlock) {
+			generateBlock(seed, streamIndex, position >>> 1, block);
+			blockPosition = firstPositionOfBlock;
+		}
+		return block[(int) (position++ & 1)];
+	}
+
+	@Override
+	public double nextDouble() {
+		return PseudoRandomNumberGenerator.toUniform(nextLong());
+	}
+
+	/**
+	 * It fills the array given in input with the next uniform numbers in (0,1). Every evaluation of the bijection
+	 * gives here two numbers, which are directly written in the array.
+	 *
+	 * @param out the array to fill: its length is the number of uniform numbers we want
+	 */
+	@Override
+	public void nextDoubles(double[] out) {
+		int index = 0;
+		// if we are in the middle of a block, we first use its second long
+		if ((position & 1) == 1 && out.length > 0) {
+			out[index++] = nextDouble();
+		}
+		for (; index + 1 < out.length; index += 2) {
+			generateBlock(seed, streamIndex, position >>> 1, block);
+			blockPosition = position;
+			position += 2;
+			out[index] = PseudoRandomNumberGenerator.toUniform(block[0]);
+			out[index + 1] = PseudoRandomNumberGenerator.toUniform(block[1]);
+		}
+		if (index < out.length) {
+			out[index] = nextDouble();
+		}
+	}
+
+	/**
+	 * It moves the generator ahead of numberOfSteps numbers, without generating them. The cost does not depend
+	 * on numberOfSteps, since we just have to move the counter.
+	 *
+	 * @param numberOfSteps the number of numbers to skip, non negative
+	 */
+	public void jumpAhead(long numberOfSteps) {
+		if (numberOfSteps < 0) {
+			throw new IllegalArgumentException("Error: the number of steps must be non negative!");
+		}
+		position += numberOfSteps;
+	}
+
+	/*
+	 * It moves the number of 128 bits given by the index of the stream and the position ahead of 2^exponent.
+	 */
+	private void advanceByPowerOfTwo(int exponent) {
+		if (exponent >= 64) {
+			streamIndex += 1L << (exponent - 64);
+		} else {
+			final long newPosition = position + (1L << exponent);
+			if (Long.compareUnsigned(newPosition, position) < 0) {
+				streamIndex++;
+			}
+			position = newPosition;
+		}
+		// the last block may belong to another stream
+		blockPosition = -1;
+	}
+
+	@Override
+	public void jump() {
+		advanceByPowerOfTwo(JUMP_EXPONENTS[level + 1]);
+	}
+
+	@Override
+	public PhiloxGenerator split() {
+		// the returned generator must still have a jump() and a split() smaller than the ones of this generator
+		if (level + 2 >= JUMP_EXPONENTS.length) {
+			throw new IllegalStateException("Error: too many nested calls of split()!");
+		}
+		final PhiloxGenerator copy = new PhiloxGenerator(seed, streamIndex);
+		copy.position = position;
+		copy.level = level + 1;
+		advanceByPowerOfTwo(JUMP_EXPONENTS[level]);
+		return copy;
+	}
+
+	/**
+	 * It returns the index of the stream the generator is currently in
+	 *
+	 * @return the index of the stream
+	 */
+	public long getStreamIndex() {
+		return streamIndex;
+	}
+}
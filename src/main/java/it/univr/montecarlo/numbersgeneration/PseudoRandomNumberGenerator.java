@@ -0,0 +1,100 @@
+package it.univr.montecarlo.numbersgeneration;
+
+import net.finmath.functions.NormalDistribution;
+import net.finmath.randomnumbers.RandomNumberGenerator1D;
+
+/**
+ * This interface represents a generator of pseudo random numbers uniformly distributed in (0,1), which can
+ * fill arrays given by the user, produce standard normal numbers, and be divided into independent streams
+ * to be used by parallel workers.
+ *
+ * It extends the interface RandomNumberGenerator1D of the Finmath library, so that our generators can be
+ * used wherever the Finmath library accepts a one-dimensional random number generator, like for example
+ * its MersenneTwister.
+ *
+ * The methods that every implementation must provide are nextDouble(), jump() and split(): the ones filling
+ * arrays and the ones for normal numbers are default methods, which can be overridden if a faster
+ * implementation is available.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public interface PseudoRandomNumberGenerator extends RandomNumberGenerator1D {
+
+	/**
+	 * It returns the next pseudo random number uniformly distributed in (0,1). Note that 0 and 1 are excluded,
+	 * so that the number can be given to the inverse of a cumulative distribution function.
+	 *
+	 * @return the next pseudo random number uniformly distributed in (0,1)
+	 */
+	@Override
+	double nextDouble();
+
+	/**
+	 * It moves the generator ahead of a big number of steps, which depends on the implementation and on how many
+	 * nested calls of split() gave the generator. In this way, the numbers generated after calling the method do
+	 * not overlap with the ones that would have been generated before calling it, unless the latter are many more
+	 * than the length of the jump.
+	 */
+	void jump();
+
+	/**
+	 * It returns a new generator, which starts from the current state of this one, and then makes this one move
+	 * ahead of a number of steps bigger than the one of jump(). The jumps of the returned generator, and the ones
+	 * of its own split(), are smaller than the ones of this generator by a fixed factor: as long as it is jumped
+	 * or split less times than this factor, all its numbers stay in the part of the sequence that this generator
+	 * has skipped. The returned generator and this one produce therefore disjoint streams of numbers, that can be
+	 * given to different parallel workers, also when split() is called recursively as in a fork/join computation.
+	 * The number of nested calls of split() is limited by the implementation.
+	 *
+	 * @return a new generator, whose stream is disjoint from the one of this generator
+	 * @throws IllegalStateException if this generator has been obtained by the maximum number of nested calls
+	 * 		   of split()
+	 */
+	PseudoRandomNumberGenerator split();
+
+	/**
+	 * It fills the array given in input with the next uniform numbers in (0,1). No object is allocated.
+	 *
+	 * @param out the array to fill: its length is the number of uniform numbers we want
+	 */
+	default void nextDoubles(double[] out) {
+		for (int index = 0; index < out.length; index++) {
+			out[index] = nextDouble();
+		}
+	}
+
+	/**
+	 * It returns the next standard normal number, obtained by applying the inverse of the normal cumulative
+	 * distribution function to nextDouble().
+	 *
+	 * @return the next pseudo random number with standard normal distribution
+	 */
+	default double nextGaussian() {
+		return NormalDistribution.inverseCumulativeDistribution(nextDouble());
+	}
+
+	/**
+	 * It fills the array given in input with the next standard normal numbers, see nextGaussian(). No object
+	 * is allocated.
+	 *
+	 * @param out the array to fill: its length is the number of normal numbers we want
+	 */
+	default void nextGaussians(double[] out) {
+		nextDoubles(out);
+		for (int index = 0; index < out.length; index++) {
+			out[index] = NormalDistribution.inverseCumulativeDistribution(out[index]);
+		}
+	}
+
+	/**
+	 * It transforms 64 random bits into a number uniformly distributed in (0,1): the 53 most significant bits
+	 * are taken, since a double has 53 bits of precision, and 1/2 is added in order to exclude 0.
+	 *
+	 * @param randomBits a long whose 64 bits are random
+	 * @return a number uniformly distributed in (0,1)
+	 */
+	static double toUniform(long randomBits) {
+		return ((randomBits >>> 11) + 0.5) * 0x1.0p-53;
+	}
+}
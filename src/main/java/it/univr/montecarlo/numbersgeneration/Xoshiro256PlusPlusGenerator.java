@@ -0,0 +1,141 @@
+package it.univr.montecarlo.numbersgeneration;
+
+/**
+ * This class implements the xoshiro256++ generator by Blackman and Vigna. The state is given by four longs
+ * s0, s1, s2, s3, which are updated at every step only by xor, shifts and rotations, and the output is
+ * rotl(s0 + s3, 23) + s0. The period is 2^256 - 1.
+ *
+ * The four longs of the state are obtained from the seed given by the user by the SplitMix64 generator, as
+ * suggested by the authors. The generator is moved ahead of 2^k steps by a polynomial: the ones for 2^128 and
+ * 2^192 steps are given by the authors, the others are computed in the same way from the characteristic
+ * polynomial of the generator. The method split() moves the generator ahead of 2^192 steps and jump() of 2^160
+ * steps. The generator returned by split() moves ahead of 2^160 steps when split and of 2^128 when jumped, and so
+ * on, dividing the lengths by 2^32 at every level: a generator can therefore be split or jumped 2^32 times
+ * without leaving the part of the sequence of its parent, and split() can be called recursively four times.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class Xoshiro256PlusPlusGenerator implements PseudoRandomNumberGenerator {
+
+	private static final long serialVersionUID = 1L;
+
+	// coefficients of the polynomials which move the generator ahead of 2^192, 2^160, 2^128, 2^96, 2^64 and 2^32 steps
+	private static final long[][] JUMPS = {
+			{ 0x76e15d3efefdcbbfL, 0xc5004e441c522fb3L, 0x77710069854ee241L, 0x39109bb02acbe635L },
+			{ 0xc04b4f9c5d26c200L, 0x69e6e6e431a2d40bL, 0x4823b45b89dc689cL, 0xf567382197055bf0L },
+			{ 0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL, 0x39abdc4529b1661cL },
+			{ 0x148c356c3114b7a9L, 0xcdb45d7def42c317L, 0xb27c05962ea56a13L, 0x31eebb6c82a9615fL },
+			{ 0xb13c16e8096f0754L, 0xb60d6c5b8c78f106L, 0x34faff184785c20aL, 0x12e4a2fbfc19bff9L },
+			{ 0x58120d583c112f69L, 0x7d8d0632bd08e6acL, 0x214fafc0fbdbc208L, 0x0e055d3520fdb9d7L } };
+
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	// the number of nested calls of split() which gave this generator: split() uses JUMPS[level], jump() the next one
+	private int level;
+
+	/**
+	 * It constructs a generator whose state is given by the SplitMix64 generator with the given seed.
+	 *
+	 * @param seed the seed
+	 */
+	public Xoshiro256PlusPlusGenerator(long seed) {
+		long splitMixState = seed;
+		splitMixState += 0x9e3779b97f4a7c15L;
+		s0 = splitMix(splitMixState);
+		splitMixState += 0x9e3779b97f4a7c15L;
+		s1 = splitMix(splitMixState);
+		splitMixState += 0x9e3779b97f4a7c15L;
+		s2 = splitMix(splitMixState);
+		splitMixState += 0x9e3779b97f4a7c15L;
+		s3 = splitMix(splitMixState);
+	}
+
+	/*
+	 * It constructs a generator with the given state, which must not be all zero. It is package-private, so that
+	 * the outputs can be compared with the ones of the reference implementation for a given state.
+	 */
+	Xoshiro256PlusPlusGenerator(long s0, long s1, long s2, long s3) {
+		this.s0 = s0;
+		this.s1 = s1;
+		this.s2 = s2;
+		this.s3 = s3;
+	}
+
+	/*
+	 * The output function of SplitMix64, used only to initialize the state.
+	 */
+	private static long splitMix(long state) {
+		long z = state;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * It returns the next 64 random bits.
+	 *
+	 * @return the next pseudo random long
+	 */
+	public long nextLong() {
+		final long result = Long.rotateLeft(s0 + s3, 23) + s0;
+		final long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	@Override
+	public double nextDouble() {
+		return PseudoRandomNumberGenerator.toUniform(nextLong());
+	}
+
+	@Override
+	public void jump() {
+		jump(JUMPS[level + 1]);
+	}
+
+	/*
+	 * It moves the generator ahead of the number of steps given by the polynomial with the given coefficients.
+	 */
+	private void jump(long[] coefficients) {
+		long t0 = 0;
+		long t1 = 0;
+		long t2 = 0;
+		long t3 = 0;
+		for (long jumpCoefficient : coefficients) {
+			for (int bit = 0; bit < 64; bit++) {
+				if ((jumpCoefficient & (1L << bit)) != 0) {
+					t0 ^= s0;
+					t1 ^= s1;
+					t2 ^= s2;
+					t3 ^= s3;
+				}
+				nextLong();
+			}
+		}
+		s0 = t0;
+		s1 = t1;
+		s2 = t2;
+		s3 = t3;
+	}
+
+	@Override
+	public Xoshiro256PlusPlusGenerator split() {
+		// the returned generator must still have a jump() and a split() smaller than the ones of this generator
+		if (level + 2 >= JUMPS.length) {
+			throw new IllegalStateException("Error: too many nested calls of split()!");
+		}
+		final Xoshiro256PlusPlusGenerator copy = new Xoshiro256PlusPlusGenerator(s0, s1, s2, s3);
+		copy.level = level + 1;
+		jump(JUMPS[level]);
+		return copy;
+	}
+}
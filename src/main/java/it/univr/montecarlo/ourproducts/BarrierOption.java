@@ -118,15 +118,7 @@ public class BarrierOption extends AbstractAssetMonteCarloProduct {
 		RandomVariable values = underlyingAtMaturity.sub(strike).floor(0.0);
 
 		values = values.mult(insideBarriersAtAllTimes);
-		// Discounting...
-		final RandomVariable numeraireAtMaturity	= model.getNumeraire(maturity);
-		final RandomVariable monteCarloWeights		= model.getMonteCarloWeights(maturity);
-		values = values.div(numeraireAtMaturity).mult(monteCarloWeights);
-
-		// ...to evaluation time.
-		final RandomVariable	numeraireAtEvalTime			= model.getNumeraire(evaluationTime);
-		final RandomVariable	monteCarloWeightsAtEvalTime	= model.getMonteCarloWeights(evaluationTime);
-		values = values.mult(numeraireAtEvalTime).div(monteCarloWeightsAtEvalTime);
+		values = MonteCarloProductsDiscounting.discountToEvaluationTime(values, maturity, evaluationTime, model);
 
 		return values;
 
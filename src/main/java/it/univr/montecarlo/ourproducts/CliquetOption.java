@@ -126,15 +126,7 @@ public class CliquetOption extends AbstractAssetMonteCarloProduct {
 		RandomVariable values = sumOfTruncations.floor(globalFloor).cap(globalCap);
 
 		double maturity = monitoringTimes.getTime(monitoringTimes.getNumberOfTimeSteps());
-		// Discounting...
-		final RandomVariable numeraireAtMaturity	= model.getNumeraire(maturity);
-		final RandomVariable monteCarloWeights		= model.getMonteCarloWeights(maturity);
-		values = values.div(numeraireAtMaturity).mult(monteCarloWeights);
-
-		// ...to evaluation time.
-		final RandomVariable	numeraireAtEvalTime			= model.getNumeraire(evaluationTime);
-		final RandomVariable	monteCarloWeightsAtEvalTime	= model.getMonteCarloWeights(evaluationTime);
-		values = values.mult(numeraireAtEvalTime).div(monteCarloWeightsAtEvalTime);
+		values = MonteCarloProductsDiscounting.discountToEvaluationTime(values, maturity, evaluationTime, model);
 
 		return values;
 	}
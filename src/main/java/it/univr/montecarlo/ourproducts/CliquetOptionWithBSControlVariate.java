@@ -203,15 +203,7 @@ public class CliquetOptionWithBSControlVariate extends AbstractAssetMonteCarloPr
 		//at this point, we have computed the payoff with the control variate, and we just have to discount
 		
 		double maturity = monitoringTimes.getTime(monitoringTimes.getNumberOfTimeSteps());
-		// Discounting...
-		final RandomVariable numeraireAtMaturity	= model.getNumeraire(maturity);
-		final RandomVariable monteCarloWeights		= model.getMonteCarloWeights(maturity);
-		values = values.div(numeraireAtMaturity).mult(monteCarloWeights);
-
-		// ...to evaluation time.
-		final RandomVariable	numeraireAtEvalTime			= model.getNumeraire(evaluationTime);
-		final RandomVariable	monteCarloWeightsAtEvalTime	= model.getMonteCarloWeights(evaluationTime);
-		values = values.mult(numeraireAtEvalTime).div(monteCarloWeightsAtEvalTime);
+		values = MonteCarloProductsDiscounting.discountToEvaluationTime(values, maturity, evaluationTime, model);
 
 		return values;
 	}
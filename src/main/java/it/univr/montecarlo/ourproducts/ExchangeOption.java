@@ -1,12 +1,20 @@
 package it.univr.montecarlo.ourproducts;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import it.univr.analyticformulas.OurAnalyticFormulas;
 import net.finmath.exception.CalculationException;
 import net.finmath.montecarlo.assetderivativevaluation.AssetModelMonteCarloSimulationModel;
+import net.finmath.montecarlo.assetderivativevaluation.MonteCarloMultiAssetBlackScholesModel;
 import net.finmath.montecarlo.assetderivativevaluation.products.AbstractAssetMonteCarloProduct;
 import net.finmath.stochastic.RandomVariable;
 
 /**
- * This class represents an exchange option, involving therefore a two-dimensional process
+ * This class represents an exchange option, involving therefore a two-dimensional process.
+ * By default, the option is valued by Monte Carlo. When the underlying is a MonteCarloMultiAssetBlackScholesModel,
+ * it is also possible to choose the analytic valuation via the Margrabe formula: in this case no path is simulated
+ * if the evaluation time is zero, and the Greeks can be computed analytically as well.
  *
  * @author Andrea Mazzon
  *
@@ -16,6 +24,7 @@ public class ExchangeOption extends AbstractAssetMonteCarloProduct {
 	private final double maturity;
 	private final int firstAssetIndex;
 	private final int secondAssetIndex;
+	private final boolean isAnalyticValuation;
 
 	/**
 	 * Construct a product representing an Exchange option on two assets S^1, S^2:
@@ -27,9 +36,25 @@ public class ExchangeOption extends AbstractAssetMonteCarloProduct {
 	 * @param secondAssetIndex Identifier for the second asset
 	 */
 	public ExchangeOption(double maturity, int firstAssetIndex, int secondAssetIndex) {
+		this(maturity, firstAssetIndex, secondAssetIndex, false);
+	}
+
+	/**
+	 * Construct a product representing an Exchange option on two assets S^1, S^2:
+	 * S^1 is the asset with index firstAssetIndex from the model and S^2 with index
+	 * secondAssetIndex
+	 *
+	 * @param maturity            The maturity T in the option payoff max(S(T)-K,0)
+	 * @param firstAssetIndex     Identifier for the first asset
+	 * @param secondAssetIndex    Identifier for the second asset
+	 * @param isAnalyticValuation If true, the option is valued by the Margrabe formula. The model given in getValue
+	 *                            must then be a MonteCarloMultiAssetBlackScholesModel
+	 */
+	public ExchangeOption(double maturity, int firstAssetIndex, int secondAssetIndex, boolean isAnalyticValuation) {
 		this.maturity = maturity;
 		this.firstAssetIndex = firstAssetIndex;
 		this.secondAssetIndex = secondAssetIndex;
+		this.isAnalyticValuation = isAnalyticValuation;
 	}
 
 	// overloaded constructor: firstAssetIndex = 0, secondAssetIndex = 1
@@ -43,9 +68,24 @@ public class ExchangeOption extends AbstractAssetMonteCarloProduct {
 		this(maturity, 0, 1);// note this use of this
 	}
 
+	/**
+	 * Construct a product representing an Exchange option on two assets S^1, S^2:
+	 * identified by indices 0 and 1, respectively
+	 *
+	 * @param maturity            The maturity T in the option payoff max(S(T)-K,0)
+	 * @param isAnalyticValuation If true, the option is valued by the Margrabe formula. The model given in getValue
+	 *                            must then be a MonteCarloMultiAssetBlackScholesModel
+	 */
+	public ExchangeOption(double maturity, boolean isAnalyticValuation) {
+		this(maturity, 0, 1, isAnalyticValuation);
+	}
+
 	@Override
 	public RandomVariable getValue(double evaluationTime, AssetModelMonteCarloSimulationModel model)
 			throws CalculationException {
+		if (isAnalyticValuation) {
+			return getAnalyticValue(evaluationTime, getBlackScholesModel(model));
+		}
 		// Get S^1(T), S^2(T)
 		final RandomVariable firstAssetAtMaturity = model.getAssetValue(maturity, firstAssetIndex);
 		final RandomVariable secondAssetAtMaturity = model.getAssetValue(maturity, secondAssetIndex);
@@ -53,17 +93,127 @@ public class ExchangeOption extends AbstractAssetMonteCarloProduct {
 		// Payoff of the exchange option
 		RandomVariable values = firstAssetAtMaturity.sub(secondAssetAtMaturity).floor(0.0);
 
-		// Discounting...
-		final RandomVariable numeraireAtMaturity = model.getNumeraire(maturity);
-		final RandomVariable monteCarloWeights = model.getMonteCarloWeights(maturity);
-		values = values.div(numeraireAtMaturity).mult(monteCarloWeights);
-
-		// ...to evaluation time.
-		final RandomVariable numeraireAtEvalTime = model.getNumeraire(evaluationTime);
-		final RandomVariable monteCarloProbabilitiesAtEvalTime = model.getMonteCarloWeights(evaluationTime);
-		values = values.mult(numeraireAtEvalTime).div(monteCarloProbabilitiesAtEvalTime);
+		values = MonteCarloProductsDiscounting.discountToEvaluationTime(values, maturity, evaluationTime, model);
 
 		return values;
 	}
 
+	/**
+	 * It returns the maturity of the option
+	 *
+	 * @return the maturity of the option
+	 */
+	public double getMaturity() {
+		return maturity;
+	}
+
+	/**
+	 * It returns the index identifying the first asset, S^1 in the payoff max(S^1(T)-S^2(T),0)
+	 *
+	 * @return the index of the first asset
+	 */
+	public int getFirstAssetIndex() {
+		return firstAssetIndex;
+	}
+
+	/**
+	 * It returns the index identifying the second asset, S^2 in the payoff max(S^1(T)-S^2(T),0)
+	 *
+	 * @return the index of the second asset
+	 */
+	public int getSecondAssetIndex() {
+		return secondAssetIndex;
+	}
+
+	/*
+	 * The analytic valuation is only possible under Black-Scholes dynamics: here we check that the model is the
+	 * one of the Finmath library for many correlated geometric Brownian motions, and we downcast it.
+	 */
+	private MonteCarloMultiAssetBlackScholesModel getBlackScholesModel(AssetModelMonteCarloSimulationModel model) {
+		if (!(model instanceof MonteCarloMultiAssetBlackScholesModel)) {
+			throw new IllegalArgumentException("Error: the analytic valuation requires a MonteCarloMultiAssetBlackScholesModel!");
+		}
+		return (MonteCarloMultiAssetBlackScholesModel) model;
+	}
+
+	/*
+	 * It returns the initial value of the asset with given index. We do not call getAssetValue(0.0, assetIndex), since
+	 * this would trigger the simulation of all the paths: we take instead the initial state of the model (which is the
+	 * logarithm of the initial value) and we apply the state space transform (the exponential) to it.
+	 */
+	private double getInitialValue(MonteCarloMultiAssetBlackScholesModel model, int assetIndex) {
+		return model.applyStateSpaceTransform(null, 0, assetIndex, model.getInitialState(null)[assetIndex]).doubleValue();
+	}
+
+	/*
+	 * The Margrabe value of the option. At evaluation time zero this is a constant and no path is simulated, otherwise
+	 * the formula is applied to the simulated values of the two assets at evaluation time, with time to maturity
+	 * T - evaluationTime.
+	 */
+	private RandomVariable getAnalyticValue(double evaluationTime, MonteCarloMultiAssetBlackScholesModel model)
+			throws CalculationException {
+		final double firstVolatility = model.getVolatilities()[firstAssetIndex];
+		final double secondVolatility = model.getVolatilities()[secondAssetIndex];
+		final double correlation = model.getCorrelations()[firstAssetIndex][secondAssetIndex];
+		final double timeToMaturity = maturity - evaluationTime;
+
+		if (evaluationTime == 0.0) {
+			return model.getRandomVariableForConstant(OurAnalyticFormulas.margrabeExchangeOptionValue(
+					getInitialValue(model, firstAssetIndex), getInitialValue(model, secondAssetIndex),
+					firstVolatility, secondVolatility, correlation, timeToMaturity));
+		}
+		final RandomVariable firstAssetAtEvaluationTime = model.getAssetValue(evaluationTime, firstAssetIndex);
+		final RandomVariable secondAssetAtEvaluationTime = model.getAssetValue(evaluationTime, secondAssetIndex);
+		return firstAssetAtEvaluationTime.apply((firstValue, secondValue) -> OurAnalyticFormulas.margrabeExchangeOptionValue(
+				firstValue, secondValue, firstVolatility, secondVolatility, correlation, timeToMaturity), secondAssetAtEvaluationTime);
+	}
+
+	/**
+	 * It returns the value and the Greeks at time zero of the option, computed analytically from the Margrabe formula.
+	 * No path of the model is simulated. The keys of the returned map are "value", "delta1", "delta2", "gamma11",
+	 * "gamma22", "gamma12", "vega1", "vega2", "correlationSensitivity" and "theta", where 1 and 2 refer to S^1 and S^2.
+	 *
+	 * @param model the model, which must be a MonteCarloMultiAssetBlackScholesModel
+	 * @return a map with the value and the Greeks of the option
+	 */
+	public Map<String, Double> getAnalyticGreeks(AssetModelMonteCarloSimulationModel model) {
+		final MonteCarloMultiAssetBlackScholesModel blackScholesModel = getBlackScholesModel(model);
+		final double firstInitialValue = getInitialValue(blackScholesModel, firstAssetIndex);
+		final double secondInitialValue = getInitialValue(blackScholesModel, secondAssetIndex);
+		final double firstVolatility = blackScholesModel.getVolatilities()[firstAssetIndex];
+		final double secondVolatility = blackScholesModel.getVolatilities()[secondAssetIndex];
+		final double correlation = blackScholesModel.getCorrelations()[firstAssetIndex][secondAssetIndex];
+
+		final double[] deltas = OurAnalyticFormulas.margrabeExchangeOptionDeltas(firstInitialValue, secondInitialValue,
+				firstVolatility, secondVolatility, correlation, maturity);
+		final double[][] gammas = OurAnalyticFormulas.margrabeExchangeOptionGammas(firstInitialValue, secondInitialValue,
+				firstVolatility, secondVolatility, correlation, maturity);
+		final double[] vegas = OurAnalyticFormulas.margrabeExchangeOptionVegas(firstInitialValue, secondInitialValue,
+				firstVolatility, secondVolatility, correlation, maturity);
+
+		final Map<String, Double> greeks = new HashMap<String, Double>();
+		greeks.put("value", OurAnalyticFormulas.margrabeExchangeOptionValue(firstInitialValue, secondInitialValue,
+				firstVolatility, secondVolatility, correlation, maturity));
+		greeks.put("delta1", deltas[0]);
+		greeks.put("delta2", deltas[1]);
+		greeks.put("gamma11", gammas[0][0]);
+		greeks.put("gamma22", gammas[1][1]);
+		greeks.put("gamma12", gammas[0][1]);
+		greeks.put("vega1", vegas[0]);
+		greeks.put("vega2", vegas[1]);
+		greeks.put("correlationSensitivity", vegas[2]);
+		greeks.put("theta", OurAnalyticFormulas.margrabeExchangeOptionTheta(firstInitialValue, secondInitialValue,
+				firstVolatility, secondVolatility, correlation, maturity));
+		return greeks;
+	}
+
+	/**
+	 * It tells if the option is valued analytically via the Margrabe formula
+	 *
+	 * @return true if the option is valued analytically, false if it is valued by Monte Carlo
+	 */
+	public boolean isAnalyticValuation() {
+		return isAnalyticValuation;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+package it.univr.montecarlo.ourproducts;
+
+import java.util.stream.IntStream;
+
+import net.finmath.montecarlo.BrownianMotion;
+
+/**
+ * This class computes the Monte Carlo prices of an exchange option for a whole grid of correlations between
+ * the two underlyings, which are supposed to follow a two-dimensional Black-Scholes model, by using only one
+ * simulation of the stochastic driver.
+ *
+ * In particular, we take a two-dimensional Brownian motion B=(B^1,B^2) with independent components and, for
+ * every correlation rho, we get the correlated Brownian motion (W^1, W^2) as
+ * W^1 = B^1,
+ * W^2 = rho B^1 + sqrt(1-rho^2)B^2.
+ * Since the payoff of the option only depends on the values of the assets at maturity, and these are given
+ * by the exact solution
+ * S^i(T) = S^i(0)exp((r-sigma_i^2/2)T + sigma_i W^i(T)),
+ * we only need B^1(T) and B^2(T). These two arrays are computed once from the increments of the Brownian motion
+ * and then linearly combined for every correlation. The prices for different correlations are computed in
+ * parallel.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class ExchangeOptionCorrelationSweep {
+
+	private final BrownianMotion brownianMotion;
+	private final double[] initialPrices;
+	private final double riskFreeRate;
+	private final double[] volatilities;
+
+	/**
+	 * It constructs an object which computes the prices of exchange options under a two-dimensional
+	 * Black-Scholes model for different correlations.
+	 *
+	 * @param brownianMotion a Brownian motion with (at least) two independent factors: the first two are used
+	 * @param initialPrices the initial values of the two assets
+	 * @param riskFreeRate the risk free rate r
+	 * @param volatilities the log-volatilities of the two assets
+	 */
+	public ExchangeOptionCorrelationSweep(BrownianMotion brownianMotion, double[] initialPrices, double riskFreeRate,
+			double[] volatilities) {
+		if (brownianMotion.getNumberOfFactors() < 2) {
+			throw new IllegalArgumentException("Error: the Brownian motion must have at least two factors!");
+		}
+		this.brownianMotion = brownianMotion;
+		this.initialPrices = initialPrices.clone();
+		this.riskFreeRate = riskFreeRate;
+		this.volatilities = volatilities.clone();
+	}
+
+	/*
+	 * It returns B^factorIndex(T) for every path, computed as the sum of the increments of the Brownian motion
+	 * up to the time index of maturity.
+	 */
+	private double[] getBrownianMotionAtMaturity(int factorIndex, int maturityIndex) {
+		final double[] brownianAtMaturity = new double[brownianMotion.getNumberOfPaths()];
+		for (int timeIndex = 0; timeIndex < maturityIndex; timeIndex++) {
+			// this is not a copy: we only read the realizations
+			final double[] increments = brownianMotion.getBrownianIncrement(timeIndex, factorIndex).getRealizations();
+			for (int pathIndex = 0; pathIndex < brownianAtMaturity.length; pathIndex++) {
+				brownianAtMaturity[pathIndex] += increments[pathIndex];
+			}
+		}
+		return brownianAtMaturity;
+	}
+
+	/**
+	 * It returns the prices of the exchange option for all the correlations given in input.
+	 *
+	 * @param exchangeOption the option to price. Its asset indices must be 0 and 1 (in any order)
+	 * @param correlations the correlations between the two assets, all in [-1,1]
+	 * @return an array whose i-th element is the price of the option when the correlation is correlations[i]
+	 */
+	public double[] getValues(ExchangeOption exchangeOption, double[] correlations) {
+		final int firstAssetIndex = exchangeOption.getFirstAssetIndex();
+		final int secondAssetIndex = exchangeOption.getSecondAssetIndex();
+		if (firstAssetIndex + secondAssetIndex != 1 || firstAssetIndex * secondAssetIndex != 0) {
+			throw new IllegalArgumentException("Error: the option must be written on the assets with indices 0 and 1!");
+		}
+		for (double correlation : correlations) {
+			if (correlation < -1 || correlation > 1) {
+				throw new IllegalArgumentException("Error: the correlations must be in [-1,1]!");
+			}
+		}
+
+		final double maturity = exchangeOption.getMaturity();
+		final int maturityIndex = brownianMotion.getTimeDiscretization().getTimeIndex(maturity);
+		if (maturityIndex < 0) {
+			throw new IllegalArgumentException("Error: the maturity must be a time of the discretization of the Brownian motion!");
+		}
+
+		//the only two arrays which are computed from the simulation
+		final double[] firstBrownianAtMaturity = getBrownianMotionAtMaturity(0, maturityIndex);
+		final double[] secondBrownianAtMaturity = getBrownianMotionAtMaturity(1, maturityIndex);
+
+		final int numberOfPaths = firstBrownianAtMaturity.length;
+
+		//the first asset does not depend on the correlation: we compute it once
+		final double[] firstAssetAtMaturity = new double[numberOfPaths];
+		final double firstDrift = (riskFreeRate - 0.5 * volatilities[0] * volatilities[0]) * maturity;
+		for (int pathIndex = 0; pathIndex < numberOfPaths; pathIndex++) {
+			firstAssetAtMaturity[pathIndex] = initialPrices[0] * Math.exp(firstDrift + volatilities[0] * firstBrownianAtMaturity[pathIndex]);
+		}
+
+		final double secondDrift = (riskFreeRate - 0.5 * volatilities[1] * volatilities[1]) * maturity;
+		final double discountFactor = Math.exp(-riskFreeRate * maturity);
+
+		//every correlation only needs a linear combination of the two cached arrays: the grid points are independent
+		return IntStream.range(0, correlations.length).parallel().mapToDouble(correlationIndex -> {
+			final double correlation = correlations[correlationIndex];
+			final double orthogonalWeight = Math.sqrt(1 - correlation * correlation);
+			double sumOfPayoffs = 0.0;
+			for (int pathIndex = 0; pathIndex < numberOfPaths; pathIndex++) {
+				final double secondBrownian = correlation * firstBrownianAtMaturity[pathIndex]
+						+ orthogonalWeight * secondBrownianAtMaturity[pathIndex];
+				final double secondAsset = initialPrices[1] * Math.exp(secondDrift + volatilities[1] * secondBrownian);
+				final double difference = firstAssetIndex == 0
+						? firstAssetAtMaturity[pathIndex] - secondAsset
+						: secondAsset - firstAssetAtMaturity[pathIndex];
+				sumOfPayoffs += Math.max(difference, 0.0);
+			}
+			return discountFactor * sumOfPayoffs / numberOfPaths;
+		}).toArray();
+	}
+}
@@ -0,0 +1,59 @@
+package it.univr.montecarlo.ourproducts;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.assetderivativevaluation.AssetModelMonteCarloSimulationModel;
+import net.finmath.stochastic.RandomVariable;
+
+/**
+ * This class contains the discounting step which is shared by all the products of this package. Given the
+ * payoff V(T) of a product with maturity T, the value discounted to the evaluation time t is
+ *
+ * V(T) / N(T) * w(T) * N(t) / w(t),
+ *
+ * where N is the numeraire and w are the Monte Carlo weights given by the model. In the general case this
+ * means four element-wise operations on the vector of the realizations of the payoff. However, when the
+ * numeraire is deterministic (as the exp(rt) of a Black-Scholes model) and the weights are uniform, the four
+ * random variables above are constants: in this case the whole factor is computed once as a double and the
+ * payoff is multiplied by it, that is, with a single pass on its realizations.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class MonteCarloProductsDiscounting {
+
+	/**
+	 * It returns the random variable representing the payoff given in input, discounted from maturity to
+	 * evaluation time by using numeraire and Monte Carlo weights of the model.
+	 *
+	 * @param payoff the random variable V(T) representing the payoff at maturity
+	 * @param maturity the time T at which the payoff is paid
+	 * @param evaluationTime the time t to which the payoff is discounted
+	 * @param model the model providing numeraire and Monte Carlo weights
+	 * @return the random variable V(T) / N(T) * w(T) * N(t) / w(t)
+	 * @throws CalculationException Thrown if the model fails to provide numeraire or weights
+	 */
+	public static RandomVariable discountToEvaluationTime(RandomVariable payoff, double maturity, double evaluationTime,
+			AssetModelMonteCarloSimulationModel model) throws CalculationException {
+
+		final RandomVariable numeraireAtMaturity = model.getNumeraire(maturity);
+		final RandomVariable monteCarloWeights = model.getMonteCarloWeights(maturity);
+		final RandomVariable numeraireAtEvalTime = model.getNumeraire(evaluationTime);
+		final RandomVariable monteCarloWeightsAtEvalTime = model.getMonteCarloWeights(evaluationTime);
+
+		if (numeraireAtMaturity.isDeterministic() && monteCarloWeights.isDeterministic()
+				&& numeraireAtEvalTime.isDeterministic() && monteCarloWeightsAtEvalTime.isDeterministic()) {
+			//all constants: we first compute the whole factor as a double, and then we multiply only once
+			final double discountFactor = monteCarloWeights.doubleValue() / numeraireAtMaturity.doubleValue()
+					* numeraireAtEvalTime.doubleValue() / monteCarloWeightsAtEvalTime.doubleValue();
+			return payoff.mult(discountFactor);
+		}
+
+		// Discounting...
+		RandomVariable values = payoff.div(numeraireAtMaturity).mult(monteCarloWeights);
+
+		// ...to evaluation time.
+		values = values.mult(numeraireAtEvalTime).div(monteCarloWeightsAtEvalTime);
+
+		return values;
+	}
+}
@@ -2,6 +2,7 @@ package it.univr.trees.assetderivativevaluation.enhancedproducts;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.DoubleUnaryOperator;
 
 import it.univr.trees.enhancedapproximatingmodels.ApproximatingTreeModelInterface;
@@ -63,6 +64,26 @@ public class AmericanOption {
 		return optionValues[0];
 	}
 
+	/**
+	 * It returns the discounted value of the option written on the continuous time model approximated by the object
+	 * of type ApproximatingTreeModelInterface given in input, computed as in getValue but sharing the work among the
+	 * threads of the given pool. The values are computed in a single array, going backward for several times on a
+	 * block of nodes before synchronizing the threads: this is useful for trees with many times, for example 100000.
+	 *
+	 * @param approximatingTreeModel, the underlying
+	 * @param pool, the pool whose threads compute the value
+	 * @return the value of the option written on the underlying
+	 */
+	public double getValueInParallel(ApproximatingTreeModelInterface approximatingTreeModel, ForkJoinPool pool) {
+		//values of the option at maturity. Then we go backward
+		double[] optionValues = approximatingTreeModel.getTransformedValuesAtGivenTime(maturity, payoffFunction);
+		int numberOfTimeSteps = (int) Math.round(maturity/approximatingTreeModel.getTimeStep());
+		//at any node, the maximum between the payoff function evaluated at the node and the conditional expectation
+		return approximatingTreeModel.getValueByBackwardInductionInParallel(optionValues, numberOfTimeSteps,
+				(underlyingValue, conditionalExpectation) -> Math.max(payoffFunction.applyAsDouble(underlyingValue), conditionalExpectation),
+				pool);
+	}
+
 	/**
 	 * It returns an object which is a container for an ArrayList of vectors indicating, for each time index, the
 	 * values of the option, what one would get if exercising at the current time, the expected values of the option
@@ -1,5 +1,6 @@
 package it.univr.trees.assetderivativevaluation.enhancedproducts;
 
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.DoubleUnaryOperator;
 
 import it.univr.trees.enhancedapproximatingmodels.ApproximatingTreeModelInterface;
@@ -93,4 +94,28 @@ public class EuropeanBarrierOption {
         }
 		return optionValues[0];
 	}
+
+	/**
+	 * It returns the discounted value of the option written on the continuous time model approximated by the object
+	 * of type ApproximatingTreeModelInterface given in input, computed as in getValue but sharing the work among the
+	 * threads of the given pool. The values are computed in a single array, going backward for several times on a
+	 * block of nodes before synchronizing the threads: this is useful for trees with many times, for example 100000.
+	 *
+	 * @param approximatingTreeModel, the underlying
+	 * @param pool, the pool whose threads compute the value
+	 * @return the value of the option written on the underlying
+	 */
+	public double getValueInParallel(ApproximatingTreeModelInterface approximatingTreeModel, ForkJoinPool pool) {
+		//the values of the option at maturity, considering the barrier
+		double[] underlyingValues = approximatingTreeModel.getValuesAtGivenTime(maturity);
+		double[] optionValues = new double[underlyingValues.length];
+		for (int i = 0; i < underlyingValues.length; i++) {
+			optionValues[i] = payoffFunction.applyAsDouble(underlyingValues[i]) * barrierFunction.applyAsDouble(underlyingValues[i]);
+		}
+		int numberOfTimes = (int) Math.round(maturity/approximatingTreeModel.getTimeStep());
+		//at any node, the conditional expectation is multiplied by 1 if the underlying is inside the interval, by 0 otherwise
+		return approximatingTreeModel.getValueByBackwardInductionInParallel(optionValues, numberOfTimes,
+				(underlyingValue, conditionalExpectation) -> barrierFunction.applyAsDouble(underlyingValue) * conditionalExpectation,
+				pool);
+	}
 }
@@ -34,21 +34,25 @@ public class EuropeanNonPathDependentOption {
 	 * It returns the discounted value of the option written on the Black-Scholes model approximated by
 	 * the object of type ApproximatingTreeModelInterface given in input. The value of the option is computed
 	 * as the discounted expectation of the possible values at maturity. This expectation is computed by going backward
-	 * from maturity to initial time and computing the iterative conditional expectation, see slides.
+	 * from maturity to initial time and computing the iterative conditional expectation, see slides. The conditional
+	 * expectations are computed in place, in the array of the payoffs at maturity.
 	 * 
-	 * @param approximatingBinomialModel, the underlying
+	 * @param approximatingTreeModel, the underlying
 	 * @return the value of the option written on the underlying
 	 */
 	public double getValue(ApproximatingTreeModelInterface approximatingTreeModel) {
 		//the vector representing all the possible values of the payoff at maturity
 		double[] optionValues = approximatingTreeModel.getTransformedValuesAtGivenTime(maturity, payoffFunction);
 		int numberOfTimes = (int) Math.round(maturity/approximatingTreeModel.getTimeStep());
-		//we go backward and for any timeIndex we compute the conditional expectation of the value of the option at timeIndex + 1
+		/*
+		 * We go backward and for any timeIndex we compute the conditional expectation of the value of the option at
+		 * timeIndex + 1. This is done in place: the conditional expectations overwrite the first entries of optionValues,
+		 * so that no other array is allocated, whatever the number of times.
+		 */
 		for (int timeIndex = numberOfTimes - 1; timeIndex >= 0; timeIndex--) {
-			//delegation to approximatingBinomialModel!
-        	double[] conditionalExpectation = approximatingTreeModel.getConditionalExpectation(optionValues, timeIndex);
-            optionValues = conditionalExpectation;   
-        }
+			//delegation to approximatingTreeModel!
+			approximatingTreeModel.computeConditionalExpectationInPlace(optionValues, timeIndex);
+		}
 		return optionValues[0];
 	}
 	
@@ -76,4 +80,20 @@ public class EuropeanNonPathDependentOption {
 		//and discount
 		return Math.exp(-riskFreeRate*maturity)*nonDiscountedValue;
 	}
+
+	/**
+	 * It returns the discounted value of the option written on the Black-Scholes model approximated by the object of
+	 * type ApproximatingBinomialModel given in input, for example a Cox Ross Rubinstein, Jarrow Rudd or Leisen Reimer
+	 * model. As in getValueDirectForBinomialModel, the value of the option is computed from the distribution of the
+	 * underlying at maturity, but here only the nodes whose probability is not negligible are considered, and their
+	 * probabilities are computed in log space, without computing the ones at previous times: in this way, the
+	 * computational time only grows as the square root of the number of times, and no array is allocated. 
+	 * 
+	 * @param approximatingBinomialModel, the underlying
+	 * @return the value of the option written on the underlying
+	 */
+	public double getValueFromDistributionAtMaturity(
+			it.univr.trees.enhancedapproximatingmodels.ApproximatingBinomialModel approximatingBinomialModel) {
+		return approximatingBinomialModel.getDiscountedExpectationAtGivenTime(maturity, payoffFunction);
+	}
 }
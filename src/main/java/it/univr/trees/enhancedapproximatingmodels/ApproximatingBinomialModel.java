@@ -1,6 +1,8 @@
 package it.univr.trees.enhancedapproximatingmodels;
 
 
+import java.util.function.DoubleUnaryOperator;
+
 import it.univr.trees.simpletreemodels.BinomialModel;
 
 /**
@@ -16,6 +18,11 @@ import it.univr.trees.simpletreemodels.BinomialModel;
  */
 public abstract class ApproximatingBinomialModel extends ApproximatingTreeModelForBlackScholes {
 
+	/*
+	 * This is the same object as ourTreeModel, which is a TreeModelInterface: we also keep it as a BinomialModel in
+	 * order to delegate to it the methods which are specific for binomial models.
+	 */
+	private BinomialModel ourBinomialModel;
 
 	/**
 	 * It constructs an object of type ApproximatingBinomialModel.
@@ -63,7 +70,43 @@ public abstract class ApproximatingBinomialModel extends ApproximatingTreeModelF
 		
 		double[] upAndDownFactors = getUpAndDownFactorsOfBinomialModel();
 		double riskFreeFactorForBinomialModel = Math.exp(riskFreeRate * timeStep) - 1;
-		ourTreeModel = new BinomialModel(upAndDownFactors[0], upAndDownFactors[1],  riskFreeFactorForBinomialModel, initialPrice, numberOfTimes);
+		ourBinomialModel = new BinomialModel(upAndDownFactors[0], upAndDownFactors[1],  riskFreeFactorForBinomialModel, initialPrice, numberOfTimes);
+		ourTreeModel = ourBinomialModel;
+	}
+
+	/**
+	 * It returns the probabilities of all the possible values of the approximating binomial model at the given time.
+	 * The element in position i is the probability of the value where the underlying has gone down i times.
+	 * @param time, the given time 
+	 * @return an array of doubles representing the probabilities of all the possible values of the binomial
+	 * 		   model at time. The value in position i is the probability of S(0)*u^(Math.round(time/timeStep)-i)*d^i
+	 */
+	public double[] getValuesProbabilitiesAtGivenTime(double time) {
+		int timeIndex = (int) Math.round(time/getTimeStep());
+		//we want to generate ourTreeModel only once! So we check if it is null: if yes, we have to generate it
+		if (ourTreeModel==null) {
+			generateTreeModel();
+		}
+		//pure delegation
+		return ourBinomialModel.getValuesProbabilitiesAtGivenTimeIndex(timeIndex);
+	}
+
+	/**
+	 * It returns the discounted expectation of a function of the approximating binomial model at the given time.
+	 * This is computed directly from the distribution of the model at that time, neglecting the values with
+	 * negligible probability, see BinomialModel.getExpectationAtGivenTimeIndex: no array is allocated, and the
+	 * computational time only grows as the square root of the number of times.
+	 * @param time, the given time 
+	 * @param function, the function of the model whose expectation is computed
+	 * @return the discounted expectation of function(S(time))
+	 */
+	public double getDiscountedExpectationAtGivenTime(double time, DoubleUnaryOperator function) {
+		int timeIndex = (int) Math.round(time/getTimeStep());
+		//we want to generate ourTreeModel only once! So we check if it is null: if yes, we have to generate it
+		if (ourTreeModel==null) {
+			generateTreeModel();
+		}
+		return Math.exp(-getRiskFreeRate() * timeIndex * getTimeStep()) * ourBinomialModel.getExpectationAtGivenTimeIndex(timeIndex, function);
 	}
 
 
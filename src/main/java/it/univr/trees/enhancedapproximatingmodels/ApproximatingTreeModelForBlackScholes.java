@@ -1,5 +1,7 @@
 package it.univr.trees.enhancedapproximatingmodels;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleUnaryOperator;
 
 import it.univr.trees.simpletreemodels.TreeModelInterface;
@@ -185,6 +187,44 @@ public abstract class ApproximatingTreeModelForBlackScholes implements Approxima
 		return ourTreeModel.getConditionalExpectation(optionValues, timeIndex);
 	}
 
+	/**
+	 * It replaces the values of (possibly a function of) the approximating tree model at time timeIndex+1, given in
+	 * the array, with their discounted conditional expectations at timeIndex, without allocating a new array.
+	 *
+	 * @param optionValues, the values at timeIndex+1, overwritten by their discounted conditional expectations
+	 * @param timeIndex, the time index
+	 */
+	@Override
+	public void computeConditionalExpectationInPlace(double[] optionValues, int timeIndex) {
+		//we want to generate ourTreeModel only once! So we check if it is null: if yes, we have to generate it
+		if (ourTreeModel==null) {
+			generateTreeModel();
+		}
+		ourTreeModel.computeConditionalExpectationInPlace(optionValues, timeIndex);
+	}
+
+	/**
+	 * It returns the value at time 0 obtained going backward from the given values at lastTimeIndex, where the
+	 * work at every time is shared among the threads of the given pool. At every time and node, the value is
+	 * valueAtNode(underlying, discounted conditional expectation of the values at the next time).
+	 *
+	 * @param optionValues, the values at lastTimeIndex. The array gets overwritten
+	 * @param lastTimeIndex, the time index of the values
+	 * @param valueAtNode, the function giving the value at a node from the underlying and the conditional expectation
+	 * @param pool, the pool whose threads perform the backward induction
+	 * @return the value at time 0
+	 */
+	@Override
+	public double getValueByBackwardInductionInParallel(double[] optionValues, int lastTimeIndex,
+			DoubleBinaryOperator valueAtNode, ForkJoinPool pool) {
+		//we want to generate ourTreeModel only once! So we check if it is null: if yes, we have to generate it
+		if (ourTreeModel==null) {
+			generateTreeModel();
+		}
+		//pure delegation
+		return ourTreeModel.getValueByBackwardInductionInParallel(optionValues, lastTimeIndex, valueAtNode, pool);
+	}
+
 	/*
 	 * Getters for the parameters of the Trinomial model. Some of them are used in the derived classes:
 	 * in this way, we can set them private here (we prefer, because in this way they cannot be modified,
@@ -1,5 +1,7 @@
 package it.univr.trees.enhancedapproximatingmodels;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleUnaryOperator;
 
 /**
@@ -68,6 +70,33 @@ public interface ApproximatingTreeModelInterface {
 	 * @return the array of the discounted conditional expectations at timeIndex of optionValues. 
 	 */
 	double[] getConditionalExpectation(double[] optionValues,int timeIndex);
+
+	/**
+	 * It replaces the values of (possibly a function of) an approximating model at time timeIndex+1, given in the
+	 * array, with their discounted conditional expectations at timeIndex, without allocating a new array. The
+	 * first entries of the array are overwritten, the others are left unchanged: in this way, a backward induction
+	 * can be done on the array of the values at maturity only.
+	 *
+	 * @param optionValues, the values at timeIndex+1, overwritten by their discounted conditional expectations
+	 * @param timeIndex, the time index
+	 */
+	void computeConditionalExpectationInPlace(double[] optionValues, int timeIndex);
+
+	/**
+	 * It returns the value at time 0 obtained going backward from the given values at lastTimeIndex, where the
+	 * work at every time is shared among the threads of the given pool. At every time and node, the value is
+	 * valueAtNode(underlying, discounted conditional expectation of the values at the next time), where underlying
+	 * is the value of the approximating model at the node. This is useful for trees with many times, for example
+	 * to value American or barrier options.
+	 *
+	 * @param optionValues, the values at lastTimeIndex. The array gets overwritten
+	 * @param lastTimeIndex, the time index of the values
+	 * @param valueAtNode, the function giving the value at a node from the underlying and the conditional expectation
+	 * @param pool, the pool whose threads perform the backward induction
+	 * @return the value at time 0
+	 */
+	double getValueByBackwardInductionInParallel(double[] optionValues, int lastTimeIndex,
+			DoubleBinaryOperator valueAtNode, ForkJoinPool pool);
 	
 	/**
 	 * It returns the initial price of the approximated model
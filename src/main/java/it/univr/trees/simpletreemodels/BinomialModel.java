@@ -1,8 +1,11 @@
 package it.univr.trees.simpletreemodels;
 
-import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleUnaryOperator;
 
+import org.apache.commons.math3.special.Gamma;
+
 import it.univr.usefulmethodsarrays.UsefulMethodsForArrays;
 
 /**
@@ -27,11 +30,14 @@ public class BinomialModel implements TreeModelInterface {
 	private double riskNeutralProbabilityUp;
 	private double riskNeutralProbabilityDown;
 
+	//the probabilities above divided by 1+r, used in the backward induction
+	private double discountedProbabilityUp;
+	private double discountedProbabilityDown;
+
 	private int numberOfTimes;
 
-	//these fields will be initialized and set in private methods. For now their values is "null".
-	private double[][] valuesProbabilities;
-	private double[][] values;
+	//the probability under which a node is neglected in getExpectationAtGivenTimeIndex
+	private static final double NEGLIGIBLE_PROBABILITY = 1E-20;
 
 	/**
 	 * It construct an object representing a Binomial model.
@@ -53,87 +59,18 @@ public class BinomialModel implements TreeModelInterface {
 		//this must be fixed in order to avoid arbitrages!
 		riskNeutralProbabilityUp = (1 + riskFreeFactor - downFactor) / (upFactor - downFactor);
 		riskNeutralProbabilityDown = 1 - riskNeutralProbabilityUp;
+		discountedProbabilityUp = riskNeutralProbabilityUp / (1 + riskFreeFactor);
+		discountedProbabilityDown = riskNeutralProbabilityDown / (1 + riskFreeFactor);
 		this.initialValue = initialValue;
 	}
 
-
 	/*
-	 * This method is private! This is our inner implementation, behind the scenes. We don't want an user of our
-	 * class to access it. The method sets values to be a matrix whose row n represents the possible values of the
-	 * binomial model at time index n. However, the last values of the row are zero, because at time n the binomial
-	 * model can only take n+1 values. Note that this could cause confusion if somebody is directly aware of this
-	 * method.
+	 * Note that we do not store the values of the tree and their probabilities in matrices: a matrix whose row n
+	 * represents the values at time index n would have numberOfTimes x numberOfTimes entries, half of them zero, so
+	 * for 20000 times it would take 3.2 GB. Instead, the values and the probabilities at a given time index are
+	 * computed when they are requested, directly from the number of ups and downs. In this way the memory needed
+	 * by the model does not depend on the number of times, and the only arrays are the ones we return.
 	 */
-	
-	/*
-	 * [S_0 0 0 0 0 0 0 0]
-	 * [S_0*u S_0*d 0 0 0 0 0 0]
-	 * [S_0*u^2 S_0*u*d S_0*d^2 0 0 0 0 0 0]
-	 * ....
-	 */
-	private void generateValues() {
-		values = new double[numberOfTimes][numberOfTimes];
-		values[0][0] = initialValue;
-		int numberOfDowns;//it will be updated in the for loop
-		for (int numberOfMovements = 1; numberOfMovements < numberOfTimes; numberOfMovements++) {
-			for (int numberOfUps = 0; numberOfUps <= numberOfMovements; numberOfUps++) {
-				numberOfDowns=numberOfMovements-numberOfUps;
-				/*
-				 * Value of the binomial model when it went numberOfUps times up and numberOfDowns times down.
-				 * Note that this is stored in position numberOfDowns! So the first position has all ups and so on
-				 */
-				values[numberOfMovements][numberOfDowns] = values[0][0] * Math.pow(upFactor, numberOfUps)*
-						Math.pow(downFactor, numberOfDowns);
-			}
-		}
-	}
-
-	/*
-	 * This method is private! This is our inner implementation, behind the scenes. We don't want an user of our
-	 * class to access it. The method sets valuesProbabilities to be a matrix whose row n represents the probabilities
-	 * of the corresponding values of the binomial model at time index n. However, the last values of the row are
-	 * zero, because at time n the binomial model can only take n+1 values. Note that this could cause confusion
-	 * if somebody is directly aware of this method.
-	 */
-	
-	/*
-	 * [S_0 0 0 0 0 0 0 0]
-	 * [Q(S_0*u) Q(S_0*d) 0 0 0 0 0 0]
-	 * [Q(S_0*u^2) Q(S_0*u*d) Q(S_0*d^2) 0 0 0 0 0 0]
-	 * ....
-	 */
-	private void generateValuesProbabilities() {
-		valuesProbabilities = new double[numberOfTimes][numberOfTimes];
-		valuesProbabilities[0][0]=1;
-		int numberOfDowns;//it will be updated in the for loop
-		for (int numberOfMovements = 1; numberOfMovements < numberOfTimes; numberOfMovements++) {
-			/*
-			 * Here we have to take care of the computation of the binomial coefficient.  We are at
-			 * time n and start the next for loop with the case when we have k=0 ups. So we have
-			 * binomialCoefficient(n,k)=n!/(k!(n-k)!)=1 
-			 */
-			double binomialCoefficient = 1;
-			for (int numberOfUps = 0; numberOfUps <= numberOfMovements; numberOfUps++) {
-				numberOfDowns=numberOfMovements-numberOfUps;
-				/*
-				 * Probability of having B(numberOfMovements)=B(0)u^numberOfUps*d^numberOfDowns.
-				 * Note that this is stored in position numberOfDowns! So the first position has all ups and so on
-				 */
-				valuesProbabilities[numberOfMovements][numberOfDowns]
-						= binomialCoefficient*Math.pow(riskNeutralProbabilityUp, numberOfUps)
-						* Math.pow(riskNeutralProbabilityDown, numberOfDowns);
-				/*
-				 * Here we update the value of the binomial coeffeicient computing the one
-				 * that we will use next, i.e., when we will have one more up: so, calling k
-				 * the actual number of ups, we have to compute 
-				 * binomialCoefficient(n,k+1)=n!/((k+1)!(n-k-1)!)=n!/(k!(n-k)!)*(n-k)/(k+1).
-				 * Since n!/(k!(n-k)!) is the last computed value, we multiply by (n-k) 
-				 * (so, by numberOfDowns) and divide by k+1, so, by the current number of ups plus 1.
-				 */
-				binomialCoefficient=binomialCoefficient * (numberOfDowns)/(numberOfUps+1);
-			}
-		}
-	}
 
 	//the next methods are all public. Direct use from outside this class. 
 
@@ -146,20 +83,20 @@ public class BinomialModel implements TreeModelInterface {
 	 */
 	@Override
 	public double[] getValuesAtGivenTimeIndex(int timeIndex) {
+		checkTimeIndex(timeIndex);
+		//at timeIndex we have timeIndex + 1 values
+		double[] valuesAtGivenTimeIndex = new double[timeIndex + 1];
 		/*
-		 * Pay attention: the method generateValues() initializes the array values and sets it. This is
-		 * of course needed if we want to get those values. However, we want to do that only once!
-		 * So we check if values is null (this means "not yet initialized") and call the method only
-		 * in this case. 
-		 */
-		if (values == null) {
-			generateValues();
-		}	
-		/*
-		 * We only return the first timeIndex entries! The others are zero, because the process can take
-		 * only timeIndex values at time index timeIndex.
+		 * The value in position i is B(0)*u^(timeIndex-i)*d^i. We only call Math.pow for the first one, when the
+		 * underlying has always gone up: every other value is the previous one, with one up replaced by one down,
+		 * so it is obtained multiplying by d/u.
 		 */
-		return Arrays.copyOfRange(values[timeIndex], 0, timeIndex+1);
+		final double downOverUp = downFactor / upFactor;
+		valuesAtGivenTimeIndex[0] = initialValue * Math.pow(upFactor, timeIndex);
+		for (int numberOfDowns = 1; numberOfDowns <= timeIndex; numberOfDowns++) {
+			valuesAtGivenTimeIndex[numberOfDowns] = valuesAtGivenTimeIndex[numberOfDowns - 1] * downOverUp;
+		}
+		return valuesAtGivenTimeIndex;
 	}
 
 	/**
@@ -188,20 +125,107 @@ public class BinomialModel implements TreeModelInterface {
 	 * 		   model at timeIndex. The value in position i is the probability of B(0)*u^(timeIndex-i)*d^i
 	 */
 	public double[] getValuesProbabilitiesAtGivenTimeIndex(int timeIndex) {
+		checkTimeIndex(timeIndex);
+		//at timeIndex we have timeIndex + 1 values
+		double[] probabilitiesAtGivenTimeIndex = new double[timeIndex + 1];
 		/*
-		 * Pay attention: the method generateValues() initializes the array valuesProbabilities and sets it.
-		 * This is of course needed if we want to get those values. However, we want to do that only once!
-		 * So we check if valuesProbabilities is null (this means "not yet initialized") and call the method only
-		 * in this case. 
+		 * Only the probability of the most likely value is computed in log space, see getProbabilityOfMostLikelyValue.
+		 * The others are obtained from it by multiplication as in getExpectationAtGivenTimeIndex, going towards more
+		 * and less ups. Note that the probability with numberOfUps ups is stored in position numberOfDowns, so the
+		 * first position has all ups and so on.
 		 */
-		if (valuesProbabilities == null) {
-			generateValuesProbabilities();
+		final int mostLikelyNumberOfUps = getMostLikelyNumberOfUps(timeIndex);
+		final double probabilityOfMostLikelyValue = getProbabilityOfMostLikelyValue(timeIndex, mostLikelyNumberOfUps);
+		final double probabilityUpOverProbabilityDown = riskNeutralProbabilityUp / riskNeutralProbabilityDown;
+		probabilitiesAtGivenTimeIndex[timeIndex - mostLikelyNumberOfUps] = probabilityOfMostLikelyValue;
+
+		//more ups: the probability gets multiplied by (n-k)/(k+1)*q/(1-q)
+		double probability = probabilityOfMostLikelyValue;
+		for (int numberOfUps = mostLikelyNumberOfUps; numberOfUps < timeIndex; numberOfUps++) {
+			probability *= probabilityUpOverProbabilityDown * (timeIndex - numberOfUps) / (numberOfUps + 1);
+			probabilitiesAtGivenTimeIndex[timeIndex - numberOfUps - 1] = probability;
 		}
-		/*
-		 * We only return the first timeIndex entries! The others are zero, because the process can take
-		 * only timeIndex values at time index timeIndex.
-		 */
-		return Arrays.copyOfRange(valuesProbabilities[timeIndex], 0, timeIndex + 1);
+
+		//less ups: the probability gets multiplied by k/(n-k+1)*(1-q)/q
+		probability = probabilityOfMostLikelyValue;
+		for (int numberOfUps = mostLikelyNumberOfUps; numberOfUps > 0; numberOfUps--) {
+			probability *= numberOfUps / (probabilityUpOverProbabilityDown * (timeIndex - numberOfUps + 1));
+			probabilitiesAtGivenTimeIndex[timeIndex - numberOfUps + 1] = probability;
+		}
+		return probabilitiesAtGivenTimeIndex;
+	}
+
+	/**
+	 * It returns the expectation of a function of the binomial model at the given time index, not discounted. This
+	 * is computed directly from the distribution of the model at timeIndex, without any array, in a time which only
+	 * grows as the square root of the time index when this is large. The most likely value and its probability are computed first, the
+	 * latter in log space, see getProbabilityOfMostLikelyValue. Then we move to more and less ups: every
+	 * value and probability is obtained from the previous one by multiplication, and we stop when the probability is
+	 * smaller than NEGLIGIBLE_PROBABILITY. This is fine since the probabilities decrease when going away from the most
+	 * likely value, and for n times only a number of nodes of order sqrt(n) has a probability which is not negligible.
+	 *
+	 * @param timeIndex, the given time index
+	 * @param function, the function of the binomial model whose expectation is computed
+	 * @return the expectation of function(B(timeIndex))
+	 */
+	public double getExpectationAtGivenTimeIndex(int timeIndex, DoubleUnaryOperator function) {
+		checkTimeIndex(timeIndex);
+		final int mostLikelyNumberOfUps = getMostLikelyNumberOfUps(timeIndex);
+		final double mostLikelyValue = initialValue * Math.pow(upFactor, mostLikelyNumberOfUps)
+				* Math.pow(downFactor, timeIndex - mostLikelyNumberOfUps);
+		final double probabilityOfMostLikelyValue = getProbabilityOfMostLikelyValue(timeIndex, mostLikelyNumberOfUps);
+
+		double expectation = probabilityOfMostLikelyValue * function.applyAsDouble(mostLikelyValue);
+
+		//more ups: the probability gets multiplied by (n-k)/(k+1)*q/(1-q), the value by u/d
+		final double upOverDown = upFactor / downFactor;
+		final double probabilityUpOverProbabilityDown = riskNeutralProbabilityUp / riskNeutralProbabilityDown;
+		double value = mostLikelyValue;
+		double probability = probabilityOfMostLikelyValue;
+		for (int numberOfUps = mostLikelyNumberOfUps; numberOfUps < timeIndex; numberOfUps++) {
+			probability *= probabilityUpOverProbabilityDown * (timeIndex - numberOfUps) / (numberOfUps + 1);
+			if (probability < NEGLIGIBLE_PROBABILITY) {
+				break;
+			}
+			value *= upOverDown;
+			expectation += probability * function.applyAsDouble(value);
+		}
+
+		//less ups: the probability gets multiplied by k/(n-k+1)*(1-q)/q, the value by d/u
+		value = mostLikelyValue;
+		probability = probabilityOfMostLikelyValue;
+		for (int numberOfUps = mostLikelyNumberOfUps; numberOfUps > 0; numberOfUps--) {
+			probability *= numberOfUps / (probabilityUpOverProbabilityDown * (timeIndex - numberOfUps + 1));
+			if (probability < NEGLIGIBLE_PROBABILITY) {
+				break;
+			}
+			value /= upOverDown;
+			expectation += probability * function.applyAsDouble(value);
+		}
+		return expectation;
+	}
+
+	/*
+	 * It returns the number of ups of the most likely value of the binomial model at the given time index, that is,
+	 * the mode of the binomial distribution with timeIndex trials and probability q.
+	 */
+	private int getMostLikelyNumberOfUps(int timeIndex) {
+		return Math.min((int) Math.floor((timeIndex + 1) * riskNeutralProbabilityUp), timeIndex);
+	}
+
+	/*
+	 * It returns the probability binomialCoefficient(n,k)*q^k*(1-q)^(n-k) of the value with k ups, where k is the
+	 * number of ups of the most likely value. For n bigger than about 1000 the binomial coefficient overflows and the
+	 * powers of the probabilities underflow, so that their product would be NaN. We then compute its logarithm, where
+	 * the logarithm of the binomial coefficient is given by the logarithm of the Gamma function:
+	 * log(n!/(k!(n-k)!))=logGamma(n+1)-logGamma(k+1)-logGamma(n-k+1). Since this probability is the largest, the
+	 * ones obtained from it by multiplication neither overflow nor lose precision before they are negligible.
+	 */
+	private double getProbabilityOfMostLikelyValue(int timeIndex, int mostLikelyNumberOfUps) {
+		return Math.exp(Gamma.logGamma(timeIndex + 1) - Gamma.logGamma(mostLikelyNumberOfUps + 1)
+				- Gamma.logGamma(timeIndex - mostLikelyNumberOfUps + 1)
+				+ mostLikelyNumberOfUps * Math.log(riskNeutralProbabilityUp)
+				+ (timeIndex - mostLikelyNumberOfUps) * Math.log(riskNeutralProbabilityDown));
 	}
 
 	/**
@@ -227,7 +251,48 @@ public class BinomialModel implements TreeModelInterface {
 		}
 		return conditionalExpectation;
 	}
+
+	/**
+	 * It replaces the first timeIndex+1 entries of the given array, representing values of (possibly a function of)
+	 * a binomial model at time timeIndex+1, with their discounted conditional expectations at timeIndex. The
+	 * i-th entry becomes the conditional expectation computed in the case when the underlying has gone down i times,
+	 * as in getConditionalExpectation, but no new array is allocated: the i-th entry only depends on the i-th and
+	 * (i+1)-th ones, so we can overwrite the entries from the first to the last one. In this way, the whole backward
+	 * induction only needs the array of the values at maturity.
+	 *
+	 * @param binomialValues, values of (possibly a function of) a binomial model at time timeIndex+1. They get
+	 * 		  overwritten by their discounted conditional expectations at timeIndex
+	 * @param timeIndex, the time index
+	 */
+	@Override
+	public void computeConditionalExpectationInPlace(double[] binomialValues, int timeIndex) {
+		for (int i = 0; i <= timeIndex; i++) {
+			binomialValues[i] = binomialValues[i] * discountedProbabilityUp + binomialValues[i + 1] * discountedProbabilityDown;
+		}
+	}
 	
+	/**
+	 * It returns the value at time 0 obtained going backward from the given values at lastTimeIndex, where the
+	 * work at every time is shared among the threads of the given pool, see TiledBackwardInduction. At every time and
+	 * node, the value is valueAtNode(underlying, discounted conditional expectation of the values at the next time).
+	 *
+	 * @param binomialValues, the values at lastTimeIndex. The array gets overwritten
+	 * @param lastTimeIndex, the time index of the values
+	 * @param valueAtNode, the function giving the value at a node from the underlying and the conditional expectation
+	 * @param pool, the pool whose threads perform the backward induction
+	 * @return the value at time 0
+	 */
+	@Override
+	public double getValueByBackwardInductionInParallel(double[] binomialValues, int lastTimeIndex,
+			DoubleBinaryOperator valueAtNode, ForkJoinPool pool) {
+		checkTimeIndex(lastTimeIndex);
+		final double[] discountedProbabilities = {discountedProbabilityUp, discountedProbabilityDown};
+		//the value in position i is B(0)*u^(timeIndex-i)*d^i: every value is the previous one times d/u
+		return new TiledBackwardInduction(discountedProbabilities, downFactor / upFactor,
+				timeIndex -> initialValue * Math.pow(upFactor, timeIndex))
+				.getValue(binomialValues, lastTimeIndex, valueAtNode, pool);
+	}
+
 	/**
 	 * It returns the array whose two elements are the probability of an up movement and the probability
 	 * of a down movement, respectively.
@@ -239,5 +304,12 @@ public class BinomialModel implements TreeModelInterface {
 		return probabilities;
 	}
 
-
+	/*
+	 * It throws an exception if the time index is not one of the times of the model.
+	 */
+	private void checkTimeIndex(int timeIndex) {
+		if (timeIndex < 0 || timeIndex >= numberOfTimes) {
+			throw new IllegalArgumentException("Error: the time index must be between 0 and the number of times minus 1!");
+		}
+	}
 }
@@ -0,0 +1,217 @@
+package it.univr.trees.simpletreemodels;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * This class performs the backward induction on a recombining tree model in parallel, for trees with so many times
+ * that the work at every time is big enough to be shared among the threads of a ForkJoinPool. It is used by
+ * BinomialModel and TrinomialModel, which give it the discounted probabilities of the movements of the underlying
+ * and the way to compute its values at the nodes.
+ *
+ * In the tree, the discounted conditional expectation at the node in position i at time index n is the scalar
+ * product of the discounted probabilities with the values at the nodes in positions i, i+1,.. at time index n+1.
+ * If we split the nodes at time index n-K+1 into blocks, the values at the nodes of a block at time n-K+1 only depend
+ * on the values at time n+1 at the nodes of the same block and at few nodes after it (K for a binomial model, 2K for
+ * a trinomial one). So a thread can go K times backward on a block without waiting for the others, if it first copies
+ * these values in its own array. The threads are only synchronized every K times, and every block is small enough to
+ * stay in the cache of the processor during its K times. When the number of nodes becomes small, the remaining
+ * times are computed by a single thread, without copies.
+ *
+ * At every node, the discounted conditional expectation can be transformed into the value of the option by a
+ * function of the underlying and of the conditional expectation itself: for example, for an American option this is
+ * the maximum between the payoff and the conditional expectation.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+final class TiledBackwardInduction {
+
+	//the number of nodes of a block: the values of a block and of the nodes after it fit in the cache
+	private static final int NUMBER_OF_NODES_PER_BLOCK = 2048;
+
+	//the number of times a block is computed before all the threads are synchronized
+	private static final int NUMBER_OF_TIMES_PER_BLOCK = 64;
+
+	private final double[] discountedProbabilities;
+	private final double ratioOfConsecutiveValues;
+	private final IntToDoubleFunction firstValueAtTimeIndex;
+
+	/**
+	 * It constructs an object which performs the backward induction for a given tree model.
+	 *
+	 * @param discountedProbabilities, the probabilities of the movements of the underlying divided by 1+r. The first
+	 * 		  one is the one of the biggest movement
+	 * @param ratioOfConsecutiveValues, the ratio between the value of the underlying at a node and the one at the
+	 * 		  previous node at the same time
+	 * @param firstValueAtTimeIndex, the function which returns the biggest value of the underlying at a time index
+	 */
+	TiledBackwardInduction(double[] discountedProbabilities, double ratioOfConsecutiveValues,
+			IntToDoubleFunction firstValueAtTimeIndex) {
+		this.discountedProbabilities = discountedProbabilities.clone();
+		this.ratioOfConsecutiveValues = ratioOfConsecutiveValues;
+		this.firstValueAtTimeIndex = firstValueAtTimeIndex;
+	}
+
+	/**
+	 * It returns the value at time 0 obtained by going backward from the given values at lastTimeIndex. At every time
+	 * and node, the value is valueAtNode(underlying, discounted conditional expectation) where underlying is the value
+	 * of the underlying at the node.
+	 *
+	 * @param values, the values at lastTimeIndex. The array gets overwritten
+	 * @param lastTimeIndex, the time index of the values
+	 * @param valueAtNode, the function giving the value at a node from the underlying and the discounted conditional
+	 * 		  expectation of the values at the next time
+	 * @param pool, the pool whose threads perform the backward induction
+	 * @return the value at time 0
+	 */
+	double getValue(double[] values, int lastTimeIndex, DoubleBinaryOperator valueAtNode, ForkJoinPool pool) {
+		if (values.length < getNumberOfNodes(lastTimeIndex)) {
+			throw new IllegalArgumentException("Error: there must be a value for every node at the last time!");
+		}
+		final int nodesAfterBlock = NUMBER_OF_TIMES_PER_BLOCK * (discountedProbabilities.length - 1);
+
+		double[] currentValues = values;
+		double[] nextValues = null;
+		double[][] valuesOfBlocks = null;
+		int timeIndex = lastTimeIndex;
+		while (timeIndex > 0) {
+			final int numberOfTimes = Math.min(NUMBER_OF_TIMES_PER_BLOCK, timeIndex);
+			final int numberOfNodes = getNumberOfNodes(timeIndex - numberOfTimes);
+			if (numberOfNodes <= 2 * NUMBER_OF_NODES_PER_BLOCK) {
+				//few nodes: we go on with a single thread
+				for (; timeIndex > 0; timeIndex--) {
+					computeTimeStep(currentValues, getNumberOfNodes(timeIndex - 1), timeIndex - 1, 0, valueAtNode);
+				}
+				break;
+			}
+			final int numberOfBlocks = (numberOfNodes + NUMBER_OF_NODES_PER_BLOCK - 1) / NUMBER_OF_NODES_PER_BLOCK;
+			if (valuesOfBlocks == null) {
+				//the arrays are allocated once, for the biggest number of blocks
+				nextValues = new double[numberOfNodes];
+				valuesOfBlocks = new double[numberOfBlocks][NUMBER_OF_NODES_PER_BLOCK + nodesAfterBlock];
+			}
+			pool.invoke(new BlockAction(0, numberOfBlocks, currentValues, nextValues, valuesOfBlocks, timeIndex,
+					numberOfTimes, numberOfNodes, valueAtNode));
+			final double[] swap = currentValues;
+			currentValues = nextValues;
+			nextValues = swap;
+			timeIndex -= numberOfTimes;
+		}
+		return currentValues[0];
+	}
+
+	/*
+	 * It replaces the first numberOfNodes entries of the array, representing values at timeIndex+1 at the nodes from
+	 * firstPosition on, with the values at timeIndex. This is done in place, from the first to the last entry.
+	 */
+	private void computeTimeStep(double[] values, int numberOfNodes, int timeIndex, int firstPosition,
+			DoubleBinaryOperator valueAtNode) {
+		double underlyingValue = firstValueAtTimeIndex.applyAsDouble(timeIndex)
+				* Math.pow(ratioOfConsecutiveValues, firstPosition);
+		//we write the cases of binomial and trinomial models separately, so that the compiler can optimize the loops
+		final double firstProbability = discountedProbabilities[0];
+		final double secondProbability = discountedProbabilities[1];
+		if (discountedProbabilities.length == 2) {
+			for (int i = 0; i < numberOfNodes; i++) {
+				values[i] = getValueAtNode(valueAtNode, underlyingValue,
+						firstProbability * values[i] + secondProbability * values[i + 1]);
+				underlyingValue *= ratioOfConsecutiveValues;
+			}
+		} else if (discountedProbabilities.length == 3) {
+			final double thirdProbability = discountedProbabilities[2];
+			for (int i = 0; i < numberOfNodes; i++) {
+				values[i] = getValueAtNode(valueAtNode, underlyingValue,
+						firstProbability * values[i] + secondProbability * values[i + 1] + thirdProbability * values[i + 2]);
+				underlyingValue *= ratioOfConsecutiveValues;
+			}
+		} else {
+			for (int i = 0; i < numberOfNodes; i++) {
+				double conditionalExpectation = 0.0;
+				for (int j = 0; j < discountedProbabilities.length; j++) {
+					conditionalExpectation += discountedProbabilities[j] * values[i + j];
+				}
+				values[i] = getValueAtNode(valueAtNode, underlyingValue, conditionalExpectation);
+				underlyingValue *= ratioOfConsecutiveValues;
+			}
+		}
+	}
+
+	/*
+	 * The value at a node given by valueAtNode. Where the values at maturity are zero, the backward induction gives
+	 * values which get smaller and smaller when going away from the nodes where they are positive, until they are
+	 * subnormal numbers, whose arithmetic is many times slower. We set them to zero: the error is smaller than 1E-307.
+	 */
+	private static double getValueAtNode(DoubleBinaryOperator valueAtNode, double underlyingValue,
+			double conditionalExpectation) {
+		final double value = valueAtNode.applyAsDouble(underlyingValue, conditionalExpectation);
+		return Math.abs(value) < Double.MIN_NORMAL ? 0.0 : value;
+	}
+
+	/*
+	 * The number of nodes at the given time index.
+	 */
+	private int getNumberOfNodes(int timeIndex) {
+		return (discountedProbabilities.length - 1) * timeIndex + 1;
+	}
+
+	/*
+	 * The task going numberOfTimes times backward from timeIndex on the blocks with index in [firstBlock, lastBlock).
+	 * The values at timeIndex are read from currentValues, the ones at timeIndex - numberOfTimes are written in
+	 * nextValues, and every block uses its own array in valuesOfBlocks.
+	 */
+	private class BlockAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int firstBlock;
+		private final int lastBlock;
+		private final double[] currentValues;
+		private final double[] nextValues;
+		private final double[][] valuesOfBlocks;
+		private final int timeIndex;
+		private final int numberOfTimes;
+		private final int numberOfNodes;
+		private final DoubleBinaryOperator valueAtNode;
+
+		BlockAction(int firstBlock, int lastBlock, double[] currentValues, double[] nextValues, double[][] valuesOfBlocks,
+				int timeIndex, int numberOfTimes, int numberOfNodes, DoubleBinaryOperator valueAtNode) {
+			this.firstBlock = firstBlock;
+			this.lastBlock = lastBlock;
+			this.currentValues = currentValues;
+			this.nextValues = nextValues;
+			this.valuesOfBlocks = valuesOfBlocks;
+			this.timeIndex = timeIndex;
+			this.numberOfTimes = numberOfTimes;
+			this.numberOfNodes = numberOfNodes;
+			this.valueAtNode = valueAtNode;
+		}
+
+		@Override
+		protected void compute() {
+			if (lastBlock - firstBlock > 1) {
+				final int middleBlock = (firstBlock + lastBlock) >>> 1;
+				invokeAll(new BlockAction(firstBlock, middleBlock, currentValues, nextValues, valuesOfBlocks, timeIndex,
+						numberOfTimes, numberOfNodes, valueAtNode),
+						new BlockAction(middleBlock, lastBlock, currentValues, nextValues, valuesOfBlocks, timeIndex,
+								numberOfTimes, numberOfNodes, valueAtNode));
+				return;
+			}
+			final int firstPosition = firstBlock * NUMBER_OF_NODES_PER_BLOCK;
+			final int numberOfNodesOfBlock = Math.min(NUMBER_OF_NODES_PER_BLOCK, numberOfNodes - firstPosition);
+			final int nodesAfterBlock = numberOfTimes * (discountedProbabilities.length - 1);
+			final double[] valuesOfBlock = valuesOfBlocks[firstBlock];
+
+			//the values at timeIndex of the block and of the nodes after it which are needed
+			System.arraycopy(currentValues, firstPosition, valuesOfBlock, 0, numberOfNodesOfBlock + nodesAfterBlock);
+			//at every time we need less nodes after the block
+			for (int timeStep = 1; timeStep <= numberOfTimes; timeStep++) {
+				computeTimeStep(valuesOfBlock, numberOfNodesOfBlock + (numberOfTimes - timeStep) * (discountedProbabilities.length - 1),
+						timeIndex - timeStep, firstPosition, valueAtNode);
+			}
+			System.arraycopy(valuesOfBlock, 0, nextValues, firstPosition, numberOfNodesOfBlock);
+		}
+	}
+}
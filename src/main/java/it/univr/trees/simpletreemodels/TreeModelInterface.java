@@ -1,5 +1,7 @@
 package it.univr.trees.simpletreemodels;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleUnaryOperator;
 
 
@@ -16,4 +18,29 @@ public interface TreeModelInterface {
 	double[] getTransformedValuesAtGivenTimeIndex(int timeIndex, DoubleUnaryOperator transformFunction);
 	
 	double[] getConditionalExpectation(double[] trinomialValues,int timeIndex);
+
+	/**
+	 * It replaces the values of (possibly a function of) the tree model at time timeIndex+1, given in the array,
+	 * with their discounted conditional expectations at timeIndex, without allocating a new array. The first
+	 * entries of the array are overwritten, the others are left unchanged.
+	 *
+	 * @param values, the values at timeIndex+1, overwritten by their discounted conditional expectations
+	 * @param timeIndex, the time index
+	 */
+	void computeConditionalExpectationInPlace(double[] values, int timeIndex);
+
+	/**
+	 * It returns the value at time 0 obtained going backward from the given values at lastTimeIndex, where the
+	 * work at every time is shared among the threads of the given pool. At every time and node, the value is
+	 * valueAtNode(underlying, discounted conditional expectation of the values at the next time), where underlying
+	 * is the value of the tree model at the node.
+	 *
+	 * @param values, the values at lastTimeIndex. The array gets overwritten
+	 * @param lastTimeIndex, the time index of the values
+	 * @param valueAtNode, the function giving the value at a node from the underlying and the conditional expectation
+	 * @param pool, the pool whose threads perform the backward induction
+	 * @return the value at time 0
+	 */
+	double getValueByBackwardInductionInParallel(double[] values, int lastTimeIndex, DoubleBinaryOperator valueAtNode,
+			ForkJoinPool pool);
 }
@@ -1,6 +1,7 @@
 package it.univr.trees.simpletreemodels;
 
-import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleUnaryOperator;
 
 import it.univr.usefulmethodsarrays.UsefulMethodsForArrays;
@@ -32,9 +33,6 @@ public class TrinomialModel  implements TreeModelInterface {
 
 	private int numberOfTimes;
 
-	//these fields will be initialized and set in private methods. For now their values is "null".
-	private double[][] values;
-
 	/**
 	 * It constructs an object representing a Binomial model.
 	 * 
@@ -62,35 +60,11 @@ public class TrinomialModel  implements TreeModelInterface {
 
 
 	/*
-	 * This method is private! This is our inner implementation, behind the scenes. We don't want an user of our
-	 * class to access it. The method sets values to be a matrix whose row n represents the possible values of the
-	 * trinomial model at time index n. However, the last values of the row are zero, because at time n the trinomial
-	 * model can only take 2*n+1 values. Note that this could cause confusion if somebody is directly aware of this
-	 * method.
-	 */
-	
-	/*
-	 * [S_0]
-	 * [S_0*u^2*d^1=S_0*u , S_0*u^1*d^1=S_0  ,S_0*u^0*d^1,0,...,0]    
-	 * [S_0*u^4*d^2=S_0*u^2 , S_0*u^3*d^2=S_0*u  ,S_0*u^2*d^2=S_0, S_0*u^1*d^2=S_0*d, S_0*u^0*d^2,0,..,0] 
-	 *	...
+	 * Note that we do not store the values of the tree in a matrix: a matrix whose row n represents the values at
+	 * time index n would have numberOfTimes x (2*numberOfTimes+1) entries, more than half of them zero. Instead, the
+	 * values at a given time index are computed when they are requested. In this way the memory needed by the model
+	 * does not depend on the number of times, and the only arrays are the ones we return.
 	 */
-	private void generateValues() {
-		values = new double[numberOfTimes][2*numberOfTimes+1];
-		values[0][0] = initialValue;
-		int positionToFill;//it will be updated in the for loop
-		for (int numberOfTimeStepsAhead = 1; numberOfTimeStepsAhead < numberOfTimes; numberOfTimeStepsAhead++) {
-			for (int exponentOfUp = 0; exponentOfUp <= 2*numberOfTimeStepsAhead; exponentOfUp++) {
-				positionToFill=2*numberOfTimeStepsAhead-exponentOfUp;
-				/*
-				 * Note that this is stored in position ! So the first position has all ups.
-				 */
-				values[numberOfTimeStepsAhead][positionToFill] = values[0][0] * Math.pow(upFactor, exponentOfUp)*
-						Math.pow(downFactor, numberOfTimeStepsAhead);
-			}
-		}
-	}
-
 
 	//the next methods are all public. Direct use from outside this class. 
 
@@ -102,20 +76,21 @@ public class TrinomialModel  implements TreeModelInterface {
 	 * 		   The value in position i is B(0)*u^(timeIndex-i)*d^i
 	 */
 	public double[] getValuesAtGivenTimeIndex(int timeIndex) {
+		if (timeIndex < 0 || timeIndex >= numberOfTimes) {
+			throw new IllegalArgumentException("Error: the time index must be between 0 and the number of times minus 1!");
+		}
+		//at timeIndex we have 2*timeIndex + 1 values
+		double[] valuesAtGivenTimeIndex = new double[2*timeIndex+1];
 		/*
-		 * Pay attention: the method generateValues() initializes the array values and sets it. This is
-		 * of course needed if we want to get those values. However, we want to do that only once!
-		 * So we check if values is null (this means "not yet initialized") and call the method only
-		 * in this case. 
-		 */
-		if (values == null) {
-			generateValues();
-		}	
-		/*
-		 * We only return the first timeIndex entries! The others are zero, because the process can take
-		 * only timeIndex values at time index timeIndex.
+		 * The value in position i is S_0*u^(2*timeIndex-i)*d^timeIndex = S_0*u^(timeIndex-i), since d=1/u. We only
+		 * call Math.pow for the first one, and with exponent timeIndex, so that u^(2*timeIndex) does not overflow for
+		 * large trees: every other value is the previous one with one less power of u, so it is obtained multiplying by d.
 		 */
-		return Arrays.copyOfRange(values[timeIndex], 0, 2*timeIndex+1);
+		valuesAtGivenTimeIndex[0] = initialValue * Math.pow(upFactor, timeIndex);
+		for (int positionToFill = 1; positionToFill <= 2*timeIndex; positionToFill++) {
+			valuesAtGivenTimeIndex[positionToFill] = valuesAtGivenTimeIndex[positionToFill - 1] * downFactor;
+		}
+		return valuesAtGivenTimeIndex;
 	}
 
 	/**
@@ -157,6 +132,50 @@ public class TrinomialModel  implements TreeModelInterface {
 		}
 		return conditionalExpectation;
 	}
-	
-}
 
+	/**
+	 * It replaces the first 2*timeIndex+1 entries of the given array, representing values of (possibly a function of)
+	 * a trinomial model at time timeIndex+1, with their discounted conditional expectations at timeIndex, as in
+	 * getConditionalExpectation, but without allocating a new array. The i-th entry only depends on the i-th,
+	 * (i+1)-th and (i+2)-th ones, so we can overwrite the entries from the first to the last one.
+	 *
+	 * @param trinomialValues, values of (possibly a function of) a trinomial model at time timeIndex+1. They get
+	 * 		  overwritten by their discounted conditional expectations at timeIndex
+	 * @param timeIndex, the time index
+	 */
+	@Override
+	public void computeConditionalExpectationInPlace(double[] trinomialValues, int timeIndex) {
+		final double discountedProbabilityUp = riskNeutralProbabilityUp / (1 + riskFreeFactor);
+		final double discountedProbabilityToStayTheSame = riskNeutralProbabilityToStayTheSame / (1 + riskFreeFactor);
+		final double discountedProbabilityDown = riskNeutralProbabilityDown / (1 + riskFreeFactor);
+		for (int i = 0; i < 2*timeIndex+1; i++) {
+			trinomialValues[i] = trinomialValues[i] * discountedProbabilityUp
+					+ trinomialValues[i + 1] * discountedProbabilityToStayTheSame + trinomialValues[i + 2] * discountedProbabilityDown;
+		}
+	}
+
+	/**
+	 * It returns the value at time 0 obtained going backward from the given values at lastTimeIndex, where the
+	 * work at every time is shared among the threads of the given pool, see TiledBackwardInduction. At every time and
+	 * node, the value is valueAtNode(underlying, discounted conditional expectation of the values at the next time).
+	 *
+	 * @param trinomialValues, the values at lastTimeIndex. The array gets overwritten
+	 * @param lastTimeIndex, the time index of the values
+	 * @param valueAtNode, the function giving the value at a node from the underlying and the conditional expectation
+	 * @param pool, the pool whose threads perform the backward induction
+	 * @return the value at time 0
+	 */
+	@Override
+	public double getValueByBackwardInductionInParallel(double[] trinomialValues, int lastTimeIndex,
+			DoubleBinaryOperator valueAtNode, ForkJoinPool pool) {
+		if (lastTimeIndex < 0 || lastTimeIndex >= numberOfTimes) {
+			throw new IllegalArgumentException("Error: the time index must be between 0 and the number of times minus 1!");
+		}
+		final double[] discountedProbabilities = {riskNeutralProbabilityUp / (1 + riskFreeFactor),
+				riskNeutralProbabilityToStayTheSame / (1 + riskFreeFactor), riskNeutralProbabilityDown / (1 + riskFreeFactor)};
+		//the value in position i is S_0*u^(timeIndex-i), since d=1/u: every value is the previous one times d
+		return new TiledBackwardInduction(discountedProbabilities, downFactor,
+				timeIndex -> initialValue * Math.pow(upFactor, timeIndex))
+				.getValue(trinomialValues, lastTimeIndex, valueAtNode, pool);
+	}
+}
@@ -0,0 +1,119 @@
+package it.univr.finitedifferences.ourproducts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import it.univr.analyticformulas.OurAnalyticFormulas;
+import net.finmath.finitedifference.models.FDMBlackScholesModel;
+
+/**
+ * In this class we test the engine computing surfaces of prices of barrier calls. We check that the prices of a small
+ * surface are the ones computed one option after the other and are close to the analytic ones, and we print the time
+ * needed to compute a surface of 10000 prices.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class FDMBarrierCallSurfaceEngineTest {
+
+	//model parameters: the analytic formula we use only holds for zero interest rate
+	private final double initialValue = 100;
+	private final double riskFreeRate = 0.0;
+	private final double upperBarrier = Double.POSITIVE_INFINITY;
+
+	//discretization parameters
+	private final int numberOfStandardDeviations = 5;
+	private final double theta = 0.5;
+
+	/**
+	 * It checks that the prices of a small surface, computed by two threads, are equal to the ones computed
+	 * sequentially, and close to the analytic ones. Barriers above the initial value give zero prices. Indices out of
+	 * the surface, also only for the strike, and empty arrays of parameters are not accepted.
+	 */
+	@Test
+	void testSmallSurface() {
+		final int numberOfTimeSteps = 100;
+		final int numberOfSpaceSteps = 400;
+		final double[] maturities = { 0.5, 1.0 };
+		final double[] lowerBarriers = { 80, 90, 105 };
+		final double[] volatilities = { 0.2, 0.3 };
+		final double[] strikes = { 90, 100, 110 };
+
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		final FDMBarrierCallSurfaceEngine engine = new FDMBarrierCallSurfaceEngine(initialValue, riskFreeRate, upperBarrier,
+				numberOfTimeSteps, numberOfSpaceSteps, numberOfStandardDeviations, theta, pool);
+		final BarrierCallPriceSurface surface = engine.getSurface(maturities, lowerBarriers, volatilities, strikes);
+		assertThrows(IllegalArgumentException.class, () -> engine.getSurface(maturities, lowerBarriers, volatilities, new double[0]));
+		assertThrows(IllegalArgumentException.class, () -> engine.getSurface(maturities, lowerBarriers, new double[0], strikes));
+		assertThrows(IllegalArgumentException.class, () -> engine.getSurface(maturities, new double[0], volatilities, strikes));
+		pool.shutdown();
+
+		assertEquals(maturities.length * lowerBarriers.length * volatilities.length * strikes.length, surface.getNumberOfPrices());
+		for (int i = 0; i < maturities.length; i++) {
+			for (int j = 0; j < lowerBarriers.length; j++) {
+				for (int l = 0; l < volatilities.length; l++) {
+					final double[] pricesForStrikes = initialValue <= lowerBarriers[j] ? new double[strikes.length]
+							: new FDMBarrierCallOption(maturities[i], strikes[0], lowerBarriers[j], upperBarrier, theta)
+							.getValuesForStrikesAtSpot(0.0, new FDMBlackScholesModel(numberOfTimeSteps, numberOfSpaceSteps,
+									numberOfStandardDeviations, initialValue, theta, initialValue, riskFreeRate,
+									volatilities[l]), strikes, initialValue);
+					for (int k = 0; k < strikes.length; k++) {
+						assertEquals(pricesForStrikes[k], surface.getPrice(i, j, l, k), 0.0);
+						final double analyticPrice = initialValue <= lowerBarriers[j] ? 0.0
+								: OurAnalyticFormulas.blackScholesDownAndOut(initialValue, riskFreeRate, volatilities[l],
+										maturities[i], strikes[k], lowerBarriers[j]);
+						assertEquals(analyticPrice, surface.getPrice(i, j, l, k), 5E-3);
+					}
+				}
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> surface.getPrice(0, 0, 0, strikes.length));
+		assertThrows(IllegalArgumentException.class, () -> surface.getPrice(0, 0, 0, -1));
+	}
+
+	/**
+	 * It computes a surface of 10000 prices, with ten maturities, barriers, volatilities and strikes, prints the time
+	 * needed and checks that the prices decrease with the strike and, up to the discretization error, increase when
+	 * the barrier decreases.
+	 */
+	@Test
+	void testLargeSurface() {
+		final int numberOfPoints = 10;
+		final double[] maturities = new double[numberOfPoints];
+		final double[] lowerBarriers = new double[numberOfPoints];
+		final double[] volatilities = new double[numberOfPoints];
+		final double[] strikes = new double[numberOfPoints];
+		for (int i = 0; i < numberOfPoints; i++) {
+			maturities[i] = 0.25 * (i + 1);
+			lowerBarriers[i] = 90 - 2 * i;
+			volatilities[i] = 0.1 + 0.03 * i;
+			strikes[i] = 80 + 5 * i;
+		}
+
+		final long start = System.currentTimeMillis();
+		final BarrierCallPriceSurface surface = new FDMBarrierCallSurfaceEngine(initialValue, riskFreeRate, upperBarrier,
+				50, 200, numberOfStandardDeviations, theta).getSurface(maturities, lowerBarriers, volatilities, strikes);
+		final long end = System.currentTimeMillis();
+
+		System.out.println("Surface of " + surface.getNumberOfPrices() + " prices computed in " + (end - start)
+				+ " milliseconds with " + ForkJoinPool.getCommonPoolParallelism() + " threads");
+		for (int i = 0; i < numberOfPoints; i++) {
+			for (int j = 0; j < numberOfPoints; j++) {
+				for (int l = 0; l < numberOfPoints; l++) {
+					for (int k = 1; k < numberOfPoints; k++) {
+						assertTrue(surface.getPrice(i, j, l, k) < surface.getPrice(i, j, l, k - 1));
+						if (j > 0) {
+							// up to the discretization error, which is larger than the effect of a far barrier
+							assertTrue(surface.getPrice(i, j, l, k) > surface.getPrice(i, j - 1, l, k) - 1E-3);
+						}
+					}
+				}
+			}
+		}
+	}
+}
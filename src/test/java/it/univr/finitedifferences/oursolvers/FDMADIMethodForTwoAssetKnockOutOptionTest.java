@@ -0,0 +1,79 @@
+package it.univr.finitedifferences.oursolvers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import it.univr.analyticformulas.OurAnalyticFormulas;
+
+/**
+ * In this class we test the ADI method for options on two assets. We check that the price of an exchange option is
+ * close to the one given by the Margrabe formula, both with the Douglas and with the Craig-Sneyd scheme, and that the
+ * price of a down and out call on the first asset, with a barrier only on this asset, is close to the analytic one.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class FDMADIMethodForTwoAssetKnockOutOptionTest {
+
+	private final double[] initialValues = { 100.0, 100.0 };
+	private final double[] volatilities = { 0.25, 0.3 };
+	private final double correlation = 0.3;
+	private final double maturity = 1.0;
+
+	private final int numberOfTimeSteps = 100;
+	private final int[] numberOfSpaceSteps = { 200, 200 };
+	private final double numberOfStandardDeviations = 5;
+	private final double theta = 0.5;
+
+	private final double[] noLowerBarriers = { 0.0, 0.0 };
+	private final double[] noUpperBarriers = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+
+	/**
+	 * It checks that the price of an exchange option computed with the Douglas and the Craig-Sneyd schemes is close
+	 * to the one given by the Margrabe formula. The Douglas scheme is only of first order in time when the correlation
+	 * is not zero, so its tolerance is larger.
+	 */
+	@Test
+	void testExchangeOption() {
+		final double riskFreeRate = 0.05;
+		final double analyticPrice = OurAnalyticFormulas.margrabeExchangeOptionValue(initialValues[0], initialValues[1],
+				volatilities[0], volatilities[1], correlation, maturity);
+
+		final double douglasPrice = new FDMADIMethodForTwoAssetKnockOutOption(initialValues, riskFreeRate, volatilities,
+				correlation, maturity, numberOfTimeSteps, numberOfSpaceSteps, numberOfStandardDeviations, noLowerBarriers,
+				noUpperBarriers, theta, false).getValueForInitialValues(0.0, maturity, (first, second) -> Math.max(first - second, 0));
+
+		final long start = System.currentTimeMillis();
+		final double craigSneydPrice = new FDMADIMethodForTwoAssetKnockOutOption(initialValues, riskFreeRate, volatilities,
+				correlation, maturity, numberOfTimeSteps, numberOfSpaceSteps, numberOfStandardDeviations, noLowerBarriers,
+				noUpperBarriers, theta, true).getValueForInitialValues(0.0, maturity, (first, second) -> Math.max(first - second, 0));
+		final long end = System.currentTimeMillis();
+
+		System.out.println("Exchange option: Douglas " + douglasPrice + ", Craig-Sneyd " + craigSneydPrice + " (computed in "
+				+ (end - start) + " milliseconds), Margrabe " + analyticPrice);
+		assertEquals(analyticPrice, douglasPrice, 1E-2);
+		assertEquals(analyticPrice, craigSneydPrice, 2E-3);
+	}
+
+	/**
+	 * It checks that the price of a call on the first asset, knocked out if the first asset goes below a barrier, is
+	 * close to the analytic price of a down and out call. The analytic formula we use only holds for zero interest
+	 * rate.
+	 */
+	@Test
+	void testKnockOutOnFirstAsset() {
+		final double strike = 100;
+		final double lowerBarrier = 80;
+		final double analyticPrice = OurAnalyticFormulas.blackScholesDownAndOut(initialValues[0], 0.0, volatilities[0],
+				maturity, strike, lowerBarrier);
+
+		final double finiteDifferencePrice = new FDMADIMethodForTwoAssetKnockOutOption(initialValues, 0.0, volatilities,
+				correlation, maturity, numberOfTimeSteps, numberOfSpaceSteps, numberOfStandardDeviations,
+				new double[] { lowerBarrier, 0.0 }, noUpperBarriers, theta, true)
+				.getValueForInitialValues(0.0, maturity, (first, second) -> Math.max(first - strike, 0));
+
+		System.out.println("Down and out call: ADI " + finiteDifferencePrice + ", analytic " + analyticPrice);
+		assertEquals(analyticPrice, finiteDifferencePrice, 2E-3);
+	}
+}
@@ -0,0 +1,696 @@
+package it.univr.finitedifferences.oursolvers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.jupiter.api.Test;
+
+import it.univr.analyticformulas.OurAnalyticFormulas;
+import it.univr.finitedifferences.ourproducts.FDMBarrierCallOption;
+import it.univr.trees.assetderivativevaluation.enhancedproducts.AmericanOption;
+import it.univr.trees.assetderivativevaluation.enhancedproducts.BermudanOption;
+import it.univr.trees.enhancedapproximatingmodels.LeisenReimerModel;
+import net.finmath.finitedifference.models.FDMBlackScholesModel;
+import net.finmath.finitedifference.models.FiniteDifference1DBoundary;
+import net.finmath.finitedifference.models.FiniteDifference1DModel;
+import net.finmath.functions.AnalyticFormulas;
+import net.finmath.interpolation.RationalFunctionInterpolation;
+import net.finmath.interpolation.RationalFunctionInterpolation.ExtrapolationMethod;
+import net.finmath.interpolation.RationalFunctionInterpolation.InterpolationMethod;
+import net.finmath.time.TimeDiscretizationFromArray;
+
+/**
+ * In this class we test our theta method for knock out options. We check that the implementation with tridiagonal
+ * operators gives the same prices as the one with dense matrices, and that on a fine grid the price of a down and
+ * out call is close to the analytic one.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class FDMThetaMethodForKnockOutOptionTest {
+
+	//option parameters
+	final double maturity = 3.0;
+	final double strike = 100;
+	final double lowerBarrier = 80;
+	final double upperBarrier = Long.MAX_VALUE;
+
+	//model parameters: the analytic formula we use only holds for zero interest rate
+	final double initialValue = 100;
+	final double riskFreeRate = 0.0;
+	final double volatility = 0.3;
+
+	//discretization parameters
+	final int numStandardDeviations = 15;
+	final double theta = 0.5;
+
+	final DoubleUnaryOperator payoff = x -> Math.max(x - strike, 0);
+
+	private FiniteDifference1DModel getModel(int numTimesteps, int numSpacesteps) {
+		return new FDMBlackScholesModel(numTimesteps, numSpacesteps, numStandardDeviations, strike, theta, strike,
+				riskFreeRate, volatility);
+	}
+
+	private FDMThetaMethodForKnockOutOption getSolver(FiniteDifference1DModel model) {
+		return new FDMThetaMethodForKnockOutOption(model, new FDMBarrierCallOption(maturity, strike, lowerBarrier,
+				upperBarrier, theta), maturity, theta, lowerBarrier, upperBarrier);
+	}
+
+	/*
+	 * It interpolates the prices on the grid in order to get the price for the initial value of the class. We only
+	 * give the interpolation the points close to the initial value: a spline on all the points of a fine grid would
+	 * take much more time than the finite difference method itself.
+	 */
+	private double getPriceForInitialValue(double[][] stockAndOptionPrices) {
+		final double[] stock = stockAndOptionPrices[0];
+		int index = 0;
+		while (stock[index] < initialValue) {
+			index++;
+		}
+		final int first = Math.max(index - 4, 0);
+		final int last = Math.min(index + 4, stock.length);
+		return new RationalFunctionInterpolation(Arrays.copyOfRange(stock, first, last),
+				Arrays.copyOfRange(stockAndOptionPrices[1], first, last), InterpolationMethod.CUBIC_SPLINE,
+				ExtrapolationMethod.DEFAULT).getValue(initialValue);
+	}
+
+	/*
+	 * Reference implementation of the theta method with a uniform grid in S, continuous monitoring and no dividends:
+	 * all the operators are dense matrices and the linear system at every time step is solved by a LU decomposition,
+	 * so every time step costs O(N^3). It returns the interior points of the given grid and the prices on them.
+	 */
+	private double[][] getValueWithDenseMatrices(FiniteDifference1DModel model, FiniteDifference1DBoundary boundaryCondition,
+			double[] spaceGrid, DoubleUnaryOperator valueAtMaturity) {
+		final double timeHorizon = maturity;
+
+		// Grid Generation
+		final double maximumStockPriceOnGrid = spaceGrid[spaceGrid.length - 1];
+		final double minimumStockPriceOnGrid = spaceGrid[0];
+		final double deltaStock = (maximumStockPriceOnGrid - minimumStockPriceOnGrid) / model.getNumSpacesteps();
+		final double deltaTau = timeHorizon / model.getNumTimesteps();
+
+		// Create interior spatial array of stock prices
+		final int spaceLength = model.getNumSpacesteps() - 1;
+		final double[] stock = new double[spaceLength];
+		for (int i= 0; i < spaceLength; i++) {
+			stock[i] = minimumStockPriceOnGrid + (i + 1) * deltaStock;
+		}
+
+		// Create time-reversed tau array
+		final int timeLength = model.getNumTimesteps() + 1;
+		final double[] tau = new double[timeLength];
+		for (int i = 0; i < timeLength; i++) {
+			tau[i] = i * deltaTau;
+		}
+
+		// Create constant matrices
+		final RealMatrix eye = MatrixUtils.createRealIdentityMatrix(spaceLength);
+		final RealMatrix D1 = MatrixUtils.createRealMatrix(spaceLength, spaceLength);
+		final RealMatrix D2 = MatrixUtils.createRealMatrix(spaceLength, spaceLength);
+		final RealMatrix T1 = MatrixUtils.createRealMatrix(spaceLength, spaceLength);
+		final RealMatrix T2 = MatrixUtils.createRealMatrix(spaceLength, spaceLength);
+		for (int i = 0; i < spaceLength; i++) {
+			for (int j = 0; j < spaceLength; j++) {
+				if (i == j) {
+					D1.setEntry(i, j, minimumStockPriceOnGrid / deltaStock + (i + 1));
+					D2.setEntry(i, j, Math.pow(minimumStockPriceOnGrid / deltaStock + (i + 1), 2));
+					T2.setEntry(i, j, -2);
+				} else if (i == j - 1) {
+					T1.setEntry(i, j, 1);
+					T2.setEntry(i, j, 1);
+				} else if (i == j + 1) {
+					T1.setEntry(i, j, -1);
+					T2.setEntry(i, j, 1);
+				} else {
+					D1.setEntry(i, j, 0);
+					D2.setEntry(i, j, 0);
+					T1.setEntry(i, j, 0);
+					T2.setEntry(i, j, 0);
+				}
+			}
+		}
+		final RealMatrix F1 = eye.scalarMultiply(1 - model.getRiskFreeRate() * deltaTau);
+		final RealMatrix F2 = D1.scalarMultiply(0.5 * model.getRiskFreeRate() * deltaTau).multiply(T1);
+		final RealMatrix F3 = D2.scalarMultiply(0.5 * deltaTau).multiply(T2);
+		final RealMatrix G1 = eye.scalarMultiply(1 + model.getRiskFreeRate() * deltaTau);
+		final RealMatrix G2 = F2.scalarMultiply(-1);
+		final RealMatrix G3 = F3.scalarMultiply(-1);
+
+		// Initialize boundary and solution vectors
+		final RealMatrix b = MatrixUtils.createRealMatrix(spaceLength, 1);
+		final RealMatrix b2 = MatrixUtils.createRealMatrix(spaceLength, 1);
+		RealMatrix U = MatrixUtils.createRealMatrix(spaceLength, 1);
+		for (int i = 0; i < spaceLength; i++) {
+			b.setEntry(i, 0, 0);
+			b2.setEntry(i, 0, 0);
+			U.setEntry(i, 0, valueAtMaturity.applyAsDouble(stock[i]));
+		}
+
+		// Theta finite difference method
+		for (int m = 0; m < model.getNumTimesteps(); m++) {
+			final double[] sigma = new double[spaceLength];
+			final double[] sigma2 = new double[spaceLength];
+			for (int i = 0; i < spaceLength; i++) {
+				sigma[i] = Math.pow(model.getLocalVolatility(minimumStockPriceOnGrid + (i + 1) * deltaStock,
+						timeHorizon - m * deltaTau), 2);
+				sigma2[i] = Math.pow(model.getLocalVolatility(minimumStockPriceOnGrid + (i + 1) * deltaStock,
+						timeHorizon - (m + 1) * deltaTau), 2);
+			}
+			final RealMatrix Sigma = MatrixUtils.createRealDiagonalMatrix(sigma);
+			final RealMatrix Sigma2 = MatrixUtils.createRealDiagonalMatrix(sigma2);
+			final RealMatrix F = F1.add(F2).add(Sigma.multiply(F3));
+			final RealMatrix G = G1.add(G2).add(Sigma2.multiply(G3));
+			final RealMatrix H = G.scalarMultiply(theta).add(eye.scalarMultiply(1 - theta));
+			final DecompositionSolver solver = new LUDecomposition(H).getSolver();
+
+			final double Sl = (minimumStockPriceOnGrid / deltaStock + 1);
+			final double Su = (maximumStockPriceOnGrid / deltaStock - 1);
+			final double vl = Math.pow(model.getLocalVolatility(minimumStockPriceOnGrid + deltaStock,
+					timeHorizon - m * deltaTau), 2);
+			final double vu = Math.pow(model.getLocalVolatility(maximumStockPriceOnGrid - deltaStock,
+					timeHorizon - m * deltaTau), 2);
+			final double vl2 = Math.pow(model.getLocalVolatility(minimumStockPriceOnGrid + deltaStock,
+					timeHorizon - (m + 1) * deltaTau), 2);
+			final double vu2 = Math.pow(model.getLocalVolatility(maximumStockPriceOnGrid - deltaStock,
+					timeHorizon - (m + 1) * deltaTau), 2);
+
+			b.setEntry(0, 0,
+					0.5 * deltaTau * Sl * (vl * Sl - model.getRiskFreeRate()) * boundaryCondition.getValueAtLowerBoundary(model, timeHorizon - tau[m], minimumStockPriceOnGrid));
+			b.setEntry(spaceLength - 1, 0,
+					0.5 * deltaTau * Su * (vu * Su + model.getRiskFreeRate()) * boundaryCondition.getValueAtUpperBoundary(model, timeHorizon - tau[m], maximumStockPriceOnGrid));
+			b2.setEntry(0, 0,
+					0.5 * deltaTau * Sl * (vl2 * Sl - model.getRiskFreeRate()) * boundaryCondition.getValueAtLowerBoundary(model, timeHorizon - tau[m + 1], minimumStockPriceOnGrid));
+			b2.setEntry(spaceLength - 1, 0,
+					0.5 * deltaTau * Su * (vu2 * Su + model.getRiskFreeRate()) * boundaryCondition.getValueAtUpperBoundary(model, timeHorizon - tau[m + 1], maximumStockPriceOnGrid));
+			final RealMatrix U1 = (F.scalarMultiply(1 - theta).add(eye.scalarMultiply(theta))).multiply(U);
+			final RealMatrix U2 = b.scalarMultiply(1 - theta).add(b2.scalarMultiply(theta));
+			U = solver.solve(U1.add(U2));
+		}
+		final double[] optionPrice = U.getColumn(0);
+		final double[][] stockAndOptionPrice = new double[2][spaceLength];
+		stockAndOptionPrice[0] = stock;
+		stockAndOptionPrice[1] = optionPrice;
+		return stockAndOptionPrice;
+	}
+
+	/**
+	 * It checks that the tridiagonal and the dense implementations of the theta method give the same prices.
+	 */
+	@Test
+	void testTridiagonalAgainstDense() {
+		final FDMThetaMethodForKnockOutOption solver = getSolver(getModel(35, 120));
+
+		final double[][] tridiagonalValues = solver.getValue(0.0, maturity, payoff);
+		final double[][] denseValues = getValueWithDenseMatrices(getModel(35, 120), new FDMBarrierCallOption(maturity,
+				strike, lowerBarrier, upperBarrier, theta), solver.getSpaceGrid(), payoff);
+
+		assertArrayEquals(denseValues[0], tridiagonalValues[0], 1E-12);
+		assertArrayEquals(denseValues[1], tridiagonalValues[1], 1E-9);
+	}
+
+	/**
+	 * It checks that, for a Black-Scholes model, factorizing the implicit operator once gives the same prices as
+	 * constructing and factorizing it at every time step.
+	 */
+	@Test
+	void testTimeHomogeneousFactorization() {
+		final FiniteDifference1DModel model = getModel(100, 500);
+		final FDMBarrierCallOption boundary = new FDMBarrierCallOption(maturity, strike, lowerBarrier, upperBarrier, theta);
+
+		final double[][] valuesWithOneFactorization = new FDMThetaMethodForKnockOutOption.Builder(model, boundary,
+				maturity, theta, lowerBarrier, upperBarrier).withTimeHomogeneous(true).build().getValue(0.0, maturity, payoff);
+		final double[][] valuesWithFactorizationAtEveryStep = new FDMThetaMethodForKnockOutOption.Builder(model,
+				boundary, maturity, theta, lowerBarrier, upperBarrier).withTimeHomogeneous(false).build().getValue(0.0, maturity, payoff);
+
+		assertArrayEquals(valuesWithFactorizationAtEveryStep[1], valuesWithOneFactorization[1], 1E-12);
+	}
+
+	/**
+	 * It checks that the grid concentrated around strike and barriers of a double barrier option contains strike and
+	 * barriers, and that the price computed on it with 200 points is close to the one computed on a uniform grid
+	 * with 400 points.
+	 */
+	@Test
+	void testConcentratedGrid() {
+		final double upperBarrierInsideTheGrid = 150;
+		final FiniteDifference1DModel coarseModel = getModel(1000, 200);
+		final FiniteDifference1DModel fineModel = getModel(1000, 400);
+		final FDMBarrierCallOption boundary = new FDMBarrierCallOption(maturity, strike, lowerBarrier, upperBarrierInsideTheGrid, theta);
+
+		final FDMThetaMethodForKnockOutOption solverWithConcentratedGrid = new FDMThetaMethodForKnockOutOption.Builder(coarseModel,
+				boundary, maturity, theta, lowerBarrier, upperBarrierInsideTheGrid)
+				.withGridConcentration(new double[] { strike, lowerBarrier, upperBarrierInsideTheGrid }, 10.0).build();
+
+		final double[] grid = solverWithConcentratedGrid.getSpaceGrid();
+		assertEquals(lowerBarrier, grid[0], 0.0);
+		assertEquals(upperBarrierInsideTheGrid, grid[grid.length - 1], 0.0);
+		assertTrue(Arrays.stream(grid).anyMatch(point -> point == strike));
+		for (int i = 1; i < grid.length; i++) {
+			assertTrue(grid[i] > grid[i - 1]);
+		}
+
+		final double coarsePrice = getPriceForInitialValue(solverWithConcentratedGrid.getValue(0.0, maturity, payoff));
+		final double finePrice = getPriceForInitialValue(new FDMThetaMethodForKnockOutOption(fineModel, boundary, maturity,
+				theta, lowerBarrier, upperBarrierInsideTheGrid).getValue(0.0, maturity, payoff));
+
+		System.out.println("Price with 200 points concentrated around strike and barriers: " + coarsePrice
+				+ ", with 400 uniform points: " + finePrice);
+		assertEquals(finePrice, coarsePrice, 1E-4);
+	}
+
+	/**
+	 * It checks that the grid concentrated around the middle point of a symmetric interval is symmetric also when the
+	 * width is very small, so that the stretching function is computed far in its left tail, and that the grid
+	 * cannot have less steps than concentration points.
+	 */
+	@Test
+	void testSymmetricConcentratedGrid() {
+		final int numberOfSteps = 100;
+		final double[] grid = SpaceGrids.getSinhGrid(-1.0, 1.0, numberOfSteps, new double[] { 0.0 }, 1E-6);
+
+		assertEquals(0.0, grid[numberOfSteps / 2], 0.0);
+		for (int i = 0; i <= numberOfSteps; i++) {
+			assertEquals(-grid[numberOfSteps - i], grid[i], 1E-12);
+		}
+		assertThrows(IllegalArgumentException.class,
+				() -> SpaceGrids.getSinhGrid(0.0, 1.0, 2, new double[] { 0.25, 0.5 }, 0.1));
+	}
+
+	/*
+	 * It returns the solver for a double barrier call with upper barrier 150, on a uniform grid with the given number of
+	 * time and space steps: strike and barriers are then points of the grid if the number of space steps is a
+	 * multiple of 7.
+	 */
+	private FDMThetaMethodForKnockOutOption getDoubleBarrierSolver(int numberOfSteps, int numberOfRannacherSteps) {
+		final double upperBarrierInsideTheGrid = 150;
+		return new FDMThetaMethodForKnockOutOption.Builder(getModel(numberOfSteps, numberOfSteps),
+				new FDMBarrierCallOption(maturity, strike, lowerBarrier, upperBarrierInsideTheGrid, theta), maturity, theta,
+				lowerBarrier, upperBarrierInsideTheGrid).withRannacherSteps(numberOfRannacherSteps).build();
+	}
+
+	/**
+	 * It checks that the Rannacher steps give back the second order convergence of the Crank-Nicolson scheme, which
+	 * is lost because of the kink of the payoff and of its discontinuity at the upper barrier.
+	 */
+	@Test
+	void testRannacherSmoothing() {
+		final double referencePrice = getPriceForInitialValue(getDoubleBarrierSolver(560, 2)
+				.getValueWithRichardsonExtrapolation(0.0, maturity, payoff));
+
+		final double errorWithoutSmoothing = Math.abs(getPriceForInitialValue(getDoubleBarrierSolver(280, 0)
+				.getValue(0.0, maturity, payoff)) - referencePrice);
+		final double errorWithSmoothing = Math.abs(getPriceForInitialValue(getDoubleBarrierSolver(280, 2)
+				.getValue(0.0, maturity, payoff)) - referencePrice);
+
+		System.out.println("Error with 280 steps without Rannacher steps: " + errorWithoutSmoothing
+				+ ", with two Rannacher steps: " + errorWithSmoothing);
+		assertTrue(errorWithSmoothing < 1E-4);
+		assertTrue(errorWithSmoothing < errorWithoutSmoothing / 10);
+	}
+
+	/**
+	 * It checks that the Richardson extrapolation of the prices computed with 35 time and space steps and two
+	 * Rannacher steps is as precise as the price computed with more than 1000 steps.
+	 */
+	@Test
+	void testRichardsonExtrapolation() {
+		final double referencePrice = getPriceForInitialValue(getDoubleBarrierSolver(560, 2)
+				.getValueWithRichardsonExtrapolation(0.0, maturity, payoff));
+		final double extrapolatedPrice = getPriceForInitialValue(getDoubleBarrierSolver(35, 2)
+				.getValueWithRichardsonExtrapolation(0.0, maturity, payoff));
+
+		System.out.println("Extrapolated price with 35 steps: " + extrapolatedPrice + ", reference price: " + referencePrice);
+		assertEquals(referencePrice, extrapolatedPrice, 1E-5);
+	}
+
+	/**
+	 * It checks that the prices of barrier calls with different strikes computed together are the same as the ones
+	 * computed option by option, and prints the time needed in the two cases.
+	 */
+	@Test
+	void testBatchOfStrikes() {
+		final double[] strikes = { 80, 85, 90, 95, 100, 105, 110, 115, 120, 125, 130 };
+		final FiniteDifference1DModel model = getModel(500, 2000);
+
+		final long startOfBatch = System.currentTimeMillis();
+		final double[][] batchValues = new FDMBarrierCallOption(maturity, strike, lowerBarrier, upperBarrier, theta)
+				.getValuesForStrikes(0.0, model, strikes);
+		final long endOfBatch = System.currentTimeMillis();
+
+		final long startOfSingleOptions = System.currentTimeMillis();
+		for (int k = 0; k < strikes.length; k++) {
+			final double[][] singleValues = new FDMBarrierCallOption(maturity, strikes[k], lowerBarrier, upperBarrier, theta)
+					.getValue(0.0, model);
+			assertArrayEquals(singleValues[0], batchValues[0], 0.0);
+			assertArrayEquals(singleValues[1], batchValues[k + 1], 1E-12);
+		}
+		final long endOfSingleOptions = System.currentTimeMillis();
+
+		System.out.println("Prices for " + strikes.length + " strikes computed together in " + (endOfBatch - startOfBatch)
+				+ " milliseconds, one by one in " + (endOfSingleOptions - startOfSingleOptions) + " milliseconds");
+	}
+
+	/*
+	 * It returns the number of bytes allocated by the current thread in order to compute the prices of a double
+	 * barrier call with the given number of time steps.
+	 */
+	private long getAllocatedBytes(com.sun.management.ThreadMXBean threadBean, int numberOfTimeSteps, boolean isTimeHomogeneous) {
+		final double upperBarrierInsideTheGrid = 150;
+		final FDMThetaMethodForKnockOutOption solver = new FDMThetaMethodForKnockOutOption.Builder(getModel(numberOfTimeSteps, 500),
+				new FDMBarrierCallOption(maturity, strike, lowerBarrier, upperBarrierInsideTheGrid, theta), maturity, theta,
+				lowerBarrier, upperBarrierInsideTheGrid).withTimeHomogeneous(isTimeHomogeneous).withRannacherSteps(2).build();
+		final long threadId = Thread.currentThread().getId();
+		final long allocatedBytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+		solver.getValue(0.0, maturity, payoff);
+		return threadBean.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+	}
+
+	/**
+	 * It checks that the time steps of the theta method do not allocate memory: all the arrays are allocated before
+	 * the first step, so that the memory allocated by getValue does not depend on the number of time steps. This is
+	 * checked both when the operators are constructed once and when they are constructed at every step.
+	 */
+	@Test
+	void testNoAllocationInTimeSteps() {
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+		assumeTrue(allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled());
+
+		for (boolean isTimeHomogeneous : new boolean[] { true, false }) {
+			// warm up, so that the code we measure is compiled
+			for (int i = 0; i < 5; i++) {
+				getAllocatedBytes(allocationBean, 100, isTimeHomogeneous);
+			}
+			final long bytesForFewSteps = getAllocatedBytes(allocationBean, 100, isTimeHomogeneous);
+			final long bytesForManySteps = getAllocatedBytes(allocationBean, 2100, isTimeHomogeneous);
+			System.out.println("Bytes allocated with 100 time steps: " + bytesForFewSteps + ", with 2100 time steps: "
+					+ bytesForManySteps);
+			// less than one byte for every additional step
+			assertTrue(bytesForManySteps - bytesForFewSteps < 2000);
+		}
+	}
+
+	/**
+	 * It checks that the value and the Greeks of a down and out call for a spot which is not a point of the grid,
+	 * computed both on the usual grid and on a smaller grid centred in the spot, are close to the analytic ones. The
+	 * analytic Greeks are computed by finite differences of the analytic price.
+	 */
+	@Test
+	void testValueAndGreeksAtSpot() {
+		final double spot = 97.3;
+		final double spotShift = 0.01;
+		final double maturityShift = 1E-4;
+		final double analyticPrice = OurAnalyticFormulas.blackScholesDownAndOut(spot, riskFreeRate, volatility, maturity,
+				strike, lowerBarrier);
+		final double priceUp = OurAnalyticFormulas.blackScholesDownAndOut(spot + spotShift, riskFreeRate, volatility,
+				maturity, strike, lowerBarrier);
+		final double priceDown = OurAnalyticFormulas.blackScholesDownAndOut(spot - spotShift, riskFreeRate, volatility,
+				maturity, strike, lowerBarrier);
+		final double analyticDelta = (priceUp - priceDown) / (2 * spotShift);
+		final double analyticGamma = (priceUp - 2 * analyticPrice + priceDown) / (spotShift * spotShift);
+		// the theta is the derivative with respect to the running time, that is, minus the one with respect to maturity
+		final double analyticTheta = -(OurAnalyticFormulas.blackScholesDownAndOut(spot, riskFreeRate, volatility,
+				maturity + maturityShift, strike, lowerBarrier) - OurAnalyticFormulas.blackScholesDownAndOut(spot,
+						riskFreeRate, volatility, maturity - maturityShift, strike, lowerBarrier)) / (2 * maturityShift);
+
+		final FiniteDifference1DModel model = getModel(400, 800);
+		final FDMBarrierCallOption option = new FDMBarrierCallOption(maturity, strike, lowerBarrier, upperBarrier, theta);
+		final List<Map<String, Double>> valuesAndGreeks = List.of(option.getValueAndGreeks(0.0, model, spot),
+				option.getValueAndGreeks(0.0, model, spot, 5));
+
+		for (Map<String, Double> valueAndGreeks : valuesAndGreeks) {
+			System.out.println("Finite differences: " + valueAndGreeks + ", analytic: value=" + analyticPrice + ", delta="
+					+ analyticDelta + ", gamma=" + analyticGamma + ", theta=" + analyticTheta);
+			assertEquals(analyticPrice, valueAndGreeks.get("value"), 1E-3);
+			assertEquals(analyticDelta, valueAndGreeks.get("delta"), 1E-4);
+			assertEquals(analyticGamma, valueAndGreeks.get("gamma"), 1E-5);
+			assertEquals(analyticTheta, valueAndGreeks.get("theta"), 5E-3);
+		}
+	}
+
+	/**
+	 * It checks that the grid in log space is uniform in log(S), and that the value and the delta of a down and out
+	 * call computed in log space are close to the analytic ones and to the ones computed in S.
+	 */
+	@Test
+	void testLogSpace() {
+		final double spot = 97.3;
+		final FiniteDifference1DModel model = new FDMBlackScholesModel(400, 400, 5, strike, theta, strike, riskFreeRate,
+				volatility);
+		final FDMBarrierCallOption boundary = new FDMBarrierCallOption(maturity, strike, lowerBarrier, upperBarrier, theta);
+		final FDMThetaMethodForKnockOutOption solverInLogSpace = new FDMThetaMethodForKnockOutOption.Builder(model, boundary,
+				maturity, theta, lowerBarrier, upperBarrier).withRannacherSteps(2).withLogSpace(true).build();
+		final FDMThetaMethodForKnockOutOption solverInSpace = new FDMThetaMethodForKnockOutOption.Builder(model, boundary,
+				maturity, theta, lowerBarrier, upperBarrier).withRannacherSteps(2).build();
+
+		final double[] grid = solverInLogSpace.getSpaceGrid();
+		assertEquals(lowerBarrier, grid[0], 0.0);
+		final double logStep = Math.log(grid[1] / grid[0]);
+		for (int i = 1; i < grid.length; i++) {
+			assertEquals(logStep, Math.log(grid[i] / grid[i - 1]), 1E-12);
+		}
+
+		final Map<String, Double> valueAndGreeksInLogSpace = solverInLogSpace.getValueAndGreeks(0.0, maturity, payoff, spot);
+		final Map<String, Double> valueAndGreeksInSpace = solverInSpace.getValueAndGreeks(0.0, maturity, payoff, spot);
+		final double analyticPrice = OurAnalyticFormulas.blackScholesDownAndOut(spot, riskFreeRate, volatility, maturity,
+				strike, lowerBarrier);
+
+		System.out.println("In log space: " + valueAndGreeksInLogSpace + ", in space: " + valueAndGreeksInSpace
+				+ ", analytic price: " + analyticPrice);
+		assertEquals(analyticPrice, valueAndGreeksInLogSpace.get("value"), 1E-3);
+		assertEquals(valueAndGreeksInSpace.get("value"), valueAndGreeksInLogSpace.get("value"), 1E-3);
+		assertEquals(valueAndGreeksInSpace.get("delta"), valueAndGreeksInLogSpace.get("delta"), 1E-4);
+	}
+
+	/**
+	 * It checks that the price computed on a grid with 2000 points is close to the analytic one, and prints the
+	 * time needed to compute it.
+	 */
+	@Test
+	void testFineGrid() {
+		final FDMThetaMethodForKnockOutOption solver = getSolver(getModel(200, 2000));
+
+		final long start = System.currentTimeMillis();
+		final double[][] values = solver.getValue(0.0, maturity, payoff);
+		final long end = System.currentTimeMillis();
+
+		final double finiteDifferencePrice = getPriceForInitialValue(values);
+		final double analyticPrice = OurAnalyticFormulas.blackScholesDownAndOut(initialValue, riskFreeRate, volatility,
+				maturity, strike, lowerBarrier);
+
+		System.out.println("Price with 2000 space steps: " + finiteDifferencePrice + ", analytic price: " + analyticPrice
+				+ ", computed in " + (end - start) + " milliseconds");
+		assertEquals(analyticPrice, finiteDifferencePrice, 0.01);
+	}
+
+	/*
+	 * It returns a solver for a put with early exercise and without barriers, with positive interest rate, together
+	 * with the boundary conditions of an American put: the exercise value at the left end and zero at the right end.
+	 */
+	private FDMThetaMethodForKnockOutOption getPutSolver(double putRiskFreeRate, double putMaturity) {
+		final FiniteDifference1DModel model = new FDMBlackScholesModel(400, 800, 6, strike, theta, initialValue,
+				putRiskFreeRate, volatility);
+		final FiniteDifference1DBoundary putBoundary = new FiniteDifference1DBoundary() {
+			@Override
+			public double getValueAtLowerBoundary(FiniteDifference1DModel model, double currentTime, double stockPrice) {
+				return Math.max(strike - stockPrice, 0);
+			}
+
+			@Override
+			public double getValueAtUpperBoundary(FiniteDifference1DModel model, double currentTime, double stockPrice) {
+				return 0.0;
+			}
+		};
+		return new FDMThetaMethodForKnockOutOption.Builder(model, putBoundary, putMaturity, theta, 0.0, Double.POSITIVE_INFINITY)
+				.withGridConcentration(new double[] { strike }, 10.0).withRannacherSteps(2).build();
+	}
+
+	/**
+	 * It checks that the prices of an American and of a Bermudan put computed by the theta method with early exercise
+	 * are close to the ones given by a Richardson extrapolation of the prices of the Leisen-Reimer tree with 1000 and
+	 * 2000 time steps, and that a Bermudan put with no exercise time before maturity has the price of the European
+	 * one.
+	 */
+	@Test
+	void testAmericanAndBermudanPut() {
+		final double putRiskFreeRate = 0.05;
+		final double putMaturity = 1.0;
+		final double[] exerciseTimes = { 0.25, 0.5, 0.75 };
+		final DoubleUnaryOperator putPayoff = x -> Math.max(strike - x, 0);
+		final FDMThetaMethodForKnockOutOption solver = getPutSolver(putRiskFreeRate, putMaturity);
+
+		final long start = System.currentTimeMillis();
+		final double[][] americanValues = solver.getValueWithEarlyExercise(0.0, putMaturity, putPayoff, null);
+		final long end = System.currentTimeMillis();
+		final double[][] bermudanValues = solver.getValueWithEarlyExercise(0.0, putMaturity, putPayoff, exerciseTimes);
+		final double[][] europeanValues = solver.getValueWithEarlyExercise(0.0, putMaturity, putPayoff, new double[0]);
+		assertArrayEquals(solver.getValue(0.0, putMaturity, putPayoff)[1], europeanValues[1], 0.0);
+
+		// the strike, which is the initial value, is a point of the grid
+		final int index = Arrays.binarySearch(americanValues[0], initialValue);
+		assertTrue(index >= 0);
+
+		final AmericanOption americanOption = new AmericanOption(putMaturity, putPayoff);
+		final BermudanOption bermudanOption = new BermudanOption(new TimeDiscretizationFromArray(0.25, 0.5, 0.75, 1.0),
+				putPayoff);
+		final LeisenReimerModel coarseTree = new LeisenReimerModel(initialValue, putRiskFreeRate, volatility, putMaturity,
+				1001, strike);
+		final LeisenReimerModel fineTree = new LeisenReimerModel(initialValue, putRiskFreeRate, volatility, putMaturity,
+				2001, strike);
+		final double americanTreePrice = 2 * americanOption.getValue(fineTree) - americanOption.getValue(coarseTree);
+		final double bermudanTreePrice = 2 * bermudanOption.getValue(fineTree) - bermudanOption.getValue(coarseTree);
+
+		System.out.println("American put: finite differences " + americanValues[1][index] + " (computed in "
+				+ (end - start) + " milliseconds), tree " + americanTreePrice + ". Bermudan put: finite differences "
+				+ bermudanValues[1][index] + ", tree " + bermudanTreePrice + ". European put: " + europeanValues[1][index]);
+		assertEquals(americanTreePrice, americanValues[1][index], 1E-3);
+		assertEquals(bermudanTreePrice, bermudanValues[1][index], 1E-3);
+		assertTrue(europeanValues[1][index] < bermudanValues[1][index] && bermudanValues[1][index] < americanValues[1][index]);
+	}
+
+	/**
+	 * It checks that the Brennan-Schwartz algorithm and the PSOR give the same solution of the linear complementarity
+	 * problem of the first time step of an American put, and that the Brennan-Schwartz algorithm with the exercise
+	 * region on the right gives the same solution for the problem with the order of the unknowns reversed.
+	 */
+	@Test
+	void testLinearComplementaritySolvers() {
+		final int dimension = 200;
+		final double deltaTau = 0.01;
+		final double putRiskFreeRate = 0.05;
+		final TridiagonalMatrix matrix = new TridiagonalMatrix(dimension);
+		final TridiagonalMatrix reversedMatrix = new TridiagonalMatrix(dimension);
+		final double[] exerciseValues = new double[dimension];
+		final double[] reversedExerciseValues = new double[dimension];
+		// the implicit Euler step of the Black-Scholes PDE on the points S_i = i + 1, for a put with strike 100
+		for (int i = 0; i < dimension; i++) {
+			final double stock = i + 1;
+			final double diffusion = 0.5 * volatility * volatility * stock * stock * deltaTau;
+			final double drift = 0.5 * putRiskFreeRate * stock * deltaTau;
+			matrix.setRow(i, -(diffusion - drift), 1 + 2 * diffusion + putRiskFreeRate * deltaTau, -(diffusion + drift));
+			reversedMatrix.setRow(dimension - 1 - i, -(diffusion + drift), 1 + 2 * diffusion + putRiskFreeRate * deltaTau,
+					-(diffusion - drift));
+			exerciseValues[i] = Math.max(strike - stock, 0);
+			reversedExerciseValues[dimension - 1 - i] = exerciseValues[i];
+		}
+
+		final double[] brennanSchwartzSolution = new double[dimension];
+		matrix.solveWithLowerBound(exerciseValues, exerciseValues, brennanSchwartzSolution, true);
+		final double[] reversedSolution = new double[dimension];
+		reversedMatrix.solveWithLowerBound(reversedExerciseValues, reversedExerciseValues, reversedSolution, false);
+		final double[] psorSolution = exerciseValues.clone();
+		final int numberOfIterations = matrix.solveWithLowerBoundByPSOR(exerciseValues, exerciseValues, psorSolution,
+				1.2, 1E-13, 100000);
+
+		// the discounting makes the solution equal to the exercise value deep in the money
+		assertEquals(exerciseValues[0], brennanSchwartzSolution[0], 0.0);
+		assertTrue(numberOfIterations < 100000);
+		assertArrayEquals(brennanSchwartzSolution, psorSolution, 1E-10);
+		for (int i = 0; i < dimension; i++) {
+			assertEquals(brennanSchwartzSolution[i], reversedSolution[dimension - 1 - i], 1E-12);
+		}
+	}
+
+	/**
+	 * It checks that the price of a down and out call whose barrier is monitored daily is close to the one given by the
+	 * continuity correction of Broadie, Glasserman and Kou, i.e., to the price of a continuously monitored down and out
+	 * call with barrier L exp(-0.5826 sigma sqrt(dt)), where dt is the time between two monitoring times.
+	 */
+	@Test
+	void testDiscretelyMonitoredBarrier() {
+		final double monitoredMaturity = 1.0;
+		final double monitoredBarrier = 90;
+		final int numberOfMonitoringTimes = 252;
+		final double[] monitoringTimes = new double[numberOfMonitoringTimes];
+		for (int i = 0; i < numberOfMonitoringTimes; i++) {
+			monitoringTimes[i] = (i + 1) * monitoredMaturity / numberOfMonitoringTimes;
+		}
+		final double correctedBarrier = monitoredBarrier
+				* Math.exp(-0.5826 * volatility * Math.sqrt(monitoredMaturity / numberOfMonitoringTimes));
+		final double correctedAnalyticPrice = OurAnalyticFormulas.blackScholesDownAndOut(initialValue, riskFreeRate,
+				volatility, monitoredMaturity, strike, correctedBarrier);
+		final double continuousAnalyticPrice = OurAnalyticFormulas.blackScholesDownAndOut(initialValue, riskFreeRate,
+				volatility, monitoredMaturity, strike, monitoredBarrier);
+
+		// the time steps must be much shorter than the time between two monitoring times
+		final FiniteDifference1DModel model = new FDMBlackScholesModel(8 * numberOfMonitoringTimes, 800, 5, strike, theta,
+				initialValue, riskFreeRate, volatility);
+		final FDMThetaMethodForKnockOutOption solver = new FDMThetaMethodForKnockOutOption.Builder(model,
+				new FDMBarrierCallOption(monitoredMaturity, strike, monitoredBarrier, upperBarrier, theta), monitoredMaturity,
+				theta, monitoredBarrier, upperBarrier).withGridConcentration(new double[] { strike, monitoredBarrier }, 10.0)
+				.withRannacherSteps(2).withMonitoringTimes(monitoringTimes).build();
+
+		final long start = System.currentTimeMillis();
+		final double finiteDifferencePrice = solver.getValueAndGreeks(0.0, monitoredMaturity, payoff, initialValue).get("value");
+		final long end = System.currentTimeMillis();
+
+		System.out.println("Daily monitored down and out call: finite differences " + finiteDifferencePrice
+				+ " (computed in " + (end - start) + " milliseconds), corrected analytic price " + correctedAnalyticPrice
+				+ ", continuously monitored " + continuousAnalyticPrice);
+		assertTrue(solver.getSpaceGrid()[0] < monitoredBarrier);
+		assertEquals(correctedAnalyticPrice, finiteDifferencePrice, 2E-3);
+	}
+
+	/**
+	 * It checks that the price of a call on an underlying paying a cash dividend D at time t_D is close to the one
+	 * computed by integrating the Black-Scholes price of the call at t_D, with initial value S(t_D) - D, with respect
+	 * to the log-normal density of S(t_D), and that the American call is worth more than the European one, since it
+	 * can be exercised before the dividend is paid.
+	 */
+	@Test
+	void testDiscreteDividend() {
+		final double dividendRiskFreeRate = 0.03;
+		final double dividendMaturity = 1.0;
+		final double dividendTime = 0.5;
+		final double dividend = 5;
+
+		// trapezoidal rule on the standard normal z, where S(t_D) = S(0) exp((r - sigma^2/2) t_D + sigma sqrt(t_D) z)
+		final int numberOfIntervals = 20000;
+		final double extremeValueOfNormal = 10;
+		final double intervalLength = 2 * extremeValueOfNormal / numberOfIntervals;
+		double integral = 0.0;
+		for (int i = 0; i <= numberOfIntervals; i++) {
+			final double normal = -extremeValueOfNormal + i * intervalLength;
+			final double stockAtDividendTime = initialValue * Math.exp((dividendRiskFreeRate - 0.5 * volatility * volatility)
+					* dividendTime + volatility * Math.sqrt(dividendTime) * normal);
+			final double callPrice = stockAtDividendTime <= dividend ? 0.0
+					: AnalyticFormulas.blackScholesOptionValue(stockAtDividendTime - dividend, dividendRiskFreeRate, volatility,
+							dividendMaturity - dividendTime, strike);
+			final double weight = i == 0 || i == numberOfIntervals ? 0.5 : 1.0;
+			integral += weight * intervalLength * callPrice * Math.exp(-0.5 * normal * normal) / Math.sqrt(2 * Math.PI);
+		}
+		final double semiAnalyticPrice = Math.exp(-dividendRiskFreeRate * dividendTime) * integral;
+
+		final FiniteDifference1DModel model = new FDMBlackScholesModel(200, 800, 6, strike, theta, initialValue,
+				dividendRiskFreeRate, volatility);
+		final FDMThetaMethodForKnockOutOption solver = new FDMThetaMethodForKnockOutOption.Builder(model,
+				new FDMBarrierCallOption(dividendMaturity, strike, 0.0, upperBarrier, theta), dividendMaturity, theta, 0.0,
+				upperBarrier).withGridConcentration(new double[] { strike }, 10.0).withRannacherSteps(2)
+				.withDividends(new double[] { dividendTime }, new double[] { dividend }).build();
+
+		final double finiteDifferencePrice = solver.getValueAndGreeks(0.0, dividendMaturity, payoff, initialValue).get("value");
+		final double[][] europeanValues = solver.getValue(0.0, dividendMaturity, payoff);
+		final double[][] americanValues = solver.getValueWithEarlyExercise(0.0, dividendMaturity, payoff, null);
+		final int index = Arrays.binarySearch(europeanValues[0], strike);
+
+		System.out.println("Call with a dividend: finite differences " + finiteDifferencePrice + ", semi-analytic "
+				+ semiAnalyticPrice + ", American " + americanValues[1][index]);
+		assertEquals(semiAnalyticPrice, finiteDifferencePrice, 2E-4);
+		assertTrue(americanValues[1][index] > europeanValues[1][index] + 1E-3);
+	}
+}
@@ -0,0 +1,147 @@
+package it.univr.montecarlo.discretizationschemes.ourimplementation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import net.finmath.functions.AnalyticFormulas;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.time.TimeDiscretization;
+import net.finmath.time.TimeDiscretizationFromArray;
+
+/**
+ * This class tests the multi-asset discretization schemes. We check that the Cholesky factor reproduces the
+ * correlation matrix, also when this is only semi-definite, that the price of an exchange option and the one of a
+ * call on the geometric average of a basket of ten assets computed with the three schemes are close to the analytic
+ * ones, and that drifts and volatilities must be given for every asset.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class MultiAssetDiscretizationSchemesTest {
+
+	private final double[] initialValues = { 100.0, 100.0 };
+	private final double[] volatilities = { 0.25, 0.3 };
+	private final double[] drifts = { 0.0, 0.0 };
+	private final double correlation = 0.3;
+	private final double[][] correlationMatrix = { { 1.0, correlation }, { correlation, 1.0 } };
+
+	private final int numberOfSimulations = 100000;
+	private final int seed = 1897;
+	private final double maturity = 1.0;
+	private final TimeDiscretization times = new TimeDiscretizationFromArray(0.0, 100, 0.01);
+
+	@Test
+	public void testCholeskyFactor() {
+		final double[][] matrix = { { 1.0, 0.5, 0.2 }, { 0.5, 1.0, -0.3 }, { 0.2, -0.3, 1.0 } };
+		final double[][] lowerFactor = CholeskyFactorization.getLowerTriangularFactor(matrix);
+		for (int i = 0; i < matrix.length; i++) {
+			for (int j = 0; j < matrix.length; j++) {
+				double product = 0.0;
+				for (int k = 0; k < matrix.length; k++) {
+					product += lowerFactor[i][k] * lowerFactor[j][k];
+				}
+				assertEquals(matrix[i][j], product, 1E-12);
+			}
+		}
+
+		//perfectly anti-correlated assets: the matrix is only semi-definite
+		final double[][] degenerateFactor = CholeskyFactorization.getLowerTriangularFactor(new double[][] { { 1.0, -1.0 }, { -1.0, 1.0 } });
+		assertEquals(-1.0, degenerateFactor[1][0], 1E-12);
+		assertEquals(0.0, degenerateFactor[1][1], 1E-12);
+	}
+
+	@Test
+	public void testExchangeOption() {
+		final double sigma = Math.sqrt(volatilities[0] * volatilities[0]
+				- 2 * volatilities[0] * volatilities[1] * correlation + volatilities[1] * volatilities[1]);
+		final double analyticPrice = AnalyticFormulas.blackScholesOptionValue(initialValues[0], 0, sigma, maturity, initialValues[1]);
+
+		final AbstractMultiAssetProcessSimulation[] schemes = {
+				new MultiAssetEulerSchemeForBlackScholes(volatilities, drifts, initialValues, correlationMatrix, numberOfSimulations, seed, times),
+				new MultiAssetLogEulerSchemeForBlackScholes(volatilities, drifts, initialValues, correlationMatrix, numberOfSimulations, seed, times),
+				new MultiAssetMilsteinSchemeForBlackScholes(volatilities, drifts, initialValues, correlationMatrix, numberOfSimulations, seed, times) };
+
+		for (AbstractMultiAssetProcessSimulation scheme : schemes) {
+			final RandomVariable firstAsset = scheme.getFinalValue(0);
+			final RandomVariable secondAsset = scheme.getFinalValue(1);
+			final double monteCarloPrice = firstAsset.sub(secondAsset).floor(0.0).getAverage();
+			assertEquals(analyticPrice, monteCarloPrice, 0.02 * analyticPrice);
+		}
+	}
+
+	@Test
+	public void testGeometricBasketOption() {
+		final int numberOfAssets = 10;
+		final double riskFreeRate = 0.05;
+		final double basketCorrelation = 0.4;
+		final double strike = 100.0;
+
+		final double[] basketInitialValues = new double[numberOfAssets];
+		final double[] basketVolatilities = new double[numberOfAssets];
+		final double[] basketDrifts = new double[numberOfAssets];
+		final double[][] basketCorrelationMatrix = new double[numberOfAssets][numberOfAssets];
+		for (int i = 0; i < numberOfAssets; i++) {
+			basketInitialValues[i] = 90.0 + 2.0 * i;
+			basketVolatilities[i] = 0.1 + 0.03 * i;
+			basketDrifts[i] = riskFreeRate;
+			for (int j = 0; j < numberOfAssets; j++) {
+				basketCorrelationMatrix[i][j] = i == j ? 1.0 : basketCorrelation;
+			}
+		}
+
+		//the logarithm of the geometric average is normal: we compute its mean and variance
+		double meanOfLogarithm = 0.0;
+		double varianceOfLogarithm = 0.0;
+		for (int i = 0; i < numberOfAssets; i++) {
+			meanOfLogarithm += (Math.log(basketInitialValues[i])
+					+ (riskFreeRate - 0.5 * basketVolatilities[i] * basketVolatilities[i]) * maturity) / numberOfAssets;
+			for (int j = 0; j < numberOfAssets; j++) {
+				varianceOfLogarithm += basketVolatilities[i] * basketVolatilities[j] * basketCorrelationMatrix[i][j]
+						* maturity / (numberOfAssets * numberOfAssets);
+			}
+		}
+		final double forward = Math.exp(meanOfLogarithm + 0.5 * varianceOfLogarithm);
+		final double discountFactor = Math.exp(-riskFreeRate * maturity);
+		final double analyticPrice = AnalyticFormulas.blackScholesGeneralizedOptionValue(forward,
+				Math.sqrt(varianceOfLogarithm / maturity), maturity, strike, discountFactor);
+
+		final int basketNumberOfSimulations = 50000;
+		final TimeDiscretization basketTimes = new TimeDiscretizationFromArray(0.0, 20, maturity / 20);
+		final AbstractMultiAssetProcessSimulation[] schemes = {
+				new MultiAssetEulerSchemeForBlackScholes(basketVolatilities, basketDrifts, basketInitialValues,
+						basketCorrelationMatrix, basketNumberOfSimulations, seed, basketTimes),
+				new MultiAssetLogEulerSchemeForBlackScholes(basketVolatilities, basketDrifts, basketInitialValues,
+						basketCorrelationMatrix, basketNumberOfSimulations, seed, basketTimes),
+				new MultiAssetMilsteinSchemeForBlackScholes(basketVolatilities, basketDrifts, basketInitialValues,
+						basketCorrelationMatrix, basketNumberOfSimulations, seed, basketTimes) };
+
+		for (AbstractMultiAssetProcessSimulation scheme : schemes) {
+			final int lastTimeIndex = scheme.getNumberOfTimes() - 1;
+			double sumOfPayoffs = 0.0;
+			for (int pathIndex = 0; pathIndex < basketNumberOfSimulations; pathIndex++) {
+				double logarithmOfAverage = 0.0;
+				for (int assetIndex = 0; assetIndex < numberOfAssets; assetIndex++) {
+					logarithmOfAverage += Math.log(scheme.getRealization(lastTimeIndex, assetIndex, pathIndex)) / numberOfAssets;
+				}
+				sumOfPayoffs += Math.max(Math.exp(logarithmOfAverage) - strike, 0.0);
+			}
+			final double monteCarloPrice = discountFactor * sumOfPayoffs / basketNumberOfSimulations;
+			System.out.println(scheme.getClass().getSimpleName() + ": " + monteCarloPrice + ", analytic " + analyticPrice);
+			assertEquals(analyticPrice, monteCarloPrice, 0.02 * analyticPrice);
+		}
+	}
+
+	@Test
+	public void testNumberOfParameters() {
+		final double[] threeVolatilities = { 0.25, 0.3, 0.2 };
+		final double[] oneDrift = { 0.0 };
+		assertThrows(IllegalArgumentException.class, () -> new MultiAssetEulerSchemeForBlackScholes(threeVolatilities,
+				drifts, initialValues, correlationMatrix, numberOfSimulations, seed, times));
+		assertThrows(IllegalArgumentException.class, () -> new MultiAssetLogEulerSchemeForBlackScholes(volatilities,
+				oneDrift, initialValues, correlationMatrix, numberOfSimulations, seed, times));
+		assertThrows(IllegalArgumentException.class, () -> new MultiAssetMilsteinSchemeForBlackScholes(volatilities,
+				drifts, initialValues, new double[][] { { 1.0 } }, numberOfSimulations, seed, times));
+	}
+}
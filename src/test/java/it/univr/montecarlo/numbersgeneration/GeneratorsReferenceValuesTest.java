@@ -0,0 +1,238 @@
+package it.univr.montecarlo.numbersgeneration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class checks our implementations of PCG64, xoshiro256++ and Philox4x32-10 against the outputs of the
+ * reference implementations of their authors, and checks the methods to move along the streams: jumpAhead(n) must
+ * give the same state as n calls to nextLong(), and the streams of the generators returned by split() or reached by
+ * jump() must not overlap with the one of the parent, also when split() is called recursively.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class GeneratorsReferenceValuesTest {
+
+	private final static long seed = 1897;
+
+	//the number of longs of every stream compared in the tests of split() and jump()
+	private final static int lengthOfStreams = 100000;
+
+	/**
+	 * It checks the known answer tests of the Random123 library for Philox4x32-10. The four integers of 32 bits of
+	 * the counter and the two ones of the key are here packed into longs, the first integer being the least
+	 * significant one.
+	 */
+	@Test
+	public void testPhiloxKnownAnswers() {
+		final long[] output = new long[2];
+
+		PhiloxGenerator.generateBlock(0L, 0L, 0L, output);
+		assertArrayEquals(new long[] { 0xe169c58d6627e8d5L, 0x9b00dbd8bc57ac4cL }, output);
+
+		PhiloxGenerator.generateBlock(0xffffffffffffffffL, 0xffffffffffffffffL, 0xffffffffffffffffL, output);
+		assertArrayEquals(new long[] { 0x41c83b0e408f276dL, 0x6d5451fda20bc7c6L }, output);
+
+		PhiloxGenerator.generateBlock(0x299f31d0a4093822L, 0x0370734413198a2eL, 0x85a308d3243f6a88L, output);
+		assertArrayEquals(new long[] { 0x94fdccebd16cfe09L, 0x24126ea15001e420L }, output);
+	}
+
+	/**
+	 * It checks the first outputs of PCG64 with initial state 42 and stream 54, which are the ones of the demo
+	 * program of the reference implementation.
+	 */
+	@Test
+	public void testPCG64ReferenceOutputs() {
+		final PCG64Generator generator = new PCG64Generator(42, 54);
+		final long[] expected = { 0x86b1da1d72062b68L, 0x1304aa46c9853d39L, 0xa3670e9e0dd50358L, 0xf9090e529a7dae00L,
+				0xc85b9fd837996f2cL, 0x606121f8e3919196L };
+		for (long value : expected) {
+			assertEquals(value, generator.nextLong());
+		}
+	}
+
+	/**
+	 * It checks the first outputs of xoshiro256++ with state (1, 2, 3, 4), computed by the reference implementation.
+	 */
+	@Test
+	public void testXoshiroReferenceOutputs() {
+		final Xoshiro256PlusPlusGenerator generator = new Xoshiro256PlusPlusGenerator(1L, 2L, 3L, 4L);
+		final long[] expected = { 41943041L, 58720359L, 3588806011781223L, 3591011842654386L,
+				Long.parseUnsignedLong("9228616714210784205"), Long.parseUnsignedLong("9973669472204895162"),
+				Long.parseUnsignedLong("14011001112246962877"), Long.parseUnsignedLong("12406186145184390807"),
+				Long.parseUnsignedLong("15849039046786891736"), Long.parseUnsignedLong("10450023813501588000") };
+		for (long value : expected) {
+			assertEquals(value, generator.nextLong());
+		}
+	}
+
+	/**
+	 * It checks that jumpAhead(n) gives the same numbers as n calls to nextLong(), also when n is odd and Philox
+	 * stops in the middle of a block.
+	 */
+	@Test
+	public void testJumpAhead() {
+		for (long numberOfSteps : new long[] { 0, 1, 2, 7, 1000, 123457 }) {
+			final PCG64Generator jumpingPCG = new PCG64Generator(seed, 3);
+			final PCG64Generator steppingPCG = new PCG64Generator(seed, 3);
+			jumpingPCG.jumpAhead(numberOfSteps);
+			for (long step = 0; step < numberOfSteps; step++) {
+				steppingPCG.nextLong();
+			}
+			for (int i = 0; i < 10; i++) {
+				assertEquals(steppingPCG.nextLong(), jumpingPCG.nextLong());
+			}
+
+			final PhiloxGenerator jumpingPhilox = new PhiloxGenerator(seed, 3);
+			final PhiloxGenerator steppingPhilox = new PhiloxGenerator(seed, 3);
+			jumpingPhilox.jumpAhead(numberOfSteps);
+			for (long step = 0; step < numberOfSteps; step++) {
+				steppingPhilox.nextLong();
+			}
+			for (int i = 0; i < 10; i++) {
+				assertEquals(steppingPhilox.nextLong(), jumpingPhilox.nextLong());
+			}
+		}
+	}
+
+	/**
+	 * It checks that after split() the returned generator continues the stream of the parent, and that the
+	 * parent then gives numbers which do not overlap with the ones of the returned generator, neither with the
+	 * ones it gave before. Then the parent jumps, and its new numbers must not overlap with all the previous ones.
+	 */
+	@Test
+	public void testSplitAndJumpDoNotOverlap() {
+		checkSplitAndJump(new PCG64Generator(seed), new PCG64Generator(seed));
+		checkSplitAndJump(new Xoshiro256PlusPlusGenerator(seed), new Xoshiro256PlusPlusGenerator(seed));
+		checkSplitAndJump(new PhiloxGenerator(seed), new PhiloxGenerator(seed));
+
+		//for Philox, the parent must be 2^48 streams ahead, at the same position
+		final PhiloxGenerator parent = new PhiloxGenerator(seed);
+		parent.nextLong();
+		parent.split();
+		final PhiloxGenerator nextStream = new PhiloxGenerator(seed, 1L << 48);
+		nextStream.nextLong();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(nextStream.nextLong(), parent.nextLong());
+		}
+	}
+
+	/**
+	 * It checks that split() can be called recursively, as in a fork/join computation: a generator is split, the
+	 * returned one is split and jumped, and so on. The streams of all the generators must not overlap. It also
+	 * checks that split() throws an exception when it has been called recursively too many times.
+	 */
+	@Test
+	public void testRecursiveSplitDoesNotOverlap() {
+		checkRecursiveSplit(new PCG64Generator(seed), 4);
+		checkRecursiveSplit(new Xoshiro256PlusPlusGenerator(seed), 4);
+		checkRecursiveSplit(new PhiloxGenerator(seed), 4);
+		checkRecursiveSplit(new LinearCongruentialGenerator(0, seed), 3);
+	}
+
+	/**
+	 * It checks that the polynomial which moves xoshiro256++ ahead of 2^32 steps, used by jump() after four nested
+	 * calls of split(), gives the same state as 2^32 calls to nextLong(). The polynomials for 2^128 and 2^192 steps
+	 * are the ones of the authors.
+	 */
+	@Test
+	public void testXoshiroSmallestJump() {
+		//the same chain of splits gives two generators in the same state
+		final Xoshiro256PlusPlusGenerator generator = new Xoshiro256PlusPlusGenerator(seed).split().split().split().split();
+		final Xoshiro256PlusPlusGenerator steppingGenerator = new Xoshiro256PlusPlusGenerator(seed).split().split().split()
+				.split();
+		generator.jump();
+		for (long step = 0; step < 1L << 32; step++) {
+			steppingGenerator.nextLong();
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals(steppingGenerator.nextLong(), generator.nextLong());
+		}
+	}
+
+	/*
+	 * The generator is split recursively maximumNumberOfSplits times. At every level, both the generator which
+	 * is split and the one returned draw their numbers, and then the generator which is split also jumps.
+	 */
+	private static void checkRecursiveSplit(PseudoRandomNumberGenerator root, int maximumNumberOfSplits) {
+		final Set<Long> allNumbers = new HashSet<>();
+		PseudoRandomNumberGenerator generator = root;
+		for (int level = 0; level < maximumNumberOfSplits; level++) {
+			final PseudoRandomNumberGenerator child = generator.split();
+			addStream(generator, allNumbers);
+			generator.jump();
+			addStream(generator, allNumbers);
+			generator = child;
+		}
+		addStream(generator, allNumbers);
+		final PseudoRandomNumberGenerator deepestGenerator = generator;
+		assertThrows(IllegalStateException.class, () -> deepestGenerator.split());
+	}
+
+	/*
+	 * It adds lengthOfStreams numbers of the generator to the set, checking that they are not already there.
+	 */
+	private static void addStream(PseudoRandomNumberGenerator generator, Set<Long> numbers) {
+		final LongSupplier bits = getBits(generator);
+		for (int i = 0; i < lengthOfStreams; i++) {
+			assertTrue(numbers.add(bits.getAsLong()), "The streams of " + generator.getClass().getSimpleName() + " overlap");
+		}
+	}
+
+	/*
+	 * The two generators must be in the same state. The first one is split after some numbers, the second one is
+	 * used as a reference for the stream of the parent before the split.
+	 */
+	private static void checkSplitAndJump(PseudoRandomNumberGenerator generator, PseudoRandomNumberGenerator copy) {
+		final LongSupplier parentBits = getBits(generator);
+		final LongSupplier referenceBits = getBits(copy);
+		for (int i = 0; i < 17; i++) {
+			assertEquals(referenceBits.getAsLong(), parentBits.getAsLong());
+		}
+
+		final PseudoRandomNumberGenerator child = generator.split();
+		final LongSupplier childBits = getBits(child);
+		final Set<Long> streamOfChild = new HashSet<>();
+		for (int i = 0; i < lengthOfStreams; i++) {
+			final long value = childBits.getAsLong();
+			//the child continues the stream of the parent
+			assertEquals(referenceBits.getAsLong(), value);
+			streamOfChild.add(value);
+		}
+
+		final Set<Long> streamOfParent = new HashSet<>();
+		for (int i = 0; i < lengthOfStreams; i++) {
+			final long value = parentBits.getAsLong();
+			assertTrue(!streamOfChild.contains(value), "The stream of the parent overlaps with the one of the child");
+			streamOfParent.add(value);
+		}
+
+		generator.jump();
+		for (int i = 0; i < lengthOfStreams; i++) {
+			final long value = parentBits.getAsLong();
+			assertTrue(!streamOfChild.contains(value) && !streamOfParent.contains(value),
+					"The stream after jump() overlaps with the previous ones");
+		}
+	}
+
+	private static LongSupplier getBits(PseudoRandomNumberGenerator generator) {
+		if (generator instanceof PCG64Generator) {
+			return ((PCG64Generator) generator)::nextLong;
+		} else if (generator instanceof Xoshiro256PlusPlusGenerator) {
+			return ((Xoshiro256PlusPlusGenerator) generator)::nextLong;
+		} else if (generator instanceof LinearCongruentialGenerator) {
+			return ((LinearCongruentialGenerator) generator)::getNextInteger;
+		} else {
+			return ((PhiloxGenerator) generator)::nextLong;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package it.univr.montecarlo.numbersgeneration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import net.finmath.functions.NormalDistribution;
+
+/**
+ * This class tests the methods of LinearCongruentialGenerator which move along the sequence without generating
+ * the numbers in between: jumpAhead(n) must give the same numbers as n calls to getNextInteger(), and the
+ * substreams must continue the sequence of the generator exactly where they start. It also tests the methods
+ * which fill arrays of uniform and normal numbers, which must give the same numbers as the ones returning one
+ * number at a time.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class LinearCongruentialGeneratorTest {
+
+	private final static long seed = 1897;
+
+	/**
+	 * It checks that jumpAhead(n) gives the same numbers as n calls to getNextInteger(), also for n bigger than
+	 * 2^32, where the jump of split() is.
+	 */
+	@Test
+	public void testJumpAhead() {
+		for (long numberOfSteps : new long[] { 0, 1, 2, 3, 1000, 65537, (1L << 32) + 3 }) {
+			final LinearCongruentialGenerator jumpingGenerator = new LinearCongruentialGenerator(0, seed);
+			final LinearCongruentialGenerator steppingGenerator = new LinearCongruentialGenerator(0, seed);
+			jumpingGenerator.jumpAhead(numberOfSteps);
+			for (long step = 0; step < numberOfSteps; step++) {
+				steppingGenerator.getNextInteger();
+			}
+			for (int i = 0; i < 10; i++) {
+				assertEquals(steppingGenerator.getNextInteger(), jumpingGenerator.getNextInteger(),
+						"jumpAhead(" + numberOfSteps + ") differs from the sequence");
+			}
+		}
+	}
+
+	/**
+	 * It checks that the substream with index k and length l gives the numbers of the sequence of the generator
+	 * from the position k*l on. The sequence is given by getRandomNumberSequence() for the first three substreams,
+	 * and by jumpAhead for a substream whose first position does not fit into an int.
+	 */
+	@Test
+	public void testSubstreams() {
+		final int substreamLength = 1000;
+		final LinearCongruentialGenerator generator = new LinearCongruentialGenerator(3 * substreamLength, seed);
+		final long[] sequence = generator.getRandomNumberSequence();
+
+		for (int substreamIndex = 0; substreamIndex < 3; substreamIndex++) {
+			final LinearCongruentialGenerator substream = generator.getSubstream(substreamIndex, substreamLength);
+			for (int i = 1; i <= substreamLength; i++) {
+				assertEquals(sequence[substreamIndex * substreamLength + i], substream.getNextInteger());
+			}
+		}
+
+		//a big index, for which the offset does not fit into an int
+		final int bigIndex = 5000000;
+		final LinearCongruentialGenerator substream = generator.getSubstream(bigIndex, substreamLength);
+		final LinearCongruentialGenerator parent = new LinearCongruentialGenerator(0, seed);
+		parent.jumpAhead((long) bigIndex * substreamLength);
+		for (int i = 0; i < substreamLength; i++) {
+			assertEquals(parent.getNextInteger(), substream.getNextInteger());
+		}
+	}
+
+	/**
+	 * It checks that nextDoubles gives the same numbers as repeated calls to nextDouble(), that these numbers are
+	 * in (0,1), and that the generator goes on from the same point after both.
+	 */
+	@Test
+	public void testNextDoubles() {
+		final LinearCongruentialGenerator arrayGenerator = new LinearCongruentialGenerator(0, seed);
+		final LinearCongruentialGenerator singleGenerator = new LinearCongruentialGenerator(0, seed);
+		final double[] uniforms = new double[10000];
+		arrayGenerator.nextDoubles(uniforms);
+		for (double uniform : uniforms) {
+			assertEquals(singleGenerator.nextDouble(), uniform);
+			assertTrue(uniform > 0 && uniform < 1);
+		}
+		assertEquals(singleGenerator.getNextInteger(), arrayGenerator.getNextInteger());
+
+		//the integer 0 gives a number in (0,1) as well: its predecessor is (m - c)/a mod m
+		final long modulus = singleGenerator.getModulus();
+		final long predecessorOfZero = ((modulus - 11) * modularInverse(25214903917L, modulus)) & (modulus - 1);
+		final double[] extremeUniform = new double[1];
+		new LinearCongruentialGenerator(0, predecessorOfZero).nextDoubles(extremeUniform);
+		assertEquals(0.5 / modulus, extremeUniform[0]);
+		assertTrue(extremeUniform[0] > 0 && extremeUniform[0] < 1);
+	}
+
+	/**
+	 * It checks that nextGaussians gives the inverse of the normal cumulative distribution function applied to the
+	 * uniform numbers of the sequence, and that the normal numbers of a substream are the ones of the generator
+	 * from the first position of the substream on.
+	 */
+	@Test
+	public void testNextGaussians() {
+		final LinearCongruentialGenerator generator = new LinearCongruentialGenerator(0, seed);
+		final LinearCongruentialGenerator uniformGenerator = new LinearCongruentialGenerator(0, seed);
+		final double[] gaussians = new double[10000];
+		generator.nextGaussians(gaussians);
+		for (double gaussian : gaussians) {
+			assertEquals(NormalDistribution.inverseCumulativeDistribution(uniformGenerator.nextDouble()), gaussian);
+		}
+
+		final int substreamLength = 1000;
+		final int substreamIndex = 7;
+		final double[] gaussiansOfSubstream = new double[substreamLength];
+		generator.getSubstream(substreamIndex, substreamLength).nextGaussians(gaussiansOfSubstream);
+		final LinearCongruentialGenerator parent = new LinearCongruentialGenerator(0, seed);
+		parent.jumpAhead((long) substreamIndex * substreamLength);
+		for (double gaussian : gaussiansOfSubstream) {
+			assertEquals(parent.nextGaussian(), gaussian);
+		}
+	}
+
+	/*
+	 * The inverse of an odd number modulo a power of two, computed by Newton's iteration.
+	 */
+	private static long modularInverse(long number, long modulus) {
+		long inverse = number;
+		for (int i = 0; i < 6; i++) {
+			inverse *= 2 - number * inverse;
+		}
+		return inverse & (modulus - 1);
+	}
+}
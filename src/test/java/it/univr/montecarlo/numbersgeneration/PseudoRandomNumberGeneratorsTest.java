@@ -0,0 +1,153 @@
+package it.univr.montecarlo.numbersgeneration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.text.DecimalFormat;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * This class runs the tests of StatisticalTestsForGenerators on all our generators of pseudo random numbers, in
+ * order to catch regressions of the generators before they affect the prices computed by Monte Carlo. A test
+ * fails if the p-value is smaller than 1E-4 or bigger than 1 - 1E-4.
+ *
+ * The number of draws of every test is 10^7 by default. It can be changed by the system property numberOfDraws:
+ * the memory used does not depend on it. The full battery with 10^9 draws is run by
+ * mvn test -Dtest=PseudoRandomNumberGeneratorsTest -DnumberOfDraws=1000000000.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class PseudoRandomNumberGeneratorsTest {
+
+	private final static DecimalFormat formatterValue = new DecimalFormat("0.0000");
+
+	private final static long numberOfDraws = Long.getLong("numberOfDraws", 10000000L);
+
+	private final static double significanceLevel = 1E-4;
+
+	private final static long seed = 1897;
+
+	/*
+	 * The generators to test. We give suppliers, so that every test gets a new generator.
+	 */
+	static Stream<Arguments> generators() {
+		return Stream.of(
+				Arguments.of("LinearCongruentialGenerator", (Supplier<PseudoRandomNumberGenerator>) () -> new LinearCongruentialGenerator(0, seed)),
+				Arguments.of("PCG64Generator", (Supplier<PseudoRandomNumberGenerator>) () -> new PCG64Generator(seed)),
+				Arguments.of("Xoshiro256PlusPlusGenerator", (Supplier<PseudoRandomNumberGenerator>) () -> new Xoshiro256PlusPlusGenerator(seed)),
+				Arguments.of("PhiloxGenerator", (Supplier<PseudoRandomNumberGenerator>) () -> new PhiloxGenerator(seed)));
+	}
+
+	private static void checkPValue(String testName, String generatorName, double pValue) {
+		System.out.println(testName + " test for " + generatorName + ": p-value " + formatterValue.format(pValue));
+		assertTrue(pValue > significanceLevel && pValue < 1 - significanceLevel,
+				testName + " test failed for " + generatorName + " with p-value " + pValue);
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("generators")
+	public void testUniformity(String name, Supplier<PseudoRandomNumberGenerator> generator) {
+		checkPValue("Chi-square", name, StatisticalTestsForGenerators.getUniformityPValue(generator.get(), numberOfDraws));
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("generators")
+	public void testSerialCorrelation(String name, Supplier<PseudoRandomNumberGenerator> generator) {
+		checkPValue("Serial correlation", name, StatisticalTestsForGenerators.getSerialCorrelationPValue(generator.get(), numberOfDraws));
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("generators")
+	public void testGaps(String name, Supplier<PseudoRandomNumberGenerator> generator) {
+		checkPValue("Gap", name, StatisticalTestsForGenerators.getGapPValue(generator.get(), numberOfDraws));
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("generators")
+	public void testBirthdaySpacings(String name, Supplier<PseudoRandomNumberGenerator> generator) {
+		checkPValue("Birthday spacings", name, StatisticalTestsForGenerators.getBirthdaySpacingsPValue(generator.get(), numberOfDraws));
+	}
+
+	/**
+	 * It checks that the arrays filled by nextDoubles and nextGaussians contain the same numbers as the ones given by
+	 * repeated calls to nextDouble and nextGaussian, also for a length which is not a multiple of the numbers a
+	 * generator produces together, and that the throughput of the generators is a positive finite number. Its value
+	 * is only printed, since it depends on the machine: see RandomNumberGeneratorsThroughput for a comparison.
+	 */
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("generators")
+	public void testThroughput(String name, Supplier<PseudoRandomNumberGenerator> generator) {
+		final int length = 1001;
+		final PseudoRandomNumberGenerator arrayGenerator = generator.get();
+		final PseudoRandomNumberGenerator scalarGenerator = generator.get();
+
+		final double[] uniforms = new double[length];
+		arrayGenerator.nextDoubles(uniforms);
+		for (int i = 0; i < length; i++) {
+			assertEquals(scalarGenerator.nextDouble(), uniforms[i], 0.0);
+		}
+		final double[] normals = new double[length];
+		arrayGenerator.nextGaussians(normals);
+		for (int i = 0; i < length; i++) {
+			assertEquals(scalarGenerator.nextGaussian(), normals[i], 0.0);
+		}
+
+		final double throughput = StatisticalTestsForGenerators.getThroughput(generator.get(), numberOfDraws);
+		System.out.println(name + ": " + formatterValue.format(throughput) + " millions of uniform numbers per second");
+		assertTrue(throughput > 0 && Double.isFinite(throughput), "Invalid throughput " + throughput + " for " + name);
+	}
+
+	/**
+	 * It checks that the tests are able to detect a bad generator: here the numbers are given by the sequence
+	 * u[i] = frac(i * (sqrt(5)-1)/2), which is perfectly uniform but very far from being independent.
+	 */
+	@Test
+	public void testBadGeneratorIsDetected() {
+		final double pValue = StatisticalTestsForGenerators.getGapPValue(new WeylSequenceGenerator(0), 1000000);
+		System.out.println("Gap test for the bad generator: p-value " + pValue);
+		assertTrue(pValue < significanceLevel);
+	}
+
+	/*
+	 * The generator of the sequence u[i] = frac(i * (sqrt(5)-1)/2). The stream is identified by the index i, so
+	 * jump() moves it ahead of 2^32 numbers and split() returns a generator which starts from the current index.
+	 */
+	private static class WeylSequenceGenerator implements PseudoRandomNumberGenerator {
+
+		private static final long serialVersionUID = 1L;
+		private static final double GOLDEN_RATIO_CONJUGATE = 0.5 * (Math.sqrt(5) - 1);
+		private static final long LENGTH_OF_JUMP = 1L << 32;
+
+		private long index;
+
+		WeylSequenceGenerator(long index) {
+			this.index = index;
+		}
+
+		@Override
+		public double nextDouble() {
+			index++;
+			final double value = index * GOLDEN_RATIO_CONJUGATE;
+			return value - Math.floor(value);
+		}
+
+		@Override
+		public void jump() {
+			index += LENGTH_OF_JUMP;
+		}
+
+		@Override
+		public WeylSequenceGenerator split() {
+			final WeylSequenceGenerator copy = new WeylSequenceGenerator(index);
+			jump();
+			return copy;
+		}
+	}
+}
@@ -41,6 +41,39 @@ public class PseudoRandomNumbersTesting {
 
         System.out.println();
 
+        /*
+         * Jump ahead: we divide the sequence x[1], x[2], ... in blocks of length numberOfPseudoRandomNumbers.
+         * The substream with index 1 starts from x[numberOfPseudoRandomNumbers + 1], i.e., exactly after the
+         * numbers printed above, and no number in between is generated.
+         */
+        LinearCongruentialGenerator secondBlock = new LinearCongruentialGenerator(numberOfPseudoRandomNumbers, firstSeed)
+                .getSubstream(1, numberOfPseudoRandomNumbers);
+
+        System.out.println("Next block of the sequence, obtained by jumping ahead:");
+        for (int i = 0; i < numberOfPseudoRandomNumbers; i++) {
+            System.out.println(secondBlock.getNextInteger() + " " + firstGenerator.getNextInteger());
+        }
+
+        System.out.println();
+
+        /*
+         * Uniform and normal numbers: the arrays are filled by the generator. Here we check that the sample
+         * mean and variance of many normal numbers are close to 0 and 1.
+         */
+        LinearCongruentialGenerator thirdGenerator = new LinearCongruentialGenerator(numberOfPseudoRandomNumbers, firstSeed);
+
+        double[] uniforms = new double[numberOfPseudoRandomNumbers];
+        thirdGenerator.nextDoubles(uniforms);
+        System.out.println("Uniform numbers: " + Arrays.toString(uniforms));
+
+        double[] normals = new double[1000000];
+        thirdGenerator.nextGaussians(normals);
+        double mean = Arrays.stream(normals).average().getAsDouble();
+        double variance = Arrays.stream(normals).map(x -> (x - mean) * (x - mean)).average().getAsDouble();
+        System.out.println("Mean and variance of " + normals.length + " normal numbers: " + mean + " " + variance);
+
+        System.out.println();
+
 //        long secondSeed = 8;
 //
 //        LinearCongruentialGenerator secondGenerator = new LinearCongruentialGenerator(numberOfPseudoRandomNumbers,
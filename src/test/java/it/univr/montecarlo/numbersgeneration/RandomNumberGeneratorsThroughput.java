@@ -0,0 +1,84 @@
+package it.univr.montecarlo.numbersgeneration;
+
+import java.text.DecimalFormat;
+import java.util.function.Consumer;
+
+import net.finmath.functions.NormalDistribution;
+import net.finmath.randomnumbers.MersenneTwister;
+
+/**
+ * This class compares the throughput of our pseudo random number generators, and of the Mersenne Twister of
+ * the Finmath library which drives the Brownian motions we use in the simulations, when filling an array of
+ * uniform numbers and an array of normal numbers. The generators are first warmed up, so that the just in
+ * time compiler can optimize the code, and then every generator fills the array a given number of times.
+ *
+ * Every generator is given as the function which fills an array: for our generators this is nextDoubles or
+ * nextGaussians, whereas the numbers of the Mersenne Twister are drawn one by one by its nextDouble() method.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class RandomNumberGeneratorsThroughput {
+
+	private final static DecimalFormat formatterThroughput = new DecimalFormat("0.0");
+
+	private final static int sizeOfTheArray = 1000000;
+	private final static int numberOfWarmUpRepetitions = 20;
+	private final static int numberOfRepetitions = 50;
+
+	/*
+	 * It returns the millions of numbers per second generated when filling the array with the given function.
+	 */
+	private static double getMillionsOfNumbersPerSecond(Consumer<double[]> fill) {
+		final double[] numbers = new double[sizeOfTheArray];
+		double sum = 0;// we use the numbers, otherwise the compiler might skip their computation
+		for (int i = 0; i < numberOfWarmUpRepetitions; i++) {
+			fill.accept(numbers);
+			sum += numbers[i];
+		}
+		final long start = System.nanoTime();
+		for (int i = 0; i < numberOfRepetitions; i++) {
+			fill.accept(numbers);
+			sum += numbers[i];
+		}
+		final long end = System.nanoTime();
+		if (Double.isNaN(sum)) {
+			System.out.println("NaN!");
+		}
+		return ((double) sizeOfTheArray) * numberOfRepetitions / ((end - start) / 1E9) / 1E6;
+	}
+
+	public static void main(String[] args) {
+
+		final long seed = 1897;
+
+		final MersenneTwister mersenneTwister = new MersenneTwister(seed);
+
+		final String[] names = { "LinearCongruentialGenerator", "PCG64Generator", "Xoshiro256PlusPlusGenerator",
+				"PhiloxGenerator" };
+		final PseudoRandomNumberGenerator[] generators = { new LinearCongruentialGenerator(sizeOfTheArray, seed),
+				new PCG64Generator(seed), new Xoshiro256PlusPlusGenerator(seed), new PhiloxGenerator(seed) };
+
+		System.out.println("Millions of numbers per second: uniform numbers, normal numbers");
+		for (int i = 0; i < generators.length; i++) {
+			System.out.println(names[i] + ": "
+					+ formatterThroughput.format(getMillionsOfNumbersPerSecond(generators[i]::nextDoubles)) + ", "
+					+ formatterThroughput.format(getMillionsOfNumbersPerSecond(generators[i]::nextGaussians)));
+		}
+
+		// the Mersenne Twister of Finmath gives the numbers one by one
+		final Consumer<double[]> mersenneTwisterUniforms = numbers -> {
+			for (int i = 0; i < numbers.length; i++) {
+				numbers[i] = mersenneTwister.nextDouble();
+			}
+		};
+		final Consumer<double[]> mersenneTwisterNormals = numbers -> {
+			for (int i = 0; i < numbers.length; i++) {
+				numbers[i] = NormalDistribution.inverseCumulativeDistribution(mersenneTwister.nextDouble());
+			}
+		};
+		System.out.println("Finmath MersenneTwister: "
+				+ formatterThroughput.format(getMillionsOfNumbersPerSecond(mersenneTwisterUniforms)) + ", "
+				+ formatterThroughput.format(getMillionsOfNumbersPerSecond(mersenneTwisterNormals)));
+	}
+}
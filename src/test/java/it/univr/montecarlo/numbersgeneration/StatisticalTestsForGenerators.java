@@ -0,0 +1,250 @@
+package it.univr.montecarlo.numbersgeneration;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+
+import net.finmath.functions.NormalDistribution;
+
+/**
+ * This class contains some statistical tests for the quality of a generator of pseudo random numbers uniformly
+ * distributed in (0,1), together with a measure of its throughput. Every test returns the p-value of the
+ * observed statistic under the hypothesis that the numbers are independent and uniformly distributed: a p-value
+ * very close to zero means that the numbers are far from uniform or independent, and a p-value very close to one
+ * that they are "too regular" to be random.
+ *
+ * The numbers are drawn from the generator in blocks of fixed size, into one array which is allocated once, and
+ * only some sums or counts are updated block by block: the memory needed by the tests does not depend on the
+ * number of draws, so that they can be run also for billions of numbers.
+ *
+ * The tests are:
+ * - the chi-square test for uniformity: we divide (0,1) into intervals of the same length and compare the number
+ *   of draws in every interval with the expected one;
+ * - the serial correlation test: the correlation between u[i] and u[i+1] multiplied by sqrt(n) must be
+ *   approximately standard normal;
+ * - the gap test: we look at the lengths of the gaps between two consecutive draws falling into a given interval,
+ *   which must have a geometric distribution;
+ * - the birthday spacings test by Marsaglia: we choose m "birthdays" in a year of d days, sort them and count how
+ *   many spacings between consecutive birthdays appear more than once. This number must have approximately a
+ *   Poisson distribution with parameter m^3/(4d).
+ *
+ * This class is a helper of PseudoRandomNumberGeneratorsTest, which runs the tests on all our generators.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class StatisticalTestsForGenerators {
+
+	// the numbers are drawn in blocks of this size
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private static final int NUMBER_OF_INTERVALS_FOR_UNIFORMITY = 1024;
+
+	// the interval used for the gap test and the number of gap lengths we distinguish
+	private static final double GAP_LOWER_BOUND = 0.4;
+	private static final double GAP_UPPER_BOUND = 0.6;
+	private static final int NUMBER_OF_GAP_LENGTHS = 30;
+
+	// parameters of the birthday spacings test: lambda = m^3/(4d) = 2
+	private static final int NUMBER_OF_BIRTHDAYS = 512;
+	private static final int NUMBER_OF_DAYS = 1 << 24;
+	private static final int NUMBER_OF_DUPLICATES_CLASSES = 7;// 0, 1, ..., 5 and more than 5
+
+	/*
+	 * It returns the probability that a chi-square random variable with given degrees of freedom is bigger than
+	 * the statistic computed from the observed and expected counts.
+	 */
+	private static double getChiSquarePValue(long[] observedCounts, double[] expectedCounts) {
+		double statistic = 0.0;
+		for (int i = 0; i < observedCounts.length; i++) {
+			final double difference = observedCounts[i] - expectedCounts[i];
+			statistic += difference * difference / expectedCounts[i];
+		}
+		return 1.0 - new ChiSquaredDistribution(observedCounts.length - 1).cumulativeProbability(statistic);
+	}
+
+	/**
+	 * It returns the p-value of the chi-square test for uniformity, computed from the given number of draws.
+	 *
+	 * @param generator the generator to test
+	 * @param numberOfDraws the number of uniform numbers drawn from the generator
+	 * @return the p-value of the chi-square test for uniformity
+	 */
+	public static double getUniformityPValue(PseudoRandomNumberGenerator generator, long numberOfDraws) {
+		final long[] counts = new long[NUMBER_OF_INTERVALS_FOR_UNIFORMITY];
+		final double[] block = new double[BLOCK_SIZE];
+		for (long drawn = 0; drawn < numberOfDraws; drawn += BLOCK_SIZE) {
+			final int length = (int) Math.min(BLOCK_SIZE, numberOfDraws - drawn);
+			fillBlock(generator, block, length);
+			for (int i = 0; i < length; i++) {
+				counts[(int) (block[i] * NUMBER_OF_INTERVALS_FOR_UNIFORMITY)]++;
+			}
+		}
+		final double[] expectedCounts = new double[NUMBER_OF_INTERVALS_FOR_UNIFORMITY];
+		Arrays.fill(expectedCounts, ((double) numberOfDraws) / NUMBER_OF_INTERVALS_FOR_UNIFORMITY);
+		return getChiSquarePValue(counts, expectedCounts);
+	}
+
+	/**
+	 * It returns the (two sided) p-value of the serial correlation test at lag one, computed from the given
+	 * number of draws.
+	 *
+	 * @param generator the generator to test
+	 * @param numberOfDraws the number of uniform numbers drawn from the generator
+	 * @return the p-value of the serial correlation test
+	 */
+	public static double getSerialCorrelationPValue(PseudoRandomNumberGenerator generator, long numberOfDraws) {
+		// sums over the pairs (u[i], u[i+1]), for i = 0, ..., numberOfDraws - 2
+		double sumOfFirst = 0.0;
+		double sumOfSecond = 0.0;
+		double sumOfSquaresOfFirst = 0.0;
+		double sumOfSquaresOfSecond = 0.0;
+		double sumOfProducts = 0.0;
+		final double[] block = new double[BLOCK_SIZE];
+		double previous = Double.NaN;// the last number of the previous block
+		for (long drawn = 0; drawn < numberOfDraws; drawn += BLOCK_SIZE) {
+			final int length = (int) Math.min(BLOCK_SIZE, numberOfDraws - drawn);
+			fillBlock(generator, block, length);
+			for (int i = 0; i < length; i++) {
+				final double current = block[i];
+				if (drawn + i > 0) {
+					sumOfFirst += previous;
+					sumOfSecond += current;
+					sumOfSquaresOfFirst += previous * previous;
+					sumOfSquaresOfSecond += current * current;
+					sumOfProducts += previous * current;
+				}
+				previous = current;
+			}
+		}
+		final double numberOfPairs = numberOfDraws - 1;
+		final double covariance = sumOfProducts / numberOfPairs - sumOfFirst / numberOfPairs * sumOfSecond / numberOfPairs;
+		final double firstVariance = sumOfSquaresOfFirst / numberOfPairs - Math.pow(sumOfFirst / numberOfPairs, 2);
+		final double secondVariance = sumOfSquaresOfSecond / numberOfPairs - Math.pow(sumOfSecond / numberOfPairs, 2);
+		final double correlation = covariance / Math.sqrt(firstVariance * secondVariance);
+		final double normalizedCorrelation = correlation * Math.sqrt(numberOfPairs);
+		return 2.0 * (1.0 - NormalDistribution.cumulativeDistribution(Math.abs(normalizedCorrelation)));
+	}
+
+	/**
+	 * It returns the p-value of the gap test, computed from the given number of draws. A gap of length r is a
+	 * sequence of r consecutive draws outside the interval [0.4, 0.6), followed by a draw inside: its
+	 * probability is p(1-p)^r, with p = 0.2. The lengths bigger than 29 are counted together.
+	 *
+	 * @param generator the generator to test
+	 * @param numberOfDraws the number of uniform numbers drawn from the generator
+	 * @return the p-value of the gap test
+	 */
+	public static double getGapPValue(PseudoRandomNumberGenerator generator, long numberOfDraws) {
+		final long[] counts = new long[NUMBER_OF_GAP_LENGTHS + 1];
+		final double[] block = new double[BLOCK_SIZE];
+		int currentGapLength = 0;
+		long numberOfGaps = 0;
+		for (long drawn = 0; drawn < numberOfDraws; drawn += BLOCK_SIZE) {
+			final int length = (int) Math.min(BLOCK_SIZE, numberOfDraws - drawn);
+			fillBlock(generator, block, length);
+			for (int i = 0; i < length; i++) {
+				if (block[i] >= GAP_LOWER_BOUND && block[i] < GAP_UPPER_BOUND) {
+					counts[Math.min(currentGapLength, NUMBER_OF_GAP_LENGTHS)]++;
+					numberOfGaps++;
+					currentGapLength = 0;
+				} else {
+					currentGapLength++;
+				}
+			}
+		}
+		final double probabilityInside = GAP_UPPER_BOUND - GAP_LOWER_BOUND;
+		final double[] expectedCounts = new double[NUMBER_OF_GAP_LENGTHS + 1];
+		for (int gapLength = 0; gapLength < NUMBER_OF_GAP_LENGTHS; gapLength++) {
+			expectedCounts[gapLength] = numberOfGaps * probabilityInside * Math.pow(1 - probabilityInside, gapLength);
+		}
+		expectedCounts[NUMBER_OF_GAP_LENGTHS] = numberOfGaps * Math.pow(1 - probabilityInside, NUMBER_OF_GAP_LENGTHS);
+		return getChiSquarePValue(counts, expectedCounts);
+	}
+
+	/**
+	 * It returns the p-value of the birthday spacings test, computed from the given number of draws. Every
+	 * sample uses 512 draws as birthdays in a year of 2^24 days, so the number of samples is numberOfDraws/512.
+	 * The numbers of repeated spacings are compared by a chi-square test with the Poisson distribution with
+	 * parameter 2.
+	 *
+	 * @param generator the generator to test
+	 * @param numberOfDraws the number of uniform numbers drawn from the generator
+	 * @return the p-value of the birthday spacings test
+	 */
+	public static double getBirthdaySpacingsPValue(PseudoRandomNumberGenerator generator, long numberOfDraws) {
+		final long numberOfSamples = numberOfDraws / NUMBER_OF_BIRTHDAYS;
+		final long[] counts = new long[NUMBER_OF_DUPLICATES_CLASSES];
+		final double[] draws = new double[NUMBER_OF_BIRTHDAYS];
+		final int[] birthdays = new int[NUMBER_OF_BIRTHDAYS];
+		final int[] spacings = new int[NUMBER_OF_BIRTHDAYS];
+		for (long sample = 0; sample < numberOfSamples; sample++) {
+			generator.nextDoubles(draws);
+			for (int i = 0; i < NUMBER_OF_BIRTHDAYS; i++) {
+				birthdays[i] = (int) (draws[i] * NUMBER_OF_DAYS);
+			}
+			Arrays.sort(birthdays);
+			spacings[0] = birthdays[0];
+			for (int i = 1; i < NUMBER_OF_BIRTHDAYS; i++) {
+				spacings[i] = birthdays[i] - birthdays[i - 1];
+			}
+			Arrays.sort(spacings);
+			int numberOfDuplicates = 0;
+			for (int i = 1; i < NUMBER_OF_BIRTHDAYS; i++) {
+				if (spacings[i] == spacings[i - 1]) {
+					numberOfDuplicates++;
+				}
+			}
+			counts[Math.min(numberOfDuplicates, NUMBER_OF_DUPLICATES_CLASSES - 1)]++;
+		}
+		final double lambda = Math.pow(NUMBER_OF_BIRTHDAYS, 3) / (4.0 * NUMBER_OF_DAYS);
+		final double[] expectedCounts = new double[NUMBER_OF_DUPLICATES_CLASSES];
+		double poissonProbability = Math.exp(-lambda);
+		double cumulatedProbability = 0.0;
+		for (int k = 0; k < NUMBER_OF_DUPLICATES_CLASSES - 1; k++) {
+			expectedCounts[k] = numberOfSamples * poissonProbability;
+			cumulatedProbability += poissonProbability;
+			poissonProbability *= lambda / (k + 1);
+		}
+		expectedCounts[NUMBER_OF_DUPLICATES_CLASSES - 1] = numberOfSamples * (1.0 - cumulatedProbability);
+		return getChiSquarePValue(counts, expectedCounts);
+	}
+
+	/**
+	 * It returns the millions of uniform numbers per second the generator produces when filling an array. The
+	 * array is first filled some times without measuring, so that the just in time compiler can optimize the code.
+	 *
+	 * @param generator the generator to test
+	 * @param numberOfDraws the number of uniform numbers drawn from the generator for the measure
+	 * @return the millions of uniform numbers per second produced by the generator
+	 */
+	public static double getThroughput(PseudoRandomNumberGenerator generator, long numberOfDraws) {
+		final double[] block = new double[BLOCK_SIZE];
+		for (int i = 0; i < 100; i++) {
+			generator.nextDoubles(block);
+		}
+		double sum = 0.0;// we use the numbers, otherwise the compiler might skip their computation
+		final long start = System.nanoTime();
+		for (long drawn = 0; drawn < numberOfDraws; drawn += BLOCK_SIZE) {
+			final int length = (int) Math.min(BLOCK_SIZE, numberOfDraws - drawn);
+			fillBlock(generator, block, length);
+			sum += block[0];
+		}
+		final long end = System.nanoTime();
+		return sum < 0 ? Double.NaN : numberOfDraws / ((end - start) / 1E9) / 1E6;
+	}
+
+	/*
+	 * It fills the first length elements of the block. Only the last block can be shorter than BLOCK_SIZE: in this
+	 * case, we use an array of the right length, in order not to draw more numbers than needed.
+	 */
+	private static void fillBlock(PseudoRandomNumberGenerator generator, double[] block, int length) {
+		if (length == block.length) {
+			generator.nextDoubles(block);
+		} else {
+			final double[] lastBlock = new double[length];
+			generator.nextDoubles(lastBlock);
+			System.arraycopy(lastBlock, 0, block, 0, length);
+		}
+	}
+}
@@ -4,11 +4,13 @@ package it.univr.montecarlo.ourproducts;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.text.DecimalFormat;
+import java.util.Map;
 import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 
+import it.univr.analyticformulas.OurAnalyticFormulas;
 import net.finmath.exception.CalculationException;
 import net.finmath.functions.AnalyticFormulas;
 import net.finmath.montecarlo.BrownianMotion;
@@ -76,6 +78,13 @@ public class ExchangeOptionTests {
 	 * analytic formula you can find in the exercise sheet.
 	 */
 	private double computeAnalyticalValue() {
+		return computeAnalyticalValue(correlation);
+	}
+
+	/*
+	 * The same as above, for a given correlation between the two assets.
+	 */
+	private double computeAnalyticalValue(double correlation) {
 		final double sigma = Math.sqrt(volatilities[0] * volatilities[0]
 				- 2 * volatilities[0] * volatilities[1] * correlation + volatilities[1] * volatilities[1]);
 
@@ -121,6 +130,99 @@ public class ExchangeOptionTests {
 		}
 	} 
 
+	/**
+	 * It computes the prices of the exchange option for correlations from -1 to 1 from one simulation of the
+	 * independent Brownian motions, via ExchangeOptionCorrelationSweep, and checks that they are close to the
+	 * analytic ones
+	 */
+	@Test
+	public void testCorrelationSweep() {
+		/*
+		 * The sweep only needs one simulation, so we can afford more paths than in the other tests. It only reads
+		 * the Brownian motions at maturity, so one time step is enough.
+		 */
+		final int numberOfSimulationsForSweep = 10 * numberOfSimulations;
+		final TimeDiscretization timesForSweep = new TimeDiscretizationFromArray(initialTime, maturity);
+		final BrownianMotion brownian = new BrownianMotionFromMersenneRandomNumbers(timesForSweep, 2, numberOfSimulationsForSweep, seed);
+		final ExchangeOptionCorrelationSweep sweep = new ExchangeOptionCorrelationSweep(brownian, initialPrices, riskFreeRate, volatilities);
+
+		final double[] correlations = new double[21];
+		for (int i = 0; i <= 20; i++) {
+			correlations[i] = (i - 10) * 0.1;// the correlation goes from -1 to 1
+		}
+		final double[] monteCarloPrices = sweep.getValues(exchangeOption, correlations);
+
+		System.out.println("Correlation      Price      Analytic price");
+		for (int i = 0; i <= 20; i++) {
+			final double analyticalPrice = computeAnalyticalValue(correlations[i]);
+			final double error = Math.abs(monteCarloPrices[i] - analyticalPrice) / analyticalPrice;
+			System.out.println(formatterCorrelation.format(correlations[i]) + "         "
+					+ formatterValue.format(monteCarloPrices[i]) + "     " + formatterValue.format(analyticalPrice));
+			Assert.assertTrue(100 * error < percentageTolerance);
+		}
+	}
+
+	/**
+	 * It checks that the analytic valuation of the exchange option gives the Margrabe price, and that the analytic
+	 * Greeks are close to the ones computed by central finite differences of the Margrabe formula
+	 *
+	 * @throws CalculationException
+	 */
+	@Test
+	public void testAnalyticValuationAndGreeks() throws CalculationException {
+		final BrownianMotion brownian = new BrownianMotionFromMersenneRandomNumbers(times, 2, numberOfSimulations, seed);
+		final AssetModelMonteCarloSimulationModel simulationTwoDimGeometricBrownian = new MonteCarloMultiAssetBlackScholesModel(
+				brownian, initialPrices, riskFreeRate, volatilities, correlationMatrix);
+
+		final ExchangeOption analyticExchangeOption = new ExchangeOption(maturity, true);
+		assertEquals(computeAnalyticalValue(), analyticExchangeOption.getValue(simulationTwoDimGeometricBrownian), 1E-10);
+
+		final Map<String, Double> greeks = analyticExchangeOption.getAnalyticGreeks(simulationTwoDimGeometricBrownian);
+		assertEquals(computeAnalyticalValue(), greeks.get("value"), 1E-10);
+
+		final double h = 1E-4;
+		final double finiteDifferenceTolerance = 1E-5;
+
+		final double firstDelta = (margrabe(initialPrices[0] + h, initialPrices[1], volatilities[0], volatilities[1], correlation, maturity)
+				- margrabe(initialPrices[0] - h, initialPrices[1], volatilities[0], volatilities[1], correlation, maturity)) / (2 * h);
+		final double secondDelta = (margrabe(initialPrices[0], initialPrices[1] + h, volatilities[0], volatilities[1], correlation, maturity)
+				- margrabe(initialPrices[0], initialPrices[1] - h, volatilities[0], volatilities[1], correlation, maturity)) / (2 * h);
+		assertEquals(firstDelta, greeks.get("delta1"), finiteDifferenceTolerance);
+		assertEquals(secondDelta, greeks.get("delta2"), finiteDifferenceTolerance);
+
+		//the second derivatives are computed with a bigger step, in order to limit the round-off errors
+		final double bigStep = 1E-2;
+		final double value = greeks.get("value");
+		final double firstGamma = (margrabe(initialPrices[0] + bigStep, initialPrices[1], volatilities[0], volatilities[1], correlation, maturity)
+				- 2 * value + margrabe(initialPrices[0] - bigStep, initialPrices[1], volatilities[0], volatilities[1], correlation, maturity))
+				/ (bigStep * bigStep);
+		final double crossGamma = (margrabe(initialPrices[0] + bigStep, initialPrices[1] + bigStep, volatilities[0], volatilities[1], correlation, maturity)
+				- margrabe(initialPrices[0] + bigStep, initialPrices[1] - bigStep, volatilities[0], volatilities[1], correlation, maturity)
+				- margrabe(initialPrices[0] - bigStep, initialPrices[1] + bigStep, volatilities[0], volatilities[1], correlation, maturity)
+				+ margrabe(initialPrices[0] - bigStep, initialPrices[1] - bigStep, volatilities[0], volatilities[1], correlation, maturity))
+				/ (4 * bigStep * bigStep);
+		assertEquals(firstGamma, greeks.get("gamma11"), finiteDifferenceTolerance);
+		assertEquals(crossGamma, greeks.get("gamma12"), finiteDifferenceTolerance);
+
+		final double firstVega = (margrabe(initialPrices[0], initialPrices[1], volatilities[0] + h, volatilities[1], correlation, maturity)
+				- margrabe(initialPrices[0], initialPrices[1], volatilities[0] - h, volatilities[1], correlation, maturity)) / (2 * h);
+		final double correlationSensitivity = (margrabe(initialPrices[0], initialPrices[1], volatilities[0], volatilities[1], correlation + h, maturity)
+				- margrabe(initialPrices[0], initialPrices[1], volatilities[0], volatilities[1], correlation - h, maturity)) / (2 * h);
+		//theta is minus the derivative with respect to the time to maturity
+		final double theta = -(margrabe(initialPrices[0], initialPrices[1], volatilities[0], volatilities[1], correlation, maturity + h)
+				- margrabe(initialPrices[0], initialPrices[1], volatilities[0], volatilities[1], correlation, maturity - h)) / (2 * h);
+		assertEquals(firstVega, greeks.get("vega1"), finiteDifferenceTolerance);
+		assertEquals(correlationSensitivity, greeks.get("correlationSensitivity"), finiteDifferenceTolerance);
+		assertEquals(theta, greeks.get("theta"), finiteDifferenceTolerance);
+	}
+
+	// just to make the finite differences above more readable
+	private double margrabe(double firstInitialValue, double secondInitialValue, double firstVolatility,
+			double secondVolatility, double correlation, double maturity) {
+		return OurAnalyticFormulas.margrabeExchangeOptionValue(firstInitialValue, secondInitialValue, firstVolatility,
+				secondVolatility, correlation, maturity);
+	}
+
 	/**
 	 * It checks if the Monte-Carlo price is close enough to the analytic price for the seed given as a field of this class
 	 */
@@ -0,0 +1,51 @@
+package it.univr.montecarlo.ourproducts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import net.finmath.exception.CalculationException;
+import net.finmath.montecarlo.BrownianMotion;
+import net.finmath.montecarlo.BrownianMotionFromMersenneRandomNumbers;
+import net.finmath.montecarlo.assetderivativevaluation.MonteCarloBlackScholesModel;
+import net.finmath.stochastic.RandomVariable;
+import net.finmath.time.TimeDiscretization;
+import net.finmath.time.TimeDiscretizationFromArray;
+
+/**
+ * This class tests MonteCarloProductsDiscounting. For a Black-Scholes model numeraire and weights are deterministic,
+ * so that the payoff is discounted by a single scalar multiplication: we check that the result is the same as the
+ * one given by the element-wise formula V(T) / N(T) * w(T) * N(t) / w(t).
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class MonteCarloProductsDiscountingTest {
+
+	@Test
+	void testScalarDiscountingAgainstElementWiseFormula() throws CalculationException {
+		final double maturity = 3.0;
+		final double evaluationTime = 1.0;
+		final double strike = 100;
+
+		final TimeDiscretization times = new TimeDiscretizationFromArray(0.0, 30, 0.1);
+		final BrownianMotion brownianMotion = new BrownianMotionFromMersenneRandomNumbers(times, 1, 10000, 1897);
+		final MonteCarloBlackScholesModel model = new MonteCarloBlackScholesModel(100, 0.05, 0.3, brownianMotion);
+
+		final RandomVariable payoff = model.getAssetValue(maturity, 0).sub(strike).floor(0.0);
+
+		final RandomVariable discountedPayoff = MonteCarloProductsDiscounting.discountToEvaluationTime(payoff,
+				maturity, evaluationTime, model);
+		final RandomVariable discountedPayoffByElementWiseFormula = payoff.div(model.getNumeraire(maturity))
+				.mult(model.getMonteCarloWeights(maturity)).mult(model.getNumeraire(evaluationTime))
+				.div(model.getMonteCarloWeights(evaluationTime));
+
+		assertTrue(model.getNumeraire(maturity).isDeterministic() && model.getMonteCarloWeights(maturity).isDeterministic());
+		assertEquals(discountedPayoffByElementWiseFormula.size(), discountedPayoff.size());
+		for (int pathIndex = 0; pathIndex < discountedPayoff.size(); pathIndex++) {
+			assertEquals(discountedPayoffByElementWiseFormula.get(pathIndex), discountedPayoff.get(pathIndex),
+					1E-12 * (1 + Math.abs(discountedPayoffByElementWiseFormula.get(pathIndex))));
+		}
+	}
+}
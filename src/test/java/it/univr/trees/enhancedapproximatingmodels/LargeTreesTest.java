@@ -0,0 +1,284 @@
+package it.univr.trees.enhancedapproximatingmodels;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+
+import org.apache.commons.math3.special.Gamma;
+import org.junit.jupiter.api.Test;
+
+import it.univr.trees.assetderivativevaluation.enhancedproducts.AmericanOption;
+import it.univr.trees.assetderivativevaluation.enhancedproducts.EuropeanBarrierOption;
+import it.univr.trees.assetderivativevaluation.enhancedproducts.EuropeanNonPathDependentOption;
+import it.univr.trees.simpletreemodels.BinomialModel;
+import it.univr.trees.simpletreemodels.TrinomialModel;
+import net.finmath.functions.AnalyticFormulas;
+
+/**
+ * In this class we test the valuation of options with trees with many times. We check that the backward induction
+ * done in place gives the same values as the one which allocates a new array at every time, that it does not
+ * allocate memory depending on the number of times, and that trees with so many times that a matrix of their values
+ * would not fit in memory can be used. We also check the values and the probabilities of the nodes of large trees,
+ * the valuation of European options from the distribution of binomial models at maturity and the parallel valuation
+ * of American and barrier options. Finally, we check that trinomial trees with high volatility and many times, whose
+ * biggest values are close to the biggest double, give finite values.
+ *
+ * @author Andrea Mazzon
+ *
+ */
+public class LargeTreesTest {
+
+	private final double spotPrice = 100;
+	private final double riskFreeRate = 0.05;
+	private final double volatility = 0.2;
+	private final double lastTime = 1.0;
+	private final double strike = 100;
+
+	private final DoubleUnaryOperator callPayoff = (x) -> Math.max(x - strike, 0.0);
+
+	/**
+	 * It checks that the value of a call computed by the backward induction in place is equal, up to rounding
+	 * errors, to the one computed by the conditional expectations which return a new array at every time, both
+	 * for a binomial and for a trinomial model.
+	 */
+	@Test
+	void testBackwardInductionInPlace() {
+		final int numberOfTimes = 1001;
+		final ApproximatingTreeModelInterface[] models = {
+				new CoxRossRubinsteinModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes),
+				new BoyleModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes) };
+
+		for (ApproximatingTreeModelInterface model : models) {
+			double[] optionValues = model.getTransformedValuesAtGivenTime(lastTime, callPayoff);
+			for (int timeIndex = numberOfTimes - 2; timeIndex >= 0; timeIndex--) {
+				optionValues = model.getConditionalExpectation(optionValues, timeIndex);
+			}
+			final double valueInPlace = new EuropeanNonPathDependentOption(lastTime, callPayoff).getValue(model);
+			assertEquals(optionValues[0], valueInPlace, 1E-10);
+		}
+	}
+
+	/**
+	 * It checks that the memory allocated by the valuation of a European option, once the tree is generated, is
+	 * the one of few arrays of the values at maturity, and not the one of an array for every time.
+	 */
+	@Test
+	void testNoAllocationInBackwardInduction() {
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+		assumeTrue(allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled());
+
+		final int numberOfTimes = 2001;
+		final ApproximatingTreeModelInterface model = new CoxRossRubinsteinModel(spotPrice, riskFreeRate, volatility,
+				lastTime, numberOfTimes);
+		final EuropeanNonPathDependentOption option = new EuropeanNonPathDependentOption(lastTime, callPayoff);
+		// warm up: the tree is generated and the code we measure is compiled
+		for (int i = 0; i < 5; i++) {
+			option.getValue(model);
+		}
+
+		final long start = allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		option.getValue(model);
+		final long bytes = allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+
+		System.out.println("Bytes allocated by the valuation with " + numberOfTimes + " times: " + bytes);
+		// the copy of the values at maturity and the payoffs, plus some bytes for the rest
+		assertTrue(bytes < 2 * Double.BYTES * numberOfTimes + 1000);
+	}
+
+	/**
+	 * It checks that the values of a call computed with binomial and trinomial trees with 20001 times, whose values
+	 * would take more than 3 GB if stored in a matrix, are close to the Black-Scholes one.
+	 */
+	@Test
+	void testVeryLargeTrees() {
+		final int numberOfTimes = 20001;
+		final double analyticValue = AnalyticFormulas.blackScholesOptionValue(spotPrice, riskFreeRate, volatility,
+				lastTime, strike);
+		final ApproximatingTreeModelInterface[] models = {
+				new CoxRossRubinsteinModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes),
+				new BoyleModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes) };
+
+		for (ApproximatingTreeModelInterface model : models) {
+			final long start = System.currentTimeMillis();
+			final double value = new EuropeanNonPathDependentOption(lastTime, callPayoff).getValue(model);
+			final long end = System.currentTimeMillis();
+			System.out.println(model.getClass().getSimpleName() + " with " + numberOfTimes + " times: " + value
+					+ " computed in " + (end - start) + " milliseconds, analytic value " + analyticValue);
+			assertEquals(analyticValue, value, 1E-3);
+		}
+	}
+
+	/**
+	 * It checks that the values of the nodes of binomial and trinomial models with 20001 times, computed multiplying
+	 * every value by the ratio with the next one, are close to the ones computed by powers of the up and down factors.
+	 */
+	@Test
+	void testValuesOfNodes() {
+		final int timeIndex = 20000;
+		final double upFactor = 1.0015;
+		final double downFactor = 1 / upFactor;
+
+		final double[] binomialValues = new BinomialModel(upFactor, downFactor, 0.0, spotPrice, timeIndex + 1)
+				.getValuesAtGivenTimeIndex(timeIndex);
+		for (int numberOfDowns = 0; numberOfDowns <= timeIndex; numberOfDowns++) {
+			final double value = spotPrice * Math.pow(upFactor, timeIndex - numberOfDowns) * Math.pow(downFactor, numberOfDowns);
+			assertEquals(1.0, binomialValues[numberOfDowns] / value, 1E-10);
+		}
+
+		final double[] trinomialValues = new TrinomialModel(0.25, upFactor, 0.0, spotPrice, timeIndex + 1)
+				.getValuesAtGivenTimeIndex(timeIndex);
+		for (int position = 0; position <= 2 * timeIndex; position++) {
+			final double value = spotPrice * Math.pow(upFactor, 2 * timeIndex - position) * Math.pow(downFactor, timeIndex);
+			assertEquals(1.0, trinomialValues[position] / value, 1E-10);
+		}
+	}
+
+	/**
+	 * It checks that the probabilities of the nodes of a binomial model at a time index for which the binomial
+	 * coefficients overflow sum to one, and that the discounted expectation of the underlying is its initial value.
+	 */
+	@Test
+	void testProbabilitiesOfNodes() {
+		final int timeIndex = 5000;
+		final double riskFreeFactor = 1E-5;
+		final BinomialModel model = new BinomialModel(1.002, 1 / 1.002, riskFreeFactor, spotPrice, timeIndex + 1);
+		final double[] values = model.getValuesAtGivenTimeIndex(timeIndex);
+		final double[] probabilities = model.getValuesProbabilitiesAtGivenTimeIndex(timeIndex);
+
+		double sumOfProbabilities = 0.0;
+		double expectation = 0.0;
+		for (int numberOfDowns = 0; numberOfDowns <= timeIndex; numberOfDowns++) {
+			sumOfProbabilities += probabilities[numberOfDowns];
+			expectation += probabilities[numberOfDowns] * values[numberOfDowns];
+		}
+		assertEquals(1.0, sumOfProbabilities, 1E-10);
+		assertEquals(spotPrice, expectation / Math.pow(1 + riskFreeFactor, timeIndex), 1E-8);
+
+		//the probabilities obtained by multiplication are the ones given by the binomial formula in log space
+		final double probabilityUp = (1 + riskFreeFactor - 1 / 1.002) / (1.002 - 1 / 1.002);
+		for (int numberOfDowns = 2300; numberOfDowns <= 2700; numberOfDowns += 50) {
+			final int numberOfUps = timeIndex - numberOfDowns;
+			final double probabilityFromBinomialFormula = Math.exp(Gamma.logGamma(timeIndex + 1)
+					- Gamma.logGamma(numberOfUps + 1) - Gamma.logGamma(numberOfDowns + 1)
+					+ numberOfUps * Math.log(probabilityUp) + numberOfDowns * Math.log(1 - probabilityUp));
+			assertEquals(1.0, probabilities[numberOfDowns] / probabilityFromBinomialFormula, 1E-9);
+		}
+	}
+
+	/**
+	 * It checks that the value of a call computed from the distribution at maturity of Cox Ross Rubinstein, Jarrow
+	 * Rudd and Leisen Reimer models is the one computed by backward induction, and that for 100001 times it is close
+	 * to the Black-Scholes one.
+	 */
+	@Test
+	void testValueFromDistributionAtMaturity() {
+		final EuropeanNonPathDependentOption option = new EuropeanNonPathDependentOption(lastTime, callPayoff);
+		final double analyticValue = AnalyticFormulas.blackScholesOptionValue(spotPrice, riskFreeRate, volatility,
+				lastTime, strike);
+
+		for (int numberOfTimes : new int[] { 1001, 100001 }) {
+			final ApproximatingBinomialModel[] models = {
+					new CoxRossRubinsteinModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes),
+					new JarrowRuddModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes),
+					new LeisenReimerModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes, strike) };
+			for (ApproximatingBinomialModel model : models) {
+				// warm up, so that the time we print is the one of compiled code
+				for (int i = 0; i < 100; i++) {
+					option.getValueFromDistributionAtMaturity(model);
+				}
+				final long start = System.nanoTime();
+				final double value = option.getValueFromDistributionAtMaturity(model);
+				final long end = System.nanoTime();
+				System.out.println(model.getClass().getSimpleName() + " with " + numberOfTimes + " times: " + value
+						+ " computed in " + (end - start) / 1000 + " microseconds, analytic value " + analyticValue);
+
+				if (numberOfTimes == 1001) {
+					assertEquals(option.getValue(model), value, 1E-10);
+				} else {
+					assertEquals(analyticValue, value, 1E-4);
+				}
+			}
+		}
+	}
+
+	/**
+	 * It checks that the values of an American put and of a barrier call computed by the parallel backward induction
+	 * are the ones computed by the sequential one, for a binomial and a trinomial model, and prints the time needed to
+	 * value the American put with 20001 times.
+	 */
+	@Test
+	void testBackwardInductionInParallel() {
+		final AmericanOption americanPut = new AmericanOption(lastTime, (x) -> Math.max(strike - x, 0.0));
+		final EuropeanBarrierOption barrierCall = new EuropeanBarrierOption(lastTime, callPayoff, 90, 130);
+		final ForkJoinPool pool = new ForkJoinPool(2);
+
+		final int numberOfTimes = 5001;
+		final ApproximatingTreeModelInterface[] models = {
+				new CoxRossRubinsteinModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes),
+				new BoyleModel(spotPrice, riskFreeRate, volatility, lastTime, numberOfTimes) };
+		for (ApproximatingTreeModelInterface model : models) {
+			assertEquals(americanPut.getValue(model), americanPut.getValueInParallel(model, pool), 1E-10);
+			assertEquals(barrierCall.getValue(model), barrierCall.getValueInParallel(model, pool), 1E-10);
+		}
+
+		final int largeNumberOfTimes = 20001;
+		final ApproximatingTreeModelInterface largeModel = new CoxRossRubinsteinModel(spotPrice, riskFreeRate,
+				volatility, lastTime, largeNumberOfTimes);
+		long start = System.currentTimeMillis();
+		final double sequentialValue = americanPut.getValue(largeModel);
+		final long sequentialTime = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+		final double parallelValue = americanPut.getValueInParallel(largeModel, ForkJoinPool.commonPool());
+		final long parallelTime = System.currentTimeMillis() - start;
+		System.out.println("American put with " + largeNumberOfTimes + " times: " + sequentialValue + " computed in "
+				+ sequentialTime + " milliseconds, " + parallelValue + " computed in parallel in " + parallelTime
+				+ " milliseconds with " + ForkJoinPool.getCommonPoolParallelism() + " threads");
+		assertEquals(sequentialValue, parallelValue, 1E-10);
+		pool.shutdown();
+	}
+
+	/**
+	 * It checks that with a volatility of 60%, a maturity of five years and 100001 times the values of the nodes of a
+	 * trinomial model are finite and correct, and that the value of a call is close to the Black-Scholes one. Here
+	 * u^(2n) would overflow. It also checks that the parallel valuation of a barrier option with 36001 times, for
+	 * which u^(2n) would overflow as well, gives the value of the sequential one.
+	 */
+	@Test
+	void testHighVolatilityTrinomialTrees() {
+		final double highVolatility = 0.6;
+		final double longMaturity = 5.0;
+		final int numberOfTimes = 100001;
+		final int timeIndex = numberOfTimes - 1;
+
+		final double logarithmOfUpFactor = highVolatility * Math.sqrt(2 * longMaturity / timeIndex);
+		final double[] trinomialValues = new TrinomialModel(0.25, Math.exp(logarithmOfUpFactor), 0.0, spotPrice,
+				numberOfTimes).getValuesAtGivenTimeIndex(timeIndex);
+		for (int position = 0; position <= 2 * timeIndex; position += 1000) {
+			final double value = spotPrice * Math.exp(logarithmOfUpFactor * (timeIndex - position));
+			assertTrue(Double.isFinite(trinomialValues[position]));
+			assertEquals(1.0, trinomialValues[position] / value, 1E-9);
+		}
+
+		final double analyticValue = AnalyticFormulas.blackScholesOptionValue(spotPrice, riskFreeRate, highVolatility,
+				longMaturity, strike);
+		final double value = new EuropeanNonPathDependentOption(longMaturity, callPayoff)
+				.getValue(new BoyleModel(spotPrice, riskFreeRate, highVolatility, longMaturity, numberOfTimes));
+		System.out.println("BoyleModel with " + numberOfTimes + " times and volatility " + highVolatility + ": " + value
+				+ ", analytic value " + analyticValue);
+		assertEquals(analyticValue, value, 1E-3);
+
+		final ApproximatingTreeModelInterface model = new BoyleModel(spotPrice, riskFreeRate, highVolatility,
+				longMaturity, 36001);
+		final EuropeanBarrierOption barrierCall = new EuropeanBarrierOption(longMaturity, callPayoff, 50, 400);
+		final double sequentialValue = barrierCall.getValue(model);
+		assertTrue(sequentialValue > 0.0);
+		assertEquals(sequentialValue, barrierCall.getValueInParallel(model, ForkJoinPool.commonPool()), 1E-10);
+	}
+}